@@ -2,13 +2,23 @@ package de.uniluebeck.itm.wsn.drivers.core;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import de.uniluebeck.itm.wsn.drivers.core.io.FrameDecoder;
+import de.uniluebeck.itm.wsn.drivers.core.io.MeteredInputStream;
+import de.uniluebeck.itm.wsn.drivers.core.io.MeteredOutputStream;
+import de.uniluebeck.itm.wsn.drivers.core.io.ReceiveBufferInputStream;
+import de.uniluebeck.itm.wsn.drivers.core.io.WireCapture;
 import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import de.uniluebeck.itm.wsn.drivers.core.operation.Deadline;
 import org.apache.commons.lang3.event.EventListenerSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -16,6 +26,8 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
 
 
 /**
@@ -30,6 +42,16 @@ public abstract class AbstractConnection implements Connection {
 	 * Logger for this class.
 	 */
 	private static final Logger LOG = LoggerFactory.getLogger(AbstractConnection.class);
+
+	/**
+	 * Initial size of the receive buffer, large enough for the replies of all bootloaders.
+	 */
+	private static final int RECEIVE_BUFFER_SIZE = 1024;
+
+	/**
+	 * Interval in which the receive buffer is filled if no data available signal arrives.
+	 */
+	private static final long RECEIVE_POLL_MILLIS = 10;
 	
 	/**
 	 * List for connectionListeners that want to be notified when data is available.
@@ -50,12 +72,34 @@ public abstract class AbstractConnection implements Connection {
 	/**
 	 * Input stream of the connection.
 	 */
-	private InputStream rxtxInputStream;
+	private ReceiveBufferInputStream rxtxInputStream;
 	
 	/**
 	 * Output stream of the connection.
 	 */
 	private OutputStream rxtxOutputStream;
+
+	/**
+	 * Input stream as it was set by the implementation, without capturing.
+	 */
+	private InputStream uncapturedInputStream;
+
+	/**
+	 * Output stream as it was set by the implementation, without capturing.
+	 */
+	private OutputStream uncapturedOutputStream;
+
+	/**
+	 * Records the traffic of this connection if set.
+	 */
+	@Nullable
+	private WireCapture wireCapture;
+
+	/**
+	 * Counts the bytes sent and received through this connection if set.
+	 */
+	@Nullable
+	private DeviceMetrics metrics;
 	
 	/**
 	 * The uri of the connected resource.
@@ -72,6 +116,11 @@ public abstract class AbstractConnection implements Connection {
 	 */
 	private final Condition isDataAvailable = dataAvailableLock.newCondition();
 
+	/**
+	 * Number of data available signals so far, lets readers notice signals they did not wait for.
+	 */
+	private volatile long dataAvailableSignals;
+
 	private String lastPort = null;
 
 	@Override
@@ -105,6 +154,7 @@ public abstract class AbstractConnection implements Connection {
 		} catch (final InterruptedException e) {
 
 			LOG.error("Interrupted: " + e, e);
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
 
 		} finally {
@@ -112,17 +162,104 @@ public abstract class AbstractConnection implements Connection {
 		}
 	}
 
+	@Override
+	public void readFully(final byte[] buffer, final int offset, final int length, final int timeoutMillis)
+			throws TimeoutException, IOException {
+
+		checkPositionIndexes(offset, offset + length, buffer.length);
+
+		int read = 0;
+		while (read < length) {
+			final long signals = dataAvailableSignals;
+			if (rxtxInputStream.buffered() == 0 && rxtxInputStream.fill() == 0) {
+				awaitReceived(signals, timeoutMillis);
+			}
+			read += rxtxInputStream.read(buffer, offset + read, length - read);
+		}
+	}
+
+	@Override
+	public byte[] readFrame(final FrameDecoder decoder, final int timeoutMillis) throws TimeoutException, IOException {
+		while (true) {
+
+			final long signals = dataAvailableSignals;
+			rxtxInputStream.fill();
+
+			final int buffered = rxtxInputStream.buffered();
+			if (buffered > 0) {
+				final boolean idle = rxtxInputStream.available() == buffered;
+				final int frameLength =
+						decoder.frameLength(rxtxInputStream.array(), rxtxInputStream.position(), buffered, idle);
+				if (frameLength > 0) {
+					checkState(frameLength <= buffered, "Frame length %s exceeds received bytes %s", frameLength, buffered);
+					final byte[] frame = new byte[frameLength];
+					rxtxInputStream.read(frame, 0, frameLength);
+					return frame;
+				}
+			}
+
+			awaitReceived(signals, timeoutMillis);
+		}
+	}
+
+	/**
+	 * Waits for the next data available signal after <code>signals</code> and moves the new bytes into the receive
+	 * buffer. Waiting for the signal instead of polling the stream keeps the reader from spinning while a frame trickles
+	 * in. Streams that do not signal are polled every {@value #RECEIVE_POLL_MILLIS} ms.
+	 */
+	private void awaitReceived(final long signals, final int timeoutMillis) throws TimeoutException, IOException {
+
+		long remainingNanos = TimeUnit.MILLISECONDS.toNanos(Deadline.current().limit(timeoutMillis));
+
+		dataAvailableLock.lock();
+		try {
+
+			long seen = signals;
+			while (true) {
+				if (dataAvailableSignals == seen) {
+					final long waitNanos = Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(RECEIVE_POLL_MILLIS));
+					remainingNanos -= waitNanos - isDataAvailable.awaitNanos(waitNanos);
+				}
+				seen = dataAvailableSignals;
+				if (rxtxInputStream.fill() > 0) {
+					return;
+				}
+				if (remainingNanos <= 0) {
+					throw new TimeoutException("No data received within " + timeoutMillis + " ms ("
+							+ rxtxInputStream.buffered() + " bytes of an incomplete frame buffered)"
+					);
+				}
+			}
+
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for data");
+		} finally {
+			dataAvailableLock.unlock();
+		}
+	}
+
 	protected void signalDataAvailable() {
+		signalDataAvailable(System.nanoTime());
+	}
+
+	/**
+	 * Wakes up threads waiting for data and notifies all listeners.
+	 *
+	 * @param receiveNanos The <code>System.nanoTime()</code> at which the data was received.
+	 */
+	protected void signalDataAvailable(final long receiveNanos) {
 
 		dataAvailableLock.lock();
 
 		try {
+			dataAvailableSignals++;
 			isDataAvailable.signal();
 		} finally {
 			dataAvailableLock.unlock();
 		}
 
-		listeners.fire().onDataAvailable(new ConnectionEvent(this, uri, connected));
+		listeners.fire().onDataAvailable(new ConnectionEvent(this, uri, connected, receiveNanos));
 	}
 	
 	/**
@@ -138,7 +275,14 @@ public abstract class AbstractConnection implements Connection {
 	 * @param inputStream The input stream object.
 	 */
 	protected void setInputStream(final InputStream inputStream) {
-		this.rxtxInputStream = inputStream;
+		this.uncapturedInputStream = inputStream;
+		if (inputStream == null) {
+			this.rxtxInputStream = null;
+			return;
+		}
+		final InputStream metered = metrics != null ? new MeteredInputStream(inputStream, metrics) : inputStream;
+		final InputStream captured = wireCapture != null ? wireCapture.wrap(metered) : metered;
+		this.rxtxInputStream = new ReceiveBufferInputStream(captured, RECEIVE_BUFFER_SIZE);
 	}
 	
 	/**
@@ -147,7 +291,48 @@ public abstract class AbstractConnection implements Connection {
 	 * @param outputStream The output stream object.
 	 */
 	protected void setOutputStream(final OutputStream outputStream) {
-		this.rxtxOutputStream = outputStream;
+		this.uncapturedOutputStream = outputStream;
+		final OutputStream metered =
+				metrics != null && outputStream != null ? new MeteredOutputStream(outputStream, metrics) : outputStream;
+		this.rxtxOutputStream = wireCapture != null && metered != null ? wireCapture.wrap(metered) : metered;
+	}
+
+	/**
+	 * Records all bytes that are read from and written to this connection. Takes effect for the current streams and all
+	 * streams that are set afterwards.
+	 *
+	 * @param wireCapture
+	 * 		The capture or <code>null</code> to stop capturing.
+	 */
+	@Inject(optional = true)
+	public void setWireCapture(@Nullable final WireCapture wireCapture) {
+		this.wireCapture = wireCapture;
+		setInputStream(uncapturedInputStream);
+		setOutputStream(uncapturedOutputStream);
+	}
+
+	@Nullable
+	public WireCapture getWireCapture() {
+		return wireCapture;
+	}
+
+	/**
+	 * Counts all bytes that are read from and written to this connection. Takes effect for the current streams and all
+	 * streams that are set afterwards.
+	 *
+	 * @param metrics
+	 * 		The metrics of the device or <code>null</code> to stop counting.
+	 */
+	@Inject(optional = true)
+	public void setMetrics(@Nullable final DeviceMetrics metrics) {
+		this.metrics = metrics;
+		setInputStream(uncapturedInputStream);
+		setOutputStream(uncapturedOutputStream);
+	}
+
+	@Nullable
+	public DeviceMetrics getMetrics() {
+		return metrics;
 	}
 	
 	/**
@@ -205,6 +390,7 @@ public abstract class AbstractConnection implements Connection {
 	@Override
 	public void clear() throws IOException {
 		LOG.trace("Cleaning input stream.");
+		rxtxInputStream.discard();
 		ByteStreams.skipFully(rxtxInputStream, rxtxInputStream.available());
 	}
 }
@@ -1,6 +1,7 @@
 package de.uniluebeck.itm.wsn.drivers.core;
 
 import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.io.FrameDecoder;
 import de.uniluebeck.itm.wsn.drivers.core.io.HasInputStream;
 import de.uniluebeck.itm.wsn.drivers.core.io.HasOutputStream;
 
@@ -46,6 +47,31 @@ public interface Connection extends HasInputStream, HasOutputStream, Connectable
 	 */
 	int waitDataAvailable(int timeoutMillis) throws TimeoutException, IOException;
 	
+	/**
+	 * Reads exactly <code>length</code> bytes. Whatever the device sent is taken with one bulk read, so the bytes of a
+	 * reply are not read one by one.
+	 *
+	 * @param buffer The buffer to read into.
+	 * @param offset The position in the buffer of the first byte.
+	 * @param length The number of bytes to read.
+	 * @param timeoutMillis Milliseconds to wait for the next data, limited by the deadline of the running operation.
+	 * @throws TimeoutException when no data was available for the timeout duration.
+	 * @throws IOException when something went wrong with the input stream.
+	 */
+	void readFully(byte[] buffer, int offset, int length, int timeoutMillis) throws TimeoutException, IOException;
+
+	/**
+	 * Reads the next frame, whose end is determined by <code>decoder</code>. Bytes after the frame stay buffered for
+	 * the next read.
+	 *
+	 * @param decoder Determines the length of the frame.
+	 * @param timeoutMillis Milliseconds to wait for the next data, limited by the deadline of the running operation.
+	 * @return The bytes of the frame.
+	 * @throws TimeoutException when no data was available for the timeout duration.
+	 * @throws IOException when something went wrong with the input stream.
+	 */
+	byte[] readFrame(FrameDecoder decoder, int timeoutMillis) throws TimeoutException, IOException;
+
 	/**
 	 * Skip all bytes left on the input stream.
 	 * 
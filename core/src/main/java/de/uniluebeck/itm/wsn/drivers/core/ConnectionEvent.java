@@ -25,6 +25,11 @@ public class ConnectionEvent extends EventObject {
 	 */
 	private final String uri;
 	
+	/**
+	 * The <code>System.nanoTime()</code> at which the event was raised.
+	 */
+	private final long receiveNanos;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -33,9 +38,22 @@ public class ConnectionEvent extends EventObject {
 	 * @param connected The connection state.
 	 */
 	public ConnectionEvent(final Object source, final String uri, final boolean connected) {
+		this(source, uri, connected, System.nanoTime());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param source The event source.
+	 * @param uri Connection target.
+	 * @param connected The connection state.
+	 * @param receiveNanos The <code>System.nanoTime()</code> at which the data was signalled as available.
+	 */
+	public ConnectionEvent(final Object source, final String uri, final boolean connected, final long receiveNanos) {
 		super(source);
 		this.uri = uri;
 		this.connected = connected;
+		this.receiveNanos = receiveNanos;
 	}
 	
 	/**
@@ -55,12 +73,22 @@ public class ConnectionEvent extends EventObject {
 	public String getUri() {
 		return uri;
 	}
+	
+	/**
+	 * Getter for the time at which the connection signalled that data is available.
+	 * 
+	 * @return The <code>System.nanoTime()</code> captured when the event was raised.
+	 */
+	public long getReceiveNanos() {
+		return receiveNanos;
+	}
 
 	@Override
 	public String toString() {
 		return "ConnectionEvent{" +
 				"connected=" + connected +
 				", uri='" + uri + '\'' +
+				", receiveNanos=" + receiveNanos +
 				"} " + super.toString();
 	}
 }
@@ -2,6 +2,8 @@ package de.uniluebeck.itm.wsn.drivers.core;
 
 import de.uniluebeck.itm.wsn.drivers.core.io.HasInputStream;
 import de.uniluebeck.itm.wsn.drivers.core.io.HasOutputStream;
+import de.uniluebeck.itm.wsn.drivers.core.operation.BatchResult;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationBatch;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 
@@ -149,4 +151,20 @@ public interface Device extends HasInputStream, HasOutputStream, Connectable {
 	 * @return Returns a <code>OperationFuture</code> for controlling the async operation.
 	 */
 	OperationFuture<Void> reset(long timeoutMillis, @Nullable OperationListener<Void> listener);
+
+	/**
+	 * Runs the operations of <code>batch</code> back-to-back. Serial devices enter the programming mode once for the
+	 * whole batch instead of once per operation.
+	 *
+	 * @param batch
+	 * 		The operations to run.
+	 * @param timeoutMillis
+	 * 		Maximum time for the whole batch before it will be canceled in milliseconds.
+	 * @param listener
+	 * 		Interface that is called on successfully or failed method execution.
+	 *
+	 * @return Returns a <code>OperationFuture</code> for the results and timing of the steps.
+	 */
+	OperationFuture<BatchResult> executeBatch(OperationBatch batch, long timeoutMillis,
+											  @Nullable OperationListener<BatchResult> listener);
 }
@@ -1,16 +1,28 @@
 package de.uniluebeck.itm.wsn.drivers.core;
 
-import com.google.common.util.concurrent.SimpleTimeLimiter;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.name.Names;
+import de.uniluebeck.itm.wsn.drivers.core.io.ByteRingBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.OverflowBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.OverflowPolicy;
 import de.uniluebeck.itm.wsn.drivers.core.io.SendOutputStreamWrapper;
-
-import java.io.*;
+import de.uniluebeck.itm.wsn.drivers.core.io.StreamPump;
+import de.uniluebeck.itm.wsn.drivers.core.io.WireCapture;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.util.VirtualThreads;
+
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 
 /**
@@ -25,46 +37,205 @@ public class DeviceModule extends AbstractModule {
 
 	private final ExecutorService executorService;
 
+	/**
+	 * The capacity of the ring buffers between the device and the driver streams.
+	 */
+	private final int streamBufferCapacity;
+
+	/**
+	 * Shared pump that copies the driver output to the device. If <code>null</code> every device uses its own thread.
+	 */
+	@Nullable
+	private final StreamPump streamPump;
+
+	/**
+	 * If <code>true</code> the operation scheduler thread, which runs the operations, and the driver to device copy
+	 * thread are virtual threads.
+	 */
+	private final boolean virtualThreads;
+
+	/**
+	 * What happens to device output that does not fit into the buffer because the driver input is read too slowly.
+	 */
+	private final OverflowPolicy deviceToDriverOverflowPolicy;
+
+	/**
+	 * Records the traffic of the device connection. If <code>null</code> nothing is recorded.
+	 */
+	@Nullable
+	private final WireCapture wireCapture;
+
 	public DeviceModule() {
-		executorService = Executors.newScheduledThreadPool(DEFAULT_POOL_SIZE,
+		this(Executors.newScheduledThreadPool(DEFAULT_POOL_SIZE,
 				new ThreadFactoryBuilder().setNameFormat("DeviceModule-Thread %d").build()
+		)
 		);
 	}
 
 	@Inject
 	public DeviceModule(final ExecutorService executorService) {
-		this.executorService = executorService;
+		this(new Builder(executorService));
+	}
+
+	private DeviceModule(final Builder builder) {
+		this.executorService = builder.executorService;
+		this.streamBufferCapacity = builder.streamBufferCapacity;
+		this.streamPump = builder.streamPump;
+		this.virtualThreads = builder.virtualThreads;
+		this.deviceToDriverOverflowPolicy = builder.deviceToDriverOverflowPolicy;
+		this.wireCapture = builder.wireCapture;
+	}
+
+	/**
+	 * Configures a {@link DeviceModule}. Settings that are not set keep the defaults of
+	 * {@link DeviceModule#DeviceModule(ExecutorService)}:
+	 * <pre>
+	 * final DeviceModule module = new DeviceModule.Builder(executorService)
+	 *         .streamPump(pump)
+	 *         .deviceToDriverOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+	 *         .build();
+	 * </pre>
+	 */
+	public static class Builder {
+
+		private final ExecutorService executorService;
+
+		private int streamBufferCapacity = ByteRingBuffer.DEFAULT_CAPACITY;
+
+		@Nullable
+		private StreamPump streamPump;
+
+		private boolean virtualThreads = false;
+
+		private OverflowPolicy deviceToDriverOverflowPolicy = OverflowPolicy.BLOCK;
+
+		@Nullable
+		private WireCapture wireCapture;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param executorService
+		 * 		The executor that is bound for the drivers.
+		 */
+		public Builder(final ExecutorService executorService) {
+			this.executorService = checkNotNull(executorService, "Null executor service is not allowed.");
+		}
+
+		/**
+		 * @param streamBufferCapacity
+		 * 		The capacity of the ring buffers between the device and the driver streams.
+		 *
+		 * @return This builder.
+		 */
+		public Builder streamBufferCapacity(final int streamBufferCapacity) {
+			checkArgument(streamBufferCapacity > 0, "Buffer capacity must be positive (is %s)", streamBufferCapacity);
+			this.streamBufferCapacity = streamBufferCapacity;
+			return this;
+		}
+
+		/**
+		 * @param streamPump
+		 * 		Shared pump for the driver output or <code>null</code> to use one thread per device.
+		 *
+		 * @return This builder.
+		 */
+		public Builder streamPump(@Nullable final StreamPump streamPump) {
+			this.streamPump = streamPump;
+			return this;
+		}
+
+		/**
+		 * @param virtualThreads
+		 * 		Runs the operation scheduler thread and the driver to device copy thread as virtual threads. Requires a
+		 * 		JVM that supports them.
+		 *
+		 * @return This builder.
+		 */
+		public Builder virtualThreads(final boolean virtualThreads) {
+			checkArgument(!virtualThreads || VirtualThreads.isSupported(),
+					"Virtual threads are not supported by this JVM"
+			);
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		/**
+		 * @param deviceToDriverOverflowPolicy
+		 * 		What happens to device output if the driver input stream is not read fast enough.
+		 *
+		 * @return This builder.
+		 */
+		public Builder deviceToDriverOverflowPolicy(final OverflowPolicy deviceToDriverOverflowPolicy) {
+			this.deviceToDriverOverflowPolicy =
+					checkNotNull(deviceToDriverOverflowPolicy, "Null overflow policy is not allowed.");
+			return this;
+		}
+
+		/**
+		 * @param wireCapture
+		 * 		Records all bytes that pass the device connection or <code>null</code> to record nothing.
+		 *
+		 * @return This builder.
+		 */
+		public Builder wireCapture(@Nullable final WireCapture wireCapture) {
+			this.wireCapture = wireCapture;
+			return this;
+		}
+
+		public DeviceModule build() {
+			return new DeviceModule(this);
+		}
 	}
 
 	@Override
 	protected void configure() {
 
-		PipedInputStream driverInputStream = new PipedInputStream();
-		PipedOutputStream pipedOutputStreamToDriverInputStream = new PipedOutputStream();
+		ByteRingBuffer deviceToDriverBuffer = new ByteRingBuffer(streamBufferCapacity);
+		ByteRingBuffer driverToDeviceBuffer = new ByteRingBuffer(streamBufferCapacity);
+		OverflowBuffer deviceToDriverOverflowBuffer =
+				new OverflowBuffer(deviceToDriverBuffer, deviceToDriverOverflowPolicy, null);
 
-		PipedOutputStream driverOutputStream = new PipedOutputStream();
-		PipedInputStream pipedInputStreamFromDriverOutputStream = new PipedInputStream();
+		bind(ByteRingBuffer.class).annotatedWith(Names.named("deviceToDriverBuffer")).toInstance(deviceToDriverBuffer);
+		bind(ByteRingBuffer.class).annotatedWith(Names.named("driverToDeviceBuffer")).toInstance(driverToDeviceBuffer);
+		bind(OverflowBuffer.class)
+				.annotatedWith(Names.named("deviceToDriverOverflowBuffer"))
+				.toInstance(deviceToDriverOverflowBuffer);
 
-		try {
-			driverInputStream.connect(pipedOutputStreamToDriverInputStream);
-			driverOutputStream.connect(pipedInputStreamFromDriverOutputStream);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		bind(InputStream.class)
+				.annotatedWith(Names.named("driverInputStream"))
+				.toInstance(deviceToDriverOverflowBuffer.getInputStream());
 
-		bind(PipedInputStream.class).annotatedWith(Names.named("driverInputStream")).toInstance(driverInputStream);
-		bind(PipedOutputStream.class).annotatedWith(Names.named("driverOutputStream")).toInstance(driverOutputStream);
+		bind(OutputStream.class)
+				.annotatedWith(Names.named("driverOutputStream"))
+				.toInstance(driverToDeviceBuffer.getOutputStream());
 
-		bind(PipedOutputStream.class)
+		bind(OutputStream.class)
 				.annotatedWith(Names.named("pipedOutputStreamToDriverInputStream"))
-				.toInstance(pipedOutputStreamToDriverInputStream);
+				.toInstance(deviceToDriverOverflowBuffer.getOutputStream());
 
-		bind(PipedInputStream.class)
+		bind(InputStream.class)
 				.annotatedWith(Names.named("pipedInputStreamFromDriverOutputStream"))
-				.toInstance(pipedInputStreamFromDriverOutputStream);
+				.toInstance(driverToDeviceBuffer.getInputStream());
+
+		if (streamPump != null) {
+			bind(StreamPump.class).toInstance(streamPump);
+		}
+
+		if (wireCapture != null) {
+			bind(WireCapture.class).toInstance(wireCapture);
+		}
+
+		if (virtualThreads) {
+			bind(ThreadFactory.class)
+					.annotatedWith(Names.named("deviceThreadFactory"))
+					.toInstance(VirtualThreads.newThreadFactory("Device-VirtualThread "));
+		}
 
 		bind(ExecutorService.class).toInstance(executorService);
-		bind(TimeLimiter.class).toInstance(new SimpleTimeLimiter(executorService));
+
+		// operations run on the thread of the operation scheduler, the shared watchdog enforces their timeouts
+		bind(TimeLimiter.class).toInstance(new InlineTimeLimiter());
 		bind(OutputStream.class).to(SendOutputStreamWrapper.class);
 	}
 
@@ -0,0 +1,192 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CancellationException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A chain of dependent operations on one device, e.g. program, read back and reset.
+ * <p/>
+ * Each step is started by the thread that completes the previous one, usually the thread that ran the previous
+ * operation, so the next operation is queued on the device as soon as its predecessor is done. No thread blocks on
+ * {@link java.util.concurrent.Future#get()} between the steps and no thread is added. The pipeline fails with the first
+ * failing step and cancelling the returned future cancels the step that is running.
+ * <p/>
+ * <pre>
+ * ListenableFuture&lt;Void&gt; done = DevicePipeline.on(device)
+ *     .then(new DevicePipeline.Step&lt;Void, Void&gt;() {
+ *         public ListenableFuture&lt;Void&gt; start(Device device, Void previousResult) {
+ *             return device.program(image, 120000, null);
+ *         }
+ *     })
+ *     .then(new DevicePipeline.Step&lt;Void, Void&gt;() {
+ *         public ListenableFuture&lt;Void&gt; start(Device device, Void previousResult) {
+ *             return device.reset(1000, null);
+ *         }
+ *     })
+ *     .start();
+ * </pre>
+ * Pipelines are immutable and may be started any number of times.
+ *
+ * @param <T>
+ * 		The result type of the last step.
+ */
+public class DevicePipeline<T> {
+
+	/**
+	 * One step of a pipeline.
+	 *
+	 * @param <I>
+	 * 		The result type of the previous step.
+	 * @param <O>
+	 * 		The result type of this step.
+	 */
+	public interface Step<I, O> {
+
+		/**
+		 * Starts the operation of this step.
+		 *
+		 * @param device
+		 * 		The device of the pipeline.
+		 * @param previousResult
+		 * 		The result of the previous step or <code>null</code> for the first step.
+		 *
+		 * @return A future for the result of this step, usually the one returned by the device.
+		 *
+		 * @throws Exception
+		 * 		if the step can not be started. The pipeline fails with this exception.
+		 */
+		ListenableFuture<O> start(Device device, @Nullable I previousResult) throws Exception;
+	}
+
+	private final Device device;
+
+	private final ImmutableList<Step<Object, Object>> steps;
+
+	private DevicePipeline(final Device device, final ImmutableList<Step<Object, Object>> steps) {
+		this.device = device;
+		this.steps = steps;
+	}
+
+	/**
+	 * Creates an empty pipeline.
+	 *
+	 * @param device
+	 * 		The device the steps operate on.
+	 *
+	 * @return A pipeline without steps.
+	 */
+	public static DevicePipeline<Void> on(final Device device) {
+		checkNotNull(device, "Null device is not allowed.");
+		return new DevicePipeline<Void>(device, ImmutableList.<Step<Object, Object>>of());
+	}
+
+	/**
+	 * Returns a new pipeline that runs <code>step</code> after the steps of this pipeline.
+	 *
+	 * @param step
+	 * 		The step to append.
+	 *
+	 * @return The extended pipeline.
+	 */
+	@SuppressWarnings("unchecked")
+	public <O> DevicePipeline<O> then(final Step<? super T, O> step) {
+		checkNotNull(step, "Null step is not allowed.");
+		return new DevicePipeline<O>(device, ImmutableList.<Step<Object, Object>>builder()
+				.addAll(steps)
+				.add((Step<Object, Object>) step)
+				.build()
+		);
+	}
+
+	/**
+	 * Starts the first step.
+	 *
+	 * @return A future for the result of the last step.
+	 */
+	@SuppressWarnings("unchecked")
+	public ListenableFuture<T> start() {
+		final PipelineFuture future = new PipelineFuture();
+		future.startStep(0, null);
+		return (ListenableFuture<T>) future;
+	}
+
+	public int getStepCount() {
+		return steps.size();
+	}
+
+	private class PipelineFuture extends AbstractFuture<Object> {
+
+		/**
+		 * The future of the step that is running.
+		 */
+		private volatile ListenableFuture<Object> current;
+
+		private void startStep(final int index, @Nullable final Object previousResult) {
+
+			if (isDone()) {
+				return;
+			}
+
+			if (index == steps.size()) {
+				set(previousResult);
+				return;
+			}
+
+			final ListenableFuture<Object> stepFuture;
+			try {
+				stepFuture = checkNotNull(steps.get(index).start(device, previousResult),
+						"Step %s returned a null future", index
+				);
+			} catch (Exception e) {
+				setException(e);
+				return;
+			}
+
+			current = stepFuture;
+			if (isCancelled()) {
+				// the pipeline has been canceled while the step was started
+				stepFuture.cancel(false);
+				return;
+			}
+
+			Futures.addCallback(stepFuture, new FutureCallback<Object>() {
+
+						@Override
+						public void onSuccess(@Nullable final Object result) {
+							startStep(index + 1, result);
+						}
+
+						@Override
+						public void onFailure(final Throwable throwable) {
+							if (throwable instanceof CancellationException) {
+								cancel(false);
+							} else {
+								setException(throwable);
+							}
+						}
+					}, MoreExecutors.directExecutor()
+			);
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			if (!super.cancel(mayInterruptIfRunning)) {
+				return false;
+			}
+			final ListenableFuture<Object> stepFuture = current;
+			if (stepFuture != null) {
+				stepFuture.cancel(mayInterruptIfRunning);
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.base.Ticker;
+import com.google.inject.Singleton;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+
+/**
+ * Remembers the answers of device queries that rarely change, like the chip type or the MAC address, so that repeated
+ * queries do not have to enter programming mode and talk to the bootloader again.
+ * <p/>
+ * There is one cache per device. The operations that modify the device (program, writeMac, writeFlash and eraseFlash)
+ * clear it when they finish, also if they run as sub operation or as step of a batch. Since operations run strictly
+ * one after another, values cached before such an operation stay valid until it has finished. Optionally entries
+ * expire after a time to live.
+ */
+@Singleton
+public class DeviceQueryCache {
+
+	/**
+	 * Identifies a cached value and its type.
+	 *
+	 * @param <T>
+	 * 		The type of the cached value.
+	 */
+	public static final class Key<T> {
+
+		private final String name;
+
+		public Key(final String name) {
+			this.name = checkNotNull(name, "Null name is not allowed.");
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	public static final Key<ChipType> CHIP_TYPE = new Key<ChipType>("chipType");
+
+	public static final Key<MacAddress> MAC_ADDRESS = new Key<MacAddress>("macAddress");
+
+	private static class Entry {
+
+		private final Object value;
+
+		private final long storedNanos;
+
+		private Entry(final Object value, final long storedNanos) {
+			this.value = value;
+			this.storedNanos = storedNanos;
+		}
+	}
+
+	private final Ticker ticker;
+
+	private final Map<Key<?>, Entry> entries = new HashMap<Key<?>, Entry>();
+
+	private final AtomicLong hits = new AtomicLong(0);
+
+	private final AtomicLong misses = new AtomicLong(0);
+
+	private final AtomicLong invalidations = new AtomicLong(0);
+
+	private volatile boolean enabled = true;
+
+	/**
+	 * Time to live of an entry in nanoseconds, <code>0</code> if entries never expire.
+	 */
+	private volatile long ttlNanos = 0;
+
+	public DeviceQueryCache() {
+		this(Ticker.systemTicker());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ticker
+	 * 		The time source for the time to live.
+	 */
+	public DeviceQueryCache(final Ticker ticker) {
+		this.ticker = checkNotNull(ticker, "Null ticker is not allowed.");
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns the cache on or off. A disabled cache is empty and every query goes to the device.
+	 *
+	 * @param enabled
+	 * 		<code>false</code> to disable the cache.
+	 */
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Sets the time after which cached values are queried from the device again.
+	 *
+	 * @param ttl
+	 * 		The time to live or <code>0</code> if entries only expire on invalidation.
+	 * @param unit
+	 * 		The unit of <code>ttl</code>.
+	 */
+	public void setTimeToLive(final long ttl, final TimeUnit unit) {
+		checkArgument(ttl >= 0, "Negative time to live is not allowed.");
+		this.ttlNanos = unit.toNanos(ttl);
+	}
+
+	public long getTimeToLive(final TimeUnit unit) {
+		return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns a cached value and counts the hit or miss.
+	 *
+	 * @param key
+	 * 		The key of the value.
+	 * @param <T>
+	 * 		The type of the value.
+	 *
+	 * @return The value or <code>null</code> if it is not cached or has expired.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public <T> T get(final Key<T> key) {
+
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry != null && ttlNanos > 0 && ticker.read() - entry.storedNanos >= ttlNanos) {
+				entries.remove(key);
+				entry = null;
+			}
+		}
+
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return (T) entry.value;
+	}
+
+	/**
+	 * Caches a value that has just been read from the device.
+	 *
+	 * @param key
+	 * 		The key of the value.
+	 * @param value
+	 * 		The value.
+	 * @param <T>
+	 * 		The type of the value.
+	 */
+	public <T> void put(final Key<T> key, final T value) {
+		checkNotNull(key, "Null key is not allowed.");
+		checkNotNull(value, "Null value is not allowed.");
+		if (!enabled) {
+			return;
+		}
+		synchronized (entries) {
+			entries.put(key, new Entry(value, ticker.read()));
+		}
+	}
+
+	/**
+	 * Removes a single value.
+	 *
+	 * @param key
+	 * 		The key of the value.
+	 */
+	public void invalidate(final Key<?> key) {
+		synchronized (entries) {
+			if (entries.remove(key) != null) {
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes all values, e.g. because the device has been modified.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			if (!entries.isEmpty()) {
+				invalidations.incrementAndGet();
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of queries that were answered from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of queries that had to go to the device.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return The number of times cached values were removed because the device has been modified.
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+}
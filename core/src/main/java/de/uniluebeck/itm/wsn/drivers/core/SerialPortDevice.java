@@ -1,20 +1,46 @@
 package de.uniluebeck.itm.wsn.drivers.core;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvent;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEventType;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvents;
+import de.uniluebeck.itm.wsn.drivers.core.io.ByteRingBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.HasTimestampedChunks;
+import de.uniluebeck.itm.wsn.drivers.core.io.OverflowBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.StreamPump;
+import de.uniluebeck.itm.wsn.drivers.core.io.TimestampedChunk;
+import de.uniluebeck.itm.wsn.drivers.core.io.TimestampedChunkListener;
+import de.uniluebeck.itm.wsn.drivers.core.io.TimestampedChunkPool;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingModeInterceptor;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -28,14 +54,28 @@ import static de.uniluebeck.itm.util.StringUtils.toHexString;
  * @author Daniel Bimschas
  */
 @Singleton
-public class SerialPortDevice implements Device {
+public class SerialPortDevice implements Device, HasTimestampedChunks {
 
 	private static final Logger log = LoggerFactory.getLogger(SerialPortDevice.class);
 
+	/**
+	 * Size of the buffer that is used to drain the device stream.
+	 */
+	private static final int DEVICE_TO_DRIVER_BUFFER_SIZE = 8192;
+
+	/**
+	 * Number of pooled chunks for {@link TimestampedChunkListener}s.
+	 */
+	private static final int TIMESTAMPED_CHUNK_POOL_SIZE = 64;
+
+	private static final TimestampedChunkListener[] NO_TIMESTAMPED_CHUNK_LISTENERS = new TimestampedChunkListener[0];
+
 	protected final OutputStream pipedOutputStreamToDriverInputStream;
 
 	protected final InputStream pipedInputStreamFromDriverOutputStream;
 
+	protected final ByteRingBuffer driverToDeviceBuffer;
+
 	protected final Connection connection;
 
 	protected final InputStream driverInputStream;
@@ -44,44 +84,146 @@ public class SerialPortDevice implements Device {
 
 	protected final OperationFactory operationFactory;
 
-	protected ExecutorService operationExecutor;
+	/**
+	 * Executes the operations one after another, ordered by their priority.
+	 */
+	protected final OperationScheduler operationScheduler = new OperationScheduler();
+
+	/**
+	 * Answers repeated queries without talking to the device. Cleared by the operations that modify the device.
+	 */
+	protected DeviceQueryCache queryCache = new DeviceQueryCache();
+
+	/**
+	 * Enters the programming mode once for a whole batch, <code>null</code> if the driver has none.
+	 */
+	@Nullable
+	private SerialPortProgrammingModeInterceptor programmingModeInterceptor;
+
+	/**
+	 * Limits the execution time of batches.
+	 */
+	private TimeLimiter timeLimiter = new InlineTimeLimiter();
+
+	/**
+	 * Latencies and outcomes of the operations, shared with the connection which counts the traffic.
+	 */
+	protected DeviceMetrics metrics = new DeviceMetrics();
+
+	/**
+	 * The URI this device was connected to, <code>null</code> before {@link #connect(String)}.
+	 */
+	@Nullable
+	protected volatile String uri;
 
 	protected final Monitor deviceMonitor = new Monitor();
 
-	protected final Monitor.Guard streamDataCopyStopped = new Monitor.Guard(deviceMonitor) {
-		@Override
-		public boolean isSatisfied() {
-			return !deviceToDriverStreamDataCopyRunning && !driverToDeviceStreamDataCopyRunning;
-		}
-	};
-
 	protected volatile boolean deviceToDriverStreamDataCopyRunning = false;
 
+	protected final StreamDataCopyStatistics streamDataCopyStatistics = new StreamDataCopyStatistics();
+
+	/**
+	 * Listeners for timestamped chunks. Replaced on every change so that the drain loop iterates without allocating.
+	 */
+	protected volatile TimestampedChunkListener[] timestampedChunkListeners = NO_TIMESTAMPED_CHUNK_LISTENERS;
+
+	/**
+	 * Created with the first {@link TimestampedChunkListener}, as its chunks take
+	 * <code>TIMESTAMPED_CHUNK_POOL_SIZE * DEVICE_TO_DRIVER_BUFFER_SIZE</code> bytes. Always set before the listener is
+	 * published.
+	 */
+	@Nullable
+	protected volatile TimestampedChunkPool timestampedChunkPool;
+
+	/**
+	 * Held for a whole drain so that drains are serialized and the device output reaches the driver in order.
+	 */
+	protected final Lock deviceToDriverStreamDataCopyDrainLock = new ReentrantLock();
+
+	/**
+	 * Held while a drain reads from the connection so that pausing can wait for a read in progress. Afterwards the
+	 * operation is the only reader of the connection. Not held while the drain writes to the driver, which blocks as
+	 * long as the driver does not read.
+	 */
+	protected final Lock deviceToDriverStreamDataCopyReadLock = new ReentrantLock();
+
 	protected final ConnectionListener deviceToDriverStreamDataCopyListener = new ConnectionListener() {
 
-		private byte[] buffer = new byte[1024];
+		/**
+		 * Reused for every drain. Drains are serialized by the drain lock.
+		 */
+		private final byte[] buffer = new byte[DEVICE_TO_DRIVER_BUFFER_SIZE];
 
 		@Override
 		public void onDataAvailable(final ConnectionEvent event) {
+			deviceToDriverStreamDataCopyDrainLock.lock();
 			try {
 
-				InputStream inputStream = connection.getInputStream();
-				int bytesRead = inputStream.read(buffer);
+				final InputStream inputStream = connection.getInputStream();
+				int bytesDrained = 0;
+				boolean firstPass = true;
 
-				if (bytesRead == -1) {
-					return;
-				}
+				// drain everything that is available so that bursts do not need one event per read
+				while (true) {
 
-				if (log.isTraceEnabled()) {
-					log.trace("Reading {} bytes from device stream: {}", bytesRead, toHexString(buffer, 0, bytesRead));
+					final TimestampedChunkListener[] chunkListeners;
+					final TimestampedChunk chunk;
+					final byte[] target;
+					final int bytesRead;
+
+					deviceToDriverStreamDataCopyReadLock.lock();
+					try {
+
+						// the event may have been fired just before the copy was paused, a drain that waited for the
+						// driver stops here as well
+						if (!deviceToDriverStreamDataCopyRunning || (!firstPass && inputStream.available() == 0)) {
+							break;
+						}
+						firstPass = false;
+
+						// read the listeners first, the pool is set before a listener is published
+						chunkListeners = timestampedChunkListeners;
+						final TimestampedChunkPool chunkPool = timestampedChunkPool;
+
+						// read straight into a pooled chunk if someone wants the timestamped data
+						chunk = chunkListeners.length > 0 ? chunkPool.acquire() : null;
+						target = chunk != null ? chunk.getData() : buffer;
+
+						bytesRead = inputStream.read(target, 0, target.length);
+
+						if (bytesRead == -1) {
+							if (chunk != null) {
+								chunk.deliver(0, event.getReceiveNanos(), NO_TIMESTAMPED_CHUNK_LISTENERS);
+							}
+							break;
+						}
+
+					} finally {
+						deviceToDriverStreamDataCopyReadLock.unlock();
+					}
+
+					if (log.isTraceEnabled()) {
+						log.trace("Reading {} bytes from device stream: {}", bytesRead, toHexString(target, 0, bytesRead));
+					}
+
+					pipedOutputStreamToDriverInputStream.write(target, 0, bytesRead);
+					bytesDrained += bytesRead;
+
+					if (chunk != null) {
+						chunk.deliver(bytesRead, event.getReceiveNanos(), chunkListeners);
+					}
 				}
 
-				pipedOutputStreamToDriverInputStream.write(buffer, 0, bytesRead);
-				pipedOutputStreamToDriverInputStream.flush();
+				if (bytesDrained > 0) {
+					pipedOutputStreamToDriverInputStream.flush();
+					streamDataCopyStatistics.recordDeviceToDriverDrain(bytesDrained);
+				}
 
 			} catch (IOException e) {
 				log.error("IOException while reading from device stream: {}", e);
 				throw new RuntimeException(e);
+			} finally {
+				deviceToDriverStreamDataCopyDrainLock.unlock();
 			}
 		}
 	};
@@ -90,7 +232,61 @@ public class SerialPortDevice implements Device {
 
 	protected Future<?> driverToDeviceStreamDataCopyFuture;
 
-	protected volatile boolean driverToDeviceStreamDataCopyRunning = false;
+	/**
+	 * Held by the copy thread while it writes to the device so that pausing can wait for a write in progress.
+	 */
+	protected final Lock driverToDeviceStreamDataCopyLock = new ReentrantLock();
+
+	/**
+	 * Signalled when the copy thread may continue writing to the device.
+	 */
+	protected final Condition driverToDeviceStreamDataCopyResumed = driverToDeviceStreamDataCopyLock.newCondition();
+
+	/**
+	 * <code>true</code> while the copy thread must not write to the device. The thread itself keeps running.
+	 */
+	protected volatile boolean driverToDeviceStreamDataCopyPaused = true;
+
+	/**
+	 * <code>true</code> as soon as the device is closed and the copy thread has to terminate.
+	 */
+	protected volatile boolean driverToDeviceStreamDataCopyClosed = false;
+
+	/**
+	 * Shared pump that copies the driver output to the device instead of {@link #driverToDeviceStreamDataCopyRunnable}.
+	 */
+	@Nullable
+	protected StreamPump streamPump;
+
+	protected StreamPump.Channel driverToDeviceStreamDataCopyChannel;
+
+	/**
+	 * Closes the driver side of the copy once the pump gave up on the device, so that the driver gets an exception on
+	 * its next write instead of filling the buffer.
+	 */
+	protected final StreamPump.ChannelListener driverToDeviceStreamDataCopyChannelListener =
+			new StreamPump.ChannelListener() {
+				@Override
+				public void onChannelFailed(final StreamPump.Channel channel, final IOException cause) {
+					log.error("Writing to device {} failed, closing the driver output stream: {}", uri, cause);
+					try {
+						pipedInputStreamFromDriverOutputStream.close();
+					} catch (IOException e) {
+						log.warn("Unable to close the driver output stream: {}", e);
+					}
+				}
+			};
+
+	/**
+	 * Applies the overflow policy to the device output and counts dropped and spilled bytes.
+	 */
+	@Nullable
+	protected OverflowBuffer deviceToDriverOverflowBuffer;
+
+	/**
+	 * Creates the operation and stream copy threads of this device.
+	 */
+	protected ThreadFactory threadFactory = Executors.defaultThreadFactory();
 
 	protected final Runnable driverToDeviceStreamDataCopyRunnable = new Runnable() {
 
@@ -99,14 +295,22 @@ public class SerialPortDevice implements Device {
 		@Override
 		public void run() {
 
-			driverToDeviceStreamDataCopyRunning = true;
+			try {
 
-			int bytesRead = 0;
-			while (bytesRead != -1) {
+				int bytesRead;
+				while ((bytesRead = pipedInputStreamFromDriverOutputStream.read(buffer)) != -1) {
 
-				try {
+					driverToDeviceStreamDataCopyLock.lock();
+					try {
 
-					while ((bytesRead = pipedInputStreamFromDriverOutputStream.read(buffer)) != -1) {
+						// park with the data read so far instead of terminating while the device is locked
+						while (driverToDeviceStreamDataCopyPaused && !driverToDeviceStreamDataCopyClosed) {
+							driverToDeviceStreamDataCopyResumed.await();
+						}
+
+						if (driverToDeviceStreamDataCopyClosed) {
+							break;
+						}
 
 						if (log.isTraceEnabled()) {
 							log.trace("Writing {} bytes to device stream: {}",
@@ -117,31 +321,33 @@ public class SerialPortDevice implements Device {
 
 						connection.getOutputStream().write(buffer, 0, bytesRead);
 						connection.getOutputStream().flush();
-					}
-
-
-				} catch (Exception e) {
 
-					if (e instanceof InterruptedIOException) {
-						break;
-					} else {
-						log.error("IOException while reading from device InputStream: {}", e);
-						throw new RuntimeException(e);
+					} finally {
+						driverToDeviceStreamDataCopyLock.unlock();
 					}
 				}
-			}
 
-			driverToDeviceStreamDataCopyRunning = false;
+			} catch (InterruptedIOException e) {
+				// expected when closing
+			} catch (InterruptedException e) {
+				// expected when closing
+			} catch (Exception e) {
+				if (!driverToDeviceStreamDataCopyClosed) {
+					log.error("IOException while reading from device InputStream: {}", e);
+					throw new RuntimeException(e);
+				}
+			}
 		}
 	};
 
 	@Inject
-	public SerialPortDevice(@Named("driverInputStream") final PipedInputStream driverInputStream,
-							@Named("driverOutputStream") final PipedOutputStream driverOutputStream,
+	public SerialPortDevice(@Named("driverInputStream") final InputStream driverInputStream,
+							@Named("driverOutputStream") final OutputStream driverOutputStream,
 							@Named("pipedOutputStreamToDriverInputStream")
-							final PipedOutputStream pipedOutputStreamToDriverInputStream,
+							final OutputStream pipedOutputStreamToDriverInputStream,
 							@Named("pipedInputStreamFromDriverOutputStream")
-							final PipedInputStream pipedInputStreamFromDriverOutputStream,
+							final InputStream pipedInputStreamFromDriverOutputStream,
+							@Named("driverToDeviceBuffer") final ByteRingBuffer driverToDeviceBuffer,
 							final Connection deviceConnection,
 							final OperationFactory operationFactory) {
 
@@ -149,33 +355,116 @@ public class SerialPortDevice implements Device {
 		this.driverOutputStream = driverOutputStream;
 		this.pipedOutputStreamToDriverInputStream = pipedOutputStreamToDriverInputStream;
 		this.pipedInputStreamFromDriverOutputStream = pipedInputStreamFromDriverOutputStream;
+		this.driverToDeviceBuffer = driverToDeviceBuffer;
 		this.connection = deviceConnection;
 		this.operationFactory = operationFactory;
 	}
 
+	/**
+	 * Lets a shared pump copy the driver output to the device instead of a dedicated thread per device.
+	 *
+	 * @param streamPump
+	 * 		The pump to register with on {@link #connect(String)}.
+	 */
+	@Inject(optional = true)
+	public void setStreamPump(final StreamPump streamPump) {
+		this.streamPump = streamPump;
+	}
+
+	/**
+	 * Sets the factory for the operation and stream copy threads, e.g. to run them on virtual threads.
+	 *
+	 * @param threadFactory
+	 * 		The factory used on {@link #connect(String)}.
+	 */
+	@Inject(optional = true)
+	public void setThreadFactory(@Named("deviceThreadFactory") final ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Sets the cache that the operations of this device share.
+	 *
+	 * @param queryCache
+	 * 		The cache that the operations of the driver fill and clear.
+	 */
+	@Inject
+	public void setQueryCache(final DeviceQueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	/**
+	 * Sets the interceptor that switches the device into programming mode, so that a batch switches only once.
+	 *
+	 * @param programmingModeInterceptor
+	 * 		The programming mode interceptor of the driver.
+	 */
+	@Inject(optional = true)
+	public void setProgrammingModeInterceptor(final SerialPortProgrammingModeInterceptor programmingModeInterceptor) {
+		this.programmingModeInterceptor = programmingModeInterceptor;
+	}
+
+	@Inject(optional = true)
+	public void setTimeLimiter(final TimeLimiter timeLimiter) {
+		this.timeLimiter = timeLimiter;
+	}
+
+	/**
+	 * Sets the metrics that record the operations of this device. They are registered as MBean while connected.
+	 *
+	 * @param metrics
+	 * 		The metrics of this device, usually also injected into the connection.
+	 */
+	@Inject(optional = true)
+	public void setMetrics(final DeviceMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Inject(optional = true)
+	public void setDeviceToDriverOverflowBuffer(
+			@Named("deviceToDriverOverflowBuffer") final OverflowBuffer deviceToDriverOverflowBuffer) {
+		this.deviceToDriverOverflowBuffer = deviceToDriverOverflowBuffer;
+	}
+
 	@Override
 	public OperationFuture<Void> eraseFlash(long timeoutMillis, @Nullable OperationListener<Void> listener) {
 		log.trace("Erasing flash (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createEraseFlashOperation(timeoutMillis, listener));
+		return executeOperation(
+				EraseFlashOperation.class,
+				OperationPriority.LOW,
+				operationFactory.createEraseFlashOperation(timeoutMillis, listener)
+		);
 	}
 
 	@Override
 	public OperationFuture<ChipType> getChipType(long timeoutMillis, @Nullable OperationListener<ChipType> listener) {
 		log.trace("Reading Chip Type (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createGetChipTypeOperation(timeoutMillis, listener));
+		return executeOperation(
+				GetChipTypeOperation.class,
+				OperationPriority.HIGH,
+				operationFactory.createGetChipTypeOperation(timeoutMillis, listener)
+		);
 	}
 
 	@Override
 	public OperationFuture<Boolean> isNodeAlive(final long timeoutMillis,
 												@Nullable final OperationListener<Boolean> listener) {
 		log.trace("Checking if node is alive (timeout: {}ms)", timeoutMillis);
-		return executeOperation(operationFactory.createIsNodeAliveOperation(timeoutMillis, listener));
+		return executeOperation(
+				IsNodeAliveOperation.class,
+				OperationPriority.HIGH,
+				operationFactory.createIsNodeAliveOperation(timeoutMillis, listener)
+		);
 	}
 
 	@Override
 	public OperationFuture<Void> program(byte[] data, long timeoutMillis, @Nullable OperationListener<Void> listener) {
 		log.trace("Programming (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createProgramOperation(data, timeoutMillis, listener));
+		return executeOperation(
+				ProgramOperation.class,
+				OperationPriority.LOW,
+				operationFactory.createProgramOperation(data, timeoutMillis, listener)
+		);
 	}
 
 	@Override
@@ -184,19 +473,31 @@ public class SerialPortDevice implements Device {
 		log.trace("Reading flash (address: " + address + ", length: " + length + ", timeout: " + timeoutMillis + "ms)");
 		checkArgument(address >= 0, "Negative length is not allowed.");
 		checkArgument(length >= 0, "Negative address is not allowed.");
-		return executeOperation(operationFactory.createReadFlashOperation(address, length, timeoutMillis, listener));
+		return executeOperation(
+				ReadFlashOperation.class,
+				OperationPriority.NORMAL,
+				operationFactory.createReadFlashOperation(address, length, timeoutMillis, listener)
+		);
 	}
 
 	@Override
 	public OperationFuture<MacAddress> readMac(long timeoutMillis, @Nullable OperationListener<MacAddress> listener) {
 		log.trace("Reading MAC address (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createReadMacAddressOperation(timeoutMillis, listener));
+		return executeOperation(
+				ReadMacAddressOperation.class,
+				OperationPriority.HIGH,
+				operationFactory.createReadMacAddressOperation(timeoutMillis, listener)
+		);
 	}
 
 	@Override
 	public OperationFuture<Void> reset(long timeoutMillis, @Nullable OperationListener<Void> listener) {
 		log.trace("Resetting (timeout: " + timeoutMillis + "ms)");
-		return executeOperation(operationFactory.createResetOperation(timeoutMillis, listener));
+		return executeOperation(
+				ResetOperation.class,
+				OperationPriority.NORMAL,
+				operationFactory.createResetOperation(timeoutMillis, listener)
+		);
 	}
 
 	@Override
@@ -207,6 +508,8 @@ public class SerialPortDevice implements Device {
 		checkNotNull(data, "Null data is not allowed.");
 		checkArgument(length >= 0, "Negative address is not allowed.");
 		return executeOperation(
+				WriteFlashOperation.class,
+				OperationPriority.LOW,
 				operationFactory.createWriteFlashOperation(address, data, length, timeoutMillis, listener)
 		);
 	}
@@ -216,7 +519,22 @@ public class SerialPortDevice implements Device {
 										  @Nullable OperationListener<Void> listener) {
 		log.trace("Writing MAC address (mac address: " + macAddress + ", timeout: " + timeoutMillis + "ms)");
 		checkNotNull(macAddress, "Null MAC address is not allowed.");
-		return executeOperation(operationFactory.createWriteMacAddressOperation(macAddress, timeoutMillis, listener));
+		return executeOperation(
+				WriteMacAddressOperation.class,
+				OperationPriority.NORMAL,
+				operationFactory.createWriteMacAddressOperation(macAddress, timeoutMillis, listener)
+		);
+	}
+
+	@Override
+	public OperationFuture<BatchResult> executeBatch(final OperationBatch batch, final long timeoutMillis,
+													 @Nullable final OperationListener<BatchResult> listener) {
+		log.trace("Executing batch (steps: " + batch.size() + ", timeout: " + timeoutMillis + "ms)");
+		final BatchOperation operation = new BatchOperation(timeLimiter, operationFactory, batch,
+				programmingModeInterceptor, timeoutMillis, listener
+		);
+		operation.setMetrics(metrics, uri);
+		return executeOperation(BatchOperation.class, OperationPriority.NORMAL, operation);
 	}
 
 	@Override
@@ -224,6 +542,27 @@ public class SerialPortDevice implements Device {
 		return driverInputStream;
 	}
 
+	@Override
+	public synchronized void addTimestampedChunkListener(final TimestampedChunkListener listener) {
+		checkNotNull(listener, "Null listener is not allowed.");
+		if (timestampedChunkPool == null) {
+			timestampedChunkPool = new TimestampedChunkPool(TIMESTAMPED_CHUNK_POOL_SIZE, DEVICE_TO_DRIVER_BUFFER_SIZE);
+		}
+		final TimestampedChunkListener[] listeners =
+				Arrays.copyOf(timestampedChunkListeners, timestampedChunkListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		timestampedChunkListeners = listeners;
+	}
+
+	@Override
+	public synchronized void removeTimestampedChunkListener(final TimestampedChunkListener listener) {
+		final List<TimestampedChunkListener> listeners =
+				new ArrayList<TimestampedChunkListener>(Arrays.asList(timestampedChunkListeners));
+		if (listeners.remove(listener)) {
+			timestampedChunkListeners = listeners.toArray(new TimestampedChunkListener[listeners.size()]);
+		}
+	}
+
 	@Override
 	public OutputStream getOutputStream() {
 		return driverOutputStream;
@@ -232,7 +571,28 @@ public class SerialPortDevice implements Device {
 	@Override
 	public void close() throws IOException {
 
-		stopStreamDataCopy();
+		try {
+			stopStreamDataCopy();
+		} catch (InterruptedException e) {
+			// the connection is closed below anyway
+			Thread.currentThread().interrupt();
+		}
+
+		if (driverToDeviceStreamDataCopyChannel != null) {
+			driverToDeviceStreamDataCopyChannel.close();
+		}
+
+		driverToDeviceStreamDataCopyLock.lock();
+		try {
+			driverToDeviceStreamDataCopyClosed = true;
+			driverToDeviceStreamDataCopyResumed.signalAll();
+		} finally {
+			driverToDeviceStreamDataCopyLock.unlock();
+		}
+
+		if (driverToDeviceStreamDataCopyFuture != null) {
+			driverToDeviceStreamDataCopyFuture.cancel(true);
+		}
 
 		connection.close();
 		pipedInputStreamFromDriverOutputStream.close();
@@ -244,9 +604,9 @@ public class SerialPortDevice implements Device {
 			ExecutorUtils.shutdown(driverToDeviceStreamDataCopyExecutor, 1, TimeUnit.SECONDS);
 		}
 
-		if (operationExecutor != null) {
-			ExecutorUtils.shutdown(operationExecutor, 1, TimeUnit.SECONDS);
-		}
+		operationScheduler.shutdown(1, TimeUnit.SECONDS);
+
+		metrics.unregister();
 	}
 
 	@Override
@@ -254,10 +614,25 @@ public class SerialPortDevice implements Device {
 
 		connection.connect(uri);
 
-		operationExecutor = Executors.newSingleThreadExecutor();
-		driverToDeviceStreamDataCopyExecutor = Executors.newSingleThreadExecutor();
+		this.uri = uri;
+
+		operationScheduler.start(threadFactory);
+
+		if (streamPump != null) {
+			driverToDeviceStreamDataCopyChannel = streamPump.register(
+					driverToDeviceBuffer,
+					connection.getOutputStream(),
+					driverToDeviceStreamDataCopyChannelListener
+			);
+		} else {
+			driverToDeviceStreamDataCopyExecutor = Executors.newSingleThreadExecutor(threadFactory);
+			driverToDeviceStreamDataCopyFuture =
+					driverToDeviceStreamDataCopyExecutor.submit(driverToDeviceStreamDataCopyRunnable);
+		}
 
 		startStreamDataCopy();
+
+		metrics.register(uri);
 	}
 
 	@Override
@@ -288,6 +663,62 @@ public class SerialPortDevice implements Device {
 		return connection;
 	}
 
+	/**
+	 * @return The URI this device was connected to, <code>null</code> if it was never connected.
+	 */
+	@Nullable
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * Returns the scheduler that executes the operations of this device. It provides the queue metrics and allows to
+	 * limit the number of queued operations.
+	 *
+	 * @return The operation scheduler.
+	 */
+	public OperationScheduler getOperationScheduler() {
+		return operationScheduler;
+	}
+
+	/**
+	 * @return The cache for the chip type, the MAC address and other rarely changing query results of this device.
+	 */
+	public DeviceQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * @return The latency histograms, outcomes and traffic of the operations of this device.
+	 */
+	public DeviceMetrics getMetrics() {
+		return metrics;
+	}
+
+	public StreamDataCopyStatistics getStreamDataCopyStatistics() {
+		return streamDataCopyStatistics;
+	}
+
+	/**
+	 * @return The pool of the chunks delivered to {@link TimestampedChunkListener}s. Its misses show whether listeners
+	 *         hold chunks for too long. <code>null</code> until the first listener was added.
+	 */
+	@Nullable
+	public TimestampedChunkPool getTimestampedChunkPool() {
+		return timestampedChunkPool;
+	}
+
+	/**
+	 * Returns the buffer between the device output and the driver input stream. Its counters show how many bytes were
+	 * dropped or spilled to disk because the driver input stream was not read fast enough.
+	 *
+	 * @return The buffer or <code>null</code> if the device was not created by a {@link DeviceModule}.
+	 */
+	@Nullable
+	public OverflowBuffer getDeviceToDriverOverflowBuffer() {
+		return deviceToDriverOverflowBuffer;
+	}
+
 	private void startStreamDataCopy() {
 
 		try {
@@ -296,11 +727,24 @@ public class SerialPortDevice implements Device {
 
 			deviceMonitor.enter();
 
-			connection.addListener(deviceToDriverStreamDataCopyListener);
+			final long start = System.nanoTime();
+
 			deviceToDriverStreamDataCopyRunning = true;
+			connection.addListener(deviceToDriverStreamDataCopyListener);
 
-			driverToDeviceStreamDataCopyFuture =
-					driverToDeviceStreamDataCopyExecutor.submit(driverToDeviceStreamDataCopyRunnable);
+			if (driverToDeviceStreamDataCopyChannel != null) {
+				driverToDeviceStreamDataCopyChannel.resume();
+			} else {
+				driverToDeviceStreamDataCopyLock.lock();
+				try {
+					driverToDeviceStreamDataCopyPaused = false;
+					driverToDeviceStreamDataCopyResumed.signalAll();
+				} finally {
+					driverToDeviceStreamDataCopyLock.unlock();
+				}
+			}
+
+			streamDataCopyStatistics.recordResume(System.nanoTime() - start);
 
 		} catch (Exception e) {
 
@@ -312,7 +756,7 @@ public class SerialPortDevice implements Device {
 		}
 	}
 
-	private void stopStreamDataCopy() {
+	private void stopStreamDataCopy() throws InterruptedException {
 
 		try {
 
@@ -320,21 +764,26 @@ public class SerialPortDevice implements Device {
 
 			deviceMonitor.enter();
 
-			connection.removeListener(deviceToDriverStreamDataCopyListener);
+			final long start = System.nanoTime();
+
 			deviceToDriverStreamDataCopyRunning = false;
+			connection.removeListener(deviceToDriverStreamDataCopyListener);
 
-			if (driverToDeviceStreamDataCopyFuture != null) {
-				driverToDeviceStreamDataCopyFuture.cancel(true);
+			// a drain in progress stops before its next read, wait for a read in progress before the caller reads the
+			// connection. A drain that waits for the driver to read does not hold the lock.
+			deviceToDriverStreamDataCopyReadLock.lockInterruptibly();
+			deviceToDriverStreamDataCopyReadLock.unlock();
+
+			if (driverToDeviceStreamDataCopyChannel != null) {
+				driverToDeviceStreamDataCopyChannel.pause();
+			} else {
+				// the copy thread checks the flag while holding the lock, so no write is in progress afterwards
+				driverToDeviceStreamDataCopyPaused = true;
+				driverToDeviceStreamDataCopyLock.lock();
+				driverToDeviceStreamDataCopyLock.unlock();
 			}
 
-			try {
-				// wait for thread to stop execution
-				while (!deviceMonitor.waitFor(streamDataCopyStopped, 10, TimeUnit.MILLISECONDS)) {
-					// nothing to do
-				}
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
-			}
+			streamDataCopyStatistics.recordPause(System.nanoTime() - start);
 
 		} catch (RuntimeException e) {
 
@@ -346,7 +795,19 @@ public class SerialPortDevice implements Device {
 		}
 	}
 
-	private <T> OperationFuture<T> executeOperation(final Operation<T> operation) {
+	/**
+	 * Operations that only read from the device and may therefore be run before operations submitted earlier. All
+	 * other operations are barriers for the operation scheduler.
+	 */
+	private static boolean isReadOnly(final Class<?> type) {
+		return type == IsNodeAliveOperation.class
+				|| type == GetChipTypeOperation.class
+				|| type == ReadMacAddressOperation.class
+				|| type == ReadFlashOperation.class;
+	}
+
+	private <T> OperationFuture<T> executeOperation(final Class<?> type, final OperationPriority priority,
+													final Operation<T> operation) {
 		final OperationFutureImpl<T> operationFuture = new OperationFutureImpl<T>(operation);
 		operation.addListener(
 				new OperationAdapter<T>() {
@@ -360,9 +821,58 @@ public class SerialPortDevice implements Device {
 					public void onSuccess(final T result) {
 						operationFuture.set(result);
 					}
+
+					@Override
+					public void onCancel() {
+						operationFuture.cancel(false);
+					}
 				}
 		);
-		operationExecutor.submit(operation);
+		final Callable<T> task = new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				final DriverEvent event = DriverEvents.begin(DriverEventType.OPERATION);
+				final long bytesBefore = metrics.getBytesTransferred();
+				final long start = System.nanoTime();
+				try {
+					return operation.call();
+				} finally {
+					final long bytes = metrics.getBytesTransferred() - bytesBefore;
+					metrics.recordOperation(type, operation.getState(), System.nanoTime() - start, bytes);
+					if (event != null) {
+						event.commit(type.getSimpleName(), uri, operation.getState(), bytes);
+					}
+				}
+			}
+		};
+
+		final ListenableFuture<T> scheduledFuture = operationScheduler.submit(type, priority, !isReadOnly(type), task);
+
+		// an operation that is cancelled while queued is skipped by the scheduler
+		operationFuture.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (operationFuture.isCancelled()) {
+					scheduledFuture.cancel(false);
+				}
+			}
+		}, MoreExecutors.directExecutor()
+		);
+
+		Futures.addCallback(scheduledFuture, new FutureCallback<T>() {
+
+					@Override
+					public void onSuccess(final T result) {
+						// already delivered by the operation listener
+					}
+
+					@Override
+					public void onFailure(final Throwable throwable) {
+						// covers operations that were rejected by the scheduler and never ran
+						operationFuture.setException(throwable);
+					}
+				}, MoreExecutors.directExecutor()
+		);
 		return operationFuture;
 	}
 }
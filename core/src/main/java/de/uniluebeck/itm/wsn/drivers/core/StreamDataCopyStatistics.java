@@ -0,0 +1,174 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Counters describing the data copied between the device streams and the driver streams of a single device.
+ */
+public class StreamDataCopyStatistics {
+
+	/**
+	 * Number of drains of the device stream, i.e. the number of data available events that delivered data.
+	 */
+	private final AtomicLong deviceToDriverDrains = new AtomicLong(0);
+
+	/**
+	 * Total number of bytes copied from the device stream to the driver stream.
+	 */
+	private final AtomicLong deviceToDriverBytes = new AtomicLong(0);
+
+	/**
+	 * Number of bytes copied by the most recent drain.
+	 */
+	private volatile int lastDrainBytes = 0;
+
+	/**
+	 * Largest number of bytes copied by a single drain.
+	 */
+	private volatile int maxDrainBytes = 0;
+
+	/**
+	 * Number of times the stream data copy was paused, i.e. the device was locked for an operation.
+	 */
+	private final AtomicLong pauses = new AtomicLong(0);
+
+	/**
+	 * Total time spent pausing the stream data copy in nanoseconds.
+	 */
+	private final AtomicLong pauseNanos = new AtomicLong(0);
+
+	/**
+	 * Longest time a single pause of the stream data copy took in nanoseconds.
+	 */
+	private volatile long maxPauseNanos = 0;
+
+	/**
+	 * Number of times the stream data copy was resumed, i.e. the device was unlocked after an operation.
+	 */
+	private final AtomicLong resumes = new AtomicLong(0);
+
+	/**
+	 * Total time spent resuming the stream data copy in nanoseconds.
+	 */
+	private final AtomicLong resumeNanos = new AtomicLong(0);
+
+	/**
+	 * Longest time a single resume of the stream data copy took in nanoseconds.
+	 */
+	private volatile long maxResumeNanos = 0;
+
+	/**
+	 * Records that a single drain copied <code>bytes</code> bytes from the device to the driver stream. Must only be
+	 * called by the thread that delivers the data available events of the connection.
+	 *
+	 * @param bytes
+	 * 		The number of bytes copied.
+	 */
+	public void recordDeviceToDriverDrain(final int bytes) {
+		deviceToDriverDrains.incrementAndGet();
+		deviceToDriverBytes.addAndGet(bytes);
+		lastDrainBytes = bytes;
+		if (bytes > maxDrainBytes) {
+			maxDrainBytes = bytes;
+		}
+	}
+
+	/**
+	 * Records the time it took to pause the stream data copy. Must only be called while holding the device lock.
+	 *
+	 * @param nanos
+	 * 		The transition latency in nanoseconds.
+	 */
+	public void recordPause(final long nanos) {
+		pauses.incrementAndGet();
+		pauseNanos.addAndGet(nanos);
+		if (nanos > maxPauseNanos) {
+			maxPauseNanos = nanos;
+		}
+	}
+
+	/**
+	 * Records the time it took to resume the stream data copy. Must only be called while holding the device lock.
+	 *
+	 * @param nanos
+	 * 		The transition latency in nanoseconds.
+	 */
+	public void recordResume(final long nanos) {
+		resumes.incrementAndGet();
+		resumeNanos.addAndGet(nanos);
+		if (nanos > maxResumeNanos) {
+			maxResumeNanos = nanos;
+		}
+	}
+
+	public long getDeviceToDriverDrains() {
+		return deviceToDriverDrains.get();
+	}
+
+	public long getDeviceToDriverBytes() {
+		return deviceToDriverBytes.get();
+	}
+
+	public int getLastDrainBytes() {
+		return lastDrainBytes;
+	}
+
+	public int getMaxDrainBytes() {
+		return maxDrainBytes;
+	}
+
+	/**
+	 * @return The average number of bytes copied per drain.
+	 */
+	public double getAverageDrainBytes() {
+		final long drains = deviceToDriverDrains.get();
+		return drains == 0 ? 0 : (double) deviceToDriverBytes.get() / drains;
+	}
+
+	public long getPauses() {
+		return pauses.get();
+	}
+
+	public long getMaxPauseNanos() {
+		return maxPauseNanos;
+	}
+
+	/**
+	 * @return The average time a pause of the stream data copy took in nanoseconds.
+	 */
+	public double getAveragePauseNanos() {
+		final long count = pauses.get();
+		return count == 0 ? 0 : (double) pauseNanos.get() / count;
+	}
+
+	public long getResumes() {
+		return resumes.get();
+	}
+
+	public long getMaxResumeNanos() {
+		return maxResumeNanos;
+	}
+
+	/**
+	 * @return The average time a resume of the stream data copy took in nanoseconds.
+	 */
+	public double getAverageResumeNanos() {
+		final long count = resumes.get();
+		return count == 0 ? 0 : (double) resumeNanos.get() / count;
+	}
+
+	@Override
+	public String toString() {
+		return "StreamDataCopyStatistics{" +
+				"deviceToDriverDrains=" + deviceToDriverDrains +
+				", deviceToDriverBytes=" + deviceToDriverBytes +
+				", lastDrainBytes=" + lastDrainBytes +
+				", maxDrainBytes=" + maxDrainBytes +
+				", pauses=" + pauses +
+				", maxPauseNanos=" + maxPauseNanos +
+				", resumes=" + resumes +
+				", maxResumeNanos=" + maxResumeNanos +
+				'}';
+	}
+}
@@ -0,0 +1,16 @@
+package de.uniluebeck.itm.wsn.drivers.core.event;
+
+/**
+ * An event that was begun by a {@link DriverEventSink} and is recorded when it is committed.
+ */
+public interface DriverEvent {
+
+	/**
+	 * Ends the event and records it.
+	 *
+	 * @param values
+	 * 		The values of the fields in the order of {@link DriverEventType#getFields()}. Numbers are converted to the
+	 * 		field type, other objects to their string representation.
+	 */
+	void commit(Object... values);
+}
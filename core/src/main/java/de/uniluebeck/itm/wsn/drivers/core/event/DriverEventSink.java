@@ -0,0 +1,21 @@
+package de.uniluebeck.itm.wsn.drivers.core.event;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives the events of the drivers, e.g. to record them with the Java Flight Recorder.
+ */
+public interface DriverEventSink {
+
+	/**
+	 * Begins an event if the type is recorded. This is called on every operation and bootloader request, so it has to
+	 * be cheap and must not allocate if the type is not recorded.
+	 *
+	 * @param type
+	 * 		The type of the event.
+	 *
+	 * @return The begun event or <code>null</code> if the type is not recorded.
+	 */
+	@Nullable
+	DriverEvent begin(DriverEventType type);
+}
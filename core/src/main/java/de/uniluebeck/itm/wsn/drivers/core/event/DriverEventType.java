@@ -0,0 +1,109 @@
+package de.uniluebeck.itm.wsn.drivers.core.event;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The kinds of {@link DriverEvent}s and their fields. The values passed to {@link DriverEvent#commit(Object...)} follow
+ * the order of {@link #getFields()}.
+ */
+public enum DriverEventType {
+
+	OPERATION("Operation", "Device Operation", "An operation of a device from its start to its end",
+			new Field("operationType", String.class, "Operation Type"),
+			new Field("device", String.class, "Device"),
+			new Field("outcome", String.class, "Outcome"),
+			new Field("bytes", long.class, "Bytes Transferred")
+	),
+
+	PROGRAMMING_MODE_ENTER("ProgrammingModeEnter", "Enter Programming Mode", "Switching a device into programming mode",
+			new Field("device", String.class, "Device"),
+			new Field("success", boolean.class, "Success")
+	),
+
+	PROGRAMMING_MODE_LEAVE("ProgrammingModeLeave", "Leave Programming Mode", "Switching a device back to normal mode",
+			new Field("device", String.class, "Device"),
+			new Field("success", boolean.class, "Success")
+	),
+
+	BOOTLOADER_ROUND_TRIP("BootloaderRoundTrip", "Bootloader Round Trip",
+			"A request to the bootloader of a device until its reply was read",
+			new Field("driver", String.class, "Driver"),
+			new Field("device", String.class, "Device"),
+			new Field("request", String.class, "Request"),
+			new Field("reply", String.class, "Reply"),
+			new Field("requestBytes", int.class, "Request Bytes"),
+			new Field("replyBytes", int.class, "Reply Bytes"),
+			new Field("success", boolean.class, "Success")
+	);
+
+	/**
+	 * Prefix of the event names, e.g. for enabling them in a JFR configuration.
+	 */
+	public static final String NAME_PREFIX = "de.uniluebeck.itm.wsn.drivers.";
+
+	private final String name;
+
+	private final String label;
+
+	private final String description;
+
+	private final List<Field> fields;
+
+	private DriverEventType(final String name, final String label, final String description, final Field... fields) {
+		this.name = name;
+		this.label = label;
+		this.description = description;
+		this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+	}
+
+	/**
+	 * @return The fully qualified event name, e.g. <code>de.uniluebeck.itm.wsn.drivers.Operation</code>.
+	 */
+	public String getEventName() {
+		return NAME_PREFIX + name;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public List<Field> getFields() {
+		return fields;
+	}
+
+	/**
+	 * A field of an event type. Its type is a primitive or <code>String</code>.
+	 */
+	public static class Field {
+
+		private final String name;
+
+		private final Class<?> type;
+
+		private final String label;
+
+		Field(final String name, final Class<?> type, final String label) {
+			this.name = name;
+			this.type = type;
+			this.label = label;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package de.uniluebeck.itm.wsn.drivers.core.event;
+
+import de.uniluebeck.itm.wsn.drivers.core.AbstractConnection;
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+
+import javax.annotation.Nullable;
+
+/**
+ * Entry point for emitting {@link DriverEvent}s. Events go to the Java Flight Recorder if the JVM has one, unless the
+ * system property <code>{@value #JFR_PROPERTY}</code> is <code>false</code>. Otherwise they are dropped until a sink is
+ * set.
+ * <p/>
+ * Callers check the begun event for <code>null</code> before computing the values, so events that are not recorded
+ * cost nothing but a lookup:
+ * <pre>
+ * final DriverEvent event = DriverEvents.begin(DriverEventType.OPERATION);
+ * ...
+ * if (event != null) {
+ *     event.commit(type, uri, outcome, bytes);
+ * }
+ * </pre>
+ */
+public final class DriverEvents {
+
+	/**
+	 * System property to disable the Java Flight Recorder events.
+	 */
+	public static final String JFR_PROPERTY = "wsn.drivers.jfr";
+
+	private static final DriverEventSink NONE = new DriverEventSink() {
+		@Override
+		public DriverEvent begin(final DriverEventType type) {
+			return null;
+		}
+	};
+
+	private static volatile DriverEventSink sink = createDefaultSink();
+
+	private DriverEvents() {
+	}
+
+	/**
+	 * Begins an event if its type is recorded.
+	 *
+	 * @param type
+	 * 		The type of the event.
+	 *
+	 * @return The begun event or <code>null</code> if the type is not recorded.
+	 */
+	@Nullable
+	public static DriverEvent begin(final DriverEventType type) {
+		return sink.begin(type);
+	}
+
+	/**
+	 * Replaces the sink for all drivers.
+	 *
+	 * @param newSink
+	 * 		The new sink or <code>null</code> to drop all events.
+	 */
+	public static void setSink(@Nullable final DriverEventSink newSink) {
+		sink = newSink == null ? NONE : newSink;
+	}
+
+	public static DriverEventSink getSink() {
+		return sink;
+	}
+
+	/**
+	 * @param connection
+	 * 		A connection.
+	 *
+	 * @return The URI the connection is connected to, <code>null</code> if it is not known.
+	 */
+	@Nullable
+	public static String uriOf(final Connection connection) {
+		return connection instanceof AbstractConnection ? ((AbstractConnection) connection).getUri() : null;
+	}
+
+	private static DriverEventSink createDefaultSink() {
+		if (Boolean.parseBoolean(System.getProperty(JFR_PROPERTY, "true"))) {
+			final DriverEventSink jfrSink = JfrEventSink.createIfAvailable();
+			if (jfrSink != null) {
+				return jfrSink;
+			}
+		}
+		return NONE;
+	}
+}
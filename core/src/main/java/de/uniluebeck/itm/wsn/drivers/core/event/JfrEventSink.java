@@ -0,0 +1,173 @@
+package de.uniluebeck.itm.wsn.drivers.core.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records {@link DriverEvent}s with the Java Flight Recorder. The drivers are built for Java 6, so the JFR API is used
+ * through reflection and the event types are created at runtime with <code>jdk.jfr.EventFactory</code>.
+ * <p/>
+ * An event is only instantiated if its type is enabled in a running recording, e.g. by
+ * <code>-XX:StartFlightRecording</code> with a configuration that enables
+ * <code>{@value DriverEventType#NAME_PREFIX}*</code>.
+ */
+public class JfrEventSink implements DriverEventSink {
+
+	private static final Logger log = LoggerFactory.getLogger(JfrEventSink.class);
+
+	private static final String CATEGORY = "WSN Device Drivers";
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	private final Object[] factories;
+
+	private final Object[] eventTypes;
+
+	private final Method isEnabled;
+
+	private final Method newEvent;
+
+	private final Method begin;
+
+	private final Method end;
+
+	private final Method set;
+
+	private final Method commit;
+
+	private JfrEventSink() throws Exception {
+
+		final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+		final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+		final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+		final Class<?> nameClass = Class.forName("jdk.jfr.Name");
+		final Class<?> labelClass = Class.forName("jdk.jfr.Label");
+		final Class<?> descriptionClass = Class.forName("jdk.jfr.Description");
+		final Class<?> categoryClass = Class.forName("jdk.jfr.Category");
+		final Class<?> stackTraceClass = Class.forName("jdk.jfr.StackTrace");
+
+		final Constructor<?> annotationElement =
+				Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+		final Constructor<?> valueDescriptor =
+				Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+		final Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+		final Method getEventType = eventFactoryClass.getMethod("getEventType");
+
+		isEnabled = eventTypeClass.getMethod("isEnabled");
+		newEvent = eventFactoryClass.getMethod("newEvent");
+		begin = eventClass.getMethod("begin");
+		end = eventClass.getMethod("end");
+		set = eventClass.getMethod("set", int.class, Object.class);
+		commit = eventClass.getMethod("commit");
+
+		final DriverEventType[] types = DriverEventType.values();
+		factories = new Object[types.length];
+		eventTypes = new Object[types.length];
+
+		for (DriverEventType type : types) {
+
+			final List<Object> annotations = Arrays.asList(
+					annotationElement.newInstance(nameClass, type.getEventName()),
+					annotationElement.newInstance(labelClass, type.getLabel()),
+					annotationElement.newInstance(descriptionClass, type.getDescription()),
+					annotationElement.newInstance(categoryClass, new String[]{CATEGORY}),
+					// the stack trace would end in the reflective commit and costs more than the event itself
+					annotationElement.newInstance(stackTraceClass, false)
+			);
+
+			final List<Object> fields = new ArrayList<Object>();
+			for (DriverEventType.Field field : type.getFields()) {
+				fields.add(valueDescriptor.newInstance(field.getType(), field.getName(),
+						Collections.singletonList(annotationElement.newInstance(labelClass, field.getLabel()))
+				)
+				);
+			}
+
+			factories[type.ordinal()] = create.invoke(null, annotations, fields);
+			eventTypes[type.ordinal()] = getEventType.invoke(factories[type.ordinal()], NO_ARGUMENTS);
+		}
+	}
+
+	/**
+	 * @return A sink that records with the Java Flight Recorder or <code>null</code> if the JVM has none.
+	 */
+	@Nullable
+	public static JfrEventSink createIfAvailable() {
+		try {
+			return new JfrEventSink();
+		} catch (ClassNotFoundException e) {
+			log.debug("Java Flight Recorder is not available, driver events are not recorded");
+			return null;
+		} catch (Exception e) {
+			log.warn("Unable to create Java Flight Recorder events: {}", e);
+			return null;
+		}
+	}
+
+	@Override
+	@Nullable
+	public DriverEvent begin(final DriverEventType type) {
+		try {
+
+			if (!(Boolean) isEnabled.invoke(eventTypes[type.ordinal()], NO_ARGUMENTS)) {
+				return null;
+			}
+
+			final Object event = newEvent.invoke(factories[type.ordinal()], NO_ARGUMENTS);
+			begin.invoke(event, NO_ARGUMENTS);
+			return new JfrEvent(type, event);
+
+		} catch (Exception e) {
+			log.debug("Unable to begin {} event: {}", type, e);
+			return null;
+		}
+	}
+
+	private class JfrEvent implements DriverEvent {
+
+		private final DriverEventType type;
+
+		private final Object event;
+
+		private JfrEvent(final DriverEventType type, final Object event) {
+			this.type = type;
+			this.event = event;
+		}
+
+		@Override
+		public void commit(final Object... values) {
+			try {
+				end.invoke(event, NO_ARGUMENTS);
+				final List<DriverEventType.Field> fields = type.getFields();
+				for (int i = 0; i < fields.size() && i < values.length; i++) {
+					set.invoke(event, i, convert(fields.get(i).getType(), values[i]));
+				}
+				commit.invoke(event, NO_ARGUMENTS);
+			} catch (Exception e) {
+				log.debug("Unable to commit {} event: {}", type, e);
+			}
+		}
+	}
+
+	@Nullable
+	private static Object convert(final Class<?> type, @Nullable final Object value) {
+		if (value == null) {
+			return null;
+		} else if (type == long.class && value instanceof Number) {
+			return ((Number) value).longValue();
+		} else if (type == int.class && value instanceof Number) {
+			return ((Number) value).intValue();
+		} else if (type == String.class) {
+			return value.toString();
+		}
+		return value;
+	}
+}
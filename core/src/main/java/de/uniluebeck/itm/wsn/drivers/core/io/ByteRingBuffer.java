@@ -0,0 +1,489 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+
+/**
+ * A lock-free single-producer/single-consumer byte ring buffer that connects an <code>OutputStream</code> to an
+ * <code>InputStream</code>. It replaces the <code>PipedInputStream</code>/<code>PipedOutputStream</code> pair that
+ * polls once a second and wakes the blocked side immediately instead.
+ * <p/>
+ * Exactly one thread at a time may write to the buffer and exactly one thread at a time may read from it. Multiple
+ * writers (or readers) have to synchronize externally.
+ */
+public class ByteRingBuffer {
+
+	/**
+	 * The capacity that is used if no other value is given.
+	 */
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+	/**
+	 * The backing array. Its length is always a power of two.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * Mask used to map a sequence onto the backing array.
+	 */
+	private final int mask;
+
+	/**
+	 * Total number of bytes written to the buffer. Only modified by the producer.
+	 */
+	private final AtomicLong writeSequence = new AtomicLong(0);
+
+	/**
+	 * Total number of bytes read from the buffer. Modified by the consumer and by the producer when it discards the
+	 * oldest data, hence it is only advanced by compare and set.
+	 */
+	private final AtomicLong readSequence = new AtomicLong(0);
+
+	/**
+	 * The consumer thread that is parked because the buffer is empty.
+	 */
+	private volatile Thread waitingReader;
+
+	/**
+	 * The producer thread that is parked because the buffer is full.
+	 */
+	private volatile Thread waitingWriter;
+
+	/**
+	 * Incremented by every {@link #wakeUpReader()} so that a consumer waiting for other sources of data does not miss a
+	 * wake up that happens before it parks.
+	 */
+	private final AtomicInteger wakeUps = new AtomicInteger(0);
+
+	/**
+	 * Optional callback that is run by the producer whenever data was written or the producer side was closed.
+	 */
+	private volatile Runnable readableListener;
+
+	/**
+	 * Optional callback that is run by the consumer whenever it has read data.
+	 */
+	private volatile Runnable writableListener;
+
+	private volatile boolean writerClosed = false;
+
+	private volatile boolean readerClosed = false;
+
+	private final InputStream inputStream = new RingBufferInputStream();
+
+	private final OutputStream outputStream = new RingBufferOutputStream();
+
+	/**
+	 * Constructor.
+	 */
+	public ByteRingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity
+	 * 		The minimum number of bytes the buffer can hold. The value is rounded up to the next power of two.
+	 */
+	public ByteRingBuffer(final int capacity) {
+		checkArgument(capacity > 0, "The capacity must be positive.");
+		checkArgument(capacity <= (1 << 30), "The capacity must not exceed 2^30 bytes.");
+		final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		this.buffer = new byte[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Returns the stream that reads from the buffer. It blocks until data is available.
+	 *
+	 * @return The consumer side of the buffer.
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Returns the stream that writes to the buffer. It blocks while the buffer is full.
+	 *
+	 * @return The producer side of the buffer.
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * @return The number of bytes the buffer can hold.
+	 */
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * @return The number of bytes that can be read without blocking.
+	 */
+	public int available() {
+		return (int) (writeSequence.get() - readSequence.get());
+	}
+
+	/**
+	 * @return The number of bytes that can be written without blocking.
+	 */
+	public int remaining() {
+		return buffer.length - available();
+	}
+
+	/**
+	 * Copies as many bytes as are available (up to <code>len</code>) into <code>b</code> without blocking. Must only
+	 * be called by the consumer.
+	 *
+	 * @param b
+	 * 		The target array.
+	 * @param off
+	 * 		The offset in the target array.
+	 * @param len
+	 * 		The maximum number of bytes to read.
+	 *
+	 * @return The number of bytes read, <code>0</code> if the buffer is empty or <code>-1</code> if the producer side
+	 *         has been closed and all data was consumed.
+	 *
+	 * @throws IOException
+	 * 		if the consumer side has been closed.
+	 */
+	public int poll(final byte[] b, final int off, final int len) throws IOException {
+
+		checkBounds(b, off, len);
+
+		if (readerClosed) {
+			throw new IOException("Stream closed");
+		}
+
+		while (true) {
+
+			final long read = readSequence.get();
+			// read the closed flag before the sequence so that no data written before close() gets lost
+			final boolean closed = writerClosed;
+			final int available = (int) (writeSequence.get() - read);
+
+			if (available == 0) {
+				return closed ? -1 : 0;
+			}
+
+			final int count = Math.min(len, available);
+			final int index = (int) read & mask;
+			final int firstPart = Math.min(count, buffer.length - index);
+
+			System.arraycopy(buffer, index, b, off, firstPart);
+			if (firstPart < count) {
+				System.arraycopy(buffer, 0, b, off + firstPart, count - firstPart);
+			}
+
+			// fails if the producer discarded data meanwhile, in that case the copy may contain newer data
+			if (readSequence.compareAndSet(read, read + count)) {
+				signalWritable();
+				return count;
+			}
+		}
+	}
+
+	/**
+	 * Drops up to <code>len</code> of the oldest bytes in the buffer to make room for new data. Must only be called by
+	 * the producer.
+	 *
+	 * @param len
+	 * 		The maximum number of bytes to drop.
+	 *
+	 * @return The number of bytes dropped.
+	 */
+	public int discard(final int len) {
+		checkArgument(len >= 0, "Negative length is not allowed.");
+		while (true) {
+			final long read = readSequence.get();
+			final int count = Math.min(len, (int) (writeSequence.get() - read));
+			if (count == 0 || readSequence.compareAndSet(read, read + count)) {
+				return count;
+			}
+		}
+	}
+
+	/**
+	 * Copies as many bytes as fit (up to <code>len</code>) from <code>b</code> into the buffer without blocking. Must
+	 * only be called by the producer.
+	 *
+	 * @param b
+	 * 		The source array.
+	 * @param off
+	 * 		The offset in the source array.
+	 * @param len
+	 * 		The maximum number of bytes to write.
+	 *
+	 * @return The number of bytes written, <code>0</code> if the buffer is full.
+	 *
+	 * @throws IOException
+	 * 		if one side of the buffer has been closed.
+	 */
+	public int offer(final byte[] b, final int off, final int len) throws IOException {
+
+		checkBounds(b, off, len);
+
+		if (writerClosed) {
+			throw new IOException("Stream closed");
+		}
+
+		if (readerClosed) {
+			throw new IOException("Pipe closed");
+		}
+
+		final long write = writeSequence.get();
+		final int free = buffer.length - (int) (write - readSequence.get());
+
+		if (free == 0 || len == 0) {
+			return 0;
+		}
+
+		final int count = Math.min(len, free);
+		final int index = (int) write & mask;
+		final int firstPart = Math.min(count, buffer.length - index);
+
+		System.arraycopy(b, off, buffer, index, firstPart);
+		if (firstPart < count) {
+			System.arraycopy(b, off + firstPart, buffer, 0, count - firstPart);
+		}
+
+		writeSequence.set(write + count);
+		signalReadable();
+
+		return count;
+	}
+
+	/**
+	 * Wakes up the consumer if it is blocked in a read.
+	 */
+	public void wakeUpReader() {
+		wakeUps.incrementAndGet();
+		unpark(waitingReader);
+	}
+
+	/**
+	 * @return A counter that changes whenever {@link #wakeUpReader()} is called.
+	 */
+	public int getWakeUpCount() {
+		return wakeUps.get();
+	}
+
+	/**
+	 * Blocks the consumer until data is available, one side was closed or {@link #wakeUpReader()} has been called
+	 * since <code>wakeUpCount</code> was obtained from {@link #getWakeUpCount()}. Allows a consumer to wait for this
+	 * buffer and another source of data that is signalled through {@link #wakeUpReader()}.
+	 *
+	 * @param wakeUpCount
+	 * 		The wake up counter read before the other source was checked.
+	 *
+	 * @throws InterruptedIOException
+	 * 		if the consumer thread was interrupted.
+	 */
+	public void awaitReadable(final int wakeUpCount) throws InterruptedIOException {
+		waitingReader = Thread.currentThread();
+		try {
+			while (available() == 0 && !writerClosed && !readerClosed && wakeUps.get() == wakeUpCount) {
+				checkInterrupted();
+				LockSupport.park(this);
+			}
+			checkInterrupted();
+		} finally {
+			waitingReader = null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the consumer side has been closed.
+	 */
+	public boolean isReaderClosed() {
+		return readerClosed;
+	}
+
+	/**
+	 * Sets a callback that is run by the producer thread after data has been written or the producer side was closed.
+	 * This allows a consumer to poll the buffer from an event loop instead of blocking in a read. The callback must
+	 * return quickly.
+	 *
+	 * @param readableListener
+	 * 		The callback or <code>null</code> to remove it.
+	 */
+	public void setReadableListener(@Nullable final Runnable readableListener) {
+		this.readableListener = readableListener;
+	}
+
+	/**
+	 * Sets a callback that is run by the consumer thread after it has read data, i.e. after room was made for the
+	 * producer. This allows a producer to offer data from an event loop instead of blocking in a write. The callback
+	 * must return quickly.
+	 *
+	 * @param writableListener
+	 * 		The callback or <code>null</code> to remove it.
+	 */
+	public void setWritableListener(@Nullable final Runnable writableListener) {
+		this.writableListener = writableListener;
+	}
+
+	private void signalWritable() {
+		unpark(waitingWriter);
+		final Runnable listener = writableListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	private void signalReadable() {
+		unpark(waitingReader);
+		final Runnable listener = readableListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	private void awaitReadable() throws InterruptedIOException {
+		waitingReader = Thread.currentThread();
+		try {
+			while (available() == 0 && !writerClosed && !readerClosed) {
+				checkInterrupted();
+				LockSupport.park(this);
+			}
+			checkInterrupted();
+		} finally {
+			waitingReader = null;
+		}
+	}
+
+	private void awaitWritable() throws InterruptedIOException {
+		waitingWriter = Thread.currentThread();
+		try {
+			while (remaining() == 0 && !writerClosed && !readerClosed) {
+				checkInterrupted();
+				LockSupport.park(this);
+			}
+			checkInterrupted();
+		} finally {
+			waitingWriter = null;
+		}
+	}
+
+	private static void checkInterrupted() throws InterruptedIOException {
+		// keep the interrupted flag set like PipedInputStream does
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static void unpark(final Thread thread) {
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private static void checkBounds(final byte[] b, final int off, final int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	private class RingBufferInputStream extends InputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+
+			checkBounds(b, off, len);
+
+			if (len == 0) {
+				return 0;
+			}
+
+			int count;
+			while ((count = poll(b, off, len)) == 0) {
+				awaitReadable();
+			}
+			return count;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (readerClosed) {
+				throw new IOException("Stream closed");
+			}
+			return ByteRingBuffer.this.available();
+		}
+
+		@Override
+		public void close() {
+			readerClosed = true;
+			signalWritable();
+		}
+	}
+
+	private class RingBufferOutputStream extends OutputStream implements NonBlockingWritable {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(final int b) throws IOException {
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+
+			checkBounds(b, off, len);
+
+			int written = 0;
+			while (written < len) {
+				final int count = offer(b, off + written, len - written);
+				if (count == 0) {
+					awaitWritable();
+				}
+				written += count;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// written data is visible to the reader immediately
+			unpark(waitingReader);
+		}
+
+		@Override
+		public int writableBytes() {
+			// a write to a closed buffer fails at once instead of blocking
+			return writerClosed || readerClosed ? Integer.MAX_VALUE : remaining();
+		}
+
+		@Override
+		public void setWritableListener(@Nullable final Runnable writableListener) {
+			ByteRingBuffer.this.setWritableListener(writableListener);
+		}
+
+		@Override
+		public void close() {
+			writerClosed = true;
+			signalReadable();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream that records every byte that is read into a {@link WireCapture}.
+ */
+public class CapturingInputStream extends FilterInputStream {
+
+	private final WireCapture capture;
+
+	private final byte[] single = new byte[1];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputStream
+	 * 		The stream that is read.
+	 * @param capture
+	 * 		The capture that records the bytes as {@link WireCapture.Direction#FROM_DEVICE}.
+	 */
+	public CapturingInputStream(final InputStream inputStream, final WireCapture capture) {
+		super(inputStream);
+		this.capture = capture;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b != -1) {
+			single[0] = (byte) b;
+			capture.record(WireCapture.Direction.FROM_DEVICE, single, 0, 1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int count = super.read(b, off, len);
+		if (count > 0) {
+			capture.record(WireCapture.Direction.FROM_DEVICE, b, off, count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		// skipped bytes passed the wire as well
+		final byte[] skipped = new byte[(int) Math.min(n, 512)];
+		final int count = read(skipped, 0, skipped.length);
+		return Math.max(0, count);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
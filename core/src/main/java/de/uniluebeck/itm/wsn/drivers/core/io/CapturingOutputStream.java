@@ -0,0 +1,43 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Output stream that records every byte that is written into a {@link WireCapture}.
+ */
+public class CapturingOutputStream extends FilterOutputStream {
+
+	private final WireCapture capture;
+
+	private final byte[] single = new byte[1];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param outputStream
+	 * 		The stream that is written.
+	 * @param capture
+	 * 		The capture that records the bytes as {@link WireCapture.Direction#TO_DEVICE}.
+	 */
+	public CapturingOutputStream(final OutputStream outputStream, final WireCapture capture) {
+		super(outputStream);
+		this.capture = capture;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		out.write(b);
+		single[0] = (byte) b;
+		capture.record(WireCapture.Direction.TO_DEVICE, single, 0, 1);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		// FilterOutputStream would write byte by byte
+		out.write(b, off, len);
+		capture.record(WireCapture.Direction.TO_DEVICE, b, off, len);
+	}
+}
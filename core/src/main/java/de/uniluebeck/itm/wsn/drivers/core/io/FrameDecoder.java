@@ -0,0 +1,30 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+/**
+ * Finds the end of a frame in the received bytes, see
+ * {@link de.uniluebeck.itm.wsn.drivers.core.Connection#readFrame(FrameDecoder, int)}.
+ */
+public interface FrameDecoder {
+
+	/**
+	 * Returned by {@link #frameLength(byte[], int, int, boolean)} if the frame is not complete yet.
+	 */
+	int INCOMPLETE = 0;
+
+	/**
+	 * Determines the length of the frame at the start of the received bytes. Called again with more bytes as long as
+	 * it returns {@link #INCOMPLETE}.
+	 *
+	 * @param buffer
+	 * 		The buffer with the received bytes. It must not be modified.
+	 * @param offset
+	 * 		The position of the first byte of the frame.
+	 * @param length
+	 * 		The number of bytes received so far.
+	 * @param idle
+	 * 		<code>true</code> if no more bytes are available right now, for protocols whose frames end with a pause.
+	 *
+	 * @return The length of the complete frame, at most <code>length</code>, or {@link #INCOMPLETE}.
+	 */
+	int frameLength(byte[] buffer, int offset, int length, boolean idle);
+}
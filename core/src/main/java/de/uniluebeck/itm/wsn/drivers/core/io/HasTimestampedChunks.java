@@ -0,0 +1,24 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+
+/**
+ * Interface for devices that deliver the received data as timestamped chunks in addition to the input stream.
+ */
+public interface HasTimestampedChunks {
+
+	/**
+	 * Registers a listener for received chunks. The data is still written to the input stream of the device.
+	 *
+	 * @param listener
+	 * 		The listener that has to be added.
+	 */
+	void addTimestampedChunkListener(TimestampedChunkListener listener);
+
+	/**
+	 * Removes the given listener.
+	 *
+	 * @param listener
+	 * 		The listener that has to be removed.
+	 */
+	void removeTimestampedChunkListener(TimestampedChunkListener listener);
+}
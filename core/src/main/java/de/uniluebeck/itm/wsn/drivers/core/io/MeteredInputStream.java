@@ -0,0 +1,62 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream that counts every byte that is read as received by the device metrics.
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+	private final DeviceMetrics metrics;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputStream
+	 * 		The stream that is read.
+	 * @param metrics
+	 * 		The metrics that count the received bytes.
+	 */
+	public MeteredInputStream(final InputStream inputStream, final DeviceMetrics metrics) {
+		super(inputStream);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b != -1) {
+			metrics.recordBytesReceived(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int count = super.read(b, off, len);
+		if (count > 0) {
+			metrics.recordBytesReceived(count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		// skipped bytes passed the wire as well
+		final long count = super.skip(n);
+		if (count > 0) {
+			metrics.recordBytesReceived(count);
+		}
+		return count;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
@@ -0,0 +1,42 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Output stream that counts every byte that is written as sent by the device metrics.
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+	private final DeviceMetrics metrics;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param outputStream
+	 * 		The stream that is written.
+	 * @param metrics
+	 * 		The metrics that count the sent bytes.
+	 */
+	public MeteredOutputStream(final OutputStream outputStream, final DeviceMetrics metrics) {
+		super(outputStream);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		out.write(b);
+		metrics.recordBytesSent(1);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		// FilterOutputStream would write byte by byte
+		out.write(b, off, len);
+		metrics.recordBytesSent(len);
+	}
+}
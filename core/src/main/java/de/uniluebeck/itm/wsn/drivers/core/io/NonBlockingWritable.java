@@ -0,0 +1,23 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implemented by output streams that can tell how many bytes they take without blocking. A {@link StreamPump} writes
+ * no more than that to such a stream, so a consumer that does not read cannot block a shared pump thread.
+ */
+public interface NonBlockingWritable {
+
+	/**
+	 * @return The number of bytes the next write takes without blocking.
+	 */
+	int writableBytes();
+
+	/**
+	 * Sets a callback that is run by the consumer after it made room in the stream. The callback must return quickly.
+	 *
+	 * @param writableListener
+	 * 		The callback or <code>null</code> to remove it.
+	 */
+	void setWritableListener(@Nullable Runnable writableListener);
+}
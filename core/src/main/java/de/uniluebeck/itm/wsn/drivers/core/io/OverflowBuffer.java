@@ -0,0 +1,303 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+
+/**
+ * Puts an {@link OverflowPolicy} in front of a {@link ByteRingBuffer} so that a producer which must never block, e.g.
+ * the thread delivering serial port events, is decoupled from a slow consumer. Data that is dropped or spilled to disk
+ * because the ring buffer is full is counted.
+ * <p/>
+ * Like the ring buffer, exactly one thread at a time may write and exactly one thread at a time may read.
+ */
+public class OverflowBuffer {
+
+	private static final Logger log = LoggerFactory.getLogger(OverflowBuffer.class);
+
+	private final ByteRingBuffer ringBuffer;
+
+	private final OverflowPolicy policy;
+
+	/**
+	 * Directory for the journal segments or <code>null</code> for the default temporary directory.
+	 */
+	@Nullable
+	private final File spillDirectory;
+
+	/**
+	 * Serializes the decision whether new data goes to the ring buffer or to the journal. Only used once the ring buffer
+	 * has overflown.
+	 */
+	private final Object spillLock = new Object();
+
+	/**
+	 * Holds the data that did not fit into the ring buffer if the policy is {@link OverflowPolicy#SPILL_TO_DISK} and
+	 * all data if the policy is {@link OverflowPolicy#JOURNAL}.
+	 */
+	@Nullable
+	private final SegmentJournal journal;
+
+	private final AtomicLong droppedBytes = new AtomicLong(0);
+
+	private final AtomicLong spilledBytes = new AtomicLong(0);
+
+	private final InputStream inputStream;
+
+	private final OutputStream outputStream;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ringBuffer
+	 * 		The buffer that holds the data in memory.
+	 * @param policy
+	 * 		What happens to data that does not fit into the ring buffer.
+	 * @param spillDirectory
+	 * 		The directory for the journal segments if <code>policy</code> is {@link OverflowPolicy#SPILL_TO_DISK} or
+	 * 		{@link OverflowPolicy#JOURNAL} or <code>null</code> for the default temporary directory.
+	 */
+	public OverflowBuffer(final ByteRingBuffer ringBuffer, final OverflowPolicy policy,
+						  @Nullable final File spillDirectory) {
+		this.ringBuffer = checkNotNull(ringBuffer, "Null ring buffer is not allowed.");
+		this.policy = checkNotNull(policy, "Null policy is not allowed.");
+		this.spillDirectory = spillDirectory;
+
+		switch (policy) {
+			case BLOCK:
+				journal = null;
+				inputStream = ringBuffer.getInputStream();
+				outputStream = ringBuffer.getOutputStream();
+				break;
+			case SPILL_TO_DISK:
+				journal = new SegmentJournal(spillDirectory);
+				inputStream = new SpillingInputStream();
+				outputStream = new OverflowOutputStream();
+				break;
+			case JOURNAL:
+				journal = new SegmentJournal(spillDirectory);
+				inputStream = journal.getInputStream();
+				outputStream = journal.getOutputStream();
+				break;
+			default:
+				journal = null;
+				inputStream = ringBuffer.getInputStream();
+				outputStream = new OverflowOutputStream();
+		}
+	}
+
+	/**
+	 * Returns the stream that reads from the buffer. It blocks until data is available.
+	 *
+	 * @return The consumer side of the buffer.
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Returns the stream that writes to the buffer. It only blocks if the policy is {@link OverflowPolicy#BLOCK}.
+	 *
+	 * @return The producer side of the buffer.
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return The total number of bytes that were dropped because the buffer was full.
+	 */
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+
+	/**
+	 * @return The total number of bytes that were written to the spill file because the buffer was full.
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
+	/**
+	 * @return The number of spilled bytes that have not been read yet.
+	 */
+	public long getPendingSpilledBytes() {
+		return policy == OverflowPolicy.SPILL_TO_DISK ? journal.available() : 0;
+	}
+
+	/**
+	 * Returns the journal that holds all data if the policy is {@link OverflowPolicy#JOURNAL}. Its consumer side can be
+	 * read without copying through {@link SegmentJournal#poll(int)} instead of {@link #getInputStream()}.
+	 *
+	 * @return The journal or <code>null</code> for all other policies.
+	 */
+	@Nullable
+	public SegmentJournal getJournal() {
+		return policy == OverflowPolicy.JOURNAL ? journal : null;
+	}
+
+	private void write(final byte[] b, final int off, final int len) throws IOException {
+		switch (policy) {
+			case DROP_NEWEST:
+				droppedBytes.addAndGet(len - ringBuffer.offer(b, off, len));
+				break;
+			case DROP_OLDEST:
+				writeDroppingOldest(b, off, len);
+				break;
+			case SPILL_TO_DISK:
+				writeSpilling(b, off, len);
+				break;
+			default:
+				throw new IllegalStateException("Unexpected policy " + policy);
+		}
+	}
+
+	private void writeDroppingOldest(final byte[] b, final int off, final int len) throws IOException {
+
+		// of a chunk larger than the whole buffer only the tail can survive
+		final int skipped = Math.max(0, len - ringBuffer.getCapacity());
+		if (skipped > 0) {
+			droppedBytes.addAndGet(skipped);
+		}
+
+		int offset = off + skipped;
+		int remaining = len - skipped;
+
+		while (remaining > 0) {
+			final int written = ringBuffer.offer(b, offset, remaining);
+			offset += written;
+			remaining -= written;
+			if (remaining > 0) {
+				droppedBytes.addAndGet(ringBuffer.discard(remaining));
+			}
+		}
+	}
+
+	private void writeSpilling(final byte[] b, final int off, final int len) throws IOException {
+
+		synchronized (spillLock) {
+			// keep the order: as long as the journal holds data everything new goes there as well
+			if (journal.available() > 0) {
+				spill(b, off, len);
+				return;
+			}
+		}
+
+		final int written = ringBuffer.offer(b, off, len);
+
+		if (written < len) {
+			synchronized (spillLock) {
+				spill(b, off + written, len - written);
+			}
+		}
+	}
+
+	private void spill(final byte[] b, final int off, final int len) throws IOException {
+		journal.write(b, off, len);
+		spilledBytes.addAndGet(len);
+		ringBuffer.wakeUpReader();
+	}
+
+	private int readSpilled(final byte[] b, final int off, final int len) {
+		synchronized (spillLock) {
+			// data that reached the ring buffer after the last poll is older than anything spilled afterwards
+			if (ringBuffer.available() > 0) {
+				return 0;
+			}
+			return Math.max(0, journal.poll(b, off, len));
+		}
+	}
+
+	private class OverflowOutputStream extends OutputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(final int b) throws IOException {
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			OverflowBuffer.this.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			ringBuffer.getOutputStream().flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			ringBuffer.getOutputStream().close();
+			if (journal != null) {
+				journal.getOutputStream().close();
+			}
+		}
+	}
+
+	private class SpillingInputStream extends InputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+
+			if (len == 0) {
+				return 0;
+			}
+
+			while (true) {
+
+				final int wakeUpCount = ringBuffer.getWakeUpCount();
+
+				// data in the ring buffer is always older than data in the journal
+				final int read = ringBuffer.poll(b, off, len);
+				if (read > 0) {
+					return read;
+				}
+
+				final int spilled = readSpilled(b, off, len);
+				if (spilled > 0) {
+					return spilled;
+				}
+
+				if (read == -1) {
+					return -1;
+				}
+
+				ringBuffer.awaitReadable(wakeUpCount);
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(Integer.MAX_VALUE, ringBuffer.getInputStream().available() + getPendingSpilledBytes());
+		}
+
+		@Override
+		public void close() throws IOException {
+			ringBuffer.getInputStream().close();
+			journal.close();
+		}
+	}
+}
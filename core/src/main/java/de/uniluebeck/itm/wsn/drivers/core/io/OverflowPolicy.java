@@ -0,0 +1,35 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+/**
+ * Decides what happens to data written to an {@link OverflowBuffer} that is full because its consumer is too slow.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The writer blocks until the consumer has made room. Nothing is lost but a slow consumer stalls the writer.
+	 */
+	BLOCK,
+
+	/**
+	 * The oldest buffered data is dropped to make room for the new data.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * The new data that does not fit anymore is dropped.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The data that does not fit anymore is appended to memory-mapped segment files and delivered to the consumer after
+	 * the buffered data.
+	 */
+	SPILL_TO_DISK,
+
+	/**
+	 * All data bypasses the heap and is appended to memory-mapped segment files right away. Meant for long bursts like
+	 * flash dumps. The consumer may read the segments without copying through {@link OverflowBuffer#getJournal()}.
+	 */
+	JOURNAL
+
+}
@@ -0,0 +1,141 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream that takes everything the underlying stream has available with one bulk read, instead of one read per
+ * byte. On RXTX every read takes a lock and crosses JNI, so this saves most of the cost of reading a bootloader reply.
+ * <p/>
+ * Plain reads return buffered bytes first, so all readers of the connection see the same bytes in the same order.
+ * The buffered bytes are exposed for decoding frames in place. Not thread safe, like the serial streams.
+ */
+public class ReceiveBufferInputStream extends FilterInputStream {
+
+	private byte[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputStream
+	 * 		The stream that is read.
+	 * @param capacity
+	 * 		The initial size of the buffer. It grows if a frame does not fit.
+	 */
+	public ReceiveBufferInputStream(final InputStream inputStream, final int capacity) {
+		super(inputStream);
+		this.buffer = new byte[capacity];
+	}
+
+	/**
+	 * Moves everything the underlying stream has available into the buffer without blocking.
+	 *
+	 * @return The number of bytes added to the buffer.
+	 *
+	 * @throws IOException
+	 * 		if reading from the underlying stream failed.
+	 */
+	public int fill() throws IOException {
+
+		final int available = in.available();
+		if (available <= 0) {
+			return 0;
+		}
+
+		if (position == limit) {
+			position = 0;
+			limit = 0;
+		} else if (buffer.length - limit < available && position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+
+		if (limit == buffer.length) {
+			final byte[] grown = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, limit);
+			buffer = grown;
+		}
+
+		final int count = in.read(buffer, limit, Math.min(available, buffer.length - limit));
+		if (count > 0) {
+			limit += count;
+			return count;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The number of bytes in the buffer.
+	 */
+	public int buffered() {
+		return limit - position;
+	}
+
+	/**
+	 * @return The buffer, the buffered bytes start at {@link #position()}. Valid until the next read or fill.
+	 */
+	public byte[] array() {
+		return buffer;
+	}
+
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * Drops all buffered bytes.
+	 */
+	public void discard() {
+		position = 0;
+		limit = 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position < limit) {
+			return buffer[position++] & 0xFF;
+		}
+		return in.read();
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position < limit) {
+			final int count = Math.min(len, limit - position);
+			System.arraycopy(buffer, position, b, off, count);
+			position += count;
+			return count;
+		}
+		return in.read(b, off, len);
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		if (position < limit) {
+			final int count = (int) Math.min(n, limit - position);
+			position += count;
+			return count;
+		}
+		return in.skip(n);
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (limit - position) + in.available();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
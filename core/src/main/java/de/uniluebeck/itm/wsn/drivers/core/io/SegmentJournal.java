@@ -0,0 +1,472 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+
+/**
+ * A byte stream that is stored in memory-mapped segment files instead of on the heap. The producer appends to the
+ * last segment, the consumer reads from the first one either by copying through {@link #getInputStream()} or without
+ * copying through {@link #poll(int)}. Segments that have been read completely are kept for reuse up to a limit, the
+ * rest is deleted.
+ * <p/>
+ * Exactly one thread at a time may write to the journal and exactly one thread at a time may read from it.
+ */
+public class SegmentJournal implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(SegmentJournal.class);
+
+	/**
+	 * The segment size that is used if no other value is given.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	/**
+	 * The number of consumed segments that are kept for reuse if no other value is given.
+	 */
+	public static final int DEFAULT_MAX_RECYCLED_SEGMENTS = 2;
+
+	private static class Segment {
+
+		private final File file;
+
+		private final MappedByteBuffer buffer;
+
+		private int writePosition = 0;
+
+		private int readPosition = 0;
+
+		private Segment(final File file, final MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * Directory for the segment files or <code>null</code> for the default temporary directory.
+	 */
+	@Nullable
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final int maxRecycledSegments;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition readable = lock.newCondition();
+
+	/**
+	 * Segments holding data that has not been read completely, oldest first.
+	 */
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+	/**
+	 * Consumed segments that are reused before new files are created.
+	 */
+	private final Deque<Segment> recycledSegments = new ArrayDeque<Segment>();
+
+	/**
+	 * A consumed segment that still backs the slice returned by the last {@link #poll(int)}. It is recycled on the
+	 * next read.
+	 */
+	private Segment releasedSegment;
+
+	private long available = 0;
+
+	private long segmentsCreated = 0;
+
+	private volatile boolean writerClosed = false;
+
+	private volatile boolean closed = false;
+
+	private final InputStream inputStream = new JournalInputStream();
+
+	private final OutputStream outputStream = new JournalOutputStream();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory
+	 * 		The directory for the segment files or <code>null</code> for the default temporary directory.
+	 */
+	public SegmentJournal(@Nullable final File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_RECYCLED_SEGMENTS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory
+	 * 		The directory for the segment files or <code>null</code> for the default temporary directory.
+	 * @param segmentSize
+	 * 		The size of a single segment file in bytes.
+	 * @param maxRecycledSegments
+	 * 		The number of consumed segments that are kept for reuse.
+	 */
+	public SegmentJournal(@Nullable final File directory, final int segmentSize, final int maxRecycledSegments) {
+		checkArgument(segmentSize > 0, "The segment size must be positive.");
+		checkArgument(maxRecycledSegments >= 0, "The number of recycled segments must not be negative.");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxRecycledSegments = maxRecycledSegments;
+	}
+
+	/**
+	 * Returns the stream that reads from the journal. It blocks until data is available.
+	 *
+	 * @return The consumer side of the journal.
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Returns the stream that appends to the journal. It never blocks on the consumer.
+	 *
+	 * @return The producer side of the journal.
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * @return The number of bytes that have been written but not read yet.
+	 */
+	public long available() {
+		lock.lock();
+		try {
+			return available;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of segment files created so far. Stays constant while recycled segments suffice.
+	 */
+	public long getSegmentsCreated() {
+		lock.lock();
+		try {
+			return segmentsCreated;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Appends <code>len</code> bytes to the journal. Must only be called by the producer.
+	 *
+	 * @param b
+	 * 		The source array.
+	 * @param off
+	 * 		The offset in the source array.
+	 * @param len
+	 * 		The number of bytes to append.
+	 *
+	 * @throws IOException
+	 * 		if the journal has been closed or a segment file could not be created.
+	 */
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		lock.lock();
+		try {
+
+			if (closed || writerClosed) {
+				throw new IOException("Journal closed");
+			}
+
+			int offset = off;
+			int remaining = len;
+
+			while (remaining > 0) {
+
+				Segment tail = segments.peekLast();
+				if (tail == null || tail.writePosition == segmentSize) {
+					tail = acquireSegment();
+					segments.addLast(tail);
+				}
+
+				final int count = Math.min(remaining, segmentSize - tail.writePosition);
+				final ByteBuffer target = tail.buffer.duplicate();
+				target.position(tail.writePosition);
+				target.put(b, offset, count);
+
+				tail.writePosition += count;
+				available += count;
+				offset += count;
+				remaining -= count;
+			}
+
+			if (len > 0) {
+				readable.signalAll();
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns up to <code>maxLength</code> bytes without copying them. The returned buffer is a read-only slice of a
+	 * segment and stays valid until the next read from the journal. Must only be called by the consumer.
+	 *
+	 * @param maxLength
+	 * 		The maximum number of bytes to return.
+	 *
+	 * @return A slice with at least one byte or <code>null</code> if no data is available.
+	 */
+	@Nullable
+	public ByteBuffer poll(final int maxLength) {
+		checkArgument(maxLength > 0, "The maximum length must be positive.");
+		lock.lock();
+		try {
+
+			recycleReleasedSegment();
+
+			final Segment head = segments.peekFirst();
+			if (head == null || head.readPosition == head.writePosition) {
+				return null;
+			}
+
+			final int count = Math.min(maxLength, head.writePosition - head.readPosition);
+			final ByteBuffer slice = head.buffer.duplicate();
+			slice.position(head.readPosition);
+			slice.limit(head.readPosition + count);
+
+			consume(head, count);
+			if (head.readPosition == segmentSize) {
+				segments.pollFirst();
+				releasedSegment = head;
+			}
+
+			return slice.slice().asReadOnlyBuffer();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Copies up to <code>len</code> bytes into <code>b</code> without blocking. Must only be called by the consumer.
+	 *
+	 * @param b
+	 * 		The target array.
+	 * @param off
+	 * 		The offset in the target array.
+	 * @param len
+	 * 		The maximum number of bytes to read.
+	 *
+	 * @return The number of bytes read, <code>0</code> if the journal is empty or <code>-1</code> if the producer side
+	 *         has been closed and all data was consumed.
+	 */
+	public int poll(final byte[] b, final int off, final int len) {
+		lock.lock();
+		try {
+
+			recycleReleasedSegment();
+
+			int read = 0;
+			while (read < len) {
+
+				final Segment head = segments.peekFirst();
+				if (head == null || head.readPosition == head.writePosition) {
+					break;
+				}
+
+				final int count = Math.min(len - read, head.writePosition - head.readPosition);
+				final ByteBuffer source = head.buffer.duplicate();
+				source.position(head.readPosition);
+				source.get(b, off + read, count);
+
+				consume(head, count);
+				read += count;
+
+				if (head.readPosition == segmentSize) {
+					segments.pollFirst();
+					recycle(head);
+				}
+			}
+
+			return read == 0 && writerClosed ? -1 : read;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes all segment files. Data that has not been read is lost.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for (Segment segment : segments) {
+				delete(segment);
+			}
+			for (Segment segment : recycledSegments) {
+				delete(segment);
+			}
+			if (releasedSegment != null) {
+				delete(releasedSegment);
+				releasedSegment = null;
+			}
+			segments.clear();
+			recycledSegments.clear();
+			available = 0;
+			readable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void consume(final Segment segment, final int count) {
+		segment.readPosition += count;
+		available -= count;
+	}
+
+	private void recycleReleasedSegment() {
+		if (releasedSegment != null) {
+			recycle(releasedSegment);
+			releasedSegment = null;
+		}
+	}
+
+	private void recycle(final Segment segment) {
+		if (recycledSegments.size() < maxRecycledSegments) {
+			segment.readPosition = 0;
+			segment.writePosition = 0;
+			recycledSegments.addLast(segment);
+		} else {
+			delete(segment);
+		}
+	}
+
+	private Segment acquireSegment() throws IOException {
+
+		final Segment recycled = recycledSegments.pollFirst();
+		if (recycled != null) {
+			return recycled;
+		}
+
+		final File file = File.createTempFile("journal-", ".segment", directory);
+		file.deleteOnExit();
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(segmentSize);
+			final MappedByteBuffer buffer =
+					randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			segmentsCreated++;
+			log.trace("Created journal segment {}", file);
+			return new Segment(file, buffer);
+		} finally {
+			// the mapping stays valid after the file has been closed
+			randomAccessFile.close();
+		}
+	}
+
+	private void delete(final Segment segment) {
+		// the mapping itself is released when the buffer is garbage collected
+		if (!segment.file.delete()) {
+			log.warn("Unable to delete journal segment {}", segment.file);
+		}
+	}
+
+	private void awaitReadable() throws InterruptedIOException {
+		lock.lock();
+		try {
+			while (available == 0 && !writerClosed && !closed) {
+				readable.await();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private class JournalInputStream extends InputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+
+			if (len == 0) {
+				return 0;
+			}
+
+			int count;
+			while ((count = poll(b, off, len)) == 0) {
+				if (closed) {
+					throw new IOException("Stream closed");
+				}
+				awaitReadable();
+			}
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, SegmentJournal.this.available());
+		}
+
+		@Override
+		public void close() {
+			SegmentJournal.this.close();
+		}
+	}
+
+	private class JournalOutputStream extends OutputStream {
+
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(final int b) throws IOException {
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			SegmentJournal.this.write(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			lock.lock();
+			try {
+				writerClosed = true;
+				readable.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static de.uniluebeck.itm.util.StringUtils.toHexString;
+
+
+/**
+ * Copies data from {@link ByteRingBuffer}s to <code>OutputStream</code>s for many devices on a small, fixed set of
+ * threads. Instead of blocking one thread per device in a read, every registered {@link Channel} is scheduled on a
+ * shared queue whenever its source buffer becomes readable and is then serviced by the next free pump thread.
+ * <p/>
+ * A pump thread never waits for a target. If the target is {@link NonBlockingWritable} only as much is copied as it
+ * takes without blocking, the channel is scheduled again when the target has room. A channel whose target fails is
+ * closed and its {@link ChannelListener} is told about the failure.
+ * <p/>
+ * The thread factory decides on which kind of threads the pump runs, e.g. a factory creating virtual threads can be
+ * passed on JVMs that support them.
+ */
+public class StreamPump implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(StreamPump.class);
+
+	/**
+	 * Maximum number of bytes copied for a channel before the next ready channel is serviced.
+	 */
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Notified when a channel was closed because its target failed.
+	 */
+	public interface ChannelListener {
+
+		/**
+		 * Called by the pump thread after the channel was closed.
+		 *
+		 * @param channel
+		 * 		The closed channel.
+		 * @param cause
+		 * 		The exception thrown by the target.
+		 */
+		void onChannelFailed(Channel channel, IOException cause);
+	}
+
+	/**
+	 * A source/target pair serviced by the pump. A channel is created in paused state.
+	 */
+	public class Channel implements Closeable {
+
+		private final ByteRingBuffer source;
+
+		private final OutputStream target;
+
+		/**
+		 * The target if it tells how much it takes without blocking, otherwise <code>null</code>.
+		 */
+		@Nullable
+		private final NonBlockingWritable nonBlockingTarget;
+
+		@Nullable
+		private final ChannelListener listener;
+
+		/**
+		 * <code>true</code> while the channel is queued for servicing.
+		 */
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		/**
+		 * Held while data is copied so that {@link #pause()} can wait for an in-flight copy.
+		 */
+		private final ReentrantLock copyLock = new ReentrantLock();
+
+		private volatile boolean paused = true;
+
+		private volatile boolean closed = false;
+
+		@Nullable
+		private volatile IOException failure;
+
+		private Channel(final ByteRingBuffer source, final OutputStream target,
+						@Nullable final ChannelListener listener) {
+			this.source = source;
+			this.target = target;
+			this.nonBlockingTarget = target instanceof NonBlockingWritable ? (NonBlockingWritable) target : null;
+			this.listener = listener;
+		}
+
+		/**
+		 * Starts or continues copying data from the source to the target. Does nothing once the channel is closed, as a
+		 * failing target closes it at any time.
+		 */
+		public void resume() {
+			paused = false;
+			schedule();
+		}
+
+		/**
+		 * Stops copying data. Returns after a copy that is currently in progress has been completed, so that the
+		 * caller may use the target exclusively afterwards.
+		 */
+		public void pause() {
+			paused = true;
+			copyLock.lock();
+			copyLock.unlock();
+		}
+
+		public boolean isPaused() {
+			return paused;
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * @return The exception that closed the channel or <code>null</code> if the target did not fail.
+		 */
+		@Nullable
+		public IOException getFailure() {
+			return failure;
+		}
+
+		/**
+		 * Pauses the channel and removes it from the pump. Data remaining in the source is not copied anymore.
+		 */
+		@Override
+		public void close() {
+			closed = true;
+			removeListeners();
+			pause();
+		}
+
+		private void removeListeners() {
+			source.setReadableListener(null);
+			if (nonBlockingTarget != null) {
+				nonBlockingTarget.setWritableListener(null);
+			}
+		}
+
+		private void schedule() {
+			if (!paused && !closed && source.available() > 0 && scheduled.compareAndSet(false, true)) {
+				readyChannels.offer(this);
+			}
+		}
+
+		private void pump(final byte[] buffer) {
+
+			IOException exception = null;
+
+			copyLock.lock();
+			try {
+
+				// clear the flag before polling so that data arriving from now on schedules the channel again
+				scheduled.set(false);
+
+				if (paused || closed) {
+					return;
+				}
+
+				synchronized (target) {
+
+					// a full target schedules the channel again through its writable listener
+					final int length = nonBlockingTarget != null ?
+							Math.min(buffer.length, nonBlockingTarget.writableBytes()) :
+							buffer.length;
+					if (length <= 0) {
+						return;
+					}
+
+					final int bytesRead = source.poll(buffer, 0, length);
+					if (bytesRead <= 0) {
+						return;
+					}
+
+					if (log.isTraceEnabled()) {
+						log.trace("Writing {} bytes to device stream: {}", bytesRead, toHexString(buffer, 0, bytesRead));
+					}
+
+					target.write(buffer, 0, bytesRead);
+					target.flush();
+				}
+
+			} catch (IOException e) {
+				exception = e;
+				failure = e;
+				closed = true;
+				removeListeners();
+			} finally {
+				copyLock.unlock();
+			}
+
+			if (exception != null) {
+				log.error("IOException while pumping data to device stream, closing the channel: {}", exception);
+				if (listener != null) {
+					listener.onChannelFailed(this, exception);
+				}
+				return;
+			}
+
+			// give other channels a chance before copying the rest
+			schedule();
+		}
+	}
+
+	private final Runnable pumpRunnable = new Runnable() {
+		@Override
+		public void run() {
+
+			final byte[] buffer = new byte[BUFFER_SIZE];
+
+			try {
+				while (!shutdown) {
+					readyChannels.take().pump(buffer);
+				}
+			} catch (InterruptedException e) {
+				log.trace("Pump thread interrupted, shutting down");
+			}
+		}
+	};
+
+	private final BlockingQueue<Channel> readyChannels = new LinkedBlockingQueue<Channel>();
+
+	private final List<Thread> threads;
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadCount
+	 * 		The number of threads that service all channels.
+	 */
+	public StreamPump(final int threadCount) {
+		this(threadCount, new ThreadFactoryBuilder().setNameFormat("StreamPump-Thread %d").setDaemon(true).build());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadCount
+	 * 		The number of threads that service all channels.
+	 * @param threadFactory
+	 * 		The factory that creates the pump threads.
+	 */
+	public StreamPump(final int threadCount, final ThreadFactory threadFactory) {
+		checkArgument(threadCount > 0, "At least one thread is required.");
+		checkNotNull(threadFactory, "Null thread factory is not allowed.");
+
+		threads = new ArrayList<Thread>(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			final Thread thread = threadFactory.newThread(pumpRunnable);
+			threads.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Registers a new channel that copies all data written to <code>source</code> to <code>target</code>. Writes to the
+	 * target are synchronized on the target.
+	 *
+	 * @param source
+	 * 		The buffer to read from. The pump becomes its only consumer.
+	 * @param target
+	 * 		The stream to write to.
+	 *
+	 * @return The paused channel.
+	 */
+	public Channel register(final ByteRingBuffer source, final OutputStream target) {
+		return register(source, target, null);
+	}
+
+	/**
+	 * Registers a new channel that copies all data written to <code>source</code> to <code>target</code>. Writes to the
+	 * target are synchronized on the target.
+	 *
+	 * @param source
+	 * 		The buffer to read from. The pump becomes its only consumer.
+	 * @param target
+	 * 		The stream to write to.
+	 * @param listener
+	 * 		Told when the channel is closed because the target failed, may be <code>null</code>.
+	 *
+	 * @return The paused channel.
+	 */
+	public Channel register(final ByteRingBuffer source, final OutputStream target,
+							@Nullable final ChannelListener listener) {
+		checkState(!shutdown, "Pump is shut down");
+		checkNotNull(source, "Null source is not allowed.");
+		checkNotNull(target, "Null target is not allowed.");
+
+		final Channel channel = new Channel(source, target, listener);
+		final Runnable scheduler = new Runnable() {
+			@Override
+			public void run() {
+				channel.schedule();
+			}
+		};
+		source.setReadableListener(scheduler);
+		if (channel.nonBlockingTarget != null) {
+			channel.nonBlockingTarget.setWritableListener(scheduler);
+		}
+		return channel;
+	}
+
+	/**
+	 * Stops all pump threads.
+	 */
+	@Override
+	public void close() {
+		shutdown = true;
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+	}
+}
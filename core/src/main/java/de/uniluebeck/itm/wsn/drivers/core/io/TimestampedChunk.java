@@ -0,0 +1,97 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A chunk of bytes received from a device together with the <code>System.nanoTime()</code> at which the connection
+ * signalled that the data was available. Chunks are pooled: a listener that is done with a chunk must call
+ * {@link #release()} exactly once, after which the chunk must not be accessed anymore.
+ */
+public class TimestampedChunk {
+
+	private static final Logger log = LoggerFactory.getLogger(TimestampedChunk.class);
+
+	private final TimestampedChunkPool pool;
+
+	private final byte[] data;
+
+	private int length;
+
+	private long receiveNanos;
+
+	/**
+	 * Number of listeners that did not release the chunk yet.
+	 */
+	private final AtomicInteger references = new AtomicInteger(0);
+
+	TimestampedChunk(final TimestampedChunkPool pool, final int capacity) {
+		this.pool = pool;
+		this.data = new byte[capacity];
+	}
+
+	/**
+	 * Returns the backing array. Only the first {@link #getLength()} bytes are valid.
+	 *
+	 * @return The chunk data.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return The <code>System.nanoTime()</code> at which the data was signalled as available by the connection.
+	 */
+	public long getReceiveNanos() {
+		return receiveNanos;
+	}
+
+	/**
+	 * Hands the chunk back to its pool once every listener has released it.
+	 */
+	public void release() {
+		if (references.decrementAndGet() == 0) {
+			pool.release(this);
+		}
+	}
+
+	/**
+	 * Fills in the length and timestamp and hands the chunk to all listeners. The chunk returns to its pool after the
+	 * last listener released it or right away if there are no listeners. A listener that throws is logged and its
+	 * reference is released for it, so it must not have released the chunk itself.
+	 *
+	 * @param length
+	 * 		The number of valid bytes in the chunk.
+	 * @param receiveNanos
+	 * 		The <code>System.nanoTime()</code> at which the data was received.
+	 * @param listeners
+	 * 		The listeners that receive the chunk.
+	 */
+	public void deliver(final int length, final long receiveNanos, final TimestampedChunkListener[] listeners) {
+
+		this.length = length;
+		this.receiveNanos = receiveNanos;
+
+		if (listeners.length == 0) {
+			pool.release(this);
+			return;
+		}
+
+		references.set(listeners.length);
+		for (TimestampedChunkListener listener : listeners) {
+			try {
+				listener.onChunkReceived(this);
+			} catch (RuntimeException e) {
+				log.error("Listener {} failed to handle a chunk: {}", listener, e);
+				release();
+			}
+		}
+	}
+}
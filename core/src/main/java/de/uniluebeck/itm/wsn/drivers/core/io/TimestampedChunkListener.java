@@ -0,0 +1,18 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+
+/**
+ * Listener for chunks received from a device. It is called on the thread that reads from the device, so it should
+ * return quickly and hand the chunk over to another thread if more work has to be done.
+ */
+public interface TimestampedChunkListener {
+
+	/**
+	 * Called for every chunk that was read from the device. The listener must call {@link TimestampedChunk#release()}
+	 * once it is done with the chunk, either before returning or later from any thread.
+	 *
+	 * @param chunk
+	 * 		The received bytes and their receive timestamp.
+	 */
+	void onChunkReceived(TimestampedChunk chunk);
+}
@@ -0,0 +1,72 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+
+/**
+ * A fixed size pool of {@link TimestampedChunk}s. Acquiring and releasing chunks does not allocate, so once listeners
+ * release their chunks in time the receive path runs without garbage. If the pool is exhausted because chunks are held
+ * too long, new chunks are created and later dropped on release if the pool is full.
+ */
+public class TimestampedChunkPool {
+
+	private final int chunkSize;
+
+	private final BlockingQueue<TimestampedChunk> freeChunks;
+
+	/**
+	 * Number of chunks that had to be created because the pool was empty.
+	 */
+	private final AtomicLong misses = new AtomicLong(0);
+
+	/**
+	 * Constructor.
+	 *
+	 * @param poolSize
+	 * 		The number of chunks kept in the pool.
+	 * @param chunkSize
+	 * 		The capacity of a single chunk in bytes.
+	 */
+	public TimestampedChunkPool(final int poolSize, final int chunkSize) {
+		checkArgument(poolSize > 0, "The pool size must be positive.");
+		checkArgument(chunkSize > 0, "The chunk size must be positive.");
+		this.chunkSize = chunkSize;
+		this.freeChunks = new ArrayBlockingQueue<TimestampedChunk>(poolSize);
+		for (int i = 0; i < poolSize; i++) {
+			freeChunks.offer(new TimestampedChunk(this, chunkSize));
+		}
+	}
+
+	/**
+	 * Takes a chunk from the pool.
+	 *
+	 * @return A free chunk.
+	 */
+	public TimestampedChunk acquire() {
+		final TimestampedChunk chunk = freeChunks.poll();
+		if (chunk != null) {
+			return chunk;
+		}
+		misses.incrementAndGet();
+		return new TimestampedChunk(this, chunkSize);
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * @return The number of chunks that had to be created because all pooled chunks were in use.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	void release(final TimestampedChunk chunk) {
+		freeChunks.offer(chunk);
+	}
+}
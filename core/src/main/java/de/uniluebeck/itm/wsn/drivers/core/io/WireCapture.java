@@ -0,0 +1,294 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+
+/**
+ * Records the bytes that pass a connection in both directions into a preallocated ring buffer. Every chunk is stored
+ * as a record with its <code>System.nanoTime()</code>, its {@link Direction} and its length. When the buffer is full
+ * the oldest records are overwritten, so the capture always holds the most recent traffic and never allocates after
+ * construction. A snapshot of the buffer can be written with {@link #writeTo(OutputStream)} and read offline with
+ * {@link WireCaptureReader}.
+ * <p/>
+ * Recording only copies the chunk into the buffer while holding a short lock. No formatting takes place, so the capture
+ * can stay enabled in production.
+ */
+public class WireCapture {
+
+	/**
+	 * The direction of a captured chunk.
+	 */
+	public enum Direction {
+
+		/**
+		 * Bytes written by the driver to the device.
+		 */
+		TO_DEVICE,
+
+		/**
+		 * Bytes read by the driver from the device.
+		 */
+		FROM_DEVICE
+	}
+
+	/**
+	 * The capacity that is used if no other value is given.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+	/**
+	 * Identifies a capture file. Followed by the format version.
+	 */
+	static final int MAGIC = 0x57435031;
+
+	static final int VERSION = 1;
+
+	/**
+	 * Size of a record header: timestamp, direction and length.
+	 */
+	static final int HEADER_SIZE = 8 + 1 + 4;
+
+	private final byte[] buffer;
+
+	private final byte[] header = new byte[HEADER_SIZE];
+
+	/**
+	 * Total number of bytes written to the buffer so far. The write position is <code>head % buffer.length</code>.
+	 */
+	private long head = 0;
+
+	/**
+	 * Position of the oldest record that has not been overwritten, counted like <code>head</code>.
+	 */
+	private long tail = 0;
+
+	private long records = 0;
+
+	private long overwrittenRecords = 0;
+
+	private long truncatedBytes = 0;
+
+	private volatile boolean enabled = true;
+
+	/**
+	 * Constructor.
+	 */
+	public WireCapture() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity
+	 * 		The size of the preallocated buffer in bytes.
+	 */
+	public WireCapture(final int capacity) {
+		checkArgument(capacity > HEADER_SIZE, "The capacity must be larger than " + HEADER_SIZE + " bytes.");
+		this.buffer = new byte[capacity];
+	}
+
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns recording on or off. Already captured records are kept.
+	 *
+	 * @param enabled
+	 * 		<code>true</code> to record new traffic.
+	 */
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Records a chunk that passed the connection now.
+	 *
+	 * @param direction
+	 * 		The direction of the chunk.
+	 * @param b
+	 * 		The array holding the chunk.
+	 * @param off
+	 * 		The offset of the chunk in the array.
+	 * @param len
+	 * 		The length of the chunk.
+	 */
+	public void record(final Direction direction, final byte[] b, final int off, final int len) {
+		record(direction, b, off, len, System.nanoTime());
+	}
+
+	/**
+	 * Records a chunk.
+	 *
+	 * @param direction
+	 * 		The direction of the chunk.
+	 * @param b
+	 * 		The array holding the chunk.
+	 * @param off
+	 * 		The offset of the chunk in the array.
+	 * @param len
+	 * 		The length of the chunk.
+	 * @param nanos
+	 * 		The <code>System.nanoTime()</code> at which the chunk passed the connection.
+	 */
+	public void record(final Direction direction, final byte[] b, final int off, final int len, final long nanos) {
+
+		if (!enabled || len <= 0) {
+			return;
+		}
+
+		// of a chunk larger than the whole buffer only the beginning is kept
+		final int length = Math.min(len, buffer.length - HEADER_SIZE);
+
+		synchronized (this) {
+
+			final int recordSize = HEADER_SIZE + length;
+			while (head + recordSize - tail > buffer.length) {
+				tail += HEADER_SIZE + readInt(tail + 9);
+				overwrittenRecords++;
+			}
+
+			writeLong(header, 0, nanos);
+			header[8] = (byte) direction.ordinal();
+			writeInt(header, 9, length);
+
+			put(header, 0, HEADER_SIZE);
+			put(b, off, length);
+
+			records++;
+			truncatedBytes += len - length;
+		}
+	}
+
+	/**
+	 * @return The total number of records captured since creation or the last {@link #clear()}, including the
+	 *         overwritten ones.
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * @return The number of records that have been overwritten by newer ones.
+	 */
+	public synchronized long getOverwrittenRecordCount() {
+		return overwrittenRecords;
+	}
+
+	/**
+	 * @return The number of bytes that were not captured because a chunk was larger than the buffer.
+	 */
+	public synchronized long getTruncatedBytes() {
+		return truncatedBytes;
+	}
+
+	/**
+	 * Removes all captured records and resets the counters.
+	 */
+	public synchronized void clear() {
+		head = 0;
+		tail = 0;
+		records = 0;
+		overwrittenRecords = 0;
+		truncatedBytes = 0;
+	}
+
+	/**
+	 * Writes a snapshot of all records that are currently held in the buffer, oldest first. The buffer is copied while
+	 * holding the lock, the stream is written afterwards so that a slow stream does not stall the connection.
+	 *
+	 * @param outputStream
+	 * 		The stream the capture is written to. It is not closed.
+	 *
+	 * @throws IOException
+	 * 		if writing to the stream fails.
+	 */
+	public void writeTo(final OutputStream outputStream) throws IOException {
+
+		final byte[] snapshot;
+		final long snapshotRecords;
+
+		synchronized (this) {
+			snapshot = new byte[(int) (head - tail)];
+			get(tail, snapshot);
+			snapshotRecords = records - overwrittenRecords;
+		}
+
+		final DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+		dataOutputStream.writeInt(MAGIC);
+		dataOutputStream.writeInt(VERSION);
+		dataOutputStream.writeLong(snapshotRecords);
+		dataOutputStream.write(snapshot);
+		dataOutputStream.flush();
+	}
+
+	/**
+	 * Wraps an input stream so that all bytes read from it are captured as {@link Direction#FROM_DEVICE}.
+	 *
+	 * @param inputStream
+	 * 		The stream to wrap.
+	 *
+	 * @return The capturing stream.
+	 */
+	public InputStream wrap(final InputStream inputStream) {
+		return new CapturingInputStream(checkNotNull(inputStream), this);
+	}
+
+	/**
+	 * Wraps an output stream so that all bytes written to it are captured as {@link Direction#TO_DEVICE}.
+	 *
+	 * @param outputStream
+	 * 		The stream to wrap.
+	 *
+	 * @return The capturing stream.
+	 */
+	public OutputStream wrap(final OutputStream outputStream) {
+		return new CapturingOutputStream(checkNotNull(outputStream), this);
+	}
+
+	private void put(final byte[] b, final int off, final int len) {
+		final int position = (int) (head % buffer.length);
+		final int first = Math.min(len, buffer.length - position);
+		System.arraycopy(b, off, buffer, position, first);
+		System.arraycopy(b, off + first, buffer, 0, len - first);
+		head += len;
+	}
+
+	private void get(final long from, final byte[] target) {
+		final int position = (int) (from % buffer.length);
+		final int first = Math.min(target.length, buffer.length - position);
+		System.arraycopy(buffer, position, target, 0, first);
+		System.arraycopy(buffer, 0, target, first, target.length - first);
+	}
+
+	private int readInt(final long from) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (buffer[(int) ((from + i) % buffer.length)] & 0xFF);
+		}
+		return value;
+	}
+
+	private static void writeLong(final byte[] target, final int offset, final long value) {
+		for (int i = 0; i < 8; i++) {
+			target[offset + i] = (byte) (value >>> (56 - 8 * i));
+		}
+	}
+
+	private static void writeInt(final byte[] target, final int offset, final int value) {
+		for (int i = 0; i < 4; i++) {
+			target[offset + i] = (byte) (value >>> (24 - 8 * i));
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import de.uniluebeck.itm.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Reads the records of a capture that has been written with {@link WireCapture#writeTo(java.io.OutputStream)}.
+ * Running the class prints a capture file as hex dump with the time relative to the first record.
+ */
+public class WireCaptureReader implements Closeable {
+
+	/**
+	 * A single captured chunk.
+	 */
+	public static class Record {
+
+		private final long nanos;
+
+		private final WireCapture.Direction direction;
+
+		private final byte[] data;
+
+		public Record(final long nanos, final WireCapture.Direction direction, final byte[] data) {
+			this.nanos = nanos;
+			this.direction = direction;
+			this.data = data;
+		}
+
+		/**
+		 * @return The <code>System.nanoTime()</code> at which the chunk passed the connection.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public WireCapture.Direction getDirection() {
+			return direction;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+	private final DataInputStream inputStream;
+
+	private final long recordCount;
+
+	private long recordsRead = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputStream
+	 * 		The stream holding the capture. It is closed by {@link #close()}.
+	 *
+	 * @throws IOException
+	 * 		if the stream does not start with a supported capture header.
+	 */
+	public WireCaptureReader(final InputStream inputStream) throws IOException {
+		this.inputStream = new DataInputStream(inputStream);
+
+		if (this.inputStream.readInt() != WireCapture.MAGIC) {
+			throw new IOException("Not a wire capture");
+		}
+
+		final int version = this.inputStream.readInt();
+		if (version != WireCapture.VERSION) {
+			throw new IOException("Unsupported wire capture version " + version);
+		}
+
+		recordCount = this.inputStream.readLong();
+	}
+
+	/**
+	 * @return The number of records in the capture.
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return The record or <code>null</code> if all records have been read.
+	 *
+	 * @throws IOException
+	 * 		if the capture is corrupt or truncated.
+	 */
+	public Record read() throws IOException {
+
+		if (recordsRead == recordCount) {
+			return null;
+		}
+
+		try {
+
+			final long nanos = inputStream.readLong();
+			final int direction = inputStream.readUnsignedByte();
+			final int length = inputStream.readInt();
+
+			if (direction >= WireCapture.Direction.values().length || length < 0) {
+				throw new IOException("Corrupt record " + recordsRead);
+			}
+
+			final byte[] data = new byte[length];
+			inputStream.readFully(data);
+
+			recordsRead++;
+			return new Record(nanos, WireCapture.Direction.values()[direction], data);
+
+		} catch (EOFException e) {
+			throw new IOException("Capture truncated after " + recordsRead + " of " + recordCount + " records", e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+
+	public static void main(final String[] args) throws IOException {
+
+		if (args.length != 1) {
+			System.err.println("Usage: WireCaptureReader <capture file>");
+			System.exit(1);
+		}
+
+		final WireCaptureReader reader =
+				new WireCaptureReader(new BufferedInputStream(new FileInputStream(args[0])));
+		try {
+
+			Long first = null;
+			Record record;
+			while ((record = reader.read()) != null) {
+				if (first == null) {
+					first = record.getNanos();
+				}
+				System.out.println(String.format("%12.6f ms %-11s %5d %s",
+						(record.getNanos() - first) / 1000000.0,
+						record.getDirection(),
+						record.getData().length,
+						StringUtils.toHexString(record.getData())
+				)
+				);
+			}
+
+		} finally {
+			reader.close();
+		}
+	}
+}
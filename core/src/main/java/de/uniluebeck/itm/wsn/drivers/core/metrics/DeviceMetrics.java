@@ -0,0 +1,239 @@
+package de.uniluebeck.itm.wsn.drivers.core.metrics;
+
+import com.google.inject.Singleton;
+import de.uniluebeck.itm.wsn.drivers.core.operation.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms per operation type, bytes transferred, retries and timeouts of one device. There is one instance
+ * per device injector, the device records its operations and the connection its traffic.
+ * <p/>
+ * Recording does not allocate once an operation type has been seen. The figures are published as a JMX MBean named
+ * <code>de.uniluebeck.itm.wsn.drivers:type=DeviceMetrics,name=&lt;port&gt;</code> while the device is connected.
+ */
+@Singleton
+public class DeviceMetrics implements DeviceMetricsMBean {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceMetrics.class);
+
+	private static final String DOMAIN = "de.uniluebeck.itm.wsn.drivers";
+
+	private final ConcurrentMap<Class<?>, OperationMetrics> operations =
+			new ConcurrentHashMap<Class<?>, OperationMetrics>();
+
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	private final AtomicLong retries = new AtomicLong();
+
+	@Nullable
+	private ObjectName objectName;
+
+	/**
+	 * Returns the metrics of an operation type and creates them on first use.
+	 *
+	 * @param operationType
+	 * 		The operation interface, e.g. <code>ProgramOperation.class</code>.
+	 *
+	 * @return The metrics of the type.
+	 */
+	public OperationMetrics forOperation(final Class<?> operationType) {
+		OperationMetrics metrics = operations.get(operationType);
+		if (metrics == null) {
+			final OperationMetrics created = new OperationMetrics(operationType.getSimpleName());
+			metrics = operations.putIfAbsent(operationType, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	public void recordOperation(final Class<?> operationType, final State state, final long nanos,
+								final long transferredBytes) {
+		forOperation(operationType).record(state, nanos, transferredBytes);
+	}
+
+	public void recordBytesSent(final long count) {
+		bytesSent.addAndGet(count);
+	}
+
+	public void recordBytesReceived(final long count) {
+		bytesReceived.addAndGet(count);
+	}
+
+	public void recordRetry() {
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * @return The bytes sent and received so far, used to attribute traffic to operations.
+	 */
+	public long getBytesTransferred() {
+		return bytesSent.get() + bytesReceived.get();
+	}
+
+	@Override
+	public String[] getOperationTypes() {
+		final List<String> names = new ArrayList<String>();
+		for (OperationMetrics metrics : operations.values()) {
+			names.add(metrics.getName());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.get();
+	}
+
+	@Override
+	public long getTimeouts() {
+		long timeouts = 0;
+		for (OperationMetrics metrics : operations.values()) {
+			timeouts += metrics.getTimeouts();
+		}
+		return timeouts;
+	}
+
+	@Override
+	public long getOperationCount(final String operationType) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getLatency().getCount();
+	}
+
+	@Override
+	public long getFailureCount(final String operationType) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getFailures();
+	}
+
+	@Override
+	public long getTimeoutCount(final String operationType) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getTimeouts();
+	}
+
+	@Override
+	public double getMeanLatencyMillis(final String operationType) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getLatency().getMeanMillis();
+	}
+
+	@Override
+	public double getLatencyMillisAtPercentile(final String operationType, final double percentile) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getLatency().getValueAtPercentile(percentile) / 1e6;
+	}
+
+	@Override
+	public double getMaxLatencyMillis(final String operationType) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getLatency().getMax(TimeUnit.NANOSECONDS) / 1e6;
+	}
+
+	@Override
+	public double getBytesPerSecond(final String operationType) {
+		final OperationMetrics metrics = find(operationType);
+		return metrics == null ? 0 : metrics.getBytesPerSecond();
+	}
+
+	@Override
+	public String getSummary() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(String.format("sent=%d B, received=%d B, retries=%d%n",
+				getBytesSent(), getBytesReceived(), getRetries()
+		)
+		);
+		for (OperationMetrics metrics : operations.values()) {
+			builder.append(metrics).append(String.format("%n"));
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (OperationMetrics metrics : operations.values()) {
+			metrics.reset();
+		}
+		bytesSent.set(0);
+		bytesReceived.set(0);
+		retries.set(0);
+	}
+
+	/**
+	 * Publishes these metrics on the platform MBean server. A registration under the same name is replaced.
+	 *
+	 * @param deviceName
+	 * 		The name of the device, usually the port it is connected to.
+	 */
+	public synchronized void register(final String deviceName) {
+		unregister();
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name =
+					new ObjectName(DOMAIN + ":type=DeviceMetrics,name=" + ObjectName.quote(deviceName));
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			log.warn("Unable to register device metrics for {}: {}", deviceName, e);
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server if they are registered.
+	 */
+	public synchronized void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			log.debug("Unable to unregister device metrics {}: {}", objectName, e);
+		}
+		objectName = null;
+	}
+
+	@Nullable
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Nullable
+	private OperationMetrics find(final String operationType) {
+		for (OperationMetrics metrics : operations.values()) {
+			if (metrics.getName().equals(operationType)) {
+				return metrics;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,39 @@
+package de.uniluebeck.itm.wsn.drivers.core.metrics;
+
+/**
+ * JMX view of the {@link DeviceMetrics} of one device. Operation types are given by their simple interface name, e.g.
+ * <code>ProgramOperation</code>.
+ */
+public interface DeviceMetricsMBean {
+
+	String[] getOperationTypes();
+
+	long getBytesSent();
+
+	long getBytesReceived();
+
+	long getRetries();
+
+	long getTimeouts();
+
+	long getOperationCount(String operationType);
+
+	long getFailureCount(String operationType);
+
+	long getTimeoutCount(String operationType);
+
+	double getMeanLatencyMillis(String operationType);
+
+	double getLatencyMillisAtPercentile(String operationType, double percentile);
+
+	double getMaxLatencyMillis(String operationType);
+
+	double getBytesPerSecond(String operationType);
+
+	/**
+	 * @return One line per operation type with counts, percentiles and throughput.
+	 */
+	String getSummary();
+
+	void reset();
+}
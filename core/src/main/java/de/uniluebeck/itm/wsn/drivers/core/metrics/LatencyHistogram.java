@@ -0,0 +1,133 @@
+package de.uniluebeck.itm.wsn.drivers.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A latency histogram with logarithmic buckets in the style of HdrHistogram. Values below {@value #SUB_BUCKETS} ns are
+ * counted exactly, larger values fall into buckets whose width is at most 1/{@value #HALF_SUB_BUCKETS} of their lower
+ * bound, so percentiles are accurate to about 3% over the whole range of <code>long</code>.
+ * <p/>
+ * Recording is lock free and does not allocate. Readers see a consistent count per bucket but may see a recording that
+ * is in progress only partially, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+	private static final int BUCKET_COUNT = indexOf(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one value.
+	 *
+	 * @param nanos
+	 * 		The latency in nanoseconds. Negative values are counted as zero.
+	 */
+	public void record(final long nanos) {
+
+		final long value = Math.max(0, nanos);
+
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax(final TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public double getMeanMillis() {
+		final long n = count.get();
+		return n == 0 ? 0 : sum.get() / 1e6 / n;
+	}
+
+	public long getTotal(final TimeUnit unit) {
+		return unit.convert(sum.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the value below or at which the given percentage of the recorded values lie.
+	 *
+	 * @param percentile
+	 * 		The percentile between 0 and 100.
+	 *
+	 * @return The upper bound of the bucket that contains the percentile in nanoseconds, 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+
+		checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100 (is %s)", percentile);
+
+		final long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+
+		final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValueOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		// shift so that the remaining value lies in [HALF_SUB_BUCKETS, SUB_BUCKETS)
+		final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) ((value >>> shift) - HALF_SUB_BUCKETS);
+	}
+
+	static long highestValueOf(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int offset = index - SUB_BUCKETS;
+		final int shift = offset / HALF_SUB_BUCKETS + 1;
+		final long subBucket = offset % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		final long highest = ((subBucket + 1) << shift) - 1;
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+}
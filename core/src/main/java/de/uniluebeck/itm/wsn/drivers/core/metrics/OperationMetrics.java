@@ -0,0 +1,123 @@
+package de.uniluebeck.itm.wsn.drivers.core.metrics;
+
+import de.uniluebeck.itm.wsn.drivers.core.operation.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, outcome and throughput figures of one operation type on one device.
+ */
+public class OperationMetrics {
+
+	private final String name;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final AtomicLong successes = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong timeouts = new AtomicLong();
+
+	private final AtomicLong cancellations = new AtomicLong();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	OperationMetrics(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records one finished operation.
+	 *
+	 * @param state
+	 * 		The final state of the operation.
+	 * @param nanos
+	 * 		The time from start to end of the operation.
+	 * @param transferredBytes
+	 * 		The number of bytes sent to and received from the device while the operation ran.
+	 */
+	public void record(final State state, final long nanos, final long transferredBytes) {
+
+		latency.record(nanos);
+		bytes.addAndGet(transferredBytes);
+
+		switch (state) {
+			case DONE:
+				successes.incrementAndGet();
+				break;
+			case TIMEOUT:
+				timeouts.incrementAndGet();
+				break;
+			case CANCELED:
+				cancellations.incrementAndGet();
+				break;
+			default:
+				failures.incrementAndGet();
+				break;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public long getSuccesses() {
+		return successes.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getCancellations() {
+		return cancellations.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return The bytes transferred per second of operation time, 0 if no operation was recorded.
+	 */
+	public double getBytesPerSecond() {
+		final long nanos = latency.getTotal(TimeUnit.NANOSECONDS);
+		return nanos == 0 ? 0 : bytes.get() * 1e9 / nanos;
+	}
+
+	void reset() {
+		latency.reset();
+		successes.set(0);
+		failures.set(0);
+		timeouts.set(0);
+		cancellations.set(0);
+		bytes.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[count=%d, ok=%d, failed=%d, timeouts=%d, canceled=%d, "
+				+ "p50=%.1f ms, p99=%.1f ms, max=%.1f ms, %.0f B/s]",
+				name,
+				latency.getCount(),
+				getSuccesses(),
+				getFailures(),
+				getTimeouts(),
+				getCancellations(),
+				latency.getValueAtPercentile(50) / 1e6,
+				latency.getValueAtPercentile(99) / 1e6,
+				latency.getMax(TimeUnit.NANOSECONDS) / 1e6,
+				getBytesPerSecond()
+		);
+	}
+}
@@ -0,0 +1,177 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvent;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEventType;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvents;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs the steps of an {@link OperationBatch} one after another as sub operations inside one {@link Session}. Each
+ * step gets its own timeout while the whole batch is limited by the timeout of this operation.
+ */
+public class BatchOperation extends TimeLimitedOperation<BatchResult> {
+
+	/**
+	 * The device state that is established once for the whole batch, e.g. the programming mode of a serial device.
+	 */
+	public interface Session {
+
+		/**
+		 * Enters the session, runs <code>callable</code> and leaves the session again.
+		 *
+		 * @param callable
+		 * 		The code to run inside the session.
+		 *
+		 * @return The result of <code>callable</code>.
+		 *
+		 * @throws Exception
+		 * 		if entering or leaving failed or <code>callable</code> threw an exception.
+		 */
+		<T> T call(Callable<T> callable) throws Exception;
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(BatchOperation.class);
+
+	/**
+	 * The operation types a step is recorded as, the first one the operation of the step implements.
+	 */
+	private static final Class<?>[] STEP_TYPES = {
+			ProgramOperation.class,
+			WriteMacAddressOperation.class,
+			WriteFlashOperation.class,
+			EraseFlashOperation.class,
+			ReadMacAddressOperation.class,
+			ReadFlashOperation.class,
+			GetChipTypeOperation.class,
+			IsNodeAliveOperation.class,
+			ResetOperation.class
+	};
+
+	private final OperationFactory operationFactory;
+
+	private final OperationBatch batch;
+
+	@Nullable
+	private final Session session;
+
+	private long stepsDoneNanos;
+
+	@Nullable
+	private DeviceMetrics metrics;
+
+	@Nullable
+	private String uri;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param timeLimiter
+	 * 		The limiter that enforces the timeout of the whole batch.
+	 * @param operationFactory
+	 * 		Creates the operations of the steps.
+	 * @param batch
+	 * 		The steps to run.
+	 * @param session
+	 * 		The session to run the steps in or <code>null</code> to run them as they are.
+	 * @param timeoutMillis
+	 * 		The timeout of the whole batch.
+	 * @param listener
+	 * 		Optional listener for the batch.
+	 */
+	public BatchOperation(final TimeLimiter timeLimiter, final OperationFactory operationFactory,
+						  final OperationBatch batch, @Nullable final Session session, final long timeoutMillis,
+						  @Nullable final OperationListener<BatchResult> listener) {
+		super(timeLimiter, timeoutMillis, listener);
+		this.operationFactory = checkNotNull(operationFactory, "Null operation factory is not allowed.");
+		this.batch = checkNotNull(batch, "Null batch is not allowed.");
+		this.session = session;
+	}
+
+	/**
+	 * Records every step in the metrics and as driver event, like the device does for the operations it schedules.
+	 *
+	 * @param metrics
+	 * 		The metrics of the device.
+	 * @param uri
+	 * 		The URI of the device for the driver events or <code>null</code> if it is not known.
+	 */
+	public void setMetrics(final DeviceMetrics metrics, @Nullable final String uri) {
+		this.metrics = checkNotNull(metrics, "Null metrics are not allowed.");
+		this.uri = uri;
+	}
+
+	@Override
+	protected BatchResult callInternal() throws Exception {
+
+		final BatchResult result = new BatchResult();
+		final long start = System.nanoTime();
+
+		final Callable<BatchResult> steps = new Callable<BatchResult>() {
+			@Override
+			public BatchResult call() throws Exception {
+				result.setEnterNanos(System.nanoTime() - start);
+				runSteps(result);
+				stepsDoneNanos = System.nanoTime();
+				return result;
+			}
+		};
+
+		if (session == null) {
+			steps.call();
+		} else {
+			session.call(steps);
+		}
+
+		result.setLeaveNanos(System.nanoTime() - stepsDoneNanos);
+
+		log.debug("Batch finished: {}", result);
+		return result;
+	}
+
+	private void runSteps(final BatchResult result) throws Exception {
+
+		final float fraction = 1f / batch.size();
+
+		for (int i = 0; i < batch.size() && !isCanceled(); i++) {
+
+			final Operation<?> operation = batch.getStep(i).createOperation(operationFactory, result);
+			final Class<?> type = getStepType(operation);
+			final DriverEvent event = DriverEvents.begin(DriverEventType.OPERATION);
+			final long bytesBefore = metrics != null ? metrics.getBytesTransferred() : 0;
+			final long stepStart = System.nanoTime();
+			final Object stepResult;
+			try {
+				stepResult = runSubOperation(operation, fraction);
+			} finally {
+				final long nanos = System.nanoTime() - stepStart;
+				final long bytes = metrics != null ? metrics.getBytesTransferred() - bytesBefore : 0;
+				if (metrics != null) {
+					metrics.recordOperation(type, operation.getState(), nanos, bytes);
+				}
+				if (event != null) {
+					event.commit(type.getSimpleName(), uri, operation.getState(), bytes);
+				}
+			}
+			result.addStep(batch.getName(i), stepResult, System.nanoTime() - stepStart);
+
+			log.trace("Batch step {} ({}) done", i, batch.getName(i));
+		}
+	}
+
+	private static Class<?> getStepType(final Operation<?> operation) {
+		for (Class<?> type : STEP_TYPES) {
+			if (type.isInstance(operation)) {
+				return type;
+			}
+		}
+		return operation.getClass();
+	}
+}
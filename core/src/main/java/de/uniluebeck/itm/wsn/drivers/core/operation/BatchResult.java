@@ -0,0 +1,103 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results and the timing of the steps of an {@link OperationBatch}.
+ */
+public class BatchResult {
+
+	/**
+	 * Result and duration of one step.
+	 */
+	public static class StepResult {
+
+		private final String name;
+
+		private final Object result;
+
+		private final long durationNanos;
+
+		StepResult(final String name, final Object result, final long durationNanos) {
+			this.name = name;
+			this.result = result;
+			this.durationNanos = durationNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Object getResult() {
+			return result;
+		}
+
+		public long getDuration(final TimeUnit unit) {
+			return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private final List<StepResult> steps = new ArrayList<StepResult>();
+
+	private long enterNanos;
+
+	private long leaveNanos;
+
+	void addStep(final String name, final Object result, final long durationNanos) {
+		steps.add(new StepResult(name, result, durationNanos));
+	}
+
+	void setEnterNanos(final long enterNanos) {
+		this.enterNanos = enterNanos;
+	}
+
+	void setLeaveNanos(final long leaveNanos) {
+		this.leaveNanos = leaveNanos;
+	}
+
+	public List<StepResult> getSteps() {
+		return Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * Returns the result of a step.
+	 *
+	 * @param index
+	 * 		The index of the step in the batch.
+	 * @param type
+	 * 		The result type of the step.
+	 *
+	 * @return The result of the step.
+	 */
+	public <T> T getResult(final int index, final Class<T> type) {
+		return type.cast(steps.get(index).getResult());
+	}
+
+	/**
+	 * @return The time it took to enter the programming mode before the first step.
+	 */
+	public long getEnterDuration(final TimeUnit unit) {
+		return unit.convert(enterNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return The time it took to leave the programming mode after the last step.
+	 */
+	public long getLeaveDuration(final TimeUnit unit) {
+		return unit.convert(leaveNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder("BatchResult[enter=")
+				.append(getEnterDuration(TimeUnit.MILLISECONDS)).append(" ms");
+		for (StepResult step : steps) {
+			builder.append(", ").append(step.getName()).append('=')
+					.append(step.getDuration(TimeUnit.MILLISECONDS)).append(" ms");
+		}
+		return builder.append(", leave=").append(getLeaveDuration(TimeUnit.MILLISECONDS)).append(" ms]").toString();
+	}
+}
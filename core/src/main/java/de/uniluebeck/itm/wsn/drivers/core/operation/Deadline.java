@@ -0,0 +1,177 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A point in time until which an operation and everything it does has to be finished.
+ * <p/>
+ * A {@link TimeLimitedOperation} installs its deadline as the {@link #current() current deadline} of the executing
+ * thread while it runs. Sub operations never get more time than the parent has left and helpers that wait for the
+ * device use {@link #limit(int)} so a wait never outlasts the operation that issued it.
+ */
+public final class Deadline {
+
+	/**
+	 * A deadline that never expires. It is the current deadline of threads that do not run an operation.
+	 */
+	public static final Deadline NONE = new Deadline(Long.MAX_VALUE, true);
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>() {
+		@Override
+		protected Deadline initialValue() {
+			return NONE;
+		}
+	};
+
+	private final long deadlineNanos;
+
+	private final boolean infinite;
+
+	private Deadline(final long deadlineNanos, final boolean infinite) {
+		this.deadlineNanos = deadlineNanos;
+		this.infinite = infinite;
+	}
+
+	/**
+	 * Creates a deadline that expires after the given duration from now.
+	 *
+	 * @param duration
+	 * 		The time until the deadline expires.
+	 * @param unit
+	 * 		The unit of <code>duration</code>.
+	 *
+	 * @return The new deadline.
+	 */
+	public static Deadline after(final long duration, final TimeUnit unit) {
+		checkNotNull(unit, "Null time unit is not allowed.");
+		checkArgument(duration >= 0, "The duration must not be negative.");
+		return new Deadline(System.nanoTime() + unit.toNanos(duration), false);
+	}
+
+	/**
+	 * Returns the deadline of the operation that is running on the calling thread.
+	 *
+	 * @return The current deadline or {@link #NONE} if no operation is running.
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Makes <code>deadline</code> the current deadline of the calling thread.
+	 *
+	 * @param deadline
+	 * 		The new current deadline.
+	 *
+	 * @return The previous deadline that has to be restored with this method when the operation is done.
+	 */
+	static Deadline setCurrent(final Deadline deadline) {
+		checkNotNull(deadline, "Null deadline is not allowed.");
+		final Deadline previous = CURRENT.get();
+		CURRENT.set(deadline);
+		return previous;
+	}
+
+	/**
+	 * Returns the earlier one of this and the given deadline.
+	 *
+	 * @param other
+	 * 		The deadline to compare with.
+	 *
+	 * @return The deadline that expires first.
+	 */
+	public Deadline min(final Deadline other) {
+		if (other.infinite) {
+			return this;
+		}
+		if (infinite) {
+			return other;
+		}
+		return other.deadlineNanos - deadlineNanos < 0 ? other : this;
+	}
+
+	public boolean isInfinite() {
+		return infinite;
+	}
+
+	public boolean isExpired() {
+		return !infinite && deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Returns the time left until the deadline expires.
+	 *
+	 * @param unit
+	 * 		The unit of the returned value.
+	 *
+	 * @return The remaining time which is zero if the deadline has expired or {@link Long#MAX_VALUE} if it is infinite.
+	 */
+	public long remaining(final TimeUnit unit) {
+		if (infinite) {
+			return Long.MAX_VALUE;
+		}
+		return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+	public long remainingMillis() {
+		return remaining(TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Shortens a timeout so that it does not exceed this deadline.
+	 *
+	 * @param timeoutMillis
+	 * 		The timeout that is used if enough time is left.
+	 *
+	 * @return The smaller one of <code>timeoutMillis</code> and the remaining time.
+	 *
+	 * @throws TimeoutException
+	 * 		if the deadline has already expired.
+	 */
+	public int limit(final int timeoutMillis) throws TimeoutException {
+		return (int) limit((long) timeoutMillis);
+	}
+
+	/**
+	 * Shortens a timeout so that it does not exceed this deadline.
+	 *
+	 * @param timeoutMillis
+	 * 		The timeout that is used if enough time is left.
+	 *
+	 * @return The smaller one of <code>timeoutMillis</code> and the remaining time.
+	 *
+	 * @throws TimeoutException
+	 * 		if the deadline has already expired.
+	 */
+	public long limit(final long timeoutMillis) throws TimeoutException {
+		if (infinite) {
+			return timeoutMillis;
+		}
+		check();
+		// round up so that a timeout derived from this deadline never fires before the deadline itself expired
+		final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(remaining(TimeUnit.NANOSECONDS) + 999999);
+		return Math.max(1, Math.min(timeoutMillis, remainingMillis));
+	}
+
+	/**
+	 * Throws a {@link TimeoutException} if the deadline has expired.
+	 *
+	 * @throws TimeoutException
+	 * 		if the deadline has expired.
+	 */
+	public void check() throws TimeoutException {
+		if (isExpired()) {
+			throw new TimeoutException("Deadline expired");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return infinite ? "Deadline[none]" : "Deadline[" + remainingMillis() + " ms remaining]";
+	}
+}
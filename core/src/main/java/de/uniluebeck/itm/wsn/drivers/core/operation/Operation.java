@@ -1,5 +1,7 @@
 package de.uniluebeck.itm.wsn.drivers.core.operation;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.util.concurrent.Callable;
 
 /**
@@ -13,10 +15,19 @@ import java.util.concurrent.Callable;
 public interface Operation<ResultType> extends Callable<ResultType> {
 
 	/**
-	 * Request to cancel the operation.
+	 * Request to cancel the operation and block until it is done.
 	 */
 	void cancel();
 
+	/**
+	 * Request to cancel the operation without waiting for it. A running operation is interrupted so that it stops
+	 * waiting for the device at once.
+	 *
+	 * @return A future that completes with the final state of the operation as soon as it is done. The state is
+	 * 		{@link State#CANCELED} unless the operation finished before the request took effect.
+	 */
+	ListenableFuture<State> cancelAsync();
+
 	/**
 	 * Returns the state of the operation.
 	 *
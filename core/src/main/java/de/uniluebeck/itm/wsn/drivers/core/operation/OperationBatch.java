@@ -0,0 +1,186 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A list of operations that a device runs back-to-back in one programming session, see
+ * {@link de.uniluebeck.itm.wsn.drivers.core.Device#executeBatch(OperationBatch, long, OperationListener)}. The device
+ * enters the programming mode once before the first step and leaves it after the last, instead of switching for every
+ * single operation.
+ * <p/>
+ * A typical maintenance job:
+ * <pre>
+ * OperationBatch batch = new OperationBatch.Builder()
+ *     .readMac(5000)
+ *     .program(image, 120000)
+ *     .readFlash(0, image.length, 60000)
+ *     .reset(1000)
+ *     .build();
+ * </pre>
+ */
+public class OperationBatch {
+
+	/**
+	 * Creates the operation of a batch step.
+	 */
+	public interface Step {
+
+		/**
+		 * Creates the operation of this step. It is called when the step is about to run, so it may use the results of
+		 * earlier steps.
+		 *
+		 * @param factory
+		 * 		The operation factory of the device.
+		 * @param previousResults
+		 * 		The results of the steps that already ran.
+		 *
+		 * @return The operation to run.
+		 *
+		 * @throws Exception
+		 * 		if the operation can not be created. The batch fails with this exception.
+		 */
+		Operation<?> createOperation(OperationFactory factory, BatchResult previousResults) throws Exception;
+	}
+
+	private final ImmutableList<String> names;
+
+	private final ImmutableList<Step> steps;
+
+	private OperationBatch(final ImmutableList<String> names, final ImmutableList<Step> steps) {
+		this.names = names;
+		this.steps = steps;
+	}
+
+	public int size() {
+		return steps.size();
+	}
+
+	public String getName(final int index) {
+		return names.get(index);
+	}
+
+	public Step getStep(final int index) {
+		return steps.get(index);
+	}
+
+	/**
+	 * Builder for batches.
+	 */
+	public static class Builder {
+
+		private final ImmutableList.Builder<String> names = ImmutableList.builder();
+
+		private final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+
+		private int size = 0;
+
+		/**
+		 * Appends a step.
+		 *
+		 * @param name
+		 * 		The name of the step that is used for reporting.
+		 * @param step
+		 * 		Creates the operation of the step.
+		 *
+		 * @return This builder.
+		 */
+		public Builder add(final String name, final Step step) {
+			names.add(checkNotNull(name, "Null name is not allowed."));
+			steps.add(checkNotNull(step, "Null step is not allowed."));
+			size++;
+			return this;
+		}
+
+		public Builder getChipType(final long timeoutMillis) {
+			return add("getChipType", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createGetChipTypeOperation(timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder readMac(final long timeoutMillis) {
+			return add("readMac", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createReadMacAddressOperation(timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder writeMac(final MacAddress macAddress, final long timeoutMillis) {
+			checkNotNull(macAddress, "Null MAC address is not allowed.");
+			return add("writeMac", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createWriteMacAddressOperation(macAddress, timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder program(final byte[] image, final long timeoutMillis) {
+			checkNotNull(image, "Null image is not allowed.");
+			return add("program", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createProgramOperation(image, timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder readFlash(final int address, final int length, final long timeoutMillis) {
+			return add("readFlash", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createReadFlashOperation(address, length, timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder writeFlash(final int address, final byte[] data, final long timeoutMillis) {
+			checkNotNull(data, "Null data is not allowed.");
+			return add("writeFlash", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createWriteFlashOperation(address, data, data.length, timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder eraseFlash(final long timeoutMillis) {
+			return add("eraseFlash", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createEraseFlashOperation(timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public Builder reset(final long timeoutMillis) {
+			return add("reset", new Step() {
+				@Override
+				public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+					return factory.createResetOperation(timeoutMillis, null);
+				}
+			}
+			);
+		}
+
+		public OperationBatch build() {
+			checkArgument(size > 0, "A batch needs at least one step.");
+			return new OperationBatch(names.build(), steps.build());
+		}
+	}
+}
@@ -9,7 +9,7 @@ import java.util.concurrent.TimeoutException;
 
 public class OperationFutureImpl<V> implements OperationFuture<V> {
 
-	private final SettableFuture future = SettableFuture.create();
+	private final SettableFuture<V> future = SettableFuture.create();
 
 	private final Operation<V> operation;
 
@@ -29,7 +29,11 @@ public class OperationFutureImpl<V> implements OperationFuture<V> {
 
 	@Override
 	public boolean cancel(final boolean mayInterruptIfRunning) {
-		return future.cancel(mayInterruptIfRunning);
+		if (!future.cancel(mayInterruptIfRunning)) {
+			return false;
+		}
+		operation.cancelAsync();
+		return true;
 	}
 
 	@Override
@@ -43,23 +47,20 @@ public class OperationFutureImpl<V> implements OperationFuture<V> {
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public V get() throws InterruptedException, ExecutionException {
-		return (V) future.get();
+		return future.get();
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public V get(final long timeout, final TimeUnit unit)
 			throws InterruptedException, ExecutionException, TimeoutException {
-		return (V) future.get(timeout, unit);
+		return future.get(timeout, unit);
 	}
 
 	public boolean setException(final Throwable throwable) {
 		return future.setException(throwable);
 	}
 
-	@SuppressWarnings("unchecked")
 	public boolean set(final V result) {
 		return future.set(result);
 	}
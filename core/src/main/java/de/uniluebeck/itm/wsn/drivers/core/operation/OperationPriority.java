@@ -0,0 +1,23 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+/**
+ * The priority with which an {@link OperationScheduler} picks a queued operation. Declared from highest to lowest.
+ */
+public enum OperationPriority {
+
+	/**
+	 * Short queries like checking if the node is alive or reading the MAC address.
+	 */
+	HIGH,
+
+	/**
+	 * Operations of moderate length like a reset or reading a part of the flash.
+	 */
+	NORMAL,
+
+	/**
+	 * Long running operations like programming or erasing the flash.
+	 */
+	LOW
+
+}
@@ -0,0 +1,591 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+
+/**
+ * Runs the operations of a single device strictly one after another on one thread, but picks the next operation by
+ * {@link OperationPriority} instead of by submission order. A cheap query therefore does not wait behind queued long
+ * running reads.
+ * <p/>
+ * Only read-only operations are reordered. An operation that changes the device is a barrier: it runs after all
+ * operations submitted before it, and no operation submitted after it runs before it. A read after a write therefore
+ * always sees the written state. Operations of the same type run in submission order. Between types of the same priority the scheduler alternates so
+ * that one type can not monopolize the device. Operations that have been waiting for longer than the aging interval
+ * are treated as one priority higher per interval so that low priority operations do not starve.
+ * <p/>
+ * The number of queued operations can be limited. What happens to an operation that exceeds the limit is decided by
+ * the {@link AdmissionPolicy}. Rejected operations fail with a {@link RejectedExecutionException}.
+ */
+public class OperationScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(OperationScheduler.class);
+
+	/**
+	 * The aging interval that is used if no other value is given.
+	 */
+	public static final long DEFAULT_AGING_MILLIS = 30000;
+
+	/**
+	 * Decides which operation is rejected if the queue is full.
+	 */
+	public enum AdmissionPolicy {
+
+		/**
+		 * The new operation is rejected.
+		 */
+		REJECT_NEW,
+
+		/**
+		 * The newest queued operation with the lowest priority is rejected to make room, if its priority is lower than
+		 * the one of the new operation. Otherwise the new operation is rejected.
+		 */
+		REJECT_LOWER_PRIORITY
+
+	}
+
+	private static class Entry<T> {
+
+		private final Class<?> type;
+
+		private final OperationPriority priority;
+
+		private final boolean barrier;
+
+		private final Callable<T> task;
+
+		private final SettableFuture<T> future = SettableFuture.create();
+
+		private final long sequence;
+
+		private final long enqueueNanos = System.nanoTime();
+
+		private Entry(final Class<?> type, final OperationPriority priority, final boolean barrier,
+					  final Callable<T> task, final long sequence) {
+			this.type = type;
+			this.priority = priority;
+			this.barrier = barrier;
+			this.task = task;
+			this.sequence = sequence;
+		}
+
+		private void run() {
+			if (future.isCancelled()) {
+				return;
+			}
+			try {
+				future.set(task.call());
+			} catch (Throwable t) {
+				future.setException(t);
+			}
+		}
+	}
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition queueNotEmpty = lock.newCondition();
+
+	/**
+	 * One FIFO queue per operation type.
+	 */
+	private final Map<Class<?>, Deque<Entry<?>>> queues = new LinkedHashMap<Class<?>, Deque<Entry<?>>>();
+
+	/**
+	 * The queued barriers in submission order.
+	 */
+	private final Deque<Entry<?>> barriers = new ArrayDeque<Entry<?>>();
+
+	/**
+	 * The value of {@link #dispatched} when an operation of the type was picked last.
+	 */
+	private final Map<Class<?>, Long> lastDispatched = new HashMap<Class<?>, Long>();
+
+	private final int[] queueDepthByPriority = new int[OperationPriority.values().length];
+
+	private volatile int maxQueuedOperations;
+
+	private volatile AdmissionPolicy admissionPolicy;
+
+	private volatile long agingMillis = DEFAULT_AGING_MILLIS;
+
+	private int queueDepth = 0;
+
+	private int maxQueueDepth = 0;
+
+	private long sequence = 0;
+
+	private long dispatched = 0;
+
+	private long submitted = 0;
+
+	private long rejected = 0;
+
+	private long completed = 0;
+
+	private long totalWaitNanos = 0;
+
+	private long maxWaitNanos = 0;
+
+	private boolean shutdown = false;
+
+	private Thread worker;
+
+	/**
+	 * Constructor for a scheduler without a limit on the number of queued operations.
+	 */
+	public OperationScheduler() {
+		this(Integer.MAX_VALUE, AdmissionPolicy.REJECT_NEW);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxQueuedOperations
+	 * 		The number of operations that may wait for execution. The running operation is not counted.
+	 * @param admissionPolicy
+	 * 		Decides which operation is rejected if the queue is full.
+	 */
+	public OperationScheduler(final int maxQueuedOperations, final AdmissionPolicy admissionPolicy) {
+		setMaxQueuedOperations(maxQueuedOperations);
+		setAdmissionPolicy(admissionPolicy);
+	}
+
+	public int getMaxQueuedOperations() {
+		return maxQueuedOperations;
+	}
+
+	public void setMaxQueuedOperations(final int maxQueuedOperations) {
+		checkArgument(maxQueuedOperations > 0, "The maximum number of queued operations must be positive.");
+		this.maxQueuedOperations = maxQueuedOperations;
+	}
+
+	public AdmissionPolicy getAdmissionPolicy() {
+		return admissionPolicy;
+	}
+
+	public void setAdmissionPolicy(final AdmissionPolicy admissionPolicy) {
+		this.admissionPolicy = checkNotNull(admissionPolicy, "Null admission policy is not allowed.");
+	}
+
+	public long getAgingMillis() {
+		return agingMillis;
+	}
+
+	/**
+	 * Sets the time after which a waiting operation is treated as one priority higher.
+	 *
+	 * @param agingMillis
+	 * 		The aging interval or <code>0</code> to disable aging.
+	 */
+	public void setAgingMillis(final long agingMillis) {
+		checkArgument(agingMillis >= 0, "Negative aging interval is not allowed.");
+		this.agingMillis = agingMillis;
+	}
+
+	/**
+	 * Starts the thread that executes the operations.
+	 *
+	 * @param threadFactory
+	 * 		The factory for the worker thread.
+	 */
+	public void start(final ThreadFactory threadFactory) {
+		lock.lock();
+		try {
+			checkState(worker == null, "Scheduler has already been started.");
+			worker = threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					dispatchLoop();
+				}
+			}
+			);
+			worker.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a task for execution.
+	 *
+	 * @param type
+	 * 		The type of the operation. Operations of the same type run in submission order.
+	 * @param priority
+	 * 		The priority of the operation.
+	 * @param barrier
+	 * 		<code>true</code> if the operation changes the device. It then runs in submission order relative to all
+	 * 		other operations. Otherwise it may run before operations submitted earlier, but not before an earlier
+	 * 		barrier.
+	 * @param task
+	 * 		The task that is executed.
+	 * @param <T>
+	 * 		The result type of the task.
+	 *
+	 * @return A future that holds the result of the task. It fails with a {@link RejectedExecutionException} if the
+	 *         task was not admitted or was displaced by a task of higher priority.
+	 */
+	public <T> ListenableFuture<T> submit(final Class<?> type, final OperationPriority priority,
+										  final boolean barrier, final Callable<T> task) {
+
+		checkNotNull(type, "Null type is not allowed.");
+		checkNotNull(priority, "Null priority is not allowed.");
+		checkNotNull(task, "Null task is not allowed.");
+
+		Entry<?> displaced = null;
+		final Entry<T> entry;
+
+		lock.lock();
+		try {
+
+			entry = new Entry<T>(type, priority, barrier, task, sequence++);
+			submitted++;
+
+			if (shutdown) {
+				rejected++;
+				entry.future.setException(new RejectedExecutionException("Scheduler has been shut down"));
+				return entry.future;
+			}
+
+			if (queueDepth >= maxQueuedOperations) {
+
+				displaced = admissionPolicy == AdmissionPolicy.REJECT_LOWER_PRIORITY ? findLowestPriority() : null;
+
+				if (displaced == null || displaced.priority.compareTo(priority) <= 0) {
+					rejected++;
+					log.debug("Rejecting {} operation, {} operations queued", type.getSimpleName(), queueDepth);
+					entry.future.setException(new RejectedExecutionException(
+							"Operation queue is full (" + queueDepth + " operations)"
+					)
+					);
+					return entry.future;
+				}
+
+				remove(displaced);
+				rejected++;
+				log.debug("Displacing queued {} operation by {} operation",
+						displaced.type.getSimpleName(), type.getSimpleName()
+				);
+			}
+
+			Deque<Entry<?>> queue = queues.get(type);
+			if (queue == null) {
+				queue = new ArrayDeque<Entry<?>>();
+				queues.put(type, queue);
+			}
+			queue.addLast(entry);
+			if (barrier) {
+				barriers.addLast(entry);
+			}
+
+			queueDepth++;
+			queueDepthByPriority[priority.ordinal()]++;
+			maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+
+			queueNotEmpty.signal();
+
+		} finally {
+			lock.unlock();
+		}
+
+		if (displaced != null) {
+			// completed outside of the lock because listeners of the future run synchronously
+			displaced.future.setException(new RejectedExecutionException(
+					"Operation was displaced by an operation with higher priority"
+			)
+			);
+		}
+
+		return entry.future;
+	}
+
+	/**
+	 * Stops accepting operations, fails all queued operations and waits for the running one to finish. If it does not
+	 * finish in time the worker thread is interrupted.
+	 *
+	 * @param timeout
+	 * 		The time to wait for the running operation.
+	 * @param unit
+	 * 		The unit of <code>timeout</code>.
+	 */
+	public void shutdown(final long timeout, final TimeUnit unit) {
+
+		final Deque<Entry<?>> pending = new ArrayDeque<Entry<?>>();
+		final Thread currentWorker;
+
+		lock.lock();
+		try {
+			shutdown = true;
+			for (Deque<Entry<?>> queue : queues.values()) {
+				pending.addAll(queue);
+				queue.clear();
+			}
+			barriers.clear();
+			queueDepth = 0;
+			for (int i = 0; i < queueDepthByPriority.length; i++) {
+				queueDepthByPriority[i] = 0;
+			}
+			queueNotEmpty.signalAll();
+			currentWorker = worker;
+		} finally {
+			lock.unlock();
+		}
+
+		for (Entry<?> entry : pending) {
+			entry.future.setException(new RejectedExecutionException("Scheduler has been shut down"));
+		}
+
+		if (currentWorker != null && currentWorker != Thread.currentThread()) {
+			try {
+				currentWorker.join(unit.toMillis(timeout));
+				if (currentWorker.isAlive()) {
+					log.warn("Running operation did not finish within {} {}, interrupting", timeout, unit);
+					currentWorker.interrupt();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of operations waiting for execution.
+	 */
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return queueDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param priority
+	 * 		The priority of interest.
+	 *
+	 * @return The number of operations with the given priority waiting for execution.
+	 */
+	public int getQueueDepth(final OperationPriority priority) {
+		lock.lock();
+		try {
+			return queueDepthByPriority[priority.ordinal()];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The largest number of operations that were waiting at the same time.
+	 */
+	public int getMaxQueueDepth() {
+		lock.lock();
+		try {
+			return maxQueueDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getSubmittedCount() {
+		lock.lock();
+		try {
+			return submitted;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of operations that were not admitted or displaced from the queue.
+	 */
+	public long getRejectedCount() {
+		lock.lock();
+		try {
+			return rejected;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of operations that have been executed, successfully or not.
+	 */
+	public long getCompletedCount() {
+		lock.lock();
+		try {
+			return completed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The average time the executed operations waited in the queue.
+	 */
+	public long getAverageWaitNanos() {
+		lock.lock();
+		try {
+			return dispatched == 0 ? 0 : totalWaitNanos / dispatched;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The longest time an executed operation waited in the queue.
+	 */
+	public long getMaxWaitNanos() {
+		lock.lock();
+		try {
+			return maxWaitNanos;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void dispatchLoop() {
+		while (true) {
+
+			final Entry<?> entry;
+			try {
+				entry = take();
+			} catch (InterruptedException e) {
+				log.trace("Operation scheduler interrupted, shutting down");
+				return;
+			}
+
+			if (entry == null) {
+				return;
+			}
+
+			entry.run();
+
+			lock.lock();
+			try {
+				completed++;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Blocks until an operation is queued and removes the one that has to be executed next.
+	 *
+	 * @return The next operation or <code>null</code> if the scheduler has been shut down.
+	 */
+	private Entry<?> take() throws InterruptedException {
+		lock.lock();
+		try {
+
+			while (queueDepth == 0 && !shutdown) {
+				queueNotEmpty.await();
+			}
+
+			if (shutdown) {
+				return null;
+			}
+
+			final long now = System.nanoTime();
+			final long agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+
+			// the oldest queued operation is always eligible, so one of the heads is picked
+			long oldestSequence = Long.MAX_VALUE;
+			for (Deque<Entry<?>> queue : queues.values()) {
+				final Entry<?> head = queue.peekFirst();
+				if (head != null) {
+					oldestSequence = Math.min(oldestSequence, head.sequence);
+				}
+			}
+			final Entry<?> firstBarrier = barriers.peekFirst();
+
+			Entry<?> next = null;
+			long nextEffectivePriority = 0;
+			long nextLastDispatched = 0;
+
+			for (Deque<Entry<?>> queue : queues.values()) {
+
+				final Entry<?> head = queue.peekFirst();
+				if (head == null) {
+					continue;
+				}
+
+				// a barrier waits for everything before it, everything after a barrier waits for the barrier
+				final boolean eligible = head.barrier ?
+						head.sequence == oldestSequence :
+						firstBarrier == null || head.sequence < firstBarrier.sequence;
+				if (!eligible) {
+					continue;
+				}
+
+				final long effectivePriority = head.priority.ordinal()
+						- (agingNanos > 0 ? (now - head.enqueueNanos) / agingNanos : 0);
+				final Long typeLastDispatched = lastDispatched.get(head.type);
+				final long headLastDispatched = typeLastDispatched == null ? -1 : typeLastDispatched;
+
+				// lower effective priority first, then the type that was served longest ago
+				if (next == null
+						|| effectivePriority < nextEffectivePriority
+						|| (effectivePriority == nextEffectivePriority && headLastDispatched < nextLastDispatched)) {
+					next = head;
+					nextEffectivePriority = effectivePriority;
+					nextLastDispatched = headLastDispatched;
+				}
+			}
+
+			remove(next);
+			lastDispatched.put(next.type, dispatched++);
+
+			final long waitNanos = now - next.enqueueNanos;
+			totalWaitNanos += waitNanos;
+			maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+
+			return next;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Entry<?> findLowestPriority() {
+		Entry<?> lowest = null;
+		for (Deque<Entry<?>> queue : queues.values()) {
+			for (Entry<?> entry : queue) {
+				if (lowest == null
+						|| entry.priority.compareTo(lowest.priority) > 0
+						|| (entry.priority == lowest.priority && entry.sequence > lowest.sequence)) {
+					lowest = entry;
+				}
+			}
+		}
+		return lowest;
+	}
+
+	private void remove(final Entry<?> entry) {
+		queues.get(entry.type).remove(entry);
+		if (entry.barrier) {
+			barriers.remove(entry);
+		}
+		queueDepth--;
+		queueDepthByPriority[entry.priority.ordinal()]--;
+	}
+}
@@ -0,0 +1,308 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides which failures of a single bootloader frame are retried, how often and with which backoff. Helpers retry
+ * only the frame that failed, so a lost reply or a NACK does not abort the whole operation.
+ * <p/>
+ * Failures are retried only if a rule matches them. The first matching rule wins, so more specific types have to be
+ * added first:
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy.Builder()
+ *     .maxAttempts(5)
+ *     .backoff(20, 2, 500)
+ *     .retryOn(InvalidChecksumException.class)
+ *     .retryOn(TimeoutException.class, 3)
+ *     .build();
+ * </pre>
+ * Retries never outlast the {@link Deadline} of the running operation and stop as soon as the operation is canceled.
+ */
+public class RetryPolicy {
+
+	/**
+	 * Policy that never retries.
+	 */
+	public static final RetryPolicy NONE = new Builder().maxAttempts(1).build();
+
+	private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+	private static class Rule {
+
+		private final Class<? extends Exception> type;
+
+		private final int maxAttempts;
+
+		private Rule(final Class<? extends Exception> type, final int maxAttempts) {
+			this.type = type;
+			this.maxAttempts = maxAttempts;
+		}
+	}
+
+	private final int maxAttempts;
+
+	private final long initialBackoffMillis;
+
+	private final double backoffMultiplier;
+
+	private final long maxBackoffMillis;
+
+	private final ImmutableList<Rule> rules;
+
+	private RetryPolicy(final Builder builder) {
+		this.maxAttempts = builder.maxAttempts;
+		this.initialBackoffMillis = builder.initialBackoffMillis;
+		this.backoffMultiplier = builder.backoffMultiplier;
+		this.maxBackoffMillis = builder.maxBackoffMillis;
+		final ImmutableList.Builder<Rule> rules = ImmutableList.builder();
+		for (Rule rule : builder.rules.build()) {
+			rules.add(new Rule(rule.type, rule.maxAttempts < 0 ? maxAttempts : rule.maxAttempts));
+		}
+		this.rules = rules.build();
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Returns how often an action that failed with <code>failure</code> may be attempted in total.
+	 *
+	 * @param failure
+	 * 		The failure of the last attempt.
+	 *
+	 * @return The attempts of the first rule that matches, 1 if no rule matches.
+	 */
+	public int getMaxAttempts(final Exception failure) {
+		for (Rule rule : rules) {
+			if (rule.type.isInstance(failure)) {
+				return rule.maxAttempts;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Starts retrying one frame. Call {@link Retry#onFailure(Exception)} for every failed attempt:
+	 * <pre>
+	 * final RetryPolicy.Retry retry = policy.start("write flash", metrics);
+	 * while (true) {
+	 *     try {
+	 *         return writeFrame();
+	 *     } catch (TimeoutException e) {
+	 *         retry.onFailure(e);
+	 *     }
+	 * }
+	 * </pre>
+	 *
+	 * @param description
+	 * 		What is retried, for logging.
+	 * @param metrics
+	 * 		The metrics that count the retries or <code>null</code>.
+	 *
+	 * @return The state of the retries of the frame.
+	 */
+	public Retry start(final String description, @Nullable final DeviceMetrics metrics) {
+		return new Retry(description, metrics);
+	}
+
+	/**
+	 * Calls <code>callable</code> until it succeeds or the policy gives up.
+	 *
+	 * @param description
+	 * 		What is retried, for logging.
+	 * @param metrics
+	 * 		The metrics that count the retries or <code>null</code>.
+	 * @param callable
+	 * 		The action to attempt.
+	 *
+	 * @return The result of the first successful attempt.
+	 *
+	 * @throws Exception
+	 * 		the failure of the last attempt if it is not retried.
+	 */
+	public <T> T execute(final String description, @Nullable final DeviceMetrics metrics, final Callable<T> callable)
+			throws Exception {
+		final Retry retry = start(description, metrics);
+		while (true) {
+			try {
+				return callable.call();
+			} catch (Exception e) {
+				retry.onFailure(e);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RetryPolicy{maxAttempts=" + maxAttempts + ", backoff=" + initialBackoffMillis + "ms*" + backoffMultiplier
+				+ "<=" + maxBackoffMillis + "ms, rules=" + rules.size() + "}";
+	}
+
+	/**
+	 * The retries of one frame.
+	 */
+	public class Retry {
+
+		private final String description;
+
+		@Nullable
+		private final DeviceMetrics metrics;
+
+		private int attempt = 1;
+
+		private long backoffMillis = initialBackoffMillis;
+
+		private Retry(final String description, @Nullable final DeviceMetrics metrics) {
+			this.description = description;
+			this.metrics = metrics;
+		}
+
+		/**
+		 * Returns after the backoff if the failed attempt is retried, otherwise rethrows the failure.
+		 *
+		 * @param failure
+		 * 		The failure of the last attempt.
+		 *
+		 * @throws X
+		 * 		the failure if no rule allows another attempt, the deadline of the running operation expired or the
+		 * 		thread was interrupted.
+		 */
+		public <X extends Exception> void onFailure(final X failure) throws X {
+
+			final Deadline deadline = Deadline.current();
+			if (attempt >= getMaxAttempts(failure) || deadline.isExpired() || Thread.currentThread().isInterrupted()) {
+				throw failure;
+			}
+
+			log.debug("{} failed (attempt {}), retrying in {} ms: {}", description, attempt, backoffMillis, failure);
+
+			if (metrics != null) {
+				metrics.recordRetry();
+			}
+
+			if (backoffMillis > 0) {
+				try {
+					Thread.sleep(deadline.isInfinite() ? backoffMillis : Math.min(backoffMillis, deadline.remainingMillis()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw failure;
+				}
+			}
+
+			backoffMillis = Math.min(maxBackoffMillis, (long) (backoffMillis * backoffMultiplier));
+			attempt++;
+		}
+
+		/**
+		 * @return The number of the attempt that is running, starting with 1.
+		 */
+		public int getAttempt() {
+			return attempt;
+		}
+	}
+
+	/**
+	 * Builder for {@link RetryPolicy}s. By default a policy attempts 3 times without backoff and has no rules.
+	 */
+	public static class Builder {
+
+		private int maxAttempts = 3;
+
+		private long initialBackoffMillis = 0;
+
+		private double backoffMultiplier = 1;
+
+		private long maxBackoffMillis = 0;
+
+		private final ImmutableList.Builder<Rule> rules = ImmutableList.builder();
+
+		/**
+		 * @param maxAttempts
+		 * 		How often a frame is attempted in total by rules without an own limit.
+		 *
+		 * @return This builder.
+		 */
+		public Builder maxAttempts(final int maxAttempts) {
+			checkArgument(maxAttempts >= 1, "At least one attempt is required (is %s)", maxAttempts);
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Sets an exponential backoff between the attempts.
+		 *
+		 * @param initialMillis
+		 * 		The time to wait before the second attempt.
+		 * @param multiplier
+		 * 		The factor by which the time grows for every further attempt.
+		 * @param maxMillis
+		 * 		The longest time to wait between attempts.
+		 *
+		 * @return This builder.
+		 */
+		public Builder backoff(final long initialMillis, final double multiplier, final long maxMillis) {
+			checkArgument(initialMillis >= 0, "Negative backoff is not allowed.");
+			checkArgument(multiplier >= 1, "Backoff must not shrink (multiplier is %s)", multiplier);
+			checkArgument(maxMillis >= initialMillis, "Maximum backoff must not be less than the initial backoff.");
+			this.initialBackoffMillis = initialMillis;
+			this.backoffMultiplier = multiplier;
+			this.maxBackoffMillis = maxMillis;
+			return this;
+		}
+
+		/**
+		 * Retries failures of the given type up to {@link #maxAttempts(int)} times.
+		 *
+		 * @param type
+		 * 		The type of the failures, subtypes match as well.
+		 *
+		 * @return This builder.
+		 */
+		public Builder retryOn(final Class<? extends Exception> type) {
+			rules.add(new Rule(checkNotNull(type), -1));
+			return this;
+		}
+
+		/**
+		 * Retries failures of the given type up to <code>maxAttempts</code> times.
+		 *
+		 * @param type
+		 * 		The type of the failures, subtypes match as well.
+		 * @param maxAttempts
+		 * 		How often a frame that fails with this type is attempted in total.
+		 *
+		 * @return This builder.
+		 */
+		public Builder retryOn(final Class<? extends Exception> type, final int maxAttempts) {
+			checkArgument(maxAttempts >= 1, "At least one attempt is required (is %s)", maxAttempts);
+			rules.add(new Rule(checkNotNull(type), maxAttempts));
+			return this;
+		}
+
+		/**
+		 * Never retries failures of the given type, e.g. to exclude a subtype of a type that is retried.
+		 *
+		 * @param type
+		 * 		The type of the failures, subtypes match as well.
+		 *
+		 * @return This builder.
+		 */
+		public Builder abortOn(final Class<? extends Exception> type) {
+			return retryOn(type, 1);
+		}
+
+		public RetryPolicy build() {
+			return new RetryPolicy(this);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package de.uniluebeck.itm.wsn.drivers.core.operation;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
 import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
@@ -10,6 +12,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -65,10 +69,32 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 	/**
 	 * Boolean that stores if the operation has to be canceled.
 	 */
-	protected boolean canceled = false;
+	protected volatile boolean canceled = false;
 
 	private float progress = 0f;
 
+	/**
+	 * The deadline of this operation, fixed when the operation starts running.
+	 */
+	private volatile Deadline deadline = Deadline.NONE;
+
+	private boolean deadlineInherited = false;
+
+	/**
+	 * Completes with the final state as soon as the operation is done.
+	 */
+	private final SettableFuture<State> finished = SettableFuture.create();
+
+	/**
+	 * The thread that runs the operation, interrupted on cancellation. Guarded by {@link #stateLock}.
+	 */
+	private Thread runner;
+
+	/**
+	 * The sub operation that is currently run by {@link #runSubOperation(Operation, float)}.
+	 */
+	private volatile Operation<?> runningSubOperation;
+
 	public TimeLimitedOperation(final TimeLimiter timeLimiter, final long timeoutMillis,
 								@Nullable final OperationListener<ResultType> listener) {
 
@@ -85,21 +111,56 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 
 	@Override
 	public void cancel() {
-		canceled = true;
-		stateLock.lock();
 		try {
-			operationDone.await();
+			cancelAsync().get();
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public ListenableFuture<State> cancelAsync() {
+
+		canceled = true;
+
+		final Operation<?> subOperation = runningSubOperation;
+		if (subOperation != null) {
+			subOperation.cancelAsync();
+		}
+
+		stateLock.lock();
+		try {
+			if (state == State.WAITING) {
+				// never started, so there is nothing to stop
+				setState(State.CANCELED);
+				listeners.fire().onCancel();
+			} else if (runner != null) {
+				log.trace("Interrupting {} operation for cancellation", this.getClass().getSimpleName());
+				runner.interrupt();
+			}
 		} finally {
 			stateLock.unlock();
 		}
+
+		return finished;
 	}
 
 	@Override
 	public final ResultType call() throws Exception {
 
-		setState(State.RUNNING);
+		stateLock.lock();
+		try {
+			if (state == State.CANCELED) {
+				return null;
+			}
+			setState(State.RUNNING);
+			runner = Thread.currentThread();
+		} finally {
+			stateLock.unlock();
+		}
+
 		listeners.fire().onExecute();
 		ResultType result = null;
 
@@ -108,32 +169,51 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 			// Cancel execution if runnable was canceled before runnable changed to running.
 			if (!canceled) {
 				progress(0f);
-				log.trace("Running {} operation with {} ms timeout", this.getClass().getSimpleName(), timeoutMillis);
+
+				// a sub operation never gets more time than its parent has left
+				final Deadline ownDeadline = Deadline.after(timeoutMillis, TimeUnit.MILLISECONDS);
+				deadline = Deadline.current().min(ownDeadline);
+				deadlineInherited = deadline != ownDeadline;
+				final long effectiveTimeoutMillis = deadline.limit(timeoutMillis);
+
+				log.trace("Running {} operation with {} ms timeout", this.getClass().getSimpleName(),
+						effectiveTimeoutMillis
+				);
 				result = timeLimiter.callWithTimeout(new Callable<ResultType>() {
 														 @Override
 														 public ResultType call() throws Exception {
-															 return callInternal();
+															 final Deadline previous = Deadline.setCurrent(deadline);
+															 try {
+																 return callInternal();
+															 } finally {
+																 Deadline.setCurrent(previous);
+															 }
 														 }
-													 }, timeoutMillis, TimeUnit.MILLISECONDS, false
+													 }, effectiveTimeoutMillis, TimeUnit.MILLISECONDS, true
 				);
 				progress(1f);
 			}
 
-		} catch (UncheckedTimeoutException e) {
+		} catch (Exception e) {
 
-			setState(State.TIMEOUT);
-			TimeoutException timeoutException =
-					new TimeoutException("Operation timed out after " + timeoutMillis + " ms");
-			listeners.fire().onFailure(timeoutException);
-			throw timeoutException;
+			// a canceled operation usually ends with whatever exception the interrupted read threw
+			if (!canceled) {
 
-		} catch (Exception e) {
+				stopRunning();
 
-			setState(State.FAILED);
-			listeners.fire().onFailure(e);
-			throw e;
+				// a helper or sub operation may have given up because the deadline of this operation expired
+				if (e instanceof UncheckedTimeoutException || (e instanceof TimeoutException && deadline.isExpired())) {
+					throw fireTimeout();
+				}
+
+				setState(State.FAILED);
+				listeners.fire().onFailure(e);
+				throw e;
+			}
 		}
 
+		stopRunning();
+
 		if (canceled) {
 
 			setState(State.CANCELED);
@@ -149,6 +229,31 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 		return result;
 	}
 
+	/**
+	 * Detaches the operation from the running thread so a late cancellation does not interrupt whatever the thread
+	 * does next.
+	 */
+	private void stopRunning() {
+		stateLock.lock();
+		try {
+			runner = null;
+			if (canceled) {
+				Thread.interrupted();
+			}
+		} finally {
+			stateLock.unlock();
+		}
+	}
+
+	private TimeoutException fireTimeout() {
+		setState(State.TIMEOUT);
+		TimeoutException timeoutException = deadlineInherited ?
+				new TimeoutException("Operation timed out, the deadline of the parent operation expired") :
+				new TimeoutException("Operation timed out after " + timeoutMillis + " ms");
+		listeners.fire().onFailure(timeoutException);
+		return timeoutException;
+	}
+
 	/**
 	 * All operation execution code goes here. This method is call by {@link de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation#call()}
 	 * which manages the operation state and notifies listeners about operation start and end.
@@ -184,8 +289,35 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 		return canceled;
 	}
 
+	/**
+	 * Returns the deadline of this operation. It is {@link Deadline#NONE} until the operation starts running.
+	 *
+	 * @return The deadline of this operation.
+	 */
+	protected Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Runs <code>subOperation</code> on the calling thread. The sub operation inherits the deadline of this operation,
+	 * its own timeout is shortened if this operation has less time left.
+	 *
+	 * @param subOperation
+	 * 		The operation to run.
+	 * @param subFraction
+	 * 		The fraction of the progress of this operation that the sub operation accounts for.
+	 *
+	 * @return The result of the sub operation.
+	 *
+	 * @throws Exception
+	 * 		the exception thrown by the sub operation or a {@link TimeoutException} if no time is left.
+	 */
 	protected <R> R runSubOperation(final Operation<R> subOperation, final float subFraction) throws Exception {
 		checkNotNull(subOperation, "Null operations are not allowed");
+		deadline.check();
+		if (canceled) {
+			throw new CancellationException("Operation has been canceled");
+		}
 		subOperation.addListener(new OperationAdapter<R>() {
 
 									 private final float initialParentOperationProgress =
@@ -200,11 +332,22 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 												 subOperation.getClass().getSimpleName(),
 												 fraction
 										 );
-										 progress(initialParentOperationProgress + subFraction * fraction);
+										 // rounding must not push the progress past the end
+										 progress(Math.min(1f, initialParentOperationProgress + subFraction * fraction));
 									 }
 								 }
 		);
-		return subOperation.call();
+		runningSubOperation = subOperation;
+		try {
+			final R result = subOperation.call();
+			if (canceled) {
+				// the sub operation returned early because this operation has been canceled
+				throw new CancellationException("Operation has been canceled");
+			}
+			return result;
+		} finally {
+			runningSubOperation = null;
+		}
 	}
 
 	/**
@@ -244,6 +387,7 @@ public abstract class TimeLimitedOperation<ResultType> implements Operation<Resu
 			state = newState;
 			if (State.isFinishState(state)) {
 				operationDone.signalAll();
+				finished.set(state);
 			}
 			fireAfterStateChangedEvent(new StateChangedEvent<ResultType>(this, oldState, newState));
 		} finally {
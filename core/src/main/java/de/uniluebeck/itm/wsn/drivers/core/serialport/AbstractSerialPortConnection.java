@@ -174,9 +174,11 @@ public abstract class AbstractSerialPortConnection extends AbstractConnection
 
 	@Override
 	public void serialEvent(final SerialPortEvent event) {
+		// capture the time as early as possible
+		final long receiveNanos = System.nanoTime();
 		switch (event.getEventType()) {
 			case SerialPortEvent.DATA_AVAILABLE:
-				signalDataAvailable();
+				signalDataAvailable(receiveNanos);
 				break;
 			default:
 				LOG.debug("Serial event (other than data available): " + event);
@@ -2,7 +2,11 @@ package de.uniluebeck.itm.wsn.drivers.core.serialport;
 
 import com.google.inject.Inject;
 import de.uniluebeck.itm.wsn.drivers.core.SerialPortDevice;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvent;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEventType;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvents;
 import de.uniluebeck.itm.wsn.drivers.core.exception.EnterProgrammingModeException;
+import de.uniluebeck.itm.wsn.drivers.core.operation.BatchOperation;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection.SerialPortMode;
 import gnu.io.SerialPort;
 import org.aopalliance.intercept.MethodInterceptor;
@@ -10,13 +14,22 @@ import org.aopalliance.intercept.MethodInvocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
 /**
  * Interceptor that allows the usage of the Program annotation.
+ * <p/>
+ * A driver module binds its interceptor instance with
+ * <code>bind(SerialPortProgrammingModeInterceptor.class).toInstance(interceptor)</code> in addition to
+ * <code>bindInterceptor(...)</code>. The {@link SerialPortDevice} then gets the same instance injected and uses it as
+ * {@link BatchOperation.Session}, so that a batch enters the programming mode only once.
  *
  * @author Malte Legenhausen
  * @author Daniel Bimschas
  */
-public class SerialPortProgrammingModeInterceptor implements MethodInterceptor {
+public class SerialPortProgrammingModeInterceptor implements MethodInterceptor, BatchOperation.Session {
 
 	private static final Logger log = LoggerFactory.getLogger(SerialPortProgrammingModeInterceptor.class);
 
@@ -31,7 +44,7 @@ public class SerialPortProgrammingModeInterceptor implements MethodInterceptor {
 	private boolean alreadyInProgrammingMode;
 
 	@Override
-	public Object invoke(MethodInvocation invocation) throws Throwable {
+	public Object invoke(final MethodInvocation invocation) throws Throwable {
 
 		log.trace("Intercepting programming mode (alreadyInProgrammingMode={})", alreadyInProgrammingMode);
 
@@ -43,12 +56,12 @@ public class SerialPortProgrammingModeInterceptor implements MethodInterceptor {
 
 		device.acquireLockOnDevice();
 		try {
-			enterProgrammingMode();
+			switchProgrammingMode(true);
 			alreadyInProgrammingMode = true;
 			try {
 				result = invocation.proceed();
 			} finally {
-				leaveProgrammingMode();
+				switchProgrammingMode(false);
 				alreadyInProgrammingMode = false;
 			}
 		} finally {
@@ -57,6 +70,33 @@ public class SerialPortProgrammingModeInterceptor implements MethodInterceptor {
 		return result;
 	}
 
+	/**
+	 * Runs <code>callable</code> in programming mode. Operations called by <code>callable</code> do not switch the
+	 * programming mode again, so a batch of operations pays for entering and leaving only once.
+	 *
+	 * @param callable
+	 * 		The code to run in programming mode.
+	 *
+	 * @return The result of <code>callable</code>.
+	 *
+	 * @throws Exception
+	 * 		if entering or leaving the programming mode failed or <code>callable</code> threw an exception.
+	 */
+	@Override
+	public <T> T call(final Callable<T> callable) throws Exception {
+		try {
+			@SuppressWarnings("unchecked")
+			final T result = (T) invoke(new CallableInvocation(callable));
+			return result;
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
 	public void enterProgrammingMode() throws Exception {
 
 		log.trace("Entering programming mode...");
@@ -89,4 +129,64 @@ public class SerialPortProgrammingModeInterceptor implements MethodInterceptor {
 		((SerialPortConnection) device.getConnection()).setSerialPortMode(SerialPortMode.NORMAL);
 		log.trace("Programming mode left");
 	}
+
+	/**
+	 * Enters or leaves the programming mode and records the switch as {@link DriverEventType#PROGRAMMING_MODE_ENTER}
+	 * or {@link DriverEventType#PROGRAMMING_MODE_LEAVE} event.
+	 */
+	private void switchProgrammingMode(final boolean enter) throws Exception {
+		final DriverEvent event = DriverEvents.begin(
+				enter ? DriverEventType.PROGRAMMING_MODE_ENTER : DriverEventType.PROGRAMMING_MODE_LEAVE
+		);
+		boolean success = false;
+		try {
+			if (enter) {
+				enterProgrammingMode();
+			} else {
+				leaveProgrammingMode();
+			}
+			success = true;
+		} finally {
+			if (event != null) {
+				event.commit(device.getUri(), success);
+			}
+		}
+	}
+
+	/**
+	 * Adapts a plain callable to the invocation that {@link #invoke(MethodInvocation)} proceeds with.
+	 */
+	private static class CallableInvocation implements MethodInvocation {
+
+		private final Callable<?> callable;
+
+		private CallableInvocation(final Callable<?> callable) {
+			this.callable = callable;
+		}
+
+		@Override
+		public Object proceed() throws Throwable {
+			return callable.call();
+		}
+
+		@Override
+		public Method getMethod() {
+			return null;
+		}
+
+		@Override
+		public Object[] getArguments() {
+			return new Object[0];
+		}
+
+		@Override
+		public Object getThis() {
+			return callable;
+		}
+
+		@Override
+		public AccessibleObject getStaticPart() {
+			return null;
+		}
+	}
 }
@@ -0,0 +1,150 @@
+package de.uniluebeck.itm.wsn.drivers.core.util;
+
+import com.google.common.util.concurrent.TimeLimiter;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+
+/**
+ * A {@link TimeLimiter} that runs the limited call on the caller's thread instead of handing it to another thread.
+ * The deadline is enforced by a {@link Watchdog} that interrupts the caller, so a timed call costs no thread hop, no
+ * context switch and no future. Calls may be nested, each level watches its own deadline.
+ * <p/>
+ * Since the call is not moved to another thread, it can only be stopped at points where it reacts to interrupts, e.g.
+ * while it waits for data. A call that ignores the interrupt runs to its end and fails with an
+ * {@link UncheckedTimeoutException} afterwards.
+ */
+public class InlineTimeLimiter implements TimeLimiter {
+
+	private final Watchdog watchdog;
+
+	/**
+	 * Constructor for a limiter that uses the {@link Watchdog#getShared() shared watchdog}.
+	 */
+	public InlineTimeLimiter() {
+		this(Watchdog.getShared());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param watchdog
+	 * 		The watchdog that interrupts calls that exceed their deadline.
+	 */
+	public InlineTimeLimiter(final Watchdog watchdog) {
+		this.watchdog = checkNotNull(watchdog, "Null watchdog is not allowed.");
+	}
+
+	/**
+	 * Runs <code>callable</code> on the calling thread.
+	 *
+	 * @param callable
+	 * 		The call to limit.
+	 * @param timeoutDuration
+	 * 		The maximum time the call may take.
+	 * @param timeoutUnit
+	 * 		The unit of <code>timeoutDuration</code>.
+	 * @param interruptible
+	 * 		If <code>true</code> the calling thread is interrupted when the deadline passes. Otherwise the call always
+	 * 		runs to its end and only fails afterwards if it took too long.
+	 *
+	 * @return The result of the call.
+	 *
+	 * @throws UncheckedTimeoutException
+	 * 		if the deadline passed. The exception thrown by the interrupted call, if any, is its cause.
+	 * @throws Exception
+	 * 		the exception thrown by the call if the deadline has not passed.
+	 */
+	@Override
+	public <T> T callWithTimeout(final Callable<T> callable, final long timeoutDuration, final TimeUnit timeoutUnit,
+								 final boolean interruptible) throws Exception {
+
+		checkNotNull(callable, "Null callable is not allowed.");
+		checkNotNull(timeoutUnit, "Null time unit is not allowed.");
+		checkArgument(timeoutDuration > 0, "The timeout must be positive.");
+
+		if (!interruptible) {
+			return callUninterruptibly(callable, timeoutDuration, timeoutUnit);
+		}
+
+		final Watchdog.Registration registration =
+				watchdog.watch(Thread.currentThread(), timeoutDuration, timeoutUnit);
+
+		final T result;
+		try {
+			result = callable.call();
+		} catch (Exception e) {
+			if (!registration.disarm()) {
+				throw new UncheckedTimeoutException(e);
+			}
+			throw e;
+		} catch (Error e) {
+			registration.disarm();
+			throw e;
+		}
+
+		if (!registration.disarm()) {
+			// the call may have swallowed the interrupt and returned a partial result
+			throw new UncheckedTimeoutException("Call exceeded " + timeoutDuration + " " + timeoutUnit);
+		}
+
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T newProxy(final T target, final Class<T> interfaceType, final long timeoutDuration,
+						  final TimeUnit timeoutUnit) {
+
+		checkNotNull(target, "Null target is not allowed.");
+		checkArgument(interfaceType.isInterface(), "%s is not an interface", interfaceType);
+
+		final InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				final Callable<Object> call = new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						try {
+							return method.invoke(target, args);
+						} catch (InvocationTargetException e) {
+							final Throwable cause = e.getCause();
+							if (cause instanceof Exception) {
+								throw (Exception) cause;
+							}
+							if (cause instanceof Error) {
+								throw (Error) cause;
+							}
+							throw e;
+						}
+					}
+				};
+				return callWithTimeout(call, timeoutDuration, timeoutUnit, true);
+			}
+		};
+
+		return (T) Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[]{interfaceType}, handler);
+	}
+
+	private static <T> T callUninterruptibly(final Callable<T> callable, final long timeoutDuration,
+											 final TimeUnit timeoutUnit) throws Exception {
+
+		final long start = System.nanoTime();
+		final T result = callable.call();
+
+		if (System.nanoTime() - start > timeoutUnit.toNanos(timeoutDuration)) {
+			throw new UncheckedTimeoutException("Call exceeded " + timeoutDuration + " " + timeoutUnit);
+		}
+
+		return result;
+	}
+}
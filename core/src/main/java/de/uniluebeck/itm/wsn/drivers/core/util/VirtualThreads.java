@@ -0,0 +1,64 @@
+package de.uniluebeck.itm.wsn.drivers.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on JVMs that support them. The drivers are compiled for older language levels, so the
+ * <code>Thread.ofVirtual()</code> API is looked up reflectively.
+ */
+public final class VirtualThreads {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private VirtualThreads() {
+
+	}
+
+	/**
+	 * Checks if the running JVM is able to create virtual threads.
+	 *
+	 * @return <code>true</code> if virtual threads are available, <code>false</code> otherwise.
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a factory for virtual threads that are named <code>namePrefix</code> followed by a counter.
+	 *
+	 * @param namePrefix
+	 * 		The prefix of the thread names.
+	 *
+	 * @return The virtual thread factory.
+	 *
+	 * @throws UnsupportedOperationException
+	 * 		if the running JVM does not support virtual threads.
+	 */
+	public static ThreadFactory newThreadFactory(final String namePrefix) {
+		try {
+
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+			final Method name = builderClass.getMethod("name", String.class, long.class);
+			final Object namedBuilder = name.invoke(builder, namePrefix, 0L);
+
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+		} catch (Exception e) {
+			log.error("Unable to create virtual thread factory: {}", e);
+			throw new UnsupportedOperationException("Unable to create virtual thread factory", e);
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package de.uniluebeck.itm.wsn.drivers.core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+
+/**
+ * A single thread that interrupts watched threads when their deadline has passed. It replaces a thread per timed
+ * call: the watched work runs on the caller's thread and the watchdog only keeps the pending deadlines ordered.
+ */
+public class Watchdog {
+
+	private static final Logger log = LoggerFactory.getLogger(Watchdog.class);
+
+	private static final Watchdog SHARED = new Watchdog("Watchdog");
+
+	/**
+	 * Returns the watchdog that is shared by all devices.
+	 *
+	 * @return The shared watchdog.
+	 */
+	public static Watchdog getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * A deadline for a watched thread.
+	 */
+	public final class Registration implements Comparable<Registration> {
+
+		private static final int ARMED = 0;
+
+		private static final int FIRED = 1;
+
+		private static final int DISARMED = 2;
+
+		private final Thread thread;
+
+		private final long deadlineNanos;
+
+		private final long sequence;
+
+		private int state = ARMED;
+
+		private Registration(final Thread thread, final long deadlineNanos, final long sequence) {
+			this.thread = thread;
+			this.deadlineNanos = deadlineNanos;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Removes the deadline. Must be called by the watched thread when its work is done. If the watchdog has already
+		 * interrupted the thread the interrupt flag is cleared so that it does not leak into later work.
+		 *
+		 * @return <code>true</code> if the deadline had not passed yet, <code>false</code> if the thread was interrupted.
+		 */
+		public boolean disarm() {
+			lock.lock();
+			try {
+
+				if (state == ARMED) {
+					state = DISARMED;
+					registrations.remove(this);
+					return true;
+				}
+
+				if (state == FIRED && thread == Thread.currentThread()) {
+					// the interrupt was delivered while holding the lock, so it can not arrive after this
+					Thread.interrupted();
+				}
+
+				state = DISARMED;
+				return false;
+
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if the deadline has passed and the thread has been interrupted.
+		 */
+		public boolean hasFired() {
+			lock.lock();
+			try {
+				return state == FIRED;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int compareTo(final Registration other) {
+			final long difference = deadlineNanos - other.deadlineNanos;
+			if (difference != 0) {
+				return difference < 0 ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	private final String threadName;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition changed = lock.newCondition();
+
+	private final PriorityQueue<Registration> registrations = new PriorityQueue<Registration>();
+
+	private long sequence = 0;
+
+	private long fired = 0;
+
+	private Thread thread;
+
+	/**
+	 * <code>true</code> while the watchdog thread waits without a deadline because nothing is watched.
+	 */
+	private boolean idle = false;
+
+	/**
+	 * The time at which the watchdog thread wakes up next if it is not idle.
+	 */
+	private long wakeUpNanos;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threadName
+	 * 		The name of the watchdog thread. The thread is started on the first registration.
+	 */
+	public Watchdog(final String threadName) {
+		this.threadName = checkNotNull(threadName, "Null thread name is not allowed.");
+	}
+
+	/**
+	 * Interrupts <code>thread</code> after <code>timeout</code> unless the returned registration is disarmed before.
+	 *
+	 * @param thread
+	 * 		The thread to interrupt.
+	 * @param timeout
+	 * 		The time after which the thread is interrupted.
+	 * @param unit
+	 * 		The unit of <code>timeout</code>.
+	 *
+	 * @return The registration that has to be disarmed when the work is done.
+	 */
+	public Registration watch(final Thread thread, final long timeout, final TimeUnit unit) {
+		checkNotNull(thread, "Null thread is not allowed.");
+		lock.lock();
+		try {
+
+			final Registration registration =
+					new Registration(thread, System.nanoTime() + unit.toNanos(timeout), sequence++);
+			registrations.add(registration);
+
+			if (this.thread == null) {
+				startThread();
+			}
+
+			// as long as the watchdog wakes up before the new deadline it picks it up without being woken, so a
+			// steady stream of timed calls with similar timeouts causes no context switches
+			if (idle || registration.deadlineNanos - wakeUpNanos < 0) {
+				changed.signal();
+			}
+
+			return registration;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of deadlines that are currently watched.
+	 */
+	public int getPendingCount() {
+		lock.lock();
+		try {
+			return registrations.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of threads that have been interrupted so far.
+	 */
+	public long getFiredCount() {
+		lock.lock();
+		try {
+			return fired;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void startThread() {
+		idle = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watchLoop();
+			}
+		}, threadName
+		);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void watchLoop() {
+		lock.lock();
+		try {
+			while (true) {
+
+				final Registration next = registrations.peek();
+
+				if (next == null) {
+					idle = true;
+					changed.awaitUninterruptibly();
+					idle = false;
+					continue;
+				}
+
+				final long remainingNanos = next.deadlineNanos - System.nanoTime();
+				if (remainingNanos > 0) {
+					// disarmed deadlines are removed from the queue without waking the thread, it may wake up early
+					wakeUpNanos = next.deadlineNanos;
+					changed.awaitNanos(remainingNanos);
+					continue;
+				}
+
+				registrations.poll();
+				next.state = Registration.FIRED;
+				fired++;
+
+				log.trace("Deadline passed, interrupting {}", next.thread.getName());
+				next.thread.interrupt();
+			}
+		} catch (InterruptedException e) {
+			log.warn("Watchdog thread interrupted, restarting on the next registration");
+			thread = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.Elements;
+import com.google.inject.spi.InstanceBinding;
+import de.uniluebeck.itm.wsn.drivers.core.io.ByteRingBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.OverflowBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.OverflowPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DeviceModuleTest {
+
+	private ExecutorService executorService;
+
+	@Before
+	public void setUp() {
+		executorService = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void defaultsMatchTheExecutorConstructor() {
+		final Module module = new DeviceModule.Builder(executorService).build();
+
+		assertSame(executorService, getInstance(module, Key.get(ExecutorService.class)));
+		assertEquals(OverflowPolicy.BLOCK, getOverflowBuffer(module).getPolicy());
+		assertEquals(ByteRingBuffer.DEFAULT_CAPACITY, getBuffer(module, "deviceToDriverBuffer").getCapacity());
+	}
+
+	@Test
+	public void builderSettingsAreBound() {
+		final Module module = new DeviceModule.Builder(executorService)
+				.streamBufferCapacity(1024)
+				.deviceToDriverOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+				.build();
+
+		assertEquals(OverflowPolicy.DROP_OLDEST, getOverflowBuffer(module).getPolicy());
+		assertEquals(1024, getBuffer(module, "deviceToDriverBuffer").getCapacity());
+		assertEquals(1024, getBuffer(module, "driverToDeviceBuffer").getCapacity());
+	}
+
+	private static OverflowBuffer getOverflowBuffer(final Module module) {
+		return getInstance(module, Key.get(OverflowBuffer.class, Names.named("deviceToDriverOverflowBuffer")));
+	}
+
+	private static ByteRingBuffer getBuffer(final Module module, final String name) {
+		return getInstance(module, Key.get(ByteRingBuffer.class, Names.named(name)));
+	}
+
+	/**
+	 * Returns the instance bound to <code>key</code> without creating an injector, which would require a device.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T getInstance(final Module module, final Key<T> key) {
+		for (Element element : Elements.getElements(module)) {
+			if (element instanceof InstanceBinding && key.equals(((InstanceBinding<?>) element).getKey())) {
+				return (T) ((InstanceBinding<?>) element).getInstance();
+			}
+		}
+		throw new AssertionError("No instance bound to " + key);
+	}
+}
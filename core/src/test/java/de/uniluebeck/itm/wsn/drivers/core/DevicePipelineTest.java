@@ -0,0 +1,107 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DevicePipelineTest {
+
+	private final Device device = (Device) Proxy.newProxyInstance(
+			Device.class.getClassLoader(), new Class<?>[]{Device.class}, new InvocationHandler() {
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+	);
+
+	private final List<SettableFuture<Integer>> started = new ArrayList<SettableFuture<Integer>>();
+
+	private final DevicePipeline.Step<Integer, Integer> increment = new DevicePipeline.Step<Integer, Integer>() {
+		@Override
+		public ListenableFuture<Integer> start(final Device device, final Integer previousResult) {
+			assertSame(DevicePipelineTest.this.device, device);
+			final SettableFuture<Integer> future = SettableFuture.create();
+			started.add(future);
+			return future;
+		}
+	};
+
+	@Test
+	public void stepsStartWhenPredecessorCompletes() throws Exception {
+		final ListenableFuture<Integer> result = DevicePipeline.on(device)
+				.then(new DevicePipeline.Step<Void, Integer>() {
+					@Override
+					public ListenableFuture<Integer> start(final Device device, final Void previousResult) {
+						final SettableFuture<Integer> future = SettableFuture.create();
+						started.add(future);
+						return future;
+					}
+				})
+				.then(increment)
+				.start();
+
+		assertEquals(1, started.size());
+		started.get(0).set(1);
+		assertEquals(2, started.size());
+		assertFalse(result.isDone());
+		started.get(1).set(2);
+
+		assertEquals(Integer.valueOf(2), result.get());
+	}
+
+	@Test
+	public void failingStepStopsPipeline() throws Exception {
+		final ListenableFuture<Integer> result = DevicePipeline.on(device)
+				.then(new DevicePipeline.Step<Void, Integer>() {
+					@Override
+					public ListenableFuture<Integer> start(final Device device, final Void previousResult)
+							throws Exception {
+						throw new IOException("Device not connected");
+					}
+				})
+				.then(increment)
+				.start();
+
+		try {
+			result.get();
+			fail("Pipeline should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertEquals(0, started.size());
+	}
+
+	@Test
+	public void cancelCancelsRunningStep() throws Exception {
+		final ListenableFuture<Integer> result = DevicePipeline.on(device)
+				.then(new DevicePipeline.Step<Void, Integer>() {
+					@Override
+					public ListenableFuture<Integer> start(final Device device, final Void previousResult) {
+						final SettableFuture<Integer> future = SettableFuture.create();
+						started.add(future);
+						return future;
+					}
+				})
+				.then(increment)
+				.start();
+
+		assertTrue(result.cancel(false));
+		assertTrue(started.get(0).isCancelled());
+		assertEquals("No step may start after cancellation", 1, started.size());
+	}
+}
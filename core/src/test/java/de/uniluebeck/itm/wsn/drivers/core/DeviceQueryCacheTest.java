@@ -0,0 +1,55 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DeviceQueryCacheTest {
+
+	private long nanos = 0;
+
+	private DeviceQueryCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new DeviceQueryCache(new Ticker() {
+			@Override
+			public long read() {
+				return nanos;
+			}
+		}
+		);
+	}
+
+	@Test
+	public void cachedValueIsReturnedUntilInvalidated() {
+		assertNull(cache.get(DeviceQueryCache.CHIP_TYPE));
+
+		cache.put(DeviceQueryCache.CHIP_TYPE, ChipType.JN5148);
+		assertEquals(ChipType.JN5148, cache.get(DeviceQueryCache.CHIP_TYPE));
+
+		cache.invalidateAll();
+		assertNull(cache.get(DeviceQueryCache.CHIP_TYPE));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.getInvalidations());
+	}
+
+	@Test
+	public void valueExpiresAfterTimeToLive() {
+		cache.setTimeToLive(10, TimeUnit.SECONDS);
+		cache.put(DeviceQueryCache.MAC_ADDRESS, new MacAddress(1));
+
+		nanos = TimeUnit.SECONDS.toNanos(9);
+		assertEquals(new MacAddress(1), cache.get(DeviceQueryCache.MAC_ADDRESS));
+
+		nanos = TimeUnit.SECONDS.toNanos(10);
+		assertNull(cache.get(DeviceQueryCache.MAC_ADDRESS));
+	}
+}
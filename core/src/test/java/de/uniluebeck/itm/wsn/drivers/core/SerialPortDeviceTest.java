@@ -0,0 +1,292 @@
+package de.uniluebeck.itm.wsn.drivers.core;
+
+import de.uniluebeck.itm.wsn.drivers.core.io.ByteRingBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.StreamPump;
+import de.uniluebeck.itm.wsn.drivers.core.io.TimestampedChunk;
+import de.uniluebeck.itm.wsn.drivers.core.io.TimestampedChunkListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SerialPortDeviceTest {
+
+	private StreamingConnection connection;
+
+	private SerialPortDevice device;
+
+	private Thread eventThread;
+
+	@Nullable
+	private StreamPump streamPump;
+
+	@Before
+	public void setUp() throws IOException {
+		start(new OutputStream() {
+			@Override
+			public void write(final int b) {
+				// the driver does not read in this test
+			}
+		}, null
+		);
+	}
+
+	private void start(final OutputStream pipedOutputStreamToDriverInputStream, @Nullable final StreamPump pump)
+			throws IOException {
+		connection = new StreamingConnection();
+		final ByteRingBuffer driverToDeviceBuffer = new ByteRingBuffer();
+		device = new SerialPortDevice(
+				new ByteArrayInputStream(new byte[0]),
+				driverToDeviceBuffer.getOutputStream(),
+				pipedOutputStreamToDriverInputStream,
+				driverToDeviceBuffer.getInputStream(),
+				driverToDeviceBuffer,
+				connection,
+				null
+		);
+		if (pump != null) {
+			device.setStreamPump(pump);
+		}
+		device.connect("streaming");
+
+		// signals data like the serial event thread of RXTX while the device keeps sending
+		eventThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						connection.signal();
+						Thread.yield();
+					}
+				} catch (RuntimeException e) {
+					// the drain fails once the device is closed
+				}
+			}
+		}, "SerialPortDeviceTest-events"
+		);
+		eventThread.setDaemon(true);
+		eventThread.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		// closing stops the drain the event thread is in
+		device.close();
+		eventThread.interrupt();
+		eventThread.join(1000);
+		if (streamPump != null) {
+			streamPump.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void pausingWaitsForTheDrainAndStopsIt() throws Exception {
+
+		awaitReads(100);
+
+		device.acquireLockOnDevice();
+		try {
+			// the operation owns the connection now, the event thread must not read anymore
+			final int readsWhilePaused = connection.input.reads.get();
+			for (int i = 0; i < 1000; i++) {
+				connection.getInputStream().read(new byte[16], 0, 16);
+			}
+			Thread.sleep(50);
+
+			assertEquals(readsWhilePaused + 1000, connection.input.reads.get());
+			assertEquals(0, connection.input.concurrentReads.get());
+		} finally {
+			device.releaseLockOnDeviceStreams();
+		}
+
+		// the copy resumes with the next event
+		final int readsAfterResume = connection.input.reads.get();
+		awaitReads(readsAfterResume + 100);
+		assertEquals(0, connection.input.concurrentReads.get());
+	}
+
+	@Test(timeout = 10000)
+	public void pausingDoesNotWaitForADriverThatDoesNotRead() throws Exception {
+
+		tearDown();
+
+		// nobody reads the driver input stream, the drain blocks as soon as the buffer is full
+		final ByteRingBuffer deviceToDriverBuffer = new ByteRingBuffer(64);
+		start(deviceToDriverBuffer.getOutputStream(), null);
+		while (deviceToDriverBuffer.remaining() > 0) {
+			Thread.sleep(1);
+		}
+
+		device.acquireLockOnDevice();
+		try {
+			final int readsWhilePaused = connection.input.reads.get();
+			for (int i = 0; i < 1000; i++) {
+				connection.getInputStream().read(new byte[16], 0, 16);
+			}
+			Thread.sleep(50);
+
+			assertEquals(readsWhilePaused + 1000, connection.input.reads.get());
+			assertEquals(0, connection.input.concurrentReads.get());
+		} finally {
+			device.releaseLockOnDeviceStreams();
+		}
+
+		// the drain reads from the device again once the driver reads
+		final int readsAfterResume = connection.input.reads.get();
+		final byte[] out = new byte[64];
+		while (connection.input.reads.get() == readsAfterResume) {
+			deviceToDriverBuffer.poll(out, 0, out.length);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void driverOutputIsHeldBackWhilePaused() throws Exception {
+		assertDriverOutputIsHeldBackWhilePaused();
+	}
+
+	@Test(timeout = 10000)
+	public void driverOutputIsHeldBackByThePumpWhilePaused() throws Exception {
+		tearDown();
+		streamPump = new StreamPump(1);
+		start(new ByteArrayOutputStream(), streamPump);
+		assertDriverOutputIsHeldBackWhilePaused();
+	}
+
+	private void assertDriverOutputIsHeldBackWhilePaused() throws Exception {
+
+		final byte[] data = {1, 2, 3, 4};
+
+		device.acquireLockOnDevice();
+		try {
+			device.getOutputStream().write(data);
+			device.getOutputStream().flush();
+			Thread.sleep(100);
+
+			// the operation owns the connection, nothing of the driver may reach the device in between
+			assertEquals(0, connection.getOutput().length);
+		} finally {
+			device.releaseLockOnDeviceStreams();
+		}
+
+		while (connection.getOutput().length < data.length) {
+			Thread.sleep(1);
+		}
+		assertArrayEquals(data, connection.getOutput());
+	}
+
+	@Test(timeout = 10000)
+	public void chunkPoolIsCreatedWithTheFirstListener() throws Exception {
+
+		awaitReads(100);
+		assertNull(device.getTimestampedChunkPool());
+
+		final CountDownLatch received = new CountDownLatch(10);
+		device.addTimestampedChunkListener(new TimestampedChunkListener() {
+			@Override
+			public void onChunkReceived(final TimestampedChunk chunk) {
+				chunk.release();
+				received.countDown();
+			}
+		}
+		);
+
+		assertNotNull(device.getTimestampedChunkPool());
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+	}
+
+	private void awaitReads(final int reads) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 5000;
+		while (connection.input.reads.get() < reads) {
+			assertTrue("Device stream was not drained", System.currentTimeMillis() < end);
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * A device that sends without pause, so a drain never runs out of data by itself.
+	 */
+	private static class EndlessInputStream extends InputStream {
+
+		private final AtomicInteger readers = new AtomicInteger();
+
+		private final AtomicInteger reads = new AtomicInteger();
+
+		private final AtomicInteger concurrentReads = new AtomicInteger();
+
+		@Override
+		public int read() {
+			final byte[] b = new byte[1];
+			read(b, 0, 1);
+			return b[0];
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if (readers.incrementAndGet() > 1) {
+				concurrentReads.incrementAndGet();
+			}
+			try {
+				reads.incrementAndGet();
+				return len;
+			} finally {
+				readers.decrementAndGet();
+			}
+		}
+
+		@Override
+		public int available() {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	private static class StreamingConnection extends AbstractConnection {
+
+		private final EndlessInputStream input = new EndlessInputStream();
+
+		/**
+		 * What the driver sent to the device.
+		 */
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		private StreamingConnection() {
+			setInputStream(input);
+			setOutputStream(output);
+		}
+
+		@Override
+		public void connect(final String port) throws IOException {
+			super.connect(port);
+			setConnected();
+		}
+
+		private byte[] getOutput() {
+			synchronized (output) {
+				return output.toByteArray();
+			}
+		}
+
+		private void signal() {
+			signalDataAvailable();
+		}
+
+		@Override
+		public int[] getChannels() {
+			return new int[0];
+		}
+	}
+}
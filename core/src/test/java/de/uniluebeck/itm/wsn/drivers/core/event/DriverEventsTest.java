@@ -0,0 +1,56 @@
+package de.uniluebeck.itm.wsn.drivers.core.event;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DriverEventsTest {
+
+	private final DriverEventSink previousSink = DriverEvents.getSink();
+
+	@After
+	public void restoreSink() {
+		DriverEvents.setSink(previousSink);
+	}
+
+	@Test
+	public void eventsGoToTheSinkThatIsSet() {
+		final List<Object> committed = new ArrayList<Object>();
+		DriverEvents.setSink(new DriverEventSink() {
+			@Override
+			public DriverEvent begin(final DriverEventType type) {
+				return type != DriverEventType.OPERATION ? null : new DriverEvent() {
+					@Override
+					public void commit(final Object... values) {
+						committed.addAll(Arrays.asList(values));
+					}
+				};
+			}
+		}
+		);
+
+		DriverEvents.begin(DriverEventType.OPERATION).commit("ProgramOperation", "/dev/ttyUSB0", "DONE", 42L);
+
+		assertNull(DriverEvents.begin(DriverEventType.BOOTLOADER_ROUND_TRIP));
+		assertEquals(Arrays.<Object>asList("ProgramOperation", "/dev/ttyUSB0", "DONE", 42L), committed);
+
+		DriverEvents.setSink(null);
+		assertNull(DriverEvents.begin(DriverEventType.OPERATION));
+	}
+
+	@Test
+	public void flightRecorderEventsAreNotBuiltWithoutRecording() {
+		final JfrEventSink sink = JfrEventSink.createIfAvailable();
+		if (sink != null) {
+			for (DriverEventType type : DriverEventType.values()) {
+				assertNull(sink.begin(type));
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import de.uniluebeck.itm.wsn.drivers.core.AbstractConnection;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares reading bootloader replies byte by byte, as the helpers did, with
+ * {@link AbstractConnection#readFrame(FrameDecoder, int)}. The device is simulated by a stream that releases one byte
+ * every 10 microseconds, as a 1 Mbaud line does, and charges every call to the stream a fixed cost for the lock and the JNI
+ * call of RXTX. A notifier thread signals unread data every millisecond like the serial event thread.
+ * <p/>
+ * Reported are the calls into the stream, the CPU time of the reading thread and the time from the first byte on the
+ * wire to the complete frame in the driver, per frame.
+ * <p/>
+ * Run with <code>java BulkReadBenchmark [frames] [frameLength] [callCostNanos]</code>.
+ */
+public class BulkReadBenchmark {
+
+	private static final long NANOS_PER_BYTE = 10000;
+
+	private static final FrameDecoder LENGTH_PREFIXED = new FrameDecoder() {
+		@Override
+		public int frameLength(final byte[] buffer, final int offset, final int length, final boolean idle) {
+			final int frameLength = 1 + (buffer[offset] & 0xFF);
+			return length >= frameLength ? frameLength : INCOMPLETE;
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+
+		final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		final int frameLength = args.length > 1 ? Integer.parseInt(args[1]) : 133;
+		final long callCostNanos = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+		// warm up before measuring
+		run(frames / 5, frameLength, callCostNanos, false, false);
+		run(frames / 5, frameLength, callCostNanos, true, false);
+
+		run(frames, frameLength, callCostNanos, false, true);
+		run(frames, frameLength, callCostNanos, true, true);
+	}
+
+	private static void run(final int frames, final int frameLength, final long callCostNanos, final boolean bulk,
+							final boolean print) throws IOException, TimeoutException, InterruptedException {
+
+		final SimulatedConnection connection = new SimulatedConnection(frameLength, callCostNanos);
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final byte[] frame = new byte[frameLength];
+
+		connection.start();
+		try {
+			long latencyNanos = 0;
+			final long cpuStart = threads.getCurrentThreadCpuTime();
+
+			for (int i = 0; i < frames; i++) {
+				final long wireStart = connection.send();
+				if (bulk) {
+					connection.readFrame(LENGTH_PREFIXED, 1000);
+				} else {
+					readByteByByte(connection, frame);
+				}
+				latencyNanos += System.nanoTime() - wireStart;
+			}
+
+			final long cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+
+			if (print) {
+				System.out.println(String.format("%-12s %5d frames of %3d bytes: %7.1f stream calls/frame, "
+						+ "CPU %7.1f us/frame, latency %6.2f ms/frame (wire time %.2f ms)",
+						bulk ? "readFrame" : "byte-by-byte",
+						frames,
+						frameLength,
+						connection.getCalls() / (double) frames,
+						cpuNanos / 1e3 / frames,
+						latencyNanos / 1e6 / frames,
+						frameLength * NANOS_PER_BYTE / 1e6
+				)
+				);
+			}
+		} finally {
+			connection.stop();
+		}
+	}
+
+	/**
+	 * The loop the helpers used before: wait for data, then read and check single bytes.
+	 */
+	private static void readByteByByte(final AbstractConnection connection, final byte[] frame)
+			throws IOException, TimeoutException {
+
+		final InputStream in = connection.getInputStream();
+		int index = 0;
+		int length = 1;
+		while (index < length) {
+			while (in.available() == 0) {
+				connection.waitDataAvailable(1000);
+			}
+			frame[index] = (byte) in.read();
+			if (index == 0) {
+				length = 1 + (frame[0] & 0xFF);
+			}
+			index++;
+		}
+	}
+
+	private static void spin(final long nanos) {
+		final long end = System.nanoTime() + nanos;
+		while (System.nanoTime() < end) {
+			// simulates the cost of one call into the serial driver
+		}
+	}
+
+	/**
+	 * A connection whose device answers every request with one frame at 1 Mbaud.
+	 */
+	private static class SimulatedConnection extends AbstractConnection {
+
+		private final SimulatedLine line;
+
+		private final Thread notifier;
+
+		private volatile boolean running = true;
+
+		private SimulatedConnection(final int frameLength, final long callCostNanos) {
+			line = new SimulatedLine(frameLength, callCostNanos);
+			setInputStream(line);
+			notifier = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running) {
+						try {
+							Thread.sleep(1);
+						} catch (InterruptedException e) {
+							return;
+						}
+						if (line.released() > line.consumed) {
+							signalDataAvailable();
+						}
+					}
+				}
+			}, "BulkReadBenchmark-notifier"
+			);
+			notifier.setDaemon(true);
+		}
+
+		private void start() {
+			notifier.start();
+		}
+
+		private void stop() throws InterruptedException {
+			running = false;
+			notifier.join();
+		}
+
+		private long send() {
+			return line.send();
+		}
+
+		private long getCalls() {
+			return line.calls;
+		}
+
+		@Override
+		public int[] getChannels() {
+			return new int[0];
+		}
+	}
+
+	/**
+	 * Releases the bytes of a frame as they would arrive over the wire.
+	 */
+	private static class SimulatedLine extends InputStream {
+
+		private final int frameLength;
+
+		private final long callCostNanos;
+
+		private volatile long frameStart;
+
+		private volatile int consumed;
+
+		private long calls;
+
+		private SimulatedLine(final int frameLength, final long callCostNanos) {
+			this.frameLength = frameLength;
+			this.callCostNanos = callCostNanos;
+		}
+
+		private long send() {
+			consumed = 0;
+			frameStart = System.nanoTime();
+			return frameStart;
+		}
+
+		private int released() {
+			if (frameStart == 0) {
+				return 0;
+			}
+			return (int) Math.min(frameLength, (System.nanoTime() - frameStart) / NANOS_PER_BYTE);
+		}
+
+		@Override
+		public int available() {
+			calls++;
+			spin(callCostNanos);
+			return released() - consumed;
+		}
+
+		@Override
+		public int read() {
+			calls++;
+			spin(callCostNanos);
+			if (released() == consumed) {
+				return -1;
+			}
+			return consumed++ == 0 ? frameLength - 1 : 0;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			calls++;
+			spin(callCostNanos);
+			final int count = Math.min(len, released() - consumed);
+			for (int i = 0; i < count; i++) {
+				b[off + i] = (byte) (consumed++ == 0 ? frameLength - 1 : 0);
+			}
+			return count;
+		}
+	}
+}
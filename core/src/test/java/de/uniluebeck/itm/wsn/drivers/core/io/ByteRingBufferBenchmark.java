@@ -0,0 +1,154 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Compares the throughput and the one byte round trip latency of {@link ByteRingBuffer} with the
+ * <code>PipedInputStream</code>/<code>PipedOutputStream</code> pair previously used by the <code>DeviceModule</code>.
+ * <p/>
+ * Run with <code>java ByteRingBufferBenchmark [megabytes] [round trips]</code>.
+ */
+public class ByteRingBufferBenchmark {
+
+	private static final int CHUNK_SIZE = 1024;
+
+	public static void main(String[] args) throws Exception {
+
+		final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		final int roundTrips = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		// warm up both implementations before measuring
+		for (int i = 0; i < 3; i++) {
+			runPiped(megabytes / 4, roundTrips / 4, false);
+			runRingBuffer(megabytes / 4, roundTrips / 4, false);
+		}
+
+		runPiped(megabytes, roundTrips, true);
+		runRingBuffer(megabytes, roundTrips, true);
+	}
+
+	private static void runPiped(final int megabytes, final int roundTrips, final boolean print) throws IOException,
+			InterruptedException {
+
+		PipedInputStream in = new PipedInputStream();
+		PipedOutputStream out = new PipedOutputStream(in);
+		double throughput = measureThroughput(in, out, megabytes);
+
+		PipedInputStream pingIn = new PipedInputStream();
+		PipedOutputStream pingOut = new PipedOutputStream(pingIn);
+		PipedInputStream pongIn = new PipedInputStream();
+		PipedOutputStream pongOut = new PipedOutputStream(pongIn);
+		double latency = measureRoundTripLatency(pingIn, pingOut, pongIn, pongOut, roundTrips);
+
+		if (print) {
+			print("Piped streams", throughput, latency);
+		}
+	}
+
+	private static void runRingBuffer(final int megabytes, final int roundTrips, final boolean print)
+			throws IOException, InterruptedException {
+
+		ByteRingBuffer buffer = new ByteRingBuffer();
+		double throughput = measureThroughput(buffer.getInputStream(), buffer.getOutputStream(), megabytes);
+
+		ByteRingBuffer ping = new ByteRingBuffer();
+		ByteRingBuffer pong = new ByteRingBuffer();
+		double latency = measureRoundTripLatency(
+				ping.getInputStream(), ping.getOutputStream(), pong.getInputStream(), pong.getOutputStream(), roundTrips
+		);
+
+		if (print) {
+			print("Ring buffer", throughput, latency);
+		}
+	}
+
+	private static void print(final String name, final double throughput, final double latency) {
+		System.out.println(String.format("%-14s throughput: %8.1f MB/s, round trip latency: %8.2f us",
+				name, throughput, latency
+		)
+		);
+	}
+
+	private static double measureThroughput(final InputStream in, final OutputStream out, final int megabytes)
+			throws IOException, InterruptedException {
+
+		final long total = megabytes * 1024L * 1024L;
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					byte[] chunk = new byte[CHUNK_SIZE];
+					for (long written = 0; written < total; written += CHUNK_SIZE) {
+						out.write(chunk);
+						out.flush();
+					}
+					out.close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		);
+
+		long start = System.nanoTime();
+		producer.start();
+
+		byte[] buffer = new byte[CHUNK_SIZE * 4];
+		long received = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			received += read;
+		}
+
+		long duration = System.nanoTime() - start;
+		producer.join();
+
+		if (received != total) {
+			throw new IllegalStateException("Received " + received + " of " + total + " bytes");
+		}
+
+		return (received / (1024.0 * 1024.0)) / (duration / 1e9);
+	}
+
+	private static double measureRoundTripLatency(final InputStream pingIn, final OutputStream pingOut,
+												  final InputStream pongIn, final OutputStream pongOut,
+												  final int roundTrips) throws IOException, InterruptedException {
+
+		Thread echo = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					int b;
+					while ((b = pingIn.read()) != -1) {
+						pongOut.write(b);
+						pongOut.flush();
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		);
+		echo.start();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < roundTrips; i++) {
+			pingOut.write(i);
+			pingOut.flush();
+			if (pongIn.read() == -1) {
+				throw new IllegalStateException("Unexpected end of stream");
+			}
+		}
+		long duration = System.nanoTime() - start;
+
+		pingOut.close();
+		echo.join();
+
+		return (duration / 1e3) / roundTrips;
+	}
+}
@@ -0,0 +1,129 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRingBufferTest {
+
+	private ByteRingBuffer ringBuffer;
+
+	@Before
+	public void setUp() {
+		ringBuffer = new ByteRingBuffer(16);
+	}
+
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(16, ringBuffer.getCapacity());
+		assertEquals(32, new ByteRingBuffer(17).getCapacity());
+	}
+
+	@Test
+	public void offerAndPollWrapAround() throws IOException {
+		byte[] out = new byte[16];
+
+		assertEquals(10, ringBuffer.offer(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, 0, 10));
+		assertEquals(10, ringBuffer.poll(out, 0, 16));
+
+		assertEquals(16, ringBuffer.offer(new byte[20], 0, 20));
+		assertEquals(0, ringBuffer.offer(new byte[1], 0, 1));
+		assertEquals(0, ringBuffer.remaining());
+		assertEquals(16, ringBuffer.poll(out, 0, 16));
+		assertEquals(0, ringBuffer.poll(out, 0, 16));
+	}
+
+	@Test
+	public void discardDropsOldestData() throws IOException {
+		byte[] out = new byte[16];
+
+		assertEquals(16, ringBuffer.offer(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, 0, 16));
+		assertEquals(4, ringBuffer.discard(4));
+		assertEquals(4, ringBuffer.offer(new byte[]{16, 17, 18, 19}, 0, 4));
+
+		assertEquals(16, ringBuffer.poll(out, 0, 16));
+		assertArrayEquals(new byte[]{4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19}, out);
+		assertEquals(0, ringBuffer.discard(4));
+	}
+
+	@Test
+	public void readReturnsEndOfStreamAfterWriterClosed() throws IOException {
+		OutputStream outputStream = ringBuffer.getOutputStream();
+		InputStream inputStream = ringBuffer.getInputStream();
+
+		outputStream.write(42);
+		outputStream.close();
+
+		assertEquals(42, inputStream.read());
+		assertEquals(-1, inputStream.read());
+	}
+
+	@Test
+	public void transfersDataInOrderBetweenThreads() throws Exception {
+		final byte[] data = new byte[100000];
+		new Random(4711).nextBytes(data);
+
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					OutputStream outputStream = ringBuffer.getOutputStream();
+					for (int offset = 0; offset < data.length; offset += 7) {
+						outputStream.write(data, offset, Math.min(7, data.length - offset));
+					}
+					outputStream.close();
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		}
+		);
+		producer.start();
+
+		byte[] received = new byte[data.length];
+		InputStream inputStream = ringBuffer.getInputStream();
+		int offset = 0;
+		int read;
+		while ((read = inputStream.read(received, offset, Math.min(13, received.length - offset))) > 0) {
+			offset += read;
+		}
+
+		producer.join();
+		assertEquals(null, failure.get());
+		assertEquals(data.length, offset);
+		assertArrayEquals(data, received);
+	}
+
+	@Test
+	public void blockedReadIsInterruptible() throws Exception {
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ringBuffer.getInputStream().read();
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		}
+		);
+		reader.start();
+		Thread.sleep(50);
+		reader.interrupt();
+		reader.join(1000);
+
+		assertTrue(failure.get() instanceof InterruptedIOException);
+	}
+}
@@ -0,0 +1,76 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OverflowBufferTest {
+
+	private static final byte[] DATA = new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19};
+
+	@Test
+	public void dropNewestKeepsOldestData() throws IOException {
+		OverflowBuffer buffer = new OverflowBuffer(new ByteRingBuffer(16), OverflowPolicy.DROP_NEWEST, null);
+
+		buffer.getOutputStream().write(DATA);
+
+		assertEquals(4, buffer.getDroppedBytes());
+		assertArrayEquals(copyOfRange(0, 16), readFully(buffer.getInputStream(), 16));
+	}
+
+	@Test
+	public void dropOldestKeepsNewestData() throws IOException {
+		OverflowBuffer buffer = new OverflowBuffer(new ByteRingBuffer(16), OverflowPolicy.DROP_OLDEST, null);
+
+		buffer.getOutputStream().write(DATA, 0, 10);
+		buffer.getOutputStream().write(DATA, 10, 10);
+
+		assertEquals(4, buffer.getDroppedBytes());
+		assertArrayEquals(copyOfRange(4, 20), readFully(buffer.getInputStream(), 16));
+	}
+
+	@Test
+	public void spillToDiskKeepsAllDataInOrder() throws IOException {
+		OverflowBuffer buffer = new OverflowBuffer(new ByteRingBuffer(16), OverflowPolicy.SPILL_TO_DISK, null);
+		OutputStream outputStream = buffer.getOutputStream();
+		InputStream inputStream = buffer.getInputStream();
+
+		outputStream.write(DATA);
+		outputStream.write(DATA);
+
+		assertEquals(0, buffer.getDroppedBytes());
+		assertEquals(24, buffer.getSpilledBytes());
+		assertEquals(40, inputStream.available());
+
+		assertArrayEquals(DATA, readFully(inputStream, DATA.length));
+		assertArrayEquals(DATA, readFully(inputStream, DATA.length));
+		assertEquals(0, buffer.getPendingSpilledBytes());
+
+		// once the spill file is drained new data goes to memory again
+		outputStream.write(DATA, 0, 4);
+		assertEquals(24, buffer.getSpilledBytes());
+		assertArrayEquals(copyOfRange(0, 4), readFully(inputStream, 4));
+
+		inputStream.close();
+	}
+
+	private static byte[] copyOfRange(final int from, final int to) {
+		byte[] copy = new byte[to - from];
+		System.arraycopy(DATA, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	private static byte[] readFully(final InputStream inputStream, final int length) throws IOException {
+		byte[] data = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			offset += inputStream.read(data, offset, length - offset);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,104 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import de.uniluebeck.itm.wsn.drivers.core.AbstractConnection;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ReceiveBufferInputStreamTest {
+
+	/**
+	 * Frames with a length byte in front, as the Jennic bootloader sends them.
+	 */
+	private static final FrameDecoder LENGTH_PREFIXED = new FrameDecoder() {
+		@Override
+		public int frameLength(final byte[] buffer, final int offset, final int length, final boolean idle) {
+			final int frameLength = 1 + (buffer[offset] & 0xFF);
+			return length >= frameLength ? frameLength : INCOMPLETE;
+		}
+	};
+
+	@Test
+	public void bufferedBytesAreReadBeforeTheUnderlyingStream() throws IOException {
+		ReceiveBufferInputStream in = new ReceiveBufferInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}), 2);
+
+		assertEquals(2, in.fill());
+		assertEquals(2, in.buffered());
+		assertEquals(4, in.available());
+
+		assertEquals(1, in.read());
+		byte[] rest = new byte[3];
+		assertEquals(1, in.read(rest, 0, 3));
+		assertEquals(2, rest[0]);
+		assertEquals(2, in.read(rest, 1, 2));
+		assertArrayEquals(new byte[]{2, 3, 4}, rest);
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void bufferGrowsWhenFull() throws IOException {
+		ReceiveBufferInputStream in = new ReceiveBufferInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}), 2);
+
+		int filled = 0;
+		while (in.available() > in.buffered()) {
+			filled += in.fill();
+		}
+
+		assertEquals(5, filled);
+		assertEquals(5, in.buffered());
+		assertEquals(1, in.array()[in.position()]);
+
+		in.discard();
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void framesAreSplitFromOneBulkRead() throws IOException, TimeoutException {
+		TestConnection connection = new TestConnection(new byte[]{2, 10, 11, 0, 1, 12});
+
+		assertArrayEquals(new byte[]{2, 10, 11}, connection.readFrame(LENGTH_PREFIXED, 100));
+		assertArrayEquals(new byte[]{0}, connection.readFrame(LENGTH_PREFIXED, 100));
+		assertArrayEquals(new byte[]{1, 12}, connection.readFrame(LENGTH_PREFIXED, 100));
+	}
+
+	@Test
+	public void incompleteFrameTimesOut() throws IOException {
+		TestConnection connection = new TestConnection(new byte[]{3, 10, 11});
+
+		try {
+			connection.readFrame(LENGTH_PREFIXED, 50);
+			fail("Expected a timeout");
+		} catch (TimeoutException expected) {
+			// the incomplete frame stays buffered until the connection is cleared
+		}
+
+		assertEquals(3, connection.getInputStream().available());
+		connection.clear();
+		assertEquals(0, connection.getInputStream().available());
+	}
+
+	private static class TestConnection extends AbstractConnection {
+
+		private TestConnection(final byte[] received) {
+			setInputStream(new ByteArrayInputStream(received) {
+				@Override
+				public synchronized int read(final byte[] b, final int off, final int len) {
+					// deliver one byte per read, as a slow serial line would
+					return super.read(b, off, Math.min(len, 1));
+				}
+			}
+			);
+		}
+
+		@Override
+		public int[] getChannels() {
+			return new int[0];
+		}
+	}
+}
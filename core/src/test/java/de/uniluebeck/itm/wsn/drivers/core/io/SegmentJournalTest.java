@@ -0,0 +1,87 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentJournalTest {
+
+	private SegmentJournal journal;
+
+	@Before
+	public void setUp() {
+		journal = new SegmentJournal(null, 8, 1);
+	}
+
+	@After
+	public void tearDown() {
+		journal.close();
+	}
+
+	@Test
+	public void dataSpanningSegmentsIsReadInOrder() throws IOException {
+		OutputStream outputStream = journal.getOutputStream();
+		InputStream inputStream = journal.getInputStream();
+
+		byte[] data = new byte[20];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+
+		outputStream.write(data);
+		outputStream.close();
+
+		assertEquals(20, journal.available());
+		assertEquals(3, journal.getSegmentsCreated());
+
+		byte[] received = new byte[20];
+		int offset = 0;
+		int read;
+		while ((read = inputStream.read(received, offset, received.length - offset)) > 0) {
+			offset += read;
+		}
+
+		assertEquals(20, offset);
+		assertArrayEquals(data, received);
+		assertEquals(-1, inputStream.read());
+	}
+
+	@Test
+	public void pollReturnsSlicesWithoutCopying() throws IOException {
+		journal.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, 0, 9);
+
+		ByteBuffer first = journal.poll(16);
+		assertTrue(first.isReadOnly());
+		assertEquals(8, first.remaining());
+		assertEquals(1, first.get(0));
+
+		ByteBuffer second = journal.poll(16);
+		assertEquals(1, second.remaining());
+		assertEquals(9, second.get());
+
+		assertNull(journal.poll(16));
+	}
+
+	@Test
+	public void consumedSegmentsAreRecycled() throws IOException {
+		byte[] block = new byte[8];
+		byte[] received = new byte[8];
+
+		for (int i = 0; i < 10; i++) {
+			journal.write(block, 0, block.length);
+			assertEquals(8, journal.poll(received, 0, received.length));
+		}
+
+		assertEquals(1, journal.getSegmentsCreated());
+	}
+}
@@ -0,0 +1,107 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreamPumpTest {
+
+	private StreamPump pump;
+
+	@Before
+	public void setUp() {
+		pump = new StreamPump(1);
+	}
+
+	@After
+	public void tearDown() {
+		pump.close();
+	}
+
+	@Test(timeout = 10000)
+	public void fullTargetDoesNotStallOtherChannels() throws Exception {
+
+		// nobody reads from the first target, it is full after 16 bytes
+		final ByteRingBuffer stalledSource = new ByteRingBuffer(64);
+		final ByteRingBuffer stalledTarget = new ByteRingBuffer(16);
+		final StreamPump.Channel stalledChannel = pump.register(stalledSource, stalledTarget.getOutputStream());
+		stalledChannel.resume();
+		stalledSource.offer(new byte[32], 0, 32);
+
+		final ByteRingBuffer source = new ByteRingBuffer(64);
+		final ByteArrayOutputStream target = new ByteArrayOutputStream();
+		pump.register(source, target).resume();
+		source.offer(new byte[]{1, 2, 3, 4}, 0, 4);
+
+		awaitSize(target, 4);
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, target.toByteArray());
+		assertEquals(16, stalledTarget.available());
+		assertEquals(16, stalledSource.available());
+
+		// reading from the full target lets the pump copy the rest
+		final byte[] out = new byte[16];
+		assertEquals(16, stalledTarget.poll(out, 0, 16));
+		while (stalledSource.available() > 0) {
+			Thread.sleep(1);
+		}
+		assertEquals(16, stalledTarget.available());
+		assertTrue(!stalledChannel.isClosed());
+	}
+
+	@Test(timeout = 10000)
+	public void failingTargetClosesTheChannel() throws Exception {
+
+		final IOException cause = new IOException("Port gone");
+		final ByteRingBuffer source = new ByteRingBuffer(64);
+		final OutputStream target = new OutputStream() {
+			@Override
+			public void write(final int b) throws IOException {
+				throw cause;
+			}
+		};
+
+		final CountDownLatch failed = new CountDownLatch(1);
+		final AtomicReference<IOException> reported = new AtomicReference<IOException>();
+		final StreamPump.Channel channel = pump.register(source, target, new StreamPump.ChannelListener() {
+			@Override
+			public void onChannelFailed(final StreamPump.Channel channel, final IOException exception) {
+				reported.set(exception);
+				failed.countDown();
+			}
+		}
+		);
+		channel.resume();
+		source.offer(new byte[]{1, 2, 3}, 0, 3);
+
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		assertSame(cause, reported.get());
+		assertTrue(channel.isClosed());
+		assertSame(cause, channel.getFailure());
+
+		// data offered later stays in the source and resuming does not reopen the channel
+		source.offer(new byte[]{4}, 0, 1);
+		channel.resume();
+		Thread.sleep(50);
+		assertNotNull(channel.getFailure());
+		assertEquals(1, source.available());
+	}
+
+	private static void awaitSize(final ByteArrayOutputStream target, final int size) throws InterruptedException {
+		while (target.size() < size) {
+			Thread.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TimestampedChunkTest {
+
+	@Test
+	public void failingListenerDoesNotStarveOthersOrLeakTheChunk() {
+
+		final TimestampedChunkPool pool = new TimestampedChunkPool(1, 16);
+		final AtomicInteger received = new AtomicInteger();
+
+		final TimestampedChunkListener failing = new TimestampedChunkListener() {
+			@Override
+			public void onChunkReceived(final TimestampedChunk chunk) {
+				throw new IllegalStateException("Listener is broken");
+			}
+		};
+		final TimestampedChunkListener releasing = new TimestampedChunkListener() {
+			@Override
+			public void onChunkReceived(final TimestampedChunk chunk) {
+				received.incrementAndGet();
+				chunk.release();
+			}
+		};
+
+		final TimestampedChunk chunk = pool.acquire();
+		chunk.deliver(4, 0, new TimestampedChunkListener[]{failing, releasing});
+		assertEquals(1, received.get());
+
+		// the only pooled chunk is free again
+		assertSame(chunk, pool.acquire());
+		assertEquals(0, pool.getMisses());
+	}
+}
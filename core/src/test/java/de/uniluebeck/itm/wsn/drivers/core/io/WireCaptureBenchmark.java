@@ -0,0 +1,106 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Measures the overhead a {@link WireCapture} adds to the copy loops between the device and the driver streams. The
+ * same loop is run with plain streams and with both ends captured, once with chunks as the drain loop copies them and
+ * once byte by byte as the bootloader helpers read.
+ * <p/>
+ * Run with <code>java WireCaptureBenchmark [megabytes]</code>.
+ */
+public class WireCaptureBenchmark {
+
+	private static final int CHUNK_SIZE = 512;
+
+	public static void main(String[] args) throws Exception {
+
+		final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+
+		// warm up before measuring
+		for (int i = 0; i < 3; i++) {
+			run(megabytes / 4, CHUNK_SIZE, false);
+			run(megabytes / 4, 1, false);
+		}
+
+		run(megabytes, CHUNK_SIZE, true);
+		run(megabytes / 16, 1, true);
+	}
+
+	private static void run(final int megabytes, final int chunkSize, final boolean print) throws IOException,
+			InterruptedException {
+
+		ByteRingBuffer plainBuffer = new ByteRingBuffer();
+		double plain = measureCopyLoop(plainBuffer.getInputStream(), plainBuffer.getOutputStream(), megabytes, chunkSize);
+
+		WireCapture capture = new WireCapture();
+		ByteRingBuffer capturedBuffer = new ByteRingBuffer();
+		double captured = measureCopyLoop(
+				capture.wrap(capturedBuffer.getInputStream()),
+				capture.wrap(capturedBuffer.getOutputStream()),
+				megabytes,
+				chunkSize
+		);
+
+		if (print) {
+			System.out.println(String.format("%4d byte chunks  plain: %8.1f MB/s, captured: %8.1f MB/s, "
+					+ "overhead: %5.1f %%, records: %d",
+					chunkSize, plain, captured, 100.0 * (plain - captured) / plain, capture.getRecordCount()
+			)
+			);
+		}
+	}
+
+	private static double measureCopyLoop(final InputStream in, final OutputStream out, final int megabytes,
+										  final int chunkSize) throws IOException, InterruptedException {
+
+		final long total = Math.max(1, megabytes) * 1024L * 1024L;
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					byte[] chunk = new byte[chunkSize];
+					for (long written = 0; written < total; written += chunkSize) {
+						if (chunkSize == 1) {
+							out.write(0);
+						} else {
+							out.write(chunk);
+						}
+					}
+					out.close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		);
+
+		long start = System.nanoTime();
+		producer.start();
+
+		byte[] buffer = new byte[chunkSize];
+		long received = 0;
+		int read;
+		if (chunkSize == 1) {
+			while (in.read() != -1) {
+				received++;
+			}
+		} else {
+			while ((read = in.read(buffer)) != -1) {
+				received += read;
+			}
+		}
+
+		long duration = System.nanoTime() - start;
+		producer.join();
+
+		if (received != total) {
+			throw new IllegalStateException("Received " + received + " of " + total + " bytes");
+		}
+
+		return (received / (1024.0 * 1024.0)) / (duration / 1e9);
+	}
+}
@@ -0,0 +1,99 @@
+package de.uniluebeck.itm.wsn.drivers.core.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WireCaptureTest {
+
+	@Test
+	public void recordsAreReadBackWithDirectionAndTimestamp() throws IOException {
+		WireCapture capture = new WireCapture(1024);
+
+		capture.record(WireCapture.Direction.TO_DEVICE, new byte[]{1, 2, 3}, 0, 3, 100);
+		capture.record(WireCapture.Direction.FROM_DEVICE, new byte[]{9, 4, 5}, 1, 2, 200);
+
+		WireCaptureReader reader = read(capture);
+		assertEquals(2, reader.getRecordCount());
+
+		WireCaptureReader.Record first = reader.read();
+		assertEquals(100, first.getNanos());
+		assertEquals(WireCapture.Direction.TO_DEVICE, first.getDirection());
+		assertArrayEquals(new byte[]{1, 2, 3}, first.getData());
+
+		WireCaptureReader.Record second = reader.read();
+		assertEquals(200, second.getNanos());
+		assertEquals(WireCapture.Direction.FROM_DEVICE, second.getDirection());
+		assertArrayEquals(new byte[]{4, 5}, second.getData());
+
+		assertNull(reader.read());
+	}
+
+	@Test
+	public void oldestRecordsAreOverwrittenWhenFull() throws IOException {
+		// room for two records with four bytes of data each
+		WireCapture capture = new WireCapture(2 * (WireCapture.HEADER_SIZE + 4) + 3);
+
+		for (int i = 0; i < 5; i++) {
+			capture.record(WireCapture.Direction.TO_DEVICE, new byte[]{(byte) i, 0, 0, 0}, 0, 4, i);
+		}
+
+		assertEquals(5, capture.getRecordCount());
+		assertEquals(3, capture.getOverwrittenRecordCount());
+
+		WireCaptureReader reader = read(capture);
+		assertEquals(2, reader.getRecordCount());
+		assertEquals(3, reader.read().getNanos());
+		assertEquals(4, reader.read().getNanos());
+		assertNull(reader.read());
+	}
+
+	@Test
+	public void clearResetsTheCounters() throws IOException {
+		WireCapture capture = new WireCapture(1024);
+
+		for (int i = 0; i < 3; i++) {
+			capture.record(WireCapture.Direction.TO_DEVICE, new byte[]{(byte) i}, 0, 1, i);
+		}
+		capture.clear();
+		assertEquals(0, capture.getRecordCount());
+		assertEquals(0, read(capture).getRecordCount());
+
+		capture.record(WireCapture.Direction.FROM_DEVICE, new byte[]{7}, 0, 1, 10);
+
+		WireCaptureReader reader = read(capture);
+		assertEquals(1, reader.getRecordCount());
+		assertEquals(10, reader.read().getNanos());
+		assertNull(reader.read());
+	}
+
+	@Test
+	public void wrappedStreamsCaptureBothDirections() throws IOException {
+		WireCapture capture = new WireCapture(1024);
+
+		ByteArrayOutputStream device = new ByteArrayOutputStream();
+		capture.wrap(device).write(new byte[]{1, 2});
+
+		byte[] response = new byte[4];
+		assertEquals(3, capture.wrap(new ByteArrayInputStream(new byte[]{7, 8, 9})).read(response));
+
+		WireCaptureReader reader = read(capture);
+		assertArrayEquals(new byte[]{1, 2}, device.toByteArray());
+		assertEquals(WireCapture.Direction.TO_DEVICE, reader.read().getDirection());
+		WireCaptureReader.Record received = reader.read();
+		assertEquals(WireCapture.Direction.FROM_DEVICE, received.getDirection());
+		assertArrayEquals(new byte[]{7, 8, 9}, received.getData());
+	}
+
+	private static WireCaptureReader read(final WireCapture capture) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		capture.writeTo(file);
+		return new WireCaptureReader(new ByteArrayInputStream(file.toByteArray()));
+	}
+}
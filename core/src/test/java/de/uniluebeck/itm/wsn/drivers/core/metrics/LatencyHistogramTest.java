@@ -0,0 +1,68 @@
+package de.uniluebeck.itm.wsn.drivers.core.metrics;
+
+import de.uniluebeck.itm.wsn.drivers.core.operation.ProgramOperation;
+import de.uniluebeck.itm.wsn.drivers.core.operation.State;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverAllValues() {
+		int previous = -1;
+		for (long value = 0; value < 100000; value++) {
+			final int index = LatencyHistogram.indexOf(value);
+			assertTrue("Buckets must not go backwards at " + value, index == previous || index == previous + 1);
+			assertTrue(value <= LatencyHistogram.highestValueOf(index));
+			previous = index;
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void percentilesAreAccurate() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax(TimeUnit.MILLISECONDS));
+		assertEquals(500.5, histogram.getMeanMillis(), 0.001);
+		assertWithin(TimeUnit.MILLISECONDS.toNanos(500), histogram.getValueAtPercentile(50));
+		assertWithin(TimeUnit.MILLISECONDS.toNanos(990), histogram.getValueAtPercentile(99));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void deviceMetricsAreGroupedByOperationType() {
+		final DeviceMetrics metrics = new DeviceMetrics();
+		metrics.recordOperation(ProgramOperation.class, State.DONE, TimeUnit.SECONDS.toNanos(2), 4096);
+		metrics.recordOperation(ProgramOperation.class, State.TIMEOUT, TimeUnit.SECONDS.toNanos(2), 0);
+		metrics.recordBytesSent(10);
+		metrics.recordBytesReceived(5);
+
+		assertEquals(2, metrics.getOperationCount("ProgramOperation"));
+		assertEquals(1, metrics.getTimeoutCount("ProgramOperation"));
+		assertEquals(1, metrics.getTimeouts());
+		assertEquals(1024, metrics.getBytesPerSecond("ProgramOperation"), 0.001);
+		assertEquals(15, metrics.getBytesTransferred());
+		assertEquals(0, metrics.getOperationCount("ResetOperation"));
+
+		metrics.reset();
+		assertEquals(0, metrics.getOperationCount("ProgramOperation"));
+	}
+
+	private static void assertWithin(final long expected, final long actual) {
+		assertTrue("Expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 32
+		);
+	}
+}
@@ -0,0 +1,177 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.util.Watchdog;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchOperationTest {
+
+	private final TimeLimiter timeLimiter = new InlineTimeLimiter(new Watchdog("BatchOperationTest-Watchdog"));
+
+	private final OperationFactory operationFactory = (OperationFactory) Proxy.newProxyInstance(
+			OperationFactory.class.getClassLoader(), new Class<?>[]{OperationFactory.class}, new InvocationHandler() {
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+	);
+
+	private final CountingSession session = new CountingSession();
+
+	@Test
+	public void stepsRunInOneSession() throws Exception {
+		final OperationBatch batch = new OperationBatch.Builder()
+				.add("first", new ValueStep(1))
+				.add("second", new OperationBatch.Step() {
+					@Override
+					public Operation<?> createOperation(final OperationFactory factory, final BatchResult previous) {
+						// later steps see the results of earlier ones
+						return new ValueOperation(previous.getResult(0, Integer.class) + 1);
+					}
+				})
+				.add("third", new ValueStep(3))
+				.build();
+
+		final BatchResult result =
+				new BatchOperation(timeLimiter, operationFactory, batch, session, 10000, null).call();
+
+		assertEquals(1, session.entered);
+		assertFalse(session.inside);
+		assertEquals(3, result.getSteps().size());
+		assertEquals(Integer.valueOf(2), result.getResult(1, Integer.class));
+		assertEquals("third", result.getSteps().get(2).getName());
+		assertTrue(result.getSteps().get(0).getDuration(TimeUnit.NANOSECONDS) > 0);
+	}
+
+	@Test
+	public void failingStepEndsBatchAndLeavesSession() throws Exception {
+		final OperationBatch batch = new OperationBatch.Builder()
+				.add("failing", new OperationBatch.Step() {
+					@Override
+					public Operation<?> createOperation(final OperationFactory factory, final BatchResult previous) {
+						return new TimeLimitedOperation<Void>(timeLimiter, 1000, null) {
+							@Override
+							protected Void callInternal() throws Exception {
+								throw new IOException("Device did not answer");
+							}
+						};
+					}
+				})
+				.add("never", new ValueStep(2))
+				.build();
+
+		final BatchOperation operation = new BatchOperation(timeLimiter, operationFactory, batch, session, 10000, null);
+		try {
+			operation.call();
+			fail("Batch should have failed");
+		} catch (IOException expected) {
+		}
+
+		assertEquals(State.FAILED, operation.getState());
+		assertFalse(session.inside);
+	}
+
+	@Test
+	public void stepsAreRecordedByTheirType() throws Exception {
+		final OperationBatch batch = new OperationBatch.Builder()
+				.add("readMac", new OperationBatch.Step() {
+					@Override
+					public Operation<?> createOperation(final OperationFactory factory, final BatchResult previous) {
+						return new ReadMacOperation();
+					}
+				})
+				.add("readMacAgain", new OperationBatch.Step() {
+					@Override
+					public Operation<?> createOperation(final OperationFactory factory, final BatchResult previous) {
+						return new ReadMacOperation();
+					}
+				})
+				.add("value", new ValueStep(1))
+				.build();
+
+		final DeviceMetrics metrics = new DeviceMetrics();
+		final BatchOperation operation = new BatchOperation(timeLimiter, operationFactory, batch, session, 10000, null);
+		operation.setMetrics(metrics, "batch");
+		operation.call();
+
+		assertEquals(2, metrics.getOperationCount("ReadMacAddressOperation"));
+		assertEquals(1, metrics.getOperationCount("ValueOperation"));
+		assertEquals(0, metrics.getFailureCount("ReadMacAddressOperation"));
+	}
+
+	private class ValueStep implements OperationBatch.Step {
+
+		private final int value;
+
+		private ValueStep(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Operation<?> createOperation(final OperationFactory factory, final BatchResult previousResults) {
+			return new ValueOperation(value);
+		}
+	}
+
+	private class ValueOperation extends TimeLimitedOperation<Integer> {
+
+		private final int value;
+
+		private ValueOperation(final int value) {
+			super(BatchOperationTest.this.timeLimiter, 1000, null);
+			this.value = value;
+		}
+
+		@Override
+		protected Integer callInternal() throws Exception {
+			assertTrue("Steps must run inside the session", session.inside);
+			return value;
+		}
+	}
+
+	private class ReadMacOperation extends TimeLimitedOperation<MacAddress> implements ReadMacAddressOperation {
+
+		private ReadMacOperation() {
+			super(BatchOperationTest.this.timeLimiter, 1000, null);
+		}
+
+		@Override
+		protected MacAddress callInternal() throws Exception {
+			return new MacAddress(1);
+		}
+	}
+
+	private static class CountingSession implements BatchOperation.Session {
+
+		private int entered;
+
+		private boolean inside;
+
+		@Override
+		public <T> T call(final Callable<T> callable) throws Exception {
+			entered++;
+			inside = true;
+			try {
+				return callable.call();
+			} finally {
+				inside = false;
+			}
+		}
+	}
+}
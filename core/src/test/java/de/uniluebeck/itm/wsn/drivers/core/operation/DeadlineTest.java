@@ -0,0 +1,114 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.util.Watchdog;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeadlineTest {
+
+	private final TimeLimiter timeLimiter = new InlineTimeLimiter(new Watchdog("DeadlineTest-Watchdog"));
+
+	@Test
+	public void limitShortensTimeoutToRemainingTime() throws Exception {
+		Deadline deadline = Deadline.after(100, TimeUnit.MILLISECONDS);
+
+		assertTrue(deadline.limit(10000) <= 100);
+		assertEquals(50, deadline.limit(50));
+		assertSame(deadline, deadline.min(Deadline.NONE));
+		assertSame(deadline, Deadline.after(1, TimeUnit.HOURS).min(deadline));
+		assertFalse(Deadline.NONE.isExpired());
+
+		try {
+			Deadline.after(0, TimeUnit.MILLISECONDS).limit(1000);
+			fail("An expired deadline must not hand out time");
+		} catch (TimeoutException expected) {
+		}
+	}
+
+	@Test
+	public void subOperationInheritsDeadlineOfParent() throws Exception {
+		final ParentOperation parent = new ParentOperation(200, new WaitingOperation(60000));
+
+		long start = System.nanoTime();
+		try {
+			parent.call();
+			fail("Parent should have timed out");
+		} catch (TimeoutException expected) {
+		}
+
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+		assertEquals(State.TIMEOUT, parent.getState());
+		assertEquals(State.TIMEOUT, parent.subOperation.getState());
+		assertTrue(parent.subOperation.deadlineSeenMillis <= 200);
+		assertSame(Deadline.NONE, Deadline.current());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void helperWaitStopsWhenBudgetIsExhausted() throws Exception {
+		final WaitingOperation operation = new WaitingOperation(150);
+
+		try {
+			operation.call();
+			fail("Operation should have timed out");
+		} catch (TimeoutException expected) {
+		}
+
+		// the helper loop gave up on its own without being interrupted
+		assertEquals(State.TIMEOUT, operation.getState());
+		assertTrue(operation.waits > 1);
+	}
+
+	private class ParentOperation extends TimeLimitedOperation<Void> {
+
+		private final WaitingOperation subOperation;
+
+		private ParentOperation(final long timeoutMillis, final WaitingOperation subOperation) {
+			super(DeadlineTest.this.timeLimiter, timeoutMillis, null);
+			this.subOperation = subOperation;
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			return runSubOperation(subOperation, 1f);
+		}
+	}
+
+	/**
+	 * Imitates a helper read loop that polls the device with a fixed per-read timeout until it runs out of time.
+	 */
+	private class WaitingOperation extends TimeLimitedOperation<Void> {
+
+		private long deadlineSeenMillis;
+
+		private int waits;
+
+		private WaitingOperation(final long timeoutMillis) {
+			super(DeadlineTest.this.timeLimiter, timeoutMillis, null);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			deadlineSeenMillis = Deadline.current().remainingMillis();
+			while (true) {
+				final long waitMillis = Deadline.current().limit(40L);
+				waits++;
+				try {
+					Thread.sleep(waitMillis);
+				} catch (InterruptedException e) {
+					throw new TimeoutException("Interrupted");
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures the overhead of running an operation that does no work, once through the {@link SimpleTimeLimiter} that
+ * hands every call to a pool thread and once through the {@link InlineTimeLimiter}. The nested variant runs one sub
+ * operation per operation like most program operations do.
+ * <p/>
+ * Run with <code>java OperationDispatchBenchmark [operations]</code>.
+ */
+public class OperationDispatchBenchmark {
+
+	private static class EmptyOperation extends TimeLimitedOperation<Integer> {
+
+		private final boolean nested;
+
+		private EmptyOperation(final TimeLimiter timeLimiter, final boolean nested) {
+			super(timeLimiter, 10000, null);
+			this.nested = nested;
+		}
+
+		@Override
+		protected Integer callInternal() throws Exception {
+			return nested ? runSubOperation(new EmptyOperation(timeLimiter, false), 0f) : 1;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		final int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		final TimeLimiter simpleTimeLimiter = new SimpleTimeLimiter(executor);
+		final TimeLimiter inlineTimeLimiter = new InlineTimeLimiter();
+
+		// warm up before measuring
+		for (int i = 0; i < 3; i++) {
+			run(simpleTimeLimiter, operations / 4, false);
+			run(inlineTimeLimiter, operations / 4, false);
+			run(simpleTimeLimiter, operations / 4, true);
+			run(inlineTimeLimiter, operations / 4, true);
+		}
+
+		print("Thread hop", "flat", run(simpleTimeLimiter, operations, false));
+		print("Inline", "flat", run(inlineTimeLimiter, operations, false));
+		print("Thread hop", "nested", run(simpleTimeLimiter, operations, true));
+		print("Inline", "nested", run(inlineTimeLimiter, operations, true));
+
+		executor.shutdownNow();
+	}
+
+	private static double run(final TimeLimiter timeLimiter, final int operations, final boolean nested)
+			throws Exception {
+
+		long start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			new EmptyOperation(timeLimiter, nested).call();
+		}
+		return (System.nanoTime() - start) / (double) operations;
+	}
+
+	private static void print(final String name, final String variant, final double nanosPerOperation) {
+		System.out.println(String.format("%-10s %-6s %10.0f ns/operation", name, variant, nanosPerOperation));
+	}
+}
@@ -0,0 +1,189 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OperationSchedulerTest {
+
+	private OperationScheduler scheduler;
+
+	private final CountDownLatch blocker = new CountDownLatch(1);
+
+	private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new OperationScheduler();
+		scheduler.start(Executors.defaultThreadFactory());
+
+		// keeps the worker busy so that the following submissions queue up
+		final CountDownLatch running = new CountDownLatch(1);
+		scheduler.submit(ProgramOperation.class, OperationPriority.LOW, true, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				running.countDown();
+				blocker.await();
+				return null;
+			}
+		}
+		);
+		running.await();
+	}
+
+	@After
+	public void tearDown() {
+		blocker.countDown();
+		scheduler.shutdown(1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void higherPriorityQueryRunsFirst() throws Exception {
+		query(ReadFlashOperation.class, OperationPriority.NORMAL, "readFlash");
+		query(ReadMacAddressOperation.class, OperationPriority.HIGH, "mac");
+		ListenableFuture<String> last = query(IsNodeAliveOperation.class, OperationPriority.HIGH, "alive");
+
+		assertEquals(3, scheduler.getQueueDepth());
+		assertEquals(2, scheduler.getQueueDepth(OperationPriority.HIGH));
+
+		blocker.countDown();
+		awaitCompletion(4);
+
+		assertEquals(asList("mac", "alive", "readFlash"), executed);
+		assertEquals("alive", last.get());
+	}
+
+	@Test
+	public void resetRunsAfterProgram() throws Exception {
+		barrier(ProgramOperation.class, OperationPriority.LOW, "program");
+		barrier(ResetOperation.class, OperationPriority.NORMAL, "reset");
+		query(IsNodeAliveOperation.class, OperationPriority.HIGH, "alive");
+
+		blocker.countDown();
+		awaitCompletion(4);
+
+		assertEquals(asList("program", "reset", "alive"), executed);
+	}
+
+	@Test
+	public void readFlashRunsAfterWriteFlash() throws Exception {
+		barrier(WriteFlashOperation.class, OperationPriority.LOW, "writeFlash");
+		query(ReadFlashOperation.class, OperationPriority.NORMAL, "readFlash");
+
+		blocker.countDown();
+		awaitCompletion(3);
+
+		assertEquals(asList("writeFlash", "readFlash"), executed);
+	}
+
+	@Test
+	public void readMacRunsAfterWriteMac() throws Exception {
+		barrier(WriteMacAddressOperation.class, OperationPriority.NORMAL, "writeMac");
+		query(ReadMacAddressOperation.class, OperationPriority.HIGH, "readMac");
+
+		blocker.countDown();
+		awaitCompletion(3);
+
+		assertEquals(asList("writeMac", "readMac"), executed);
+	}
+
+	@Test
+	public void onlyQueriesBeforeABarrierMoveAhead() throws Exception {
+		query(ReadFlashOperation.class, OperationPriority.NORMAL, "readFlash");
+		query(IsNodeAliveOperation.class, OperationPriority.HIGH, "alive1");
+		barrier(EraseFlashOperation.class, OperationPriority.LOW, "erase");
+		query(GetChipTypeOperation.class, OperationPriority.HIGH, "chipType");
+		barrier(BatchOperation.class, OperationPriority.NORMAL, "batch");
+		query(IsNodeAliveOperation.class, OperationPriority.HIGH, "alive2");
+
+		blocker.countDown();
+		awaitCompletion(7);
+
+		assertEquals(asList("alive1", "readFlash", "erase", "chipType", "batch", "alive2"), executed);
+	}
+
+	@Test
+	public void typesOfEqualPriorityAlternate() throws Exception {
+		query(IsNodeAliveOperation.class, OperationPriority.HIGH, "alive1");
+		query(IsNodeAliveOperation.class, OperationPriority.HIGH, "alive2");
+		query(ReadMacAddressOperation.class, OperationPriority.HIGH, "mac1");
+		query(ReadMacAddressOperation.class, OperationPriority.HIGH, "mac2");
+
+		blocker.countDown();
+		awaitCompletion(5);
+
+		assertEquals(asList("alive1", "mac1", "alive2", "mac2"), executed);
+	}
+
+	@Test
+	public void fullQueueRejectsByAdmissionPolicy() throws Exception {
+		scheduler.setMaxQueuedOperations(1);
+		scheduler.setAdmissionPolicy(OperationScheduler.AdmissionPolicy.REJECT_LOWER_PRIORITY);
+
+		ListenableFuture<String> program = barrier(ProgramOperation.class, OperationPriority.LOW, "program");
+		ListenableFuture<String> reset = barrier(ResetOperation.class, OperationPriority.NORMAL, "reset");
+		ListenableFuture<String> otherReset = barrier(ResetOperation.class, OperationPriority.NORMAL, "reset2");
+
+		assertRejected(program);
+		assertRejected(otherReset);
+		assertEquals(2, scheduler.getRejectedCount());
+
+		blocker.countDown();
+		assertEquals("reset", reset.get(1, TimeUnit.SECONDS));
+	}
+
+	private ListenableFuture<String> query(final Class<?> type, final OperationPriority priority,
+										   final String name) {
+		return submit(type, priority, false, name);
+	}
+
+	private ListenableFuture<String> barrier(final Class<?> type, final OperationPriority priority,
+											 final String name) {
+		return submit(type, priority, true, name);
+	}
+
+	private ListenableFuture<String> submit(final Class<?> type, final OperationPriority priority,
+											final boolean barrier, final String name) {
+		return scheduler.submit(type, priority, barrier, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				executed.add(name);
+				return name;
+			}
+		}
+		);
+	}
+
+	private void awaitCompletion(final long operations) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 1000;
+		while (scheduler.getCompletedCount() < operations && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(operations, scheduler.getCompletedCount());
+	}
+
+	private static void assertRejected(final ListenableFuture<?> future) throws InterruptedException {
+		try {
+			future.get();
+			fail("Operation should have been rejected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+	private final RetryPolicy policy = new RetryPolicy.Builder()
+			.maxAttempts(4)
+			.backoff(1, 2, 4)
+			.retryOn(InvalidChecksumException.class)
+			.retryOn(TimeoutException.class, 2)
+			.build();
+
+	private final DeviceMetrics metrics = new DeviceMetrics();
+
+	@Test
+	public void retriesUntilSuccessAndCountsRetries() throws Exception {
+		final FailingFrame frame = new FailingFrame(new InvalidChecksumException(), 3);
+
+		assertEquals("ok", policy.execute("frame", metrics, frame));
+		assertEquals(4, frame.attempts);
+		assertEquals(3, metrics.getRetries());
+	}
+
+	@Test
+	public void rulesLimitAttemptsPerFailureType() throws Exception {
+		final FailingFrame timeouts = new FailingFrame(new TimeoutException(), 10);
+		try {
+			policy.execute("frame", metrics, timeouts);
+			fail("Timeouts should only be retried once");
+		} catch (TimeoutException expected) {
+		}
+		assertEquals(2, timeouts.attempts);
+
+		final FailingFrame ioErrors = new FailingFrame(new IOException(), 10);
+		try {
+			policy.execute("frame", metrics, ioErrors);
+			fail("Failures without a rule should not be retried");
+		} catch (IOException expected) {
+		}
+		assertEquals(1, ioErrors.attempts);
+	}
+
+	@Test
+	public void expiredDeadlineStopsRetrying() throws Exception {
+		final Deadline previous = Deadline.setCurrent(Deadline.after(0, TimeUnit.MILLISECONDS));
+		try {
+			final FailingFrame frame = new FailingFrame(new InvalidChecksumException(), 10);
+			try {
+				policy.execute("frame", metrics, frame);
+				fail("Frame should not be retried after the deadline");
+			} catch (InvalidChecksumException expected) {
+			}
+			assertEquals(1, frame.attempts);
+		} finally {
+			Deadline.setCurrent(previous);
+		}
+	}
+
+	private static class FailingFrame implements Callable<String> {
+
+		private final Exception failure;
+
+		private final int failures;
+
+		private int attempts;
+
+		private FailingFrame(final Exception failure, final int failures) {
+			this.failure = failure;
+			this.failures = failures;
+		}
+
+		@Override
+		public String call() throws Exception {
+			if (attempts++ < failures) {
+				throw failure;
+			}
+			return "ok";
+		}
+	}
+}
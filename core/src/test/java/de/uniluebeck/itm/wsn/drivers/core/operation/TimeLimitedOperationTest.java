@@ -0,0 +1,98 @@
+package de.uniluebeck.itm.wsn.drivers.core.operation;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.core.util.Watchdog;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimeLimitedOperationTest {
+
+	private final TimeLimiter timeLimiter = new InlineTimeLimiter(new Watchdog("TimeLimitedOperationTest-Watchdog"));
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void cancelAsyncInterruptsBlockedOperation() throws Exception {
+		final BlockingOperation operation = new BlockingOperation(60000);
+		final Future<Void> result = executor.submit(operation);
+		operation.started.await();
+
+		final long start = System.nanoTime();
+		final ListenableFuture<State> cancellation = operation.cancelAsync();
+
+		assertEquals(State.CANCELED, cancellation.get(5, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+		assertNull(result.get(5, TimeUnit.SECONDS));
+
+		// the interrupt must not leak into the next task of the thread
+		assertFalse(executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return Thread.currentThread().isInterrupted();
+			}
+		}
+		).get());
+	}
+
+	@Test
+	public void cancelBeforeStartCompletesImmediately() throws Exception {
+		final BlockingOperation operation = new BlockingOperation(60000);
+
+		assertEquals(State.CANCELED, operation.cancelAsync().get(1, TimeUnit.SECONDS));
+		assertNull(operation.call());
+		assertEquals("Operation must not run", 1, operation.started.getCount());
+	}
+
+	@Test
+	public void cancelReachesRunningSubOperation() throws Exception {
+		final BlockingOperation subOperation = new BlockingOperation(60000);
+		final TimeLimitedOperation<Void> parent = new TimeLimitedOperation<Void>(timeLimiter, 60000, null) {
+			@Override
+			protected Void callInternal() throws Exception {
+				runSubOperation(subOperation, 1f);
+				return null;
+			}
+		};
+		executor.submit(parent);
+		subOperation.started.await();
+
+		assertEquals(State.CANCELED, parent.cancelAsync().get(5, TimeUnit.SECONDS));
+		assertEquals(State.CANCELED, subOperation.getState());
+	}
+
+	private class BlockingOperation extends TimeLimitedOperation<Void> {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+
+		private BlockingOperation(final long timeoutMillis) {
+			super(TimeLimitedOperationTest.this.timeLimiter, timeoutMillis, null);
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			started.countDown();
+			// stands in for a read that waits for a device that does not answer
+			Thread.sleep(Long.MAX_VALUE);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package de.uniluebeck.itm.wsn.drivers.core.util;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InlineTimeLimiterTest {
+
+	private final Watchdog watchdog = new Watchdog("InlineTimeLimiterTest-Watchdog");
+
+	private final InlineTimeLimiter timeLimiter = new InlineTimeLimiter(watchdog);
+
+	@Test
+	public void callRunsOnCallerThread() throws Exception {
+		Thread thread = timeLimiter.callWithTimeout(new Callable<Thread>() {
+			@Override
+			public Thread call() throws Exception {
+				return Thread.currentThread();
+			}
+		}, 1, TimeUnit.SECONDS, true
+		);
+
+		assertSame(Thread.currentThread(), thread);
+		assertEquals(0, watchdog.getPendingCount());
+	}
+
+	@Test
+	public void blockedCallIsInterruptedAtDeadline() throws Exception {
+		long start = System.nanoTime();
+		try {
+			timeLimiter.callWithTimeout(new Sleep(10000), 50, TimeUnit.MILLISECONDS, true);
+			fail("Call should have timed out");
+		} catch (UncheckedTimeoutException e) {
+			assertTrue(e.getCause() instanceof InterruptedException);
+		}
+
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+		assertFalse("Interrupt must not leak", Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void nestedCallTimesOutWithoutAffectingParent() throws Exception {
+		String result = timeLimiter.callWithTimeout(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				try {
+					timeLimiter.callWithTimeout(new Sleep(10000), 20, TimeUnit.MILLISECONDS, true);
+					return "not timed out";
+				} catch (UncheckedTimeoutException e) {
+					return "timed out";
+				}
+			}
+		}, 5, TimeUnit.SECONDS, true
+		);
+
+		assertEquals("timed out", result);
+		assertFalse(Thread.currentThread().isInterrupted());
+		assertEquals(0, watchdog.getPendingCount());
+	}
+
+	private static class Sleep implements Callable<Void> {
+
+		private final long millis;
+
+		private Sleep(final long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			Thread.sleep(millis);
+			return null;
+		}
+	}
+}
@@ -29,6 +29,8 @@ import java.util.concurrent.ExecutorService;
 import com.google.inject.ImplementedBy;
 
 import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceModule;
+import de.uniluebeck.itm.wsn.drivers.core.io.StreamPump;
 
 import javax.annotation.Nullable;
 
@@ -41,4 +43,35 @@ public interface DeviceFactory {
 	Device create(ExecutorService executorService, DeviceType deviceType, @Nullable Map<String, String> configuration);
 
 	Device create(ExecutorService executorService, String deviceType, @Nullable Map<String, String> configuration);
+
+	/**
+	 * Creates a device whose driver output is copied to the device by the given shared pump instead of a dedicated
+	 * thread. The same pump can be passed for any number of devices.
+	 */
+	Device create(ExecutorService executorService, DeviceType deviceType, @Nullable Map<String, String> configuration,
+				  StreamPump streamPump);
+
+	Device create(ExecutorService executorService, String deviceType, @Nullable Map<String, String> configuration,
+				  StreamPump streamPump);
+
+	/**
+	 * Creates a device whose per device threads are virtual threads if <code>virtualThreads</code> is set: the thread of
+	 * the operation scheduler, on which the operations and their time limiter run, and the thread that copies the
+	 * driver output to the device if no <code>streamPump</code> is given. Timeouts are enforced by the shared watchdog
+	 * thread. This allows a single JVM to host thousands of devices.
+	 */
+	Device create(ExecutorService executorService, DeviceType deviceType, @Nullable Map<String, String> configuration,
+				  @Nullable StreamPump streamPump, boolean virtualThreads);
+
+	Device create(ExecutorService executorService, String deviceType, @Nullable Map<String, String> configuration,
+				  @Nullable StreamPump streamPump, boolean virtualThreads);
+
+	/**
+	 * Creates a device on top of a base module configured with a {@link DeviceModule.Builder}, e.g. to choose the
+	 * {@link de.uniluebeck.itm.wsn.drivers.core.io.OverflowPolicy} for device output the driver reads too slowly. A
+	 * module must not be passed for more than one device.
+	 */
+	Device create(DeviceType deviceType, @Nullable Map<String, String> configuration, DeviceModule deviceModule);
+
+	Device create(String deviceType, @Nullable Map<String, String> configuration, DeviceModule deviceModule);
 }
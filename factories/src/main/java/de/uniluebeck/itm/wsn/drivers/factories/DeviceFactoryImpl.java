@@ -29,6 +29,7 @@ import com.google.inject.Module;
 import com.google.inject.Singleton;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
 import de.uniluebeck.itm.wsn.drivers.core.DeviceModule;
+import de.uniluebeck.itm.wsn.drivers.core.io.StreamPump;
 import de.uniluebeck.itm.wsn.drivers.jennic.JennicModule;
 import de.uniluebeck.itm.wsn.drivers.mock.MockModule;
 import de.uniluebeck.itm.wsn.drivers.pacemate.PacemateModule;
@@ -55,6 +56,48 @@ class DeviceFactoryImpl implements DeviceFactory {
 	@Override
 	public Device create(final ExecutorService executorService, final DeviceType deviceType,
 						 @Nullable final Map<String, String> configuration) {
+		return create(deviceType, configuration, new DeviceModule(executorService));
+	}
+
+	@Override
+	public Device create(final ExecutorService executorService, final DeviceType deviceType,
+						 @Nullable final Map<String, String> configuration, final StreamPump streamPump) {
+		return create(deviceType, configuration,
+				new DeviceModule.Builder(executorService).streamPump(streamPump).build()
+		);
+	}
+
+	@Override
+	public Device create(final ExecutorService executorService, final String deviceType,
+						 @Nullable final Map<String, String> configuration, final StreamPump streamPump) {
+		return create(executorService, DeviceType.fromString(deviceType), configuration, streamPump);
+	}
+
+	@Override
+	public Device create(final ExecutorService executorService, final DeviceType deviceType,
+						 @Nullable final Map<String, String> configuration, @Nullable final StreamPump streamPump,
+						 final boolean virtualThreads) {
+		return create(deviceType, configuration,
+				new DeviceModule.Builder(executorService).streamPump(streamPump).virtualThreads(virtualThreads).build()
+		);
+	}
+
+	@Override
+	public Device create(final ExecutorService executorService, final String deviceType,
+						 @Nullable final Map<String, String> configuration, @Nullable final StreamPump streamPump,
+						 final boolean virtualThreads) {
+		return create(executorService, DeviceType.fromString(deviceType), configuration, streamPump, virtualThreads);
+	}
+
+	@Override
+	public Device create(final String deviceType, @Nullable final Map<String, String> configuration,
+						 final DeviceModule deviceModule) {
+		return create(DeviceType.fromString(deviceType), configuration, deviceModule);
+	}
+
+	@Override
+	public Device create(final DeviceType deviceType, @Nullable final Map<String, String> configuration,
+						 final DeviceModule baseModule) {
 
 		Module deviceModule;
 
@@ -80,7 +123,7 @@ class DeviceFactoryImpl implements DeviceFactory {
 				);
 		}
 
-		return Guice.createInjector(new DeviceModule(executorService), deviceModule).getInstance(Device.class);
+		return Guice.createInjector(baseModule, deviceModule).getInstance(Device.class);
 	}
 
 	@Override
@@ -0,0 +1,231 @@
+package de.uniluebeck.itm.wsn.drivers.factories;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.TimeLimiter;
+import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import de.uniluebeck.itm.wsn.drivers.core.AbstractConnection;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.State;
+import de.uniluebeck.itm.wsn.drivers.core.operation.TimeLimitedOperation;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.jennic.JennicHelper;
+import de.uniluebeck.itm.wsn.drivers.pacemate.PacemateHelper;
+import de.uniluebeck.itm.wsn.drivers.telosb.BSLTelosb;
+import gnu.io.SerialPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from a cancellation request until the operation is done and the device is idle again, once by
+ * only setting the cancellation flag as the drivers used to do and once through {@link TimeLimitedOperation#cancelAsync()}
+ * which interrupts the blocked read.
+ * <p/>
+ * The Jennic, Pacemate and TelosB loops run their helpers against a connection that never answers, the protocol state
+ * in which a device sits while it erases or stops responding. The mock driver runs a real program operation.
+ * <p/>
+ * Run with <code>java CancellationLatencyBenchmark [rounds]</code>.
+ */
+public class CancellationLatencyBenchmark {
+
+	private static final long OPERATION_TIMEOUT_MILLIS = 120000;
+
+	private static final long CANCEL_AFTER_MILLIS = 300;
+
+	private static final TimeLimiter TIME_LIMITER = new InlineTimeLimiter();
+
+	public static void main(String[] args) throws Exception {
+
+		final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		for (Driver driver : Driver.values()) {
+			System.out.println(String.format("%-8s flag only: %8.1f ms, interrupting: %8.1f ms",
+					driver,
+					measure(executor, driver, rounds, false),
+					measure(executor, driver, rounds, true)
+			)
+			);
+		}
+
+		executor.shutdownNow();
+
+		System.out.println(String.format("%-8s interrupting: %8.1f ms", "MOCK", measureMock(rounds)));
+	}
+
+	private enum Driver {
+		JENNIC, PACEMATE, TELOSB
+	}
+
+	private static double measure(final ExecutorService executor, final Driver driver, final int rounds,
+								  final boolean interrupting) throws Exception {
+
+		long sum = 0;
+		for (int i = 0; i < rounds; i++) {
+
+			final SilentConnection connection = new SilentConnection();
+			connection.connect("SILENT");
+
+			final ReadLoopOperation operation = new ReadLoopOperation(driver, connection);
+			final Future<Void> result = executor.submit(operation);
+			Thread.sleep(CANCEL_AFTER_MILLIS);
+
+			final long start = System.nanoTime();
+			if (interrupting) {
+				operation.cancelAsync().get();
+			} else {
+				operation.cancelFlagOnly();
+				result.get();
+			}
+			sum += System.nanoTime() - start;
+		}
+		return (sum / 1e6) / rounds;
+	}
+
+	private static double measureMock(final int rounds) throws Exception {
+
+		final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(3,
+				new ThreadFactoryBuilder().setNameFormat("CancellationLatencyBenchmark-Thread %d").build()
+		);
+
+		final Map<String, String> configuration = new HashMap<String, String>();
+		configuration.put("ECHO", "false");
+
+		final Device device = new DeviceFactoryImpl().create(executorService, DeviceType.MOCK, configuration);
+		device.connect("MOCK");
+
+		long sum = 0;
+		for (int i = 0; i < rounds; i++) {
+
+			final OperationFuture<Void> future = device.program(new byte[1024], OPERATION_TIMEOUT_MILLIS, null);
+			Thread.sleep(CANCEL_AFTER_MILLIS);
+
+			final long start = System.nanoTime();
+			final State state = future.getOperation().cancelAsync().get();
+			// the device is idle once the next operation runs
+			device.isNodeAlive(OPERATION_TIMEOUT_MILLIS, null).get();
+			sum += System.nanoTime() - start;
+
+			if (state != State.CANCELED) {
+				throw new IllegalStateException("Program operation ended with " + state);
+			}
+		}
+
+		device.close();
+		ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+
+		return (sum / 1e6) / rounds;
+	}
+
+	/**
+	 * Polls the device like the program operations of the drivers do until it is canceled.
+	 */
+	private static class ReadLoopOperation extends TimeLimitedOperation<Void> {
+
+		private final Driver driver;
+
+		private final SilentConnection connection;
+
+		private ReadLoopOperation(final Driver driver, final SilentConnection connection) {
+			super(TIME_LIMITER, OPERATION_TIMEOUT_MILLIS, null);
+			this.driver = driver;
+			this.connection = connection;
+		}
+
+		private void cancelFlagOnly() {
+			canceled = true;
+		}
+
+		@Override
+		protected Void callInternal() throws Exception {
+			switch (driver) {
+				case JENNIC:
+					final JennicHelper jennicHelper = new JennicHelper(connection);
+					while (!isCanceled() && !jennicHelper.waitForConnection()) {
+						// retry like JennicProgramOperation does
+					}
+					break;
+				case PACEMATE:
+					final PacemateHelper pacemateHelper = new PacemateHelper(connection);
+					while (!isCanceled()) {
+						try {
+							pacemateHelper.eraseFlash(0, 0);
+						} catch (TimeoutException e) {
+							// retry
+						}
+					}
+					break;
+				case TELOSB:
+					final BSLTelosb bsl = new BSLTelosb(connection);
+					while (!isCanceled()) {
+						try {
+							bsl.receiveBSLReply();
+						} catch (TimeoutException e) {
+							// retry
+						}
+					}
+					break;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A connection to a device that never sends anything.
+	 */
+	private static class SilentConnection extends AbstractConnection implements SerialPortConnection {
+
+		@Override
+		public void connect(final String port) throws IOException {
+			super.connect(port);
+			setInputStream(new InputStream() {
+				@Override
+				public int read() throws IOException {
+					return -1;
+				}
+
+				@Override
+				public int available() throws IOException {
+					return 0;
+				}
+			}
+			);
+			setOutputStream(new OutputStream() {
+				@Override
+				public void write(final int b) throws IOException {
+					// discard
+				}
+			}
+			);
+			setUri(port);
+			setConnected();
+		}
+
+		@Override
+		public int[] getChannels() {
+			return new int[0];
+		}
+
+		@Override
+		public SerialPort getSerialPort() {
+			return null;
+		}
+
+		@Override
+		public void setSerialPortMode(final SerialPortMode mode) {
+			// nothing to switch
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package de.uniluebeck.itm.wsn.drivers.factories;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.util.VirtualThreads;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects a fleet of mock devices and compares the live thread count, the heap usage and the latency of concurrent
+ * <code>getChipType</code> operations between platform threads and virtual threads.
+ * <p/>
+ * Run with <code>java MockFleetBenchmark [devices] [operations per device]</code>. Virtual threads are only measured
+ * if the JVM supports them.
+ */
+public class MockFleetBenchmark {
+
+	private static final long OPERATION_TIMEOUT_MILLIS = 60000;
+
+	public static void main(String[] args) throws Exception {
+
+		final int devices = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		final int operations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		run("Platform", devices, operations, false);
+
+		if (VirtualThreads.isSupported()) {
+			run("Virtual", devices, operations, true);
+		} else {
+			System.out.println("Virtual threads are not supported by this JVM, skipping");
+		}
+	}
+
+	private static void run(final String name, final int devices, final int operations, final boolean virtualThreads)
+			throws Exception {
+
+		final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		final int threadsBefore = threadMXBean.getThreadCount();
+		final long memoryBefore = usedMemory();
+
+		final ExecutorService executorService = Executors.newScheduledThreadPool(3,
+				new ThreadFactoryBuilder().setNameFormat("MockFleetBenchmark-Thread %d").build()
+		);
+
+		final Map<String, String> configuration = new HashMap<String, String>();
+		configuration.put("ECHO", "false");
+
+		final DeviceFactoryImpl deviceFactory = new DeviceFactoryImpl();
+		final List<Device> fleet = new ArrayList<Device>(devices);
+
+		for (int i = 0; i < devices; i++) {
+			final Device device = deviceFactory.create(
+					executorService, DeviceType.MOCK, configuration, null, virtualThreads
+			);
+			device.connect("MOCK");
+			fleet.add(device);
+		}
+
+		long latencySum = 0;
+		long latencyMax = 0;
+
+		for (int round = 0; round < operations; round++) {
+
+			final long start = System.nanoTime();
+			final List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>(devices);
+
+			for (Device device : fleet) {
+				futures.add(device.getChipType(OPERATION_TIMEOUT_MILLIS, null));
+			}
+
+			for (ListenableFuture<?> future : futures) {
+				future.get();
+			}
+
+			final long latency = System.nanoTime() - start;
+			latencySum += latency;
+			latencyMax = Math.max(latencyMax, latency);
+		}
+
+		final int threadsConnected = threadMXBean.getThreadCount();
+		final long memoryConnected = usedMemory();
+
+		for (Device device : fleet) {
+			device.close();
+		}
+		ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+
+		System.out.println(String.format(
+				"%-8s devices: %5d, platform threads: %5d, heap: %8.1f MB, round latency avg: %8.1f ms, max: %8.1f ms",
+				name,
+				devices,
+				threadsConnected - threadsBefore,
+				(memoryConnected - memoryBefore) / (1024.0 * 1024.0),
+				(latencySum / 1e6) / operations,
+				latencyMax / 1e6
+		)
+		);
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		final Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		Thread.sleep(100);
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
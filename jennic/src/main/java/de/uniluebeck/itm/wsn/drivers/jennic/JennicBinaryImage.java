@@ -30,6 +30,9 @@ import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * @author Malte Legenhausen
  * @author dp
@@ -40,12 +43,19 @@ public class JennicBinaryImage {
 
 	private static final int BLOCK_SIZE = 128;
 
+	/**
+	 * Value of a flash byte after erasing.
+	 */
+	private static final byte ERASED = (byte) 0xFF;
+
 	private final byte[] bytes;
 
 	private final int length;
 
 	private int blockIterator = 0;
 
+	private boolean skipErasedBlocks = false;
+
 	public JennicBinaryImage(byte[] bytes) {
 		this.bytes = bytes;
 		this.length = bytes.length;
@@ -92,6 +102,11 @@ public class JennicBinaryImage {
 		return b;
 	}
 
+	private boolean isErasedBlock(int block) {
+		int offset = block * BLOCK_SIZE;
+		return hasRepeatedPattern(bytes, offset, Math.min(BLOCK_SIZE, length - offset), ERASED);
+	}
+
 	private boolean hasRepeatedPattern(byte b[], int offset, int repeat, byte pattern) {
 
 		for (int i = 0; i < repeat; ++i) {
@@ -185,6 +200,58 @@ public class JennicBinaryImage {
 		return ChipType.UNKNOWN;
 	}
 
+	/**
+	 * Lets {@link #getNextBlock()} leave out blocks that contain only <code>0xFF</code>. Programming such a block does
+	 * not change the flash, as programming can only clear bits, so they can be skipped once the sectors are erased.
+	 *
+	 * @param skipErasedBlocks
+	 * 		<code>true</code> to leave out erased blocks.
+	 */
+	public void setSkipErasedBlocks(boolean skipErasedBlocks) {
+		this.skipErasedBlocks = skipErasedBlocks;
+	}
+
+	/**
+	 * Counts the blocks that contain only <code>0xFF</code>. Call it after {@link #insertHeader(byte[])} as the header
+	 * can change the blocks it is written to.
+	 *
+	 * @return The number of erased blocks in the image.
+	 */
+	public int getErasedBlockCount() {
+		int count = 0;
+		for (int block = 0; block < getBlockCount(); block++) {
+			if (isErasedBlock(block)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The number of bytes in blocks that contain only <code>0xFF</code>.
+	 */
+	public int getErasedBytes() {
+		int erasedBytes = 0;
+		for (int block = 0; block < getBlockCount(); block++) {
+			if (isErasedBlock(block)) {
+				erasedBytes += Math.min(BLOCK_SIZE, length - block * BLOCK_SIZE);
+			}
+		}
+		return erasedBytes;
+	}
+
+	/**
+	 * Checks whether programming a block would change the erased flash, as programming can only clear bits.
+	 *
+	 * @param block
+	 * 		A block returned by {@link #getNextBlock()}.
+	 *
+	 * @return <code>true</code> if the block contains only <code>0xFF</code>.
+	 */
+	public boolean isErased(BinaryImageBlock block) {
+		return hasRepeatedPattern(block.getData(), 0, block.getData().length, ERASED);
+	}
+
 	public BinaryImageBlock getNextBlock() {
 
 		if (hasNextBlock()) {
@@ -201,7 +268,19 @@ public class JennicBinaryImage {
 		}
 	}
 
+	/**
+	 * Lets {@link #getNextBlock()} start over with the first block.
+	 */
+	public void reset() {
+		blockIterator = 0;
+	}
+
 	public boolean hasNextBlock() {
+		if (skipErasedBlocks) {
+			while (blockIterator < getBlockCount() && isErasedBlock(blockIterator)) {
+				blockIterator++;
+			}
+		}
 		return blockIterator < getBlockCount();
 	}
 
@@ -219,6 +298,38 @@ public class JennicBinaryImage {
 		return deviceType.equals(getChipType());
 	}
 
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return The sectors of the flash the image is written to. They have to be erased before, even if the image
+	 *         contains only <code>0xFF</code> in some of them.
+	 */
+	public Set<Sector> getSectors() {
+		Set<Sector> sectors = EnumSet.noneOf(Sector.class);
+		for (Sector sector : Sector.values()) {
+			if (sector.getStart() < length) {
+				sectors.add(sector);
+			}
+		}
+		return sectors;
+	}
+
+	/**
+	 * @param offset
+	 * 		The offset of the first byte.
+	 * @param count
+	 * 		The number of bytes.
+	 *
+	 * @return A copy of the bytes of the image in the given range.
+	 */
+	public byte[] getBytes(int offset, int count) {
+		byte b[] = new byte[count];
+		System.arraycopy(bytes, offset, b, 0, count);
+		return b;
+	}
+
 	public int getBlockCount() {
 		int b = getFullBlocksCount();
 
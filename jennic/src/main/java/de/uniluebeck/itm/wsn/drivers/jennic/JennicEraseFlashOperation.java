@@ -3,6 +3,7 @@ package de.uniluebeck.itm.wsn.drivers.jennic;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
 import de.uniluebeck.itm.wsn.drivers.core.exception.FlashEraseFailedException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.EraseFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
@@ -22,39 +23,50 @@ public class JennicEraseFlashOperation extends TimeLimitedOperation<Void> implem
 
 	private final JennicHelper helper;
 
+	private final DeviceQueryCache queryCache;
+
 	@Inject
 	public JennicEraseFlashOperation(final TimeLimiter timeLimiter, final JennicHelper helper,
+									 final DeviceQueryCache queryCache,
 									 @Assisted final long timeoutMillis,
 									 @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.helper = helper;
+		this.queryCache = queryCache;
 	}
 
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
 
-		helper.sendBootloaderMessage(Messages.statusRegisterWriteMessage((byte) 0x00));
-		progress(0.25f);
+		try {
 
-		byte[] response = helper.receiveBootloaderReply(Messages.WRITE_SR_RESPONSE);
+			helper.sendBootloaderMessage(Messages.statusRegisterWriteMessage((byte) 0x00));
+			progress(0.25f);
 
-		if (response[1] != 0x0) {
-			log.error(String.format("Failed to write status register."));
-			throw new FlashEraseFailedException();
-		}
+			byte[] response = helper.receiveBootloaderReply(Messages.WRITE_SR_RESPONSE);
 
-		if (isCanceled()) {
-			return null;
-		}
+			if (response[1] != 0x0) {
+				log.error(String.format("Failed to write status register."));
+				throw new FlashEraseFailedException();
+			}
+
+			if (isCanceled()) {
+				return null;
+			}
+
+			progress(0.25f);
+			log.trace("Erasing flash");
+			helper.sendBootloaderMessage(Messages.flashEraseRequestMessage());
+			response = helper.receiveBootloaderReply(Messages.FLASH_ERASE_RESPONSE);
 
-		progress(0.25f);
-		log.trace("Erasing flash");
-		helper.sendBootloaderMessage(Messages.flashEraseRequestMessage());
-		response = helper.receiveBootloaderReply(Messages.FLASH_ERASE_RESPONSE);
+			if (response[1] != 0x0) {
+				throw new FlashEraseFailedException("Failed to erase flash.");
+			}
 
-		if (response[1] != 0x0) {
-			throw new FlashEraseFailedException("Failed to erase flash.");
+		} finally {
+			// the flash may have changed even if erasing failed
+			queryCache.invalidateAll();
 		}
 
 		return null;
@@ -5,6 +5,7 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
 import de.uniluebeck.itm.wsn.drivers.core.exception.RamReadFailedException;
 import de.uniluebeck.itm.wsn.drivers.core.exception.UnexpectedResponseException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.GetChipTypeOperation;
@@ -24,13 +25,17 @@ public class JennicGetChipTypeOperation extends TimeLimitedOperation<ChipType> i
 
 	private final JennicHelper helper;
 
+	private final DeviceQueryCache queryCache;
+
 	@Inject
 	public JennicGetChipTypeOperation(final TimeLimiter timeLimiter,
 									  final JennicHelper helper,
+									  final DeviceQueryCache queryCache,
 									  @Assisted final long timeoutMillis,
 									  @Assisted @Nullable final OperationListener<ChipType> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.helper = helper;
+		this.queryCache = queryCache;
 	}
 
 	private ChipType determineChipType(byte s, byte t) {
@@ -48,9 +53,24 @@ public class JennicGetChipTypeOperation extends TimeLimitedOperation<ChipType> i
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected ChipType callInternal() throws Exception {
 
+		// only enter programming mode if the chip type is not known yet
+		ChipType chipType = queryCache.get(DeviceQueryCache.CHIP_TYPE);
+
+		if (chipType == null) {
+			chipType = readChipType();
+			if (chipType != ChipType.UNKNOWN) {
+				queryCache.put(DeviceQueryCache.CHIP_TYPE, chipType);
+			}
+		}
+
+		return chipType;
+	}
+
+	@SerialPortProgrammingMode
+	protected ChipType readChipType() throws Exception {
+
 		log.trace("Getting ChipType...");
 
 		ChipType chipType = ChipType.UNKNOWN;
@@ -1,35 +1,199 @@
 package de.uniluebeck.itm.wsn.drivers.jennic;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
 import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvent;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEventType;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvents;
 import de.uniluebeck.itm.wsn.drivers.core.exception.*;
+import de.uniluebeck.itm.wsn.drivers.core.io.FrameDecoder;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import de.uniluebeck.itm.wsn.drivers.core.operation.Deadline;
+import de.uniluebeck.itm.wsn.drivers.core.operation.RetryPolicy;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
 import de.uniluebeck.itm.wsn.drivers.isense.exception.FlashTypeReadFailedException;
 import de.uniluebeck.itm.wsn.drivers.jennic.exception.SectorEraseException;
+import gnu.io.SerialPort;
+import gnu.io.UnsupportedCommOperationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static de.uniluebeck.itm.util.StringUtils.toHexString;
 
 
 public class JennicHelper {
 
+	/**
+	 * Cache key for the type of the flash chip.
+	 */
+	public static final DeviceQueryCache.Key<FlashType> FLASH_TYPE = new DeviceQueryCache.Key<FlashType>("flashType");
+
 	private static final Logger log = LoggerFactory.getLogger(JennicHelper.class);
 
 	private static final int TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS = 2500;
 
+	/**
+	 * The bootloader derives its baud rate by dividing this clock by the divisor of a baud rate change request.
+	 */
+	private static final int BOOTLOADER_BAUD_RATE_CLOCK = 1000000;
+
+	/**
+	 * Checksum errors after which programming falls back from the fast baud rate to the initial one.
+	 */
+	private static final int FAST_BAUD_RATE_MAX_CHECKSUM_ERRORS = 2;
+
+	/**
+	 * Flash program requests that are sent before the reply to the first one is awaited.
+	 */
+	public static final int DEFAULT_PROGRAM_WINDOW = 1;
+
+	/**
+	 * Retries lost and corrupted replies as well as failed flash writes of a single frame.
+	 */
+	public static final RetryPolicy DEFAULT_RETRY_POLICY = new RetryPolicy.Builder()
+			.maxAttempts(5)
+			.backoff(20, 2, 500)
+			.retryOn(TimeoutException.class)
+			.retryOn(InvalidChecksumException.class)
+			.retryOn(FlashProgramFailedException.class, 3)
+			.build();
+
+	/**
+	 * A reply starts with its length, which counts the reply and the trailing checksum.
+	 */
+	private static final FrameDecoder REPLY_DECODER = new FrameDecoder() {
+		@Override
+		public int frameLength(final byte[] buffer, final int offset, final int length, final boolean idle) {
+			final int frameLength = 1 + (buffer[offset] & 0xFF);
+			return length >= frameLength ? frameLength : INCOMPLETE;
+		}
+	};
+
 	private final Connection connection;
 
+	private DeviceQueryCache queryCache = new DeviceQueryCache();
+
+	@Nullable
+	private DeviceMetrics metrics;
+
+	private RetryPolicy retryPolicy = DEFAULT_RETRY_POLICY;
+
+	/**
+	 * Round trip begun by the last request, committed when its reply was read.
+	 */
+	@Nullable
+	private DriverEvent roundTrip;
+
+	private byte roundTripRequest;
+
+	private int roundTripRequestBytes;
+
+	/**
+	 * Baud rate to program at after the bootloader responded, 0 to keep the baud rate of the programming mode.
+	 */
+	private int fastProgramBaudRate;
+
+	/**
+	 * Baud rate to return to while the fast baud rate is used, otherwise 0.
+	 */
+	private int initialBaudRate;
+
+	private int fastBaudRateChecksumErrors;
+
+	private int programWindow = DEFAULT_PROGRAM_WINDOW;
+
+	private final Map<Sector, Long> sectorEraseNanos = new EnumMap<Sector, Long>(Sector.class);
+
 	@Inject
 	public JennicHelper(Connection connection) {
 		this.connection = connection;
 	}
 
+	@Inject
+	public void setQueryCache(final DeviceQueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	@Inject(optional = true)
+	public void setMetrics(final DeviceMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Inject(optional = true)
+	public void setRetryPolicy(@Named("jennic.retryPolicy") final RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Sets the baud rate that {@link #enterFastProgramming()} switches to, e.g. 500000 or 1000000.
+	 *
+	 * @param baudRate
+	 * 		A baud rate the bootloader can derive from its 1 MHz clock, 0 to disable fast programming.
+	 */
+	@Inject(optional = true)
+	public void setFastProgramBaudRate(@Named("jennic.fastProgramBaudRate") final int baudRate) {
+		checkArgument(baudRate == 0 || isBootloaderBaudRate(baudRate),
+				"The bootloader can not run at %s baud", baudRate
+		);
+		this.fastProgramBaudRate = baudRate;
+	}
+
+	public int getFastProgramBaudRate() {
+		return fastProgramBaudRate;
+	}
+
+	/**
+	 * Sets how many flash program requests a {@link FlashWriter} keeps in flight. The bootloader processes one request
+	 * at a time, the next ones wait in its receive buffer, so the link does not idle for a round trip per block.
+	 *
+	 * @param window
+	 * 		The number of requests in flight, 1 to wait for every reply before sending the next request.
+	 */
+	@Inject(optional = true)
+	public void setProgramWindow(@Named("jennic.programWindow") final int window) {
+		checkArgument(window >= 1, "At least one request has to be in flight (is %s)", window);
+		this.programWindow = window;
+	}
+
+	public int getProgramWindow() {
+		return programWindow;
+	}
+
 	public FlashType getFlashType() throws Exception {
+
+		FlashType flashType = queryCache.get(FLASH_TYPE);
+
+		if (flashType == null) {
+			flashType = readFlashType();
+			if (flashType != FlashType.Unknown) {
+				queryCache.put(FLASH_TYPE, flashType);
+			}
+		}
+
+		return flashType;
+	}
+
+	private FlashType readFlashType() throws Exception {
 		// Send flash type read request
 		sendBootloaderMessage(Messages.flashTypeReadRequestMessage());
 
@@ -77,6 +241,7 @@ public class JennicHelper {
 	public void eraseFlash(Sector sector) throws Exception {
 		enableFlashErase();
 		log.trace("Erasing sector " + sector);
+		final long start = System.nanoTime();
 		sendBootloaderMessage(Messages.sectorEraseRequestMessage(sector));
 
 		byte[] response = receiveBootloaderReply(Messages.SECTOR_ERASE_RESPONSE);
@@ -86,6 +251,24 @@ public class JennicHelper {
 			throw new SectorEraseException(sector);
 		}
 
+		synchronized (sectorEraseNanos) {
+			sectorEraseNanos.put(sector, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns how long the last erase of a sector took, from sending the request to the reply of the bootloader.
+	 *
+	 * @param sector
+	 * 		The erased sector.
+	 *
+	 * @return The time in milliseconds, -1 if the sector was not erased yet.
+	 */
+	public long getSectorEraseMillis(Sector sector) {
+		synchronized (sectorEraseNanos) {
+			final Long nanos = sectorEraseNanos.get(sector);
+			return nanos == null ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+		}
 	}
 
 	public void configureFlash(ChipType chipType) throws Exception {
@@ -118,6 +301,15 @@ public class JennicHelper {
 
 	public void sendBootloaderMessage(byte[] message) throws IOException {
 
+		roundTrip = DriverEvents.begin(DriverEventType.BOOTLOADER_ROUND_TRIP);
+		roundTripRequest = message[0];
+		roundTripRequestBytes = message.length + 2;
+
+		writeBootloaderMessage(message);
+	}
+
+	private void writeBootloaderMessage(byte[] message) throws IOException {
+
 		if (log.isTraceEnabled()) {
 			log.trace("Sending bootloader request: {}", toHexString(message));
 		}
@@ -144,38 +336,56 @@ public class JennicHelper {
 			throws TimeoutException, UnexpectedResponseException, InvalidChecksumException, IOException,
 			NullPointerException {
 
-		final InputStream inputStream = connection.getInputStream();
+		final DriverEvent event = roundTrip;
+		roundTrip = null;
 
-		connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
+		if (event == null) {
+			return readBootloaderReply(expectedType);
+		}
 
-		int bootLoaderReplyLength = inputStream.read();
-		byte[] bootLoaderReply = new byte[bootLoaderReplyLength - 1];
+		byte[] reply = null;
+		try {
+			reply = readBootloaderReply(expectedType);
+			return reply;
+		} finally {
+			event.commit("jennic",
+					DriverEvents.uriOf(connection),
+					toHexString(roundTripRequest),
+					reply != null ? toHexString(reply[0]) : null,
+					roundTripRequestBytes,
+					reply != null ? reply.length + 2 : 0,
+					reply != null
+			);
+		}
+	}
+
+	private byte[] readBootloaderReply(int expectedType)
+			throws TimeoutException, UnexpectedResponseException, InvalidChecksumException, IOException,
+			NullPointerException {
+
+		// length (of reply + checksum), reply and checksum arrive as one frame
+		final byte[] frame = connection.readFrame(REPLY_DECODER, TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
 
-		// read rest of the reply (except of the checksum)
-		for (int i = 0; i < (bootLoaderReplyLength - 1); ++i) {
-			connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
-			bootLoaderReply[i] = (byte) inputStream.read();
+		final int bootLoaderReplyLength = frame[0] & 0xFF;
+		if (bootLoaderReplyLength < 2) {
+			throw new UnexpectedResponseException("Bootloader reply of length " + bootLoaderReplyLength, expectedType, -1);
 		}
 
+		byte[] bootLoaderReply = new byte[bootLoaderReplyLength - 1];
+		System.arraycopy(frame, 1, bootLoaderReply, 0, bootLoaderReply.length);
+
 		if (log.isTraceEnabled()) {
 			log.trace("Received bootloader reply: {}", toHexString(bootLoaderReply));
 		}
 
-		// read checksum
-		connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE_MILLIS);
-		byte checksumReceived = (byte) inputStream.read();
+		byte checksumReceived = frame[frame.length - 1];
 
 		if (log.isTraceEnabled()) {
 			log.trace("Received bootloader reply checksum: {}", toHexString(checksumReceived));
 		}
 
-		// concatenate length field and actual reply for checksum calculation
-		byte[] fullBootLoaderReply = new byte[bootLoaderReply.length + 1];
-		fullBootLoaderReply[0] = (byte) bootLoaderReplyLength;
-		System.arraycopy(bootLoaderReply, 0, fullBootLoaderReply, 1, bootLoaderReply.length);
-
-		// throw exception if checksums differ
-		byte checksumCalculated = Messages.calculateChecksum(fullBootLoaderReply);
+		// the checksum covers the length field and the actual reply
+		byte checksumCalculated = Messages.calculateChecksum(frame, 0, frame.length - 1);
 		if (checksumCalculated != checksumReceived) {
 			String msg = "Bootloader reply checksum mismatch (received " + toHexString(checksumReceived) +
 					", calculated" + toHexString(checksumCalculated) + ")";
@@ -190,7 +400,15 @@ public class JennicHelper {
 		return bootLoaderReply;
 	}
 
-	public boolean waitForConnection() {
+	/**
+	 * Checks if the bootloader responds to requests.
+	 *
+	 * @return <code>true</code> if the bootloader responded, <code>false</code> if the request timed out.
+	 *
+	 * @throws TimeoutException
+	 * 		if the deadline of the running operation expired, retrying makes no sense then.
+	 */
+	public boolean waitForConnection() throws TimeoutException {
 
 		try {
 
@@ -201,6 +419,9 @@ public class JennicHelper {
 			return true;
 
 		} catch (TimeoutException e) {
+			if (Deadline.current().isExpired()) {
+				throw e;
+			}
 			try {
 				connection.clear();
 			} catch (IOException e1) {
@@ -213,7 +434,176 @@ public class JennicHelper {
 		}
 	}
 
+	/**
+	 * Waits until the bootloader responds, retrying according to the retry policy.
+	 *
+	 * @throws TimeoutException
+	 * 		if the bootloader did not respond to any attempt or the deadline of the running operation expired.
+	 */
+	public void awaitConnection() throws TimeoutException {
+		final RetryPolicy.Retry retry = retryPolicy.start("Connecting to the bootloader", metrics);
+		while (!waitForConnection()) {
+			retry.onFailure(new TimeoutException("Bootloader did not respond"));
+		}
+	}
+
+	/**
+	 * Switches the bootloader and the serial port to the fast program baud rate if one is set. Must be called after
+	 * the bootloader responded at the initial baud rate. If the bootloader does not respond at the fast baud rate, both
+	 * are switched back.
+	 *
+	 * @return <code>true</code> if the fast baud rate is used and {@link #leaveFastProgramming()} has to be called.
+	 *
+	 * @throws Exception
+	 * 		if the baud rate change request failed.
+	 */
+	public boolean enterFastProgramming() throws Exception {
+
+		if (fastProgramBaudRate == 0 || initialBaudRate != 0 || !(connection instanceof SerialPortConnection)) {
+			return false;
+		}
+
+		final int baudRate = ((SerialPortConnection) connection).getSerialPort().getBaudRate();
+		// the bootloader has to be able to return to the initial baud rate
+		if (baudRate >= fastProgramBaudRate || !isBootloaderBaudRate(baudRate)) {
+			return false;
+		}
+
+		if (!changeBaudRate(fastProgramBaudRate)) {
+			log.warn("Bootloader refused to change the baud rate to {}, programming at {} baud",
+					fastProgramBaudRate, baudRate
+			);
+			return false;
+		}
+
+		initialBaudRate = baudRate;
+		fastBaudRateChecksumErrors = 0;
+
+		// the bootloader switches after its reply, give it a second chance to answer at the new rate
+		if (waitForConnection() || waitForConnection()) {
+			log.debug("Programming at {} baud", fastProgramBaudRate);
+			return true;
+		}
+
+		log.warn("Bootloader does not respond at {} baud, programming at {} baud", fastProgramBaudRate, baudRate);
+		leaveFastProgramming();
+		return false;
+	}
+
+	/**
+	 * Switches the bootloader and the serial port back to the baud rate they used before
+	 * {@link #enterFastProgramming()}. Does nothing if the fast baud rate is not used.
+	 */
+	public void leaveFastProgramming() {
+
+		if (initialBaudRate == 0) {
+			return;
+		}
+
+		final int baudRate = initialBaudRate;
+		initialBaudRate = 0;
+
+		try {
+			connection.clear();
+			if (!changeBaudRate(baudRate)) {
+				log.warn("Bootloader refused to change the baud rate back to {}", baudRate);
+				setSerialPortBaudRate(baudRate);
+			}
+		} catch (Exception e) {
+			log.warn("Unable to change the baud rate of the bootloader back to {}: {}", baudRate, e);
+			try {
+				setSerialPortBaudRate(baudRate);
+			} catch (IOException e1) {
+				log.error("Unable to restore the baud rate of the serial port.", e1);
+			}
+		}
+	}
+
+	/**
+	 * Asks the bootloader to change its baud rate and changes the baud rate of the serial port when it agreed.
+	 *
+	 * @param baudRate
+	 * 		A baud rate the bootloader can derive from its 1 MHz clock.
+	 *
+	 * @return <code>true</code> if the baud rate was changed, <code>false</code> if the bootloader refused.
+	 *
+	 * @throws Exception
+	 * 		if sending the request or receiving the reply failed.
+	 */
+	public boolean changeBaudRate(int baudRate) throws Exception {
+
+		checkArgument(isBootloaderBaudRate(baudRate), "The bootloader can not run at %s baud", baudRate);
+		checkState(connection instanceof SerialPortConnection, "The baud rate of %s can not be changed", connection);
+
+		sendBootloaderMessage(Messages.changeBaudRateMessage(Math.round((float) BOOTLOADER_BAUD_RATE_CLOCK / baudRate)));
+		byte[] response = receiveBootloaderReply(Messages.CHANGE_BAUD_RATE_RESPONSE);
+
+		if (response[1] != 0x00) {
+			log.debug("Bootloader refused to change the baud rate to {}: {}", baudRate, toHexString(response[1]));
+			return false;
+		}
+
+		setSerialPortBaudRate(baudRate);
+		return true;
+	}
+
+	private void setSerialPortBaudRate(int baudRate) throws IOException {
+		final SerialPort serialPort = ((SerialPortConnection) connection).getSerialPort();
+		try {
+			serialPort.setSerialPortParams(baudRate,
+					serialPort.getDataBits(),
+					serialPort.getStopBits(),
+					serialPort.getParity()
+			);
+		} catch (UnsupportedCommOperationException e) {
+			throw new IOException("Error changing baud rate: " + e);
+		}
+		connection.clear();
+	}
+
+	/**
+	 * A baud rate is usable if the divisor of the bootloader clock gets within 3% of it.
+	 */
+	private static boolean isBootloaderBaudRate(int baudRate) {
+		if (baudRate <= 0) {
+			return false;
+		}
+		final int divisor = Math.round((float) BOOTLOADER_BAUD_RATE_CLOCK / baudRate);
+		return divisor >= 1 && divisor <= 0xFF
+				&& Math.abs(BOOTLOADER_BAUD_RATE_CLOCK / divisor - baudRate) <= baudRate * 0.03;
+	}
+
+	/**
+	 * Falls back to the initial baud rate if the fast baud rate produced too many checksum errors.
+	 */
+	private void onChecksumError() {
+		if (initialBaudRate != 0 && ++fastBaudRateChecksumErrors >= FAST_BAUD_RATE_MAX_CHECKSUM_ERRORS) {
+			log.warn("{} checksum errors at {} baud, falling back to {} baud",
+					fastBaudRateChecksumErrors, fastProgramBaudRate, initialBaudRate
+			);
+			leaveFastProgramming();
+		}
+	}
+
 	public byte[] readFlash(int address, int len) throws Exception {
+		final RetryPolicy.Retry retry = retryPolicy.start("Flash read request", metrics);
+		while (true) {
+			try {
+				return readFlashFrame(address, len);
+			} catch (TimeoutException e) {
+				retry.onFailure(e);
+			} catch (InvalidChecksumException e) {
+				retry.onFailure(e);
+				onChecksumError();
+			} catch (UnexpectedResponseException e) {
+				retry.onFailure(e);
+			}
+			// drop what is left of the failed reply before asking again
+			connection.clear();
+		}
+	}
+
+	private byte[] readFlashFrame(int address, int len) throws Exception {
 
 		// Send flash program request
 		sendBootloaderMessage(Messages.flashReadRequestMessage(address, len));
@@ -232,6 +622,29 @@ public class JennicHelper {
 	public void writeFlash(int address, byte[] data)
 			throws IOException, NullPointerException, TimeoutException, UnexpectedResponseException,
 			InvalidChecksumException, FlashProgramFailedException {
+		final RetryPolicy.Retry retry = retryPolicy.start("Flash program request", metrics);
+		while (true) {
+			try {
+				writeFlashFrame(address, data);
+				return;
+			} catch (TimeoutException e) {
+				retry.onFailure(e);
+			} catch (InvalidChecksumException e) {
+				retry.onFailure(e);
+				onChecksumError();
+			} catch (UnexpectedResponseException e) {
+				retry.onFailure(e);
+			} catch (FlashProgramFailedException e) {
+				retry.onFailure(e);
+			}
+			// drop what is left of the failed reply before writing the frame again
+			connection.clear();
+		}
+	}
+
+	private void writeFlashFrame(int address, byte[] data)
+			throws IOException, NullPointerException, TimeoutException, UnexpectedResponseException,
+			InvalidChecksumException, FlashProgramFailedException {
 		// Send flash program request
 		// log.debug("Sending program request for address " + address + " with " + data.length + " bytes");
 		sendBootloaderMessage(Messages.flashProgramRequestMessage(address, data));
@@ -247,4 +660,200 @@ public class JennicHelper {
 			throw new FlashProgramFailedException();
 		}
 	}
+
+	/**
+	 * Starts writing blocks to the flash with up to {@link #getProgramWindow()} requests in flight.
+	 *
+	 * @return The writer, {@link FlashWriter#flush()} has to be called after the last block.
+	 */
+	public FlashWriter startFlashWrite() {
+		return new FlashWriter(programWindow);
+	}
+
+	/**
+	 * Writes blocks to the flash without waiting for the reply of a block before sending the next one. The replies are
+	 * matched to the requests in order. A block whose reply reports a failure or is corrupted is sent again on its
+	 * own.
+	 * <p/>
+	 * Replies do not tell which request they belong to, so a lost request or reply shifts the replies against the
+	 * requests until no more reply arrives. The writer therefore waits for all replies every {@value #SYNC_BLOCKS}
+	 * blocks and sends all blocks since then again if a reply was missing. Programming a block twice does no harm as
+	 * it writes the same bits.
+	 */
+	public class FlashWriter {
+
+		/**
+		 * Blocks after which the writer waits for all replies.
+		 */
+		public static final int SYNC_BLOCKS = 32;
+
+		private final int window;
+
+		private final Deque<ProgramRequest> pending = new ArrayDeque<ProgramRequest>();
+
+		private final Deque<ProgramRequest> inFlight = new ArrayDeque<ProgramRequest>();
+
+		private final List<ProgramRequest> sinceSync = new ArrayList<ProgramRequest>();
+
+		private boolean checksumErrorPending;
+
+		private int written;
+
+		private int writtenSinceSync;
+
+		private int resent;
+
+		private FlashWriter(final int window) {
+			this.window = window;
+		}
+
+		/**
+		 * Sends a flash program request, waiting for the oldest replies first if the window is full.
+		 *
+		 * @param address
+		 * 		The flash address of the block.
+		 * @param data
+		 * 		The data of the block.
+		 */
+		public void write(int address, byte[] data)
+				throws IOException, TimeoutException, UnexpectedResponseException, InvalidChecksumException,
+				FlashProgramFailedException {
+
+			final ProgramRequest request =
+					new ProgramRequest(address, data, retryPolicy.start("Flash program request", metrics));
+			sinceSync.add(request);
+			pending.addLast(request);
+			sendPending();
+
+			if (sinceSync.size() >= SYNC_BLOCKS) {
+				flush();
+			}
+		}
+
+		/**
+		 * Waits until all blocks were written.
+		 */
+		public void flush()
+				throws IOException, TimeoutException, UnexpectedResponseException, InvalidChecksumException,
+				FlashProgramFailedException {
+
+			while (!inFlight.isEmpty() || !pending.isEmpty()) {
+				if (!inFlight.isEmpty()) {
+					receiveOldest();
+				}
+				sendPending();
+			}
+
+			sinceSync.clear();
+			writtenSinceSync = 0;
+
+			// a baud rate change must not overlap with requests in flight
+			if (checksumErrorPending) {
+				checksumErrorPending = false;
+				onChecksumError();
+			}
+		}
+
+		/**
+		 * @return The number of blocks written successfully so far.
+		 */
+		public int getWritten() {
+			return written;
+		}
+
+		/**
+		 * @return The number of blocks that were sent again.
+		 */
+		public int getResent() {
+			return resent;
+		}
+
+		private void sendPending()
+				throws IOException, TimeoutException, UnexpectedResponseException, InvalidChecksumException,
+				FlashProgramFailedException {
+
+			while (!pending.isEmpty()) {
+				if (inFlight.size() >= window) {
+					receiveOldest();
+				} else {
+					final ProgramRequest request = pending.removeFirst();
+					writeBootloaderMessage(Messages.flashProgramRequestMessage(request.address, request.data));
+					inFlight.addLast(request);
+				}
+			}
+		}
+
+		private void receiveOldest()
+				throws IOException, TimeoutException, UnexpectedResponseException, InvalidChecksumException,
+				FlashProgramFailedException {
+
+			final ProgramRequest request = inFlight.getFirst();
+			final byte[] response;
+			try {
+				response = readBootloaderReply(Messages.FLASH_PROGRAM_RESPONSE);
+			} catch (InvalidChecksumException e) {
+				inFlight.removeFirst();
+				request.retry.onFailure(e);
+				checksumErrorPending = true;
+				resend(request);
+				return;
+			} catch (TimeoutException e) {
+				request.retry.onFailure(e);
+				resendSinceSync();
+				return;
+			} catch (UnexpectedResponseException e) {
+				request.retry.onFailure(e);
+				resendSinceSync();
+				return;
+			}
+
+			inFlight.removeFirst();
+			if (response[1] != 0x0) {
+				log.debug("Failed to write to flash at {}: response is {}", request.address, toHexString(response[1]));
+				request.retry.onFailure(new FlashProgramFailedException());
+				resend(request);
+				return;
+			}
+
+			written++;
+			writtenSinceSync++;
+		}
+
+		private void resend(final ProgramRequest request) {
+			resent++;
+			pending.addLast(request);
+		}
+
+		private void resendSinceSync() throws IOException {
+
+			log.debug("Reply missing, sending the last {} blocks again", sinceSync.size());
+
+			// drop what is left of the replies before sending the requests again
+			connection.clear();
+			inFlight.clear();
+			pending.clear();
+
+			written -= writtenSinceSync;
+			writtenSinceSync = 0;
+
+			for (ProgramRequest request : sinceSync) {
+				resend(request);
+			}
+		}
+	}
+
+	private static class ProgramRequest {
+
+		private final int address;
+
+		private final byte[] data;
+
+		private final RetryPolicy.Retry retry;
+
+		private ProgramRequest(final int address, final byte[] data, final RetryPolicy.Retry retry) {
+			this.address = address;
+			this.data = data;
+			this.retry = retry;
+		}
+	}
 }
@@ -21,6 +21,23 @@ import java.util.Map;
 
 public class JennicModule extends AbstractModule {
 
+	/**
+	 * Configuration key of the baud rate the image is programmed at, e.g. 500000 or 1000000. Programming stays at the
+	 * baud rate of the programming mode if it is not set.
+	 */
+	public static final String FAST_PROGRAM_BAUD_RATE = "jennic.fastProgramBaudRate";
+
+	/**
+	 * Configuration key of the number of flash program requests kept in flight while programming, 1 if not set.
+	 */
+	public static final String PROGRAM_WINDOW = "jennic.programWindow";
+
+	/**
+	 * Configuration key that enables delta programming with <code>true</code>: only the sectors whose content differs
+	 * from the image are erased and written.
+	 */
+	public static final String DELTA_PROGRAMMING = "jennic.deltaProgramming";
+
 	private final Map<String, String> configuration;
 
 	public JennicModule() {
@@ -40,9 +57,27 @@ public class JennicModule extends AbstractModule {
 				.annotatedWith(Names.named("configuration"))
 				.toInstance(configuration != null ? configuration : Maps.<String, String>newHashMap());
 
+		if (configuration != null && configuration.containsKey(FAST_PROGRAM_BAUD_RATE)) {
+			bindConstant()
+					.annotatedWith(Names.named(FAST_PROGRAM_BAUD_RATE))
+					.to(Integer.parseInt(configuration.get(FAST_PROGRAM_BAUD_RATE)));
+		}
+
+		if (configuration != null && configuration.containsKey(PROGRAM_WINDOW)) {
+			bindConstant()
+					.annotatedWith(Names.named(PROGRAM_WINDOW))
+					.to(Integer.parseInt(configuration.get(PROGRAM_WINDOW)));
+		}
+
+		if (configuration != null && configuration.containsKey(DELTA_PROGRAMMING)) {
+			bindConstant()
+					.annotatedWith(Names.named(DELTA_PROGRAMMING))
+					.to(Boolean.parseBoolean(configuration.get(DELTA_PROGRAMMING)));
+		}
+
 		SerialPortConnection connection = new iSenseSerialPortConnection();
 		SerialPortProgrammingModeInterceptor programmingModeInterceptor = new SerialPortProgrammingModeInterceptor();
-		requestInjection(programmingModeInterceptor);
+		bind(SerialPortProgrammingModeInterceptor.class).toInstance(programmingModeInterceptor);
 		bindInterceptor(
 				Matchers.any(),
 				Matchers.annotatedWith(SerialPortProgrammingMode.class),
@@ -3,17 +3,23 @@ package de.uniluebeck.itm.wsn.drivers.jennic;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.name.Named;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.exception.*;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
+import de.uniluebeck.itm.wsn.drivers.jennic.exception.ImageTooLargeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class JennicProgramOperation extends AbstractProgramOperation {
 
@@ -30,14 +36,26 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 
 	private static final float FRACTION_RESET = 0.03f;
 
+	/**
+	 * Bytes read at once to compare the flash with the image, as many as a program request writes.
+	 */
+	private static final int COMPARE_BLOCK_SIZE = 128;
+
+	private static final int FLASH_SIZE = Sector.FOURTH.getEnd() + 1;
+
 	private final JennicHelper helper;
 
 	private final OperationFactory operationFactory;
 
+	private final DeviceQueryCache queryCache;
+
+	private boolean deltaProgramming;
+
 	@Inject
 	public JennicProgramOperation(final TimeLimiter timeLimiter,
 								  final JennicHelper helper,
 								  final OperationFactory operationFactory,
+								  final DeviceQueryCache queryCache,
 								  @Assisted byte[] binaryImage,
 								  @Assisted final long timeoutMillis,
 								  @Assisted @Nullable final OperationListener<Void> operationCallback) {
@@ -45,17 +63,41 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 		super(timeLimiter, binaryImage, timeoutMillis, operationCallback);
 		this.helper = helper;
 		this.operationFactory = operationFactory;
+		this.queryCache = queryCache;
+	}
+
+	/**
+	 * Enables delta programming. The flash is read back and compared with the image first, only the sectors that differ
+	 * are erased and written. This saves erasing and programming when a node is updated with a slightly changed image,
+	 * but costs reading the sectors the image covers.
+	 *
+	 * @param deltaProgramming
+	 * 		<code>true</code> to program only the changed sectors.
+	 */
+	@Inject(optional = true)
+	public void setDeltaProgramming(@Named("jennic.deltaProgramming") final boolean deltaProgramming) {
+		this.deltaProgramming = deltaProgramming;
 	}
 
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
+		try {
+			return program();
+		} finally {
+			// the flash and the MAC address may have changed even if programming failed
+			queryCache.invalidateAll();
+		}
+	}
+
+	private Void program() throws Exception {
 
 		GetChipTypeOperation getChipTypeOperation = operationFactory.createGetChipTypeOperation(10000, null);
 		ChipType chipType = runSubOperation(getChipTypeOperation, FRACTION_GET_CHIP_TYPE);
 
 		JennicBinaryImage binaryImage = new JennicBinaryImage(getBinaryImage());
 		assertImageCompatible(binaryImage, chipType);
+		assertImageFits(binaryImage);
 
 		final byte[] macAddressBeforeBytes = readMacAddressBytes(chipType);
 		final MacAddress macAddressBefore = new MacAddress(macAddressBeforeBytes);
@@ -66,16 +108,23 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 
 		writeMacAddressToImage(macAddressBeforeBytes, binaryImage);
 
-		while (!isCanceled() && !helper.waitForConnection()) {
-			log.debug("Waiting for a connection...");
-		}
+		helper.awaitConnection();
 
 		if (isCanceled()) {
 			return null;
 		}
 
-		eraseSectors(chipType);
-		writeBinaryImage(binaryImage);
+		// programming mode is entered at a low baud rate, speed up for erasing and writing the image if configured
+		final boolean fastProgramming = helper.enterFastProgramming();
+		try {
+			final Set<Sector> sectors = deltaProgramming ? findChangedSectors(binaryImage) : binaryImage.getSectors();
+			eraseSectors(chipType, sectors);
+			writeBinaryImage(binaryImage, sectors);
+		} finally {
+			if (fastProgramming) {
+				helper.leaveFastProgramming();
+			}
+		}
 
 		final MacAddress macAddressAfter = readMacAddress(chipType);
 
@@ -102,35 +151,100 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 		return MacAddress.HIGHEST_MAC_ADDRESS.equals(macAddress);
 	}
 
-	private void writeBinaryImage(final JennicBinaryImage binaryImage)
+	/**
+	 * Compares the flash with the image sector by sector. A sector counts as changed at the first block that differs,
+	 * bytes behind the end of the image are not compared.
+	 */
+	private Set<Sector> findChangedSectors(final JennicBinaryImage binaryImage) throws Exception {
+
+		final Set<Sector> changedSectors = EnumSet.noneOf(Sector.class);
+		int unchangedBytes = 0;
+
+		for (Sector sector : binaryImage.getSectors()) {
+
+			final int end = Math.min(sector.getEnd() + 1, binaryImage.getLength());
+
+			for (int address = sector.getStart(); address < end; address += COMPARE_BLOCK_SIZE) {
+				final int count = Math.min(COMPARE_BLOCK_SIZE, end - address);
+				if (!Arrays.equals(binaryImage.getBytes(address, count), helper.readFlash(address, count))) {
+					changedSectors.add(sector);
+					break;
+				}
+			}
+
+			if (!changedSectors.contains(sector)) {
+				unchangedBytes += end - sector.getStart();
+			}
+		}
+
+		log.info("Delta programming: sectors {} changed, {} bytes are already on the device",
+				changedSectors, unchangedBytes
+		);
+		return changedSectors;
+	}
+
+	private void writeBinaryImage(final JennicBinaryImage binaryImage, final Set<Sector> sectors)
 			throws IOException, TimeoutException, UnexpectedResponseException, InvalidChecksumException,
 			FlashProgramFailedException {
 
 		BinaryImageBlock block;
 
+		// the sectors were erased, blocks of 0xFF would not change the flash
 		int blockNr = 0;
-		int blockCount = binaryImage.getBlockCount();
+		int blockCount = 0;
+		while ((block = binaryImage.getNextBlock()) != null) {
+			if (sectors.contains(Sector.getSector(block.getAddress())) && !binaryImage.isErased(block)) {
+				blockCount++;
+			}
+		}
+		binaryImage.reset();
+
+		int erasedBlocks = 0;
+		int erasedBytes = 0;
+
+		final JennicHelper.FlashWriter writer = helper.startFlashWrite();
 
 		while ((block = binaryImage.getNextBlock()) != null) {
 
+			if (!sectors.contains(Sector.getSector(block.getAddress()))) {
+				continue;
+			}
+
+			if (binaryImage.isErased(block)) {
+				erasedBlocks++;
+				erasedBytes += block.getData().length;
+				continue;
+			}
+
 			blockNr++;
 
 			if (log.isTraceEnabled()) {
 				log.trace("Writing block {} of {}", blockNr, blockCount);
 			}
 
-			helper.writeFlash(block.getAddress(), block.getData());
+			writer.write(block.getAddress(), block.getData());
 
 			final float progressBefore = FRACTION_GET_CHIP_TYPE + FRACTION_READ_MAC_FROM_DEVICE;
-			progress(progressBefore + (FRACTION_PROGRAM_WRITE_IMAGE * ((float) blockNr / (float) blockCount)));
+			progress(progressBefore + (FRACTION_PROGRAM_WRITE_IMAGE * ((float) writer.getWritten() / (float) blockCount)));
+		}
+
+		writer.flush();
+
+		if (erasedBlocks > 0) {
+			log.debug("Skipped {} erased blocks, {} bytes", erasedBlocks, erasedBytes);
+		}
+
+		if (writer.getResent() > 0) {
+			log.debug("Wrote {} blocks, sent {} blocks again", writer.getWritten(), writer.getResent());
 		}
 	}
 
-	private void eraseSectors(final ChipType chipType) throws Exception {
+	private void eraseSectors(final ChipType chipType, final Set<Sector> sectors) throws Exception {
 		helper.configureFlash(chipType);
-		helper.eraseFlash(Sector.FIRST);
-		helper.eraseFlash(Sector.SECOND);
-		helper.eraseFlash(Sector.THIRD);
+		for (Sector sector : sectors) {
+			helper.eraseFlash(sector);
+			log.debug("Erased sector {} in {} ms", sector, helper.getSectorEraseMillis(sector));
+		}
 	}
 
 	private void writeMacAddressToImage(final byte[] macAddressBytes, final JennicBinaryImage binaryImage)
@@ -151,6 +265,16 @@ public class JennicProgramOperation extends AbstractProgramOperation {
 		return runSubOperation(subOperation, FRACTION_READ_MAC_FROM_DEVICE);
 	}
 
+	/**
+	 * Blocks outside of the flash would not be written, so such an image is rejected before anything is erased.
+	 */
+	private void assertImageFits(final JennicBinaryImage binaryImage) throws ImageTooLargeException {
+		if (binaryImage.getLength() > FLASH_SIZE) {
+			log.error("Image of {} bytes does not fit into the flash of {} bytes", binaryImage.getLength(), FLASH_SIZE);
+			throw new ImageTooLargeException(binaryImage.getLength(), FLASH_SIZE);
+		}
+	}
+
 	private void assertImageCompatible(final JennicBinaryImage binaryImage, final ChipType chipType) throws Exception {
 
 		if (!binaryImage.isCompatible(chipType)) {
@@ -37,9 +37,7 @@ public class JennicReadFlashOperation extends AbstractReadFlashOperation {
 	protected byte[] callInternal() throws Exception {
 
 		// Wait for a connection
-		while (!isCanceled() && !helper.waitForConnection()) {
-			log.debug("Still waiting for a connection");
-		}
+		helper.awaitConnection();
 
 		// Return with success if the user has requested to cancel this
 		// operation
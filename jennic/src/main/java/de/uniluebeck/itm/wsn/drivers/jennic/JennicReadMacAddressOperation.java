@@ -4,6 +4,7 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
@@ -24,19 +25,36 @@ public class JennicReadMacAddressOperation extends TimeLimitedOperation<MacAddre
 
 	private final OperationFactory operationFactory;
 
+	private final DeviceQueryCache queryCache;
+
 	@Inject
 	public JennicReadMacAddressOperation(final TimeLimiter timeLimiter,
 										 final OperationFactory operationFactory,
+										 final DeviceQueryCache queryCache,
 										 @Assisted final long timeoutMillis,
 										 @Assisted @Nullable final OperationListener<MacAddress> operationCallback) {
 		super(timeLimiter, timeoutMillis, operationCallback);
 		this.operationFactory = operationFactory;
+		this.queryCache = queryCache;
 	}
 
 	@Override
-	@SerialPortProgrammingMode
 	protected MacAddress callInternal() throws Exception {
 
+		// only enter programming mode if the MAC address is not known yet
+		MacAddress macAddress = queryCache.get(DeviceQueryCache.MAC_ADDRESS);
+
+		if (macAddress == null) {
+			macAddress = readMacAddress();
+			queryCache.put(DeviceQueryCache.MAC_ADDRESS, macAddress);
+		}
+
+		return macAddress;
+	}
+
+	@SerialPortProgrammingMode
+	protected MacAddress readMacAddress() throws Exception {
+
 		log.trace("Reading MAC address...");
 
 		// Connection established, determine chip type
@@ -3,6 +3,7 @@ package de.uniluebeck.itm.wsn.drivers.jennic;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractWriteFlashOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
@@ -17,9 +18,12 @@ public class JennicWriteFlashOperation extends AbstractWriteFlashOperation {
 
 	private final JennicHelper helper;
 
+	private final DeviceQueryCache queryCache;
+
 	@Inject
 	public JennicWriteFlashOperation(final TimeLimiter timeLimiter,
 									 final JennicHelper helper,
+									 final DeviceQueryCache queryCache,
 									 @Assisted("address") int address,
 									 @Assisted byte[] data,
 									 @Assisted("length") int length,
@@ -27,13 +31,19 @@ public class JennicWriteFlashOperation extends AbstractWriteFlashOperation {
 									 @Assisted @Nullable final OperationListener<Void> operationCallback) {
 		super(timeLimiter, address, data, length, timeoutMillis, operationCallback);
 		this.helper = helper;
+		this.queryCache = queryCache;
 	}
 
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
 		log.trace("Writing to flash...");
-		helper.writeFlash(getAddress(), getData());
+		try {
+			helper.writeFlash(getAddress(), getData());
+		} finally {
+			// the flash may have changed even if writing failed
+			queryCache.invalidateAll();
+		}
 		log.trace("Flash written");
 		return null;
 	}
@@ -4,6 +4,7 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.DeviceQueryCache;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractWriteMacAddressOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
@@ -32,24 +33,26 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 
 	private final OperationFactory operationFactory;
 
+	private final DeviceQueryCache queryCache;
+
 	@Inject
 	public JennicWriteMacAddressOperation(final TimeLimiter timeLimiter,
 										  final JennicHelper helper,
 										  final OperationFactory operationFactory,
+										  final DeviceQueryCache queryCache,
 										  @Assisted final MacAddress macAddress,
 										  @Assisted final long timeoutMillis,
 										  @Nullable @Assisted final OperationListener<Void> operationCallback) {
 		super(timeLimiter, macAddress, timeoutMillis, operationCallback);
 		this.helper = helper;
 		this.operationFactory = operationFactory;
+		this.queryCache = queryCache;
 	}
 
 	private void writeMacAddress(ChipType chipType) throws Exception {
 
 		// Wait for a helper
-		while (!isCanceled() && !helper.waitForConnection()) {
-			log.debug("Still waiting for a connection");
-		}
+		helper.awaitConnection();
 
 		// Return with success if the user has requested to cancel this
 		// operation
@@ -155,7 +158,12 @@ public class JennicWriteMacAddressOperation extends AbstractWriteMacAddressOpera
 				operationFactory.createGetChipTypeOperation(1000, null),
 				FRACTION_GET_CHIP_TYPE
 		);
-		writeMacAddress(chipType);
+		try {
+			writeMacAddress(chipType);
+		} finally {
+			// a cached MAC address is stale now, even if writing failed half way
+			queryCache.invalidateAll();
+		}
 		log.trace("Done, written MAC Address: " + getMacAddress());
 		return null;
 	}
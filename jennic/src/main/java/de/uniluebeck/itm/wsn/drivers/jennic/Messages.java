@@ -189,9 +189,17 @@ public class Messages {
 
 	/** */
 	public static byte[] changeBaudRateMessage() {
+		return changeBaudRateMessage(9);
+	}
+
+	/**
+	 * @param divisor
+	 * 		The divisor of the 1 MHz bootloader clock that gives the new baud rate, e.g. 1 for 1 Mbaud.
+	 */
+	public static byte[] changeBaudRateMessage(int divisor) {
 		byte[] message = new byte[2];
 		message[0] = CHANGE_BAUD_RATE_REQUEST;
-		message[1] = 9;
+		message[1] = (byte) divisor;
 		return message;
 	}
 
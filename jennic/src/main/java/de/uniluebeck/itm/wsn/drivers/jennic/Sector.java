@@ -64,4 +64,19 @@ public enum Sector {
 	public int getEnd() {
 		return end;
 	}
+
+	/**
+	 * @param address
+	 * 		An address in the flash.
+	 *
+	 * @return The sector that contains the address or <code>null</code> if the address is outside of the flash.
+	 */
+	public static Sector getSector(int address) {
+		for (Sector sector : values()) {
+			if (address >= sector.start && address <= sector.end) {
+				return sector;
+			}
+		}
+		return null;
+	}
 }
@@ -0,0 +1,34 @@
+package de.uniluebeck.itm.wsn.drivers.jennic.exception;
+
+/**
+ * Thrown if an image reaches past the last sector of the flash.
+ */
+@SuppressWarnings("serial")
+public class ImageTooLargeException extends Exception {
+
+	private final int imageLength;
+
+	private final int flashSize;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param imageLength
+	 * 		The length of the image in bytes.
+	 * @param flashSize
+	 * 		The size of the flash in bytes.
+	 */
+	public ImageTooLargeException(final int imageLength, final int flashSize) {
+		super("Image of " + imageLength + " bytes does not fit into the flash of " + flashSize + " bytes");
+		this.imageLength = imageLength;
+		this.flashSize = flashSize;
+	}
+
+	public int getImageLength() {
+		return imageLength;
+	}
+
+	public int getFlashSize() {
+		return flashSize;
+	}
+}
@@ -0,0 +1,84 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the throughput of {@link JennicHelper.FlashWriter} for different windows against a
+ * {@link JennicBootloaderSimulator}. With a window of 1 the link idles for a round trip per block, larger windows hide
+ * the USB latency and the programming time of the bootloader behind the transfer of the next blocks. A last run with
+ * lost, corrupted and failed replies checks that the image still ends up in the flash. Windows have to fit into the
+ * receive buffer of the bootloader, the default buffer holds 7 requests.
+ * <p/>
+ * Run with <code>java FlashWriterBenchmark [kilobytes] [usbLatencyMicros] [receiveBufferSize]</code>.
+ */
+public class FlashWriterBenchmark {
+
+	private static final int[] WINDOWS = {1, 2, 4, 6};
+
+	public static void main(String[] args) throws Exception {
+
+		final int kilobytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		final long usbLatencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		final int receiveBufferSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+		final byte[] image = new byte[kilobytes * 1024];
+		new Random(42).nextBytes(image);
+
+		for (int baudRate : new int[]{38400, 1000000}) {
+			// the serial line takes long at the initial baud rate, keep the runs short
+			final byte[] runImage = baudRate < 100000 ? Arrays.copyOf(image, Math.min(image.length, 8 * 1024)) : image;
+			for (int window : WINDOWS) {
+				run(runImage, baudRate, usbLatencyMicros, receiveBufferSize, window, false);
+			}
+		}
+
+		run(image, 1000000, usbLatencyMicros, receiveBufferSize, 4, true);
+	}
+
+	private static void run(final byte[] image, final int baudRate, final long usbLatencyMicros,
+							final int receiveBufferSize, final int window, final boolean faults) throws Exception {
+
+		final JennicBootloaderSimulator simulator =
+				new JennicBootloaderSimulator(baudRate, usbLatencyMicros, receiveBufferSize);
+		if (faults) {
+			simulator.setFaults(0.01, 0.01, 0.01, 7);
+		}
+
+		final JennicHelper helper = new JennicHelper(simulator);
+		helper.setProgramWindow(window);
+
+		final JennicBinaryImage binaryImage = new JennicBinaryImage(image.clone());
+		final long start = System.nanoTime();
+
+		final JennicHelper.FlashWriter writer = helper.startFlashWrite();
+		BinaryImageBlock block;
+		while ((block = binaryImage.getNextBlock()) != null) {
+			writer.write(block.getAddress(), block.getData());
+		}
+		writer.flush();
+
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		simulator.close();
+
+		if (!Arrays.equals(image, simulator.getFlash(0, image.length))) {
+			throw new IllegalStateException("Flash content differs from the image");
+		}
+
+		System.out.println(String.format("%7d baud, window %d%s: %3d KB in %6.2f s = %6.1f KB/s, "
+				+ "%4d blocks resent, %3d faults, %3d overflows",
+				baudRate,
+				window,
+				faults ? " (faults)" : "",
+				image.length / 1024,
+				seconds,
+				image.length / 1024.0 / seconds,
+				writer.getResent(),
+				simulator.getFaults(),
+				simulator.getOverflows()
+		)
+		);
+	}
+}
@@ -0,0 +1,73 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JennicBinaryImageTest {
+
+	@Test
+	public void erasedBlocksAreCountedIncludingTheLastPartialBlock() {
+		JennicBinaryImage image = new JennicBinaryImage(createImage());
+
+		assertEquals(4, image.getBlockCount());
+		assertEquals(2, image.getErasedBlockCount());
+		assertEquals(128 + 16, image.getErasedBytes());
+	}
+
+	@Test
+	public void erasedBlocksAreSkippedOnlyIfRequested() {
+		JennicBinaryImage image = new JennicBinaryImage(createImage());
+		image.setSkipErasedBlocks(true);
+
+		BinaryImageBlock block = image.getNextBlock();
+		assertEquals(0, block.getAddress());
+		block = image.getNextBlock();
+		assertEquals(256, block.getAddress());
+		assertEquals(128, block.getData().length);
+		assertFalse(image.hasNextBlock());
+		assertNull(image.getNextBlock());
+
+		image = new JennicBinaryImage(createImage());
+		int blocks = 0;
+		while (image.getNextBlock() != null) {
+			blocks++;
+		}
+		assertEquals(4, blocks);
+	}
+
+	@Test
+	public void erasedBlocksAreRecognized() {
+		JennicBinaryImage image = new JennicBinaryImage(createImage());
+
+		assertFalse(image.isErased(image.getNextBlock()));
+		assertTrue(image.isErased(image.getNextBlock()));
+		assertFalse(image.isErased(image.getNextBlock()));
+		assertTrue(image.isErased(image.getNextBlock()));
+	}
+
+	@Test
+	public void sectorsAreThoseTheImageReaches() {
+		assertEquals(EnumSet.of(Sector.FIRST), new JennicBinaryImage(new byte[20 * 1024]).getSectors());
+		assertEquals(EnumSet.of(Sector.FIRST), new JennicBinaryImage(new byte[0x8000]).getSectors());
+		assertEquals(EnumSet.allOf(Sector.class), new JennicBinaryImage(new byte[0x18001]).getSectors());
+	}
+
+	/**
+	 * Four blocks, the second and the partial last one erased.
+	 */
+	private static byte[] createImage() {
+		byte[] bytes = new byte[3 * 128 + 16];
+		Arrays.fill(bytes, (byte) 0xFF);
+		bytes[5] = 0x12;
+		bytes[256 + 127] = 0x00;
+		return bytes;
+	}
+}
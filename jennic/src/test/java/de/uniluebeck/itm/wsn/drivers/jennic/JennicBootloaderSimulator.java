@@ -0,0 +1,861 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.AbstractConnection;
+import de.uniluebeck.itm.wsn.drivers.core.io.ByteRingBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEventListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A connection to a simulated Jennic bootloader behind a USB serial adapter, for benchmarks of the programming code.
+ * <p/>
+ * Requests and replies are framed and checksummed like those of the real bootloader:
+ * <code>length type payload checksum</code>. They take the time a serial line at the configured baud rate needs for
+ * them, plus the latency of the USB adapter in each direction. The bootloader handles one request at a time and takes
+ * the time the flash needs for programming and erasing. Requests that arrive meanwhile wait in its receive buffer. If
+ * the buffer overflows they are lost. Replies can be dropped or corrupted at random to exercise the error handling.
+ * <p/>
+ * The flash starts erased and keeps what was programmed, so the result of a run can be compared with the image.
+ * <p/>
+ * The bootloader changes its baud rate on request as configured by {@link #setBaudRateChange(BaudRateChange)}. While
+ * the baud rate of the simulated serial port differs by more than 3% from the one of the bootloader, requests and
+ * replies are lost.
+ */
+public class JennicBootloaderSimulator extends AbstractConnection implements SerialPortConnection {
+
+	public static final int FLASH_SIZE = Sector.FOURTH.getEnd() + 1;
+
+	/**
+	 * How the bootloader handles a request to change its baud rate.
+	 */
+	public enum BaudRateChange {
+
+		/**
+		 * Agrees and runs at the new baud rate afterwards.
+		 */
+		ACCEPT,
+
+		/**
+		 * Refuses and keeps the baud rate.
+		 */
+		REFUSE,
+
+		/**
+		 * Agrees but does not respond at the new baud rate, like a bootloader behind an adapter that can not run at it.
+		 */
+		SILENT_AT_NEW_RATE
+
+	}
+
+	private final SimulatedSerialPort serialPort;
+
+	private volatile int bootloaderBaudRate;
+
+	private volatile long byteNanos;
+
+	private volatile BaudRateChange baudRateChange = BaudRateChange.ACCEPT;
+
+	/**
+	 * <code>true</code> after a {@link BaudRateChange#SILENT_AT_NEW_RATE} change, the bootloader ignores all requests.
+	 */
+	private volatile boolean silent;
+
+	private final long usbLatencyNanos;
+
+	private final int receiveBufferSize;
+
+	private final byte[] flash = new byte[FLASH_SIZE];
+
+	private final ByteRingBuffer toDriver = new ByteRingBuffer();
+
+	private final BlockingQueue<Chunk> toDevice = new LinkedBlockingQueue<Chunk>();
+
+	private final AtomicInteger receiveBuffered = new AtomicInteger();
+
+	private final ScheduledExecutorService replies = Executors.newSingleThreadScheduledExecutor();
+
+	private final Thread bootloader;
+
+	private long programNanosPerByte = 20000;
+
+	private long eraseNanos = 25000000;
+
+	private long commandNanos = 50000;
+
+	private volatile double lostReplyRate;
+
+	private volatile double corruptReplyRate;
+
+	private volatile double programFailureRate;
+
+	private volatile Random random = new Random(0);
+
+	private long lineToDeviceFreeNanos;
+
+	private long lineToDriverFreeNanos;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger overflows = new AtomicInteger();
+
+	private final AtomicInteger faults = new AtomicInteger();
+
+	/**
+	 * The erased sectors in the order of the requests, guarded by <code>flash</code>.
+	 */
+	private final List<Sector> erasedSectors = new ArrayList<Sector>();
+
+	/**
+	 * The sectors that program requests wrote to, guarded by <code>flash</code>.
+	 */
+	private final Set<Sector> programmedSectors = EnumSet.noneOf(Sector.class);
+
+	/**
+	 * Constructor.
+	 *
+	 * @param baudRate
+	 * 		The baud rate of the serial line, 10 bits are sent per byte.
+	 * @param usbLatencyMicros
+	 * 		The latency of the USB adapter in each direction.
+	 * @param receiveBufferSize
+	 * 		The bytes of requests the bootloader can buffer while it is busy.
+	 */
+	public JennicBootloaderSimulator(final int baudRate, final long usbLatencyMicros, final int receiveBufferSize) {
+
+		this.serialPort = new SimulatedSerialPort(baudRate);
+		this.bootloaderBaudRate = baudRate;
+		this.byteNanos = 10L * 1000000000L / baudRate;
+		this.usbLatencyNanos = TimeUnit.MICROSECONDS.toNanos(usbLatencyMicros);
+		this.receiveBufferSize = receiveBufferSize;
+
+		Arrays.fill(flash, (byte) 0xFF);
+
+		setInputStream(toDriver.getInputStream());
+		setOutputStream(new OutputStream() {
+			@Override
+			public void write(final int b) throws IOException {
+				write(new byte[]{(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) throws IOException {
+				transmit(Arrays.copyOfRange(b, off, off + len));
+			}
+		}
+		);
+
+		bootloader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runBootloader();
+			}
+		}, "JennicBootloaderSimulator"
+		);
+		bootloader.setDaemon(true);
+		bootloader.start();
+
+		setConnected();
+	}
+
+	/**
+	 * Sets the time the flash needs.
+	 *
+	 * @param programMicrosPerByte
+	 * 		Time to program one byte.
+	 * @param eraseMillis
+	 * 		Time to erase one sector.
+	 */
+	public void setFlashTiming(final long programMicrosPerByte, final long eraseMillis) {
+		this.programNanosPerByte = TimeUnit.MICROSECONDS.toNanos(programMicrosPerByte);
+		this.eraseNanos = TimeUnit.MILLISECONDS.toNanos(eraseMillis);
+	}
+
+	/**
+	 * Injects faults into the replies. Must be called before the first request.
+	 *
+	 * @param lostReplyRate
+	 * 		Fraction of the replies that are never sent.
+	 * @param corruptReplyRate
+	 * 		Fraction of the replies sent with a wrong checksum.
+	 * @param programFailureRate
+	 * 		Fraction of the program requests that fail without writing.
+	 * @param seed
+	 * 		Seed of the random faults.
+	 */
+	public void setFaults(final double lostReplyRate, final double corruptReplyRate, final double programFailureRate,
+						  final long seed) {
+		this.lostReplyRate = lostReplyRate;
+		this.corruptReplyRate = corruptReplyRate;
+		this.programFailureRate = programFailureRate;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Sets how the bootloader handles the next requests to change its baud rate.
+	 */
+	public void setBaudRateChange(final BaudRateChange baudRateChange) {
+		this.baudRateChange = baudRateChange;
+	}
+
+	public int getBootloaderBaudRate() {
+		return bootloaderBaudRate;
+	}
+
+	/**
+	 * Copies flash content into the simulated flash, e.g. an image programmed before.
+	 */
+	public void loadFlash(final int address, final byte[] data) {
+		synchronized (flash) {
+			System.arraycopy(data, 0, flash, address, data.length);
+		}
+	}
+
+	public byte[] getFlash(final int address, final int length) {
+		synchronized (flash) {
+			return Arrays.copyOfRange(flash, address, address + length);
+		}
+	}
+
+	/**
+	 * @return The sectors erased since the start or the last {@link #clearHistory()}, in the order of the requests.
+	 */
+	public List<Sector> getErasedSectors() {
+		synchronized (flash) {
+			return new ArrayList<Sector>(erasedSectors);
+		}
+	}
+
+	/**
+	 * @return The sectors written since the start or the last {@link #clearHistory()}.
+	 */
+	public Set<Sector> getProgrammedSectors() {
+		synchronized (flash) {
+			return EnumSet.copyOf(programmedSectors);
+		}
+	}
+
+	/**
+	 * Forgets which sectors were erased and written, e.g. before programming the node a second time.
+	 */
+	public void clearHistory() {
+		synchronized (flash) {
+			erasedSectors.clear();
+			programmedSectors.clear();
+		}
+	}
+
+	/**
+	 * @return The requests the bootloader handled.
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return The requests that were lost because the receive buffer of the bootloader was full.
+	 */
+	public int getOverflows() {
+		return overflows.get();
+	}
+
+	/**
+	 * @return The replies that were dropped, corrupted or reported a failure on purpose.
+	 */
+	public int getFaults() {
+		return faults.get();
+	}
+
+	@Override
+	public int[] getChannels() {
+		return new int[0];
+	}
+
+	@Override
+	public SerialPort getSerialPort() {
+		return serialPort;
+	}
+
+	@Override
+	public void setSerialPortMode(final SerialPortMode mode) {
+		// the simulated bootloader is always in programming mode
+	}
+
+	@Override
+	public void close() throws IOException {
+		bootloader.interrupt();
+		replies.shutdownNow();
+		super.close();
+	}
+
+	private void transmit(final byte[] bytes) {
+		synchronized (toDevice) {
+
+			// sent at the wrong baud rate the bytes are garbage to the bootloader
+			if (!isBaudRateMatching()) {
+				return;
+			}
+
+			if (receiveBuffered.addAndGet(bytes.length) > receiveBufferSize) {
+				receiveBuffered.addAndGet(-bytes.length);
+				overflows.incrementAndGet();
+				return;
+			}
+
+			final long start = Math.max(System.nanoTime() + usbLatencyNanos, lineToDeviceFreeNanos);
+			lineToDeviceFreeNanos = start + bytes.length * byteNanos;
+			toDevice.add(new Chunk(bytes, lineToDeviceFreeNanos));
+		}
+	}
+
+	private void runBootloader() {
+
+		byte[] received = new byte[0];
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+
+				final Chunk chunk = toDevice.take();
+				parkUntil(chunk.arrivalNanos);
+
+				received = concat(received, chunk.bytes);
+
+				int frameLength;
+				while (received.length > 0 && received.length >= (frameLength = 1 + (received[0] & 0xFF))) {
+					final byte[] frame = Arrays.copyOfRange(received, 0, frameLength);
+					received = Arrays.copyOfRange(received, frameLength, received.length);
+					receiveBuffered.addAndGet(-frameLength);
+					handle(frame);
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	private void handle(final byte[] frame) {
+
+		if (frame.length < 3 || Messages.calculateChecksum(frame, 0, frame.length - 1) != frame[frame.length - 1]) {
+			// the bootloader ignores corrupted requests
+			return;
+		}
+
+		if (silent) {
+			return;
+		}
+
+		requests.incrementAndGet();
+
+		final byte[] reply = execute(frame);
+		if (reply != null) {
+			send(reply);
+		}
+	}
+
+	private byte[] execute(final byte[] frame) {
+
+		final int type = frame[1] & 0xFF;
+
+		switch (type) {
+
+			case Messages.CHANGE_BAUD_RATE_REQUEST: {
+				busy(commandNanos);
+				if (baudRateChange == BaudRateChange.REFUSE) {
+					return new byte[]{Messages.CHANGE_BAUD_RATE_RESPONSE, (byte) 0xFF};
+				}
+				// the reply is sent at the old baud rate, the bootloader switches right after it
+				send(new byte[]{Messages.CHANGE_BAUD_RATE_RESPONSE, 0});
+				final int divisor = frame[2] & 0xFF;
+				bootloaderBaudRate = Math.round(1000000f / divisor);
+				byteNanos = 10L * 1000000000L / bootloaderBaudRate;
+				silent = baudRateChange == BaudRateChange.SILENT_AT_NEW_RATE;
+				return null;
+			}
+
+			case Messages.FLASH_PROGRAM_REQUEST: {
+				final int address = readInt(frame, 2, 4);
+				final int length = frame.length - 7;
+				busy(commandNanos + length * programNanosPerByte);
+				if (random.nextDouble() < programFailureRate) {
+					faults.incrementAndGet();
+					return new byte[]{Messages.FLASH_PROGRAM_RESPONSE, (byte) 0xFF};
+				}
+				// programming can only clear bits
+				synchronized (flash) {
+					for (int i = 0; i < length; i++) {
+						flash[address + i] &= frame[6 + i];
+					}
+					programmedSectors.add(Sector.getSector(address));
+				}
+				return new byte[]{Messages.FLASH_PROGRAM_RESPONSE, 0};
+			}
+
+			case Messages.FLASH_READ_REQUEST: {
+				final int address = readInt(frame, 2, 4);
+				final int length = readInt(frame, 6, 2);
+				busy(commandNanos);
+				final byte[] reply = new byte[2 + length];
+				reply[0] = Messages.FLASH_READ_RESPONSE;
+				synchronized (flash) {
+					System.arraycopy(flash, address, reply, 2, length);
+				}
+				return reply;
+			}
+
+			case Messages.SECTOR_ERASE_REQUEST: {
+				final Sector sector = Sector.values()[frame[2]];
+				busy(eraseNanos);
+				synchronized (flash) {
+					Arrays.fill(flash, sector.getStart(), sector.getEnd() + 1, (byte) 0xFF);
+					erasedSectors.add(sector);
+				}
+				return new byte[]{Messages.SECTOR_ERASE_RESPONSE, 0};
+			}
+
+			case Messages.WRITE_SR_REQUEST:
+				busy(commandNanos);
+				return new byte[]{Messages.WRITE_SR_RESPONSE, 0};
+
+			case Messages.FLASH_TYPE_READ_REQUEST:
+				busy(commandNanos);
+				return new byte[]{Messages.FLASH_TYPE_READ_RESPONSE, 0, (byte) 0xBF, 0x49};
+
+			case Messages.CHIP_ID_REQUEST:
+				busy(commandNanos);
+				// a JN5148
+				return new byte[]{Messages.CHIP_ID_RESPONSE, 0, 0x10, 0x40, 0x46, (byte) 0x86};
+
+			case Messages.FLASH_CONFIGURE_REQUEST:
+				busy(commandNanos);
+				return new byte[]{Messages.FLASH_CONFIGURE_RESPONSE, 0};
+
+			default:
+				return null;
+		}
+	}
+
+	private void send(final byte[] reply) {
+
+		final boolean lost = random.nextDouble() < lostReplyRate;
+		final boolean corrupt = !lost && random.nextDouble() < corruptReplyRate;
+
+		final byte[] frame = new byte[reply.length + 2];
+		frame[0] = (byte) (reply.length + 1);
+		System.arraycopy(reply, 0, frame, 1, reply.length);
+		frame[frame.length - 1] = Messages.calculateChecksum(frame, 0, frame.length - 1);
+
+		// the line is busy even if the reply is lost on the way
+		final long start = Math.max(System.nanoTime(), lineToDriverFreeNanos);
+		lineToDriverFreeNanos = start + frame.length * byteNanos;
+
+		// received at the wrong baud rate the bytes are garbage to the driver
+		if (!isBaudRateMatching()) {
+			return;
+		}
+		if (lost) {
+			faults.incrementAndGet();
+			return;
+		}
+		if (corrupt) {
+			faults.incrementAndGet();
+			frame[frame.length - 1] ^= 0x55;
+		}
+
+		final long delayNanos = lineToDriverFreeNanos + usbLatencyNanos - System.nanoTime();
+		replies.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					toDriver.offer(frame, 0, frame.length);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				signalDataAvailable();
+			}
+		}, Math.max(0, delayNanos), TimeUnit.NANOSECONDS
+		);
+	}
+
+	/**
+	 * A UART tolerates a few percent of difference, e.g. 38400 baud on the port and 1 MHz / 26 on the bootloader.
+	 */
+	private boolean isBaudRateMatching() {
+		return Math.abs(serialPort.getBaudRate() - bootloaderBaudRate) <= bootloaderBaudRate * 0.03;
+	}
+
+	private static void busy(final long nanos) {
+		parkUntil(System.nanoTime() + nanos);
+	}
+
+	private static void parkUntil(final long nanos) {
+		long remaining;
+		while ((remaining = nanos - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+
+	private static int readInt(final byte[] bytes, final int offset, final int length) {
+		// little endian like Messages.addressToBytes
+		int value = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return value;
+	}
+
+	private static byte[] concat(final byte[] a, final byte[] b) {
+		final byte[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+
+	private static class Chunk {
+
+		private final byte[] bytes;
+
+		private final long arrivalNanos;
+
+		private Chunk(final byte[] bytes, final long arrivalNanos) {
+			this.bytes = bytes;
+			this.arrivalNanos = arrivalNanos;
+		}
+	}
+
+	/**
+	 * A serial port that only keeps its parameters, the data passes the streams of the simulator.
+	 */
+	private class SimulatedSerialPort extends SerialPort {
+
+		private volatile int baudRate;
+
+		private int dataBits = DATABITS_8;
+
+		private int stopBits = STOPBITS_1;
+
+		private int parity = PARITY_NONE;
+
+		private SimulatedSerialPort(final int baudRate) {
+			this.baudRate = baudRate;
+			this.name = "simulated";
+		}
+
+		@Override
+		public void setSerialPortParams(final int baudRate, final int dataBits, final int stopBits, final int parity) {
+			this.baudRate = baudRate;
+			this.dataBits = dataBits;
+			this.stopBits = stopBits;
+			this.parity = parity;
+		}
+
+		@Override
+		public int getBaudRate() {
+			return baudRate;
+		}
+
+		@Override
+		public int getDataBits() {
+			return dataBits;
+		}
+
+		@Override
+		public int getStopBits() {
+			return stopBits;
+		}
+
+		@Override
+		public int getParity() {
+			return parity;
+		}
+
+		@Override
+		public void enableReceiveFraming(final int framingByte) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void disableReceiveFraming() {
+			// not needed by the simulation
+		}
+
+		@Override
+		public boolean isReceiveFramingEnabled() {
+			return false;
+		}
+
+		@Override
+		public int getReceiveFramingByte() {
+			return 0;
+		}
+
+		@Override
+		public void disableReceiveTimeout() {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void enableReceiveTimeout(final int receiveTimeout) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public boolean isReceiveTimeoutEnabled() {
+			return false;
+		}
+
+		@Override
+		public int getReceiveTimeout() {
+			return 0;
+		}
+
+		@Override
+		public void enableReceiveThreshold(final int threshold) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void disableReceiveThreshold() {
+			// not needed by the simulation
+		}
+
+		@Override
+		public int getReceiveThreshold() {
+			return 0;
+		}
+
+		@Override
+		public boolean isReceiveThresholdEnabled() {
+			return false;
+		}
+
+		@Override
+		public void setInputBufferSize(final int size) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public int getInputBufferSize() {
+			return 0;
+		}
+
+		@Override
+		public void setOutputBufferSize(final int size) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public int getOutputBufferSize() {
+			return 0;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return JennicBootloaderSimulator.this.getInputStream();
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return JennicBootloaderSimulator.this.getOutputStream();
+		}
+
+		@Override
+		public void setFlowControlMode(final int flowControl) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public int getFlowControlMode() {
+			return FLOWCONTROL_NONE;
+		}
+
+		@Override
+		public boolean isDTR() {
+			return false;
+		}
+
+		@Override
+		public void setDTR(final boolean dtr) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void setRTS(final boolean rts) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public boolean isCTS() {
+			return false;
+		}
+
+		@Override
+		public boolean isDSR() {
+			return false;
+		}
+
+		@Override
+		public boolean isCD() {
+			return false;
+		}
+
+		@Override
+		public boolean isRI() {
+			return false;
+		}
+
+		@Override
+		public boolean isRTS() {
+			return false;
+		}
+
+		@Override
+		public void sendBreak(final int duration) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void addEventListener(final SerialPortEventListener listener) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void removeEventListener() {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnDataAvailable(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnOutputEmpty(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnCTS(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnDSR(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnRingIndicator(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnCarrierDetect(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnOverrunError(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnParityError(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnFramingError(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public void notifyOnBreakInterrupt(final boolean enable) {
+			// not needed by the simulation
+		}
+
+		@Override
+		public byte getParityErrorChar() {
+			return 0;
+		}
+
+		@Override
+		public boolean setParityErrorChar(final byte b) {
+			return false;
+		}
+
+		@Override
+		public byte getEndOfInputChar() {
+			return 0;
+		}
+
+		@Override
+		public boolean setEndOfInputChar(final byte b) {
+			return false;
+		}
+
+		@Override
+		public boolean setUARTType(final String type, final boolean test) {
+			return false;
+		}
+
+		@Override
+		public String getUARTType() {
+			return "simulated";
+		}
+
+		@Override
+		public boolean setBaudBase(final int baudBase) {
+			return false;
+		}
+
+		@Override
+		public int getBaudBase() {
+			return 0;
+		}
+
+		@Override
+		public boolean setDivisor(final int divisor) {
+			return false;
+		}
+
+		@Override
+		public int getDivisor() {
+			return 0;
+		}
+
+		@Override
+		public boolean setLowLatency() {
+			return false;
+		}
+
+		@Override
+		public boolean getLowLatency() {
+			return false;
+		}
+
+		@Override
+		public boolean setCallOutHangup(final boolean noHangup) {
+			return false;
+		}
+
+		@Override
+		public boolean getCallOutHangup() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JennicHelperTest {
+
+	private static final int INITIAL_BAUD_RATE = 38400;
+
+	private static final int FAST_BAUD_RATE = 500000;
+
+	private JennicBootloaderSimulator simulator;
+
+	private JennicHelper helper;
+
+	@Before
+	public void setUp() {
+		simulator = new JennicBootloaderSimulator(INITIAL_BAUD_RATE, 100, 1024);
+		helper = new JennicHelper(simulator);
+		helper.setFastProgramBaudRate(FAST_BAUD_RATE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		simulator.close();
+	}
+
+	@Test(timeout = 20000)
+	public void acceptedBaudRateIsUsedUntilLeft() throws Exception {
+		simulator.setBaudRateChange(JennicBootloaderSimulator.BaudRateChange.ACCEPT);
+		simulator.loadFlash(0, new byte[]{1, 2, 3, 4});
+		assertTrue(helper.waitForConnection());
+
+		assertTrue(helper.enterFastProgramming());
+		assertEquals(FAST_BAUD_RATE, simulator.getSerialPort().getBaudRate());
+		assertBootloaderBaudRate(FAST_BAUD_RATE);
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, helper.readFlash(0, 4));
+
+		helper.leaveFastProgramming();
+		assertEquals(INITIAL_BAUD_RATE, simulator.getSerialPort().getBaudRate());
+		assertBootloaderBaudRate(INITIAL_BAUD_RATE);
+		assertTrue(helper.waitForConnection());
+	}
+
+	@Test(timeout = 20000)
+	public void refusedBaudRateKeepsTheInitialBaudRate() throws Exception {
+		simulator.setBaudRateChange(JennicBootloaderSimulator.BaudRateChange.REFUSE);
+		assertTrue(helper.waitForConnection());
+
+		assertFalse(helper.enterFastProgramming());
+		assertEquals(INITIAL_BAUD_RATE, simulator.getSerialPort().getBaudRate());
+		assertBootloaderBaudRate(INITIAL_BAUD_RATE);
+		assertTrue(helper.waitForConnection());
+	}
+
+	@Test(timeout = 30000)
+	public void silentBootloaderRestoresTheInitialBaudRate() throws Exception {
+		simulator.setBaudRateChange(JennicBootloaderSimulator.BaudRateChange.SILENT_AT_NEW_RATE);
+		assertTrue(helper.waitForConnection());
+
+		assertFalse(helper.enterFastProgramming());
+		assertEquals(INITIAL_BAUD_RATE, simulator.getSerialPort().getBaudRate());
+
+		// leaving again must not touch the port once fast programming was given up
+		helper.leaveFastProgramming();
+		assertEquals(INITIAL_BAUD_RATE, simulator.getSerialPort().getBaudRate());
+	}
+
+	@Test(timeout = 30000)
+	public void flashWriterResendsLostRepliesWithoutWindow() throws Exception {
+		writeImageWithFaults(1, 0.02, 0, 0);
+	}
+
+	@Test(timeout = 30000)
+	public void flashWriterResendsLostRepliesInWindow() throws Exception {
+		writeImageWithFaults(4, 0.02, 0, 0);
+	}
+
+	@Test(timeout = 30000)
+	public void flashWriterResendsCorruptedRepliesWithoutWindow() throws Exception {
+		writeImageWithFaults(1, 0, 0.1, 0);
+	}
+
+	@Test(timeout = 30000)
+	public void flashWriterResendsCorruptedRepliesInWindow() throws Exception {
+		writeImageWithFaults(4, 0, 0.1, 0);
+	}
+
+	@Test(timeout = 30000)
+	public void flashWriterResendsFailedBlocksWithoutWindow() throws Exception {
+		writeImageWithFaults(1, 0, 0, 0.1);
+	}
+
+	@Test(timeout = 30000)
+	public void flashWriterResendsFailedBlocksInWindow() throws Exception {
+		writeImageWithFaults(4, 0, 0, 0.1);
+	}
+
+	/**
+	 * Writes a random image of 32 blocks at 1 Mbaud and checks the flash afterwards. A lost reply costs the reply
+	 * timeout, so the rate of lost replies is kept low.
+	 */
+	private void writeImageWithFaults(final int window, final double lostReplyRate, final double corruptReplyRate,
+									  final double programFailureRate) throws Exception {
+
+		simulator.close();
+		simulator = new JennicBootloaderSimulator(1000000, 100, 1024);
+		simulator.setFaults(lostReplyRate, corruptReplyRate, programFailureRate, 3);
+		helper = new JennicHelper(simulator);
+		helper.setProgramWindow(window);
+
+		final byte[] image = new byte[32 * 128];
+		new Random(window).nextBytes(image);
+		final JennicBinaryImage binaryImage = new JennicBinaryImage(image.clone());
+
+		final JennicHelper.FlashWriter writer = helper.startFlashWrite();
+		BinaryImageBlock block;
+		while ((block = binaryImage.getNextBlock()) != null) {
+			writer.write(block.getAddress(), block.getData());
+		}
+		writer.flush();
+
+		assertTrue("No faults were injected", simulator.getFaults() > 0);
+		assertTrue(writer.getResent() > 0);
+		assertArrayEquals(image, simulator.getFlash(0, image.length));
+	}
+
+	/**
+	 * The bootloader derives its baud rate from a 1 MHz clock, so it only gets close to the one of the port.
+	 */
+	private void assertBootloaderBaudRate(final int baudRate) {
+		assertEquals(baudRate, simulator.getBootloaderBaudRate(), baudRate * 0.03);
+	}
+}
@@ -0,0 +1,108 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
+import de.uniluebeck.itm.wsn.drivers.jennic.exception.ImageTooLargeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JennicProgramOperationTest {
+
+	private JennicBootloaderSimulator simulator;
+
+	private OperationFactory operationFactory;
+
+	private byte[] header;
+
+	@Before
+	public void setUp() {
+		simulator = new JennicBootloaderSimulator(1000000, 100, 1024);
+		simulator.setFlashTiming(1, 1);
+
+		// the node has a MAC address, the program operation refuses to overwrite a broken one
+		header = new byte[ChipType.JN5148.getHeaderLength()];
+		for (int i = 0; i < header.length; i++) {
+			header[i] = (byte) i;
+		}
+		simulator.loadFlash(ChipType.JN5148.getHeaderStart(), header);
+
+		operationFactory = Guice.createInjector(new JennicSimulatorModule(simulator), new AbstractModule() {
+			@Override
+			protected void configure() {
+				bindConstant().annotatedWith(Names.named(JennicModule.DELTA_PROGRAMMING)).to(true);
+				bindConstant().annotatedWith(Names.named(JennicModule.PROGRAM_WINDOW)).to(4);
+			}
+		}
+		).getInstance(OperationFactory.class);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		simulator.close();
+	}
+
+	@Test(timeout = 60000)
+	public void deltaProgrammingRewritesOnlyTheChangedSector() throws Exception {
+
+		final byte[] image = createImage(Sector.THIRD.getStart() + 0x100);
+
+		program(image);
+		assertEquals(asList(Sector.FIRST, Sector.SECOND, Sector.THIRD), simulator.getErasedSectors());
+		assertArrayEquals(image, simulator.getFlash(0, image.length));
+
+		simulator.clearHistory();
+		image[Sector.SECOND.getStart() + 0x1234] ^= 0x5A;
+
+		program(image);
+		assertEquals(asList(Sector.SECOND), simulator.getErasedSectors());
+		assertEquals(EnumSet.of(Sector.SECOND), simulator.getProgrammedSectors());
+		assertArrayEquals(image, simulator.getFlash(0, image.length));
+	}
+
+	@Test(timeout = 60000)
+	public void imageReachingPastTheFlashIsRejectedBeforeErasing() throws Exception {
+
+		final byte[] flashBefore = simulator.getFlash(0, JennicBootloaderSimulator.FLASH_SIZE);
+
+		try {
+			program(createImage(JennicBootloaderSimulator.FLASH_SIZE + 0x80));
+			fail("Image larger than the flash was accepted");
+		} catch (ImageTooLargeException e) {
+			assertEquals(JennicBootloaderSimulator.FLASH_SIZE, e.getFlashSize());
+		}
+
+		assertTrue(simulator.getErasedSectors().isEmpty());
+		assertArrayEquals(flashBefore, simulator.getFlash(0, JennicBootloaderSimulator.FLASH_SIZE));
+	}
+
+	private void program(final byte[] image) throws Exception {
+		operationFactory.createProgramOperation(image.clone(), 60000, null).call();
+	}
+
+	/**
+	 * A JN5148 image with random content that carries the header of the node already.
+	 */
+	private byte[] createImage(final int length) {
+		final byte[] image = new byte[length];
+		new Random(length).nextBytes(image);
+		image[0] = 0x00;
+		image[1] = 0x00;
+		image[2] = (byte) 0xE0;
+		image[3] = (byte) 0xE0;
+		System.arraycopy(header, 0, image, ChipType.JN5148.getHeaderStart(), header.length);
+		return image;
+	}
+}
@@ -0,0 +1,61 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.common.util.concurrent.TimeLimiter;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
+import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import com.google.inject.assistedinject.FactoryModuleBuilder;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.*;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import de.uniluebeck.itm.wsn.drivers.isense.iSenseResetOperation;
+
+/**
+ * Binds the operations of the {@link JennicModule} to a {@link JennicBootloaderSimulator} instead of a serial port. The
+ * programming mode is not entered, the simulator is always in its bootloader.
+ */
+public class JennicSimulatorModule extends AbstractModule {
+
+	private final JennicBootloaderSimulator simulator;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param simulator
+	 * 		The simulated bootloader the operations talk to.
+	 */
+	public JennicSimulatorModule(final JennicBootloaderSimulator simulator) {
+		this.simulator = simulator;
+	}
+
+	@Override
+	protected void configure() {
+
+		bind(TimeLimiter.class).toInstance(new InlineTimeLimiter());
+		bind(Connection.class).toInstance(simulator);
+		bind(SerialPortConnection.class).toInstance(simulator);
+
+		// only needed by the is node alive operation which the tests do not use
+		bind(Device.class).toProvider(new Provider<Device>() {
+			@Override
+			public Device get() {
+				throw new UnsupportedOperationException("No device in this test");
+			}
+		}
+		);
+
+		install(new FactoryModuleBuilder()
+				.implement(EraseFlashOperation.class, JennicEraseFlashOperation.class)
+				.implement(GetChipTypeOperation.class, JennicGetChipTypeOperation.class)
+				.implement(IsNodeAliveOperation.class, DefaultIsNodeAliveOperation.class)
+				.implement(ProgramOperation.class, JennicProgramOperation.class)
+				.implement(ReadFlashOperation.class, JennicReadFlashOperation.class)
+				.implement(ReadMacAddressOperation.class, JennicReadMacAddressOperation.class)
+				.implement(ResetOperation.class, iSenseResetOperation.class)
+				.implement(WriteFlashOperation.class, JennicWriteFlashOperation.class)
+				.implement(WriteMacAddressOperation.class, JennicWriteMacAddressOperation.class)
+				.build(OperationFactory.class)
+		);
+	}
+}
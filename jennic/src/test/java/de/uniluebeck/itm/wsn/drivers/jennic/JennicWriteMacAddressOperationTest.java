@@ -0,0 +1,66 @@
+package de.uniluebeck.itm.wsn.drivers.jennic;
+
+import com.google.inject.Guice;
+import de.uniluebeck.itm.wsn.drivers.core.ChipType;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.BatchOperation;
+import de.uniluebeck.itm.wsn.drivers.core.operation.BatchResult;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationBatch;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class JennicWriteMacAddressOperationTest {
+
+	private static final MacAddress OLD_MAC_ADDRESS = new MacAddress(0x1234);
+
+	private static final MacAddress NEW_MAC_ADDRESS = new MacAddress(0x5678);
+
+	private JennicBootloaderSimulator simulator;
+
+	private OperationFactory operationFactory;
+
+	@Before
+	public void setUp() {
+		simulator = new JennicBootloaderSimulator(1000000, 100, 1024);
+		simulator.setFlashTiming(1, 1);
+		simulator.loadFlash(ChipType.JN5148.getMacInFlashStart(), OLD_MAC_ADDRESS.toByteArray());
+		operationFactory = Guice.createInjector(new JennicSimulatorModule(simulator)).getInstance(OperationFactory.class);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		simulator.close();
+	}
+
+	@Test(timeout = 60000)
+	public void writtenMacAddressIsReadBack() throws Exception {
+
+		// the first read caches the MAC address
+		assertEquals(OLD_MAC_ADDRESS, operationFactory.createReadMacAddressOperation(10000, null).call());
+
+		operationFactory.createWriteMacAddressOperation(NEW_MAC_ADDRESS, 30000, null).call();
+
+		assertEquals(NEW_MAC_ADDRESS, operationFactory.createReadMacAddressOperation(10000, null).call());
+	}
+
+	@Test(timeout = 60000)
+	public void batchReadsTheMacAddressItWrote() throws Exception {
+
+		final OperationBatch batch = new OperationBatch.Builder()
+				.readMac(10000)
+				.writeMac(NEW_MAC_ADDRESS, 30000)
+				.readMac(10000)
+				.build();
+
+		final BatchResult result =
+				new BatchOperation(new InlineTimeLimiter(), operationFactory, batch, null, 60000, null).call();
+
+		assertEquals(OLD_MAC_ADDRESS, result.getResult(0, MacAddress.class));
+		assertEquals(NEW_MAC_ADDRESS, result.getResult(2, MacAddress.class));
+	}
+}
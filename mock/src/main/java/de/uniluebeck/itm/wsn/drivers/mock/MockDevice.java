@@ -1,6 +1,7 @@
 package de.uniluebeck.itm.wsn.drivers.mock;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -9,7 +10,10 @@ import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.wsn.drivers.core.ChipType;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.io.ByteRingBuffer;
+import de.uniluebeck.itm.wsn.drivers.core.io.StreamPump;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
+import de.uniluebeck.itm.wsn.drivers.core.util.InlineTimeLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -132,13 +136,15 @@ public class MockDevice implements Device {
 
 	private static final Logger log = LoggerFactory.getLogger(MockDevice.class);
 
-	private final PipedInputStream driverInputStream;
+	private final InputStream driverInputStream;
 
-	private final PipedOutputStream driverOutputStream;
+	private final OutputStream driverOutputStream;
 
-	private final PipedOutputStream pipedOutputStreamToDriverInputStream;
+	private final OutputStream pipedOutputStreamToDriverInputStream;
 
-	private final PipedInputStream pipedInputStreamFromDriverOutputStream;
+	private final InputStream pipedInputStreamFromDriverOutputStream;
+
+	private final ByteRingBuffer driverToDeviceBuffer;
 
 	private final OperationFactory operationFactory;
 
@@ -152,15 +158,25 @@ public class MockDevice implements Device {
 
 	private Future<?> echoFuture;
 
+	@Nullable
+	private StreamPump streamPump;
+
+	private StreamPump.Channel echoChannel;
+
 	private volatile boolean connected;
 
+	private ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("MockDevice-Thread %d").build();
+
+	private TimeLimiter timeLimiter = new InlineTimeLimiter();
+
 	@Inject
-	public MockDevice(@Named("driverInputStream") final PipedInputStream driverInputStream,
-					  @Named("driverOutputStream") final PipedOutputStream driverOutputStream,
+	public MockDevice(@Named("driverInputStream") final InputStream driverInputStream,
+					  @Named("driverOutputStream") final OutputStream driverOutputStream,
 					  @Named("pipedOutputStreamToDriverInputStream")
-					  final PipedOutputStream pipedOutputStreamToDriverInputStream,
+					  final OutputStream pipedOutputStreamToDriverInputStream,
 					  @Named("pipedInputStreamFromDriverOutputStream")
-					  final PipedInputStream pipedInputStreamFromDriverOutputStream,
+					  final InputStream pipedInputStreamFromDriverOutputStream,
+					  @Named("driverToDeviceBuffer") final ByteRingBuffer driverToDeviceBuffer,
 					  final OperationFactory operationFactory,
 					  @Named("configuration") final Map<String, String> configuration) {
 
@@ -168,10 +184,49 @@ public class MockDevice implements Device {
 		this.driverOutputStream = driverOutputStream;
 		this.pipedOutputStreamToDriverInputStream = pipedOutputStreamToDriverInputStream;
 		this.pipedInputStreamFromDriverOutputStream = pipedInputStreamFromDriverOutputStream;
+		this.driverToDeviceBuffer = driverToDeviceBuffer;
 		this.operationFactory = operationFactory;
 		this.configuration = configuration;
 	}
 
+	/**
+	 * Lets a shared pump echo the driver output instead of a dedicated thread. The pump is only used if no UART
+	 * latency is configured as the latency would block the shared pump threads.
+	 *
+	 * @param streamPump
+	 * 		The pump that is used for echoing.
+	 */
+	@Inject(optional = true)
+	public void setStreamPump(final StreamPump streamPump) {
+		this.streamPump = streamPump;
+	}
+
+	/**
+	 * Sets the factory for the operation, heartbeat and echo threads, e.g. to run them on virtual threads.
+	 *
+	 * @param threadFactory
+	 * 		The factory used on {@link #connect(String)}.
+	 */
+	@Inject(optional = true)
+	public void setThreadFactory(@Named("deviceThreadFactory") final ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	@Inject(optional = true)
+	public void setTimeLimiter(final TimeLimiter timeLimiter) {
+		this.timeLimiter = timeLimiter;
+	}
+
+	@Override
+	public OperationFuture<BatchResult> executeBatch(final OperationBatch batch, final long timeoutMillis,
+													 @Nullable final OperationListener<BatchResult> listener) {
+		log.trace("Executing batch (steps: " + batch.size() + ", timeout: " + timeoutMillis + "ms)");
+		// the mock has no programming mode to hold, its operations only pause heartbeat and echo
+		return executeOperation(
+				new BatchOperation(timeLimiter, operationFactory, batch, null, timeoutMillis, listener)
+		);
+	}
+
 	@Override
 	public OperationFuture<Void> eraseFlash(long timeoutMillis, @Nullable OperationListener<Void> listener) {
 		log.trace("Erasing flash (timeout: " + timeoutMillis + "ms)");
@@ -253,10 +308,6 @@ public class MockDevice implements Device {
 
 		try {
 
-			final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-					.setNameFormat("MockDevice-Thread %d")
-					.build();
-
 			scheduler = Executors.newScheduledThreadPool(1, threadFactory);
 			echoExecutor = Executors.newSingleThreadExecutor(threadFactory);
 
@@ -278,6 +329,10 @@ public class MockDevice implements Device {
 			stopHeartBeatIfRunning();
 			stopEchoIfRunning();
 
+			if (echoChannel != null) {
+				echoChannel.close();
+			}
+
 			if (scheduler != null) {
 				ExecutorUtils.shutdown(scheduler, 1, TimeUnit.SECONDS);
 			}
@@ -354,6 +409,11 @@ public class MockDevice implements Device {
 					public void onSuccess(final T result) {
 						operationFuture.set(result);
 					}
+
+					@Override
+					public void onCancel() {
+						operationFuture.cancel(false);
+					}
 				}
 		);
 		scheduler.submit(operation);
@@ -449,7 +509,25 @@ public class MockDevice implements Device {
 		final String echoString = configuration.get(OPTION_ECHO);
 		final boolean echo = echoString == null || Boolean.parseBoolean(echoString);
 
-		if (echo) {
+		if (echo && streamPump != null && configuration.get(OPTION_UART_LATENCY) == null) {
+			log.debug("Starting echo channel");
+			if (echoChannel == null) {
+				echoChannel = streamPump.register(driverToDeviceBuffer, pipedOutputStreamToDriverInputStream,
+						new StreamPump.ChannelListener() {
+							@Override
+							public void onChannelFailed(final StreamPump.Channel channel, final IOException cause) {
+								log.error("Echoing failed, closing the driver output stream: {}", cause);
+								try {
+									pipedInputStreamFromDriverOutputStream.close();
+								} catch (IOException e) {
+									log.warn("Unable to close the driver output stream: {}", e);
+								}
+							}
+						}
+				);
+			}
+			echoChannel.resume();
+		} else if (echo) {
 			log.debug("Starting echo runnable");
 			echoFuture = echoExecutor.submit(new EchoRunnable(
 					pipedInputStreamFromDriverOutputStream,
@@ -461,6 +539,11 @@ public class MockDevice implements Device {
 
 	private void stopEchoIfRunning() {
 
+		if (echoChannel != null && !echoChannel.isPaused()) {
+			log.debug("Stopping echo channel");
+			echoChannel.pause();
+		}
+
 		if (echoFuture != null) {
 			log.debug("Stopping echo runnable");
 			echoFuture.cancel(true);
@@ -4,14 +4,20 @@ import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.wsn.drivers.core.Connection;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvent;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEventType;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvents;
 import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
 import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
 import de.uniluebeck.itm.wsn.drivers.core.exception.UnexpectedResponseException;
+import de.uniluebeck.itm.wsn.drivers.core.io.FrameDecoder;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import de.uniluebeck.itm.wsn.drivers.core.operation.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 public class PacemateHelper {
@@ -25,6 +31,23 @@ public class PacemateHelper {
 
 	private static final int TIMEOUT_WAIT_DATA_AVAILABLE = 2000;
 
+	private static final int MAX_REPLY_LENGTH = 255;
+
+	/**
+	 * Decoders for replies of 1 to 4 lines, indexed by the number of lines.
+	 */
+	private static final FrameDecoder[] LINE_DECODERS = {
+			null, new LineDecoder(1), new LineDecoder(2), new LineDecoder(3), new LineDecoder(4)
+	};
+
+	/**
+	 * Resends the data lines since the last checksum if the bootloader reports a checksum mismatch.
+	 */
+	public static final RetryPolicy DEFAULT_RETRY_POLICY = new RetryPolicy.Builder()
+			.maxAttempts(5)
+			.retryOn(InvalidChecksumException.class)
+			.build();
+
 	private static final int ASCII_CR = 13;
 
 	private static final int ASCII_LF = 10;
@@ -35,6 +58,20 @@ public class PacemateHelper {
 
 	private final Connection connection;
 
+	@Nullable
+	private DeviceMetrics metrics;
+
+	private RetryPolicy retryPolicy = DEFAULT_RETRY_POLICY;
+
+	/**
+	 * Round trip begun by the last request, committed when its reply was read.
+	 */
+	@Nullable
+	private DriverEvent roundTrip;
+
+	@Nullable
+	private byte[] roundTripRequest;
+
 	@Inject
 	public PacemateHelper(Connection connection) {
 		this.connection = connection;
@@ -49,7 +86,36 @@ public class PacemateHelper {
 		this.echo = echo;
 	}
 
+	@Inject(optional = true)
+	public void setMetrics(final DeviceMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Inject(optional = true)
+	public void setRetryPolicy(@Named("pacemate.retryPolicy") final RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Starts retrying a frame according to the retry policy, counting the retries in the device metrics.
+	 *
+	 * @param description
+	 * 		What is retried, for logging.
+	 *
+	 * @return The state of the retries of the frame.
+	 */
+	public RetryPolicy.Retry startRetry(final String description) {
+		return retryPolicy.start(description, metrics);
+	}
+
 	public void sendBootLoaderMessage(byte[] message) throws IOException {
+
+		beginRoundTrip(message);
+
 		// Allocate buffer for message + CR and LF
 		byte[] data = new byte[message.length + 2];
 
@@ -67,30 +133,7 @@ public class PacemateHelper {
 	}
 
 	public void clearStreamData() throws IOException {
-
-		final InputStream inStream = connection.getInputStream();
-
-		// Allocate message buffer max 255 bytes to read
-		byte[] message = new byte[255];
-
-		int index = 0;
-
-		// Read the data
-		boolean a = true;
-		while ((inStream.available() > 0) && (a) && (index < 255)) {
-			try {
-				//System.out.println("************ Reading from stream");
-				message[index] = (byte) inStream.read();
-				//System.out.println("************ Done reading from stream");
-			} catch (IOException e) {
-				LOG.error("" + e, e);
-			}
-			if (message[index] == -1) {
-				a = false;
-			} else {
-				index++;
-			}
-		}
+		connection.clear();
 	}
 
 	public void configureFlash(int start, int end) throws Exception {
@@ -367,6 +410,11 @@ public class PacemateHelper {
 		}
 	}
 
+	private void beginRoundTrip(final byte[] request) {
+		roundTrip = DriverEvents.begin(DriverEventType.BOOTLOADER_ROUND_TRIP);
+		roundTripRequest = roundTrip != null ? request : null;
+	}
+
 	/**
 	 * Read from the Input stream from the Pacemate. The length of the expected pacemate reply message is given with
 	 * the expected number of &lt;cr&gt;&lt;lf&gt; chars.
@@ -382,55 +430,65 @@ public class PacemateHelper {
 	 * 		if an error occurs
 	 */
 	private byte[] readInputStream(int CRLFCount) throws TimeoutException, IOException {
-		final byte[] message = new byte[255];
 
-		int index = 0;
-		int counter = 0;
-		int wait = 5;
-		connection.waitDataAvailable(TIMEOUT_WAIT_DATA_AVAILABLE);
-
-		// Read the message - read CRLFCount lines of response
-		final InputStream inStream = connection.getInputStream();
-		while ((index < 255) && (counter < CRLFCount)) {
-			if (inStream.available() > 0) {
-				message[index] = (byte) inStream.read();
-				if (message[index] == 0x0a) {
-					counter++;
-				}
-				if (message[index] != -1) {
-					index++;
-				}
-			} else {
-				// message is smaller then expected
-				// check if the last line was cr lf 0 cr lf == Success message without more infos
-				if (index >= 5 && checkResponseMessage(message, index)) {
-					break;
-				}
+		final DriverEvent event = roundTrip;
+		roundTrip = null;
 
-				try {
-					connection.waitDataAvailable(1000);
-				} catch (final TimeoutException e) {
-					// Do nothing
-				}
+		if (event == null) {
+			return readLines(CRLFCount);
+		}
 
-				wait--;
-				if (wait == 0) {
-					final byte[] fullMessage = new byte[index];
-					System.arraycopy(message, 0, fullMessage, 0, index);
-					throw new TimeoutException("Not a complete response message from the node *" + StringUtils
-							.toASCIIString(fullMessage) + "*"
-					);
-				}
-			}
+		byte[] reply = null;
+		try {
+			reply = readLines(CRLFCount);
+			return reply;
+		} finally {
+			event.commit("pacemate",
+					DriverEvents.uriOf(connection),
+					StringUtils.toASCIIString(roundTripRequest),
+					reply != null ? StringUtils.toASCIIString(reply) : null,
+					roundTripRequest.length + 2,
+					reply != null ? reply.length : 0,
+					reply != null
+			);
+			roundTripRequest = null;
 		}
+	}
 
-		// copy to real length
-		byte[] fullMessage = new byte[index];
-		System.arraycopy(message, 0, fullMessage, 0, index);
+	private byte[] readLines(int CRLFCount) throws TimeoutException, IOException {
+		final byte[] fullMessage = connection.readFrame(LINE_DECODERS[CRLFCount], TIMEOUT_WAIT_DATA_AVAILABLE);
 		LOG.trace("read lines " + StringUtils.toASCIIString(fullMessage));
 		return fullMessage;
 	}
 
+	/**
+	 * A reply consists of a number of lines, at most 255 bytes. It may end early with &lt;cr&gt;&lt;lf&gt;0&lt;cr&gt;&lt;lf&gt;
+	 * == Success message without more infos if nothing follows.
+	 */
+	private static class LineDecoder implements FrameDecoder {
+
+		private final int lines;
+
+		private LineDecoder(final int lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		public int frameLength(final byte[] buffer, final int offset, final int length, final boolean idle) {
+			final int end = Math.min(length, MAX_REPLY_LENGTH);
+			int counter = 0;
+			for (int index = 0; index < end; index++) {
+				if (buffer[offset + index] == ASCII_LF && ++counter == lines) {
+					return index + 1;
+				}
+			}
+			if (end == MAX_REPLY_LENGTH || (idle && end >= 5 && checkResponseMessage(buffer, offset + end))) {
+				return end;
+			}
+			return INCOMPLETE;
+		}
+	}
+
 	/**
 	 * Check if the last received bytes were &lt;cr&gt;&lt;lf&gt;0&lt;cr&gt;&lt;lf&gt; == Success message without more
 	 * infos.
@@ -442,7 +500,7 @@ public class PacemateHelper {
 	 *
 	 * @return {@code true} if success, {@code false} otherwise
 	 */
-	private boolean checkResponseMessage(byte[] message, int index) {
+	private static boolean checkResponseMessage(byte[] message, int index) {
 		return (message[index - 5] == ASCII_CR)
 				&& (message[index - 4] == ASCII_LF)
 				&& (message[index - 3] == ASCII_ZERO)
@@ -513,6 +571,8 @@ public class PacemateHelper {
 	public void sendDataMessage(byte[] dataMessage) throws IOException, TimeoutException, UnexpectedResponseException,
 			InvalidChecksumException, NullPointerException {
 
+		beginRoundTrip(dataMessage);
+
 		// Allocate buffer for message + CR and LF
 		int array_length = dataMessage.length + 2;
 
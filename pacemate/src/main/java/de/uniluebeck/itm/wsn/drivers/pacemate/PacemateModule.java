@@ -12,6 +12,7 @@ import de.uniluebeck.itm.wsn.drivers.core.SerialPortDevice;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingModeInterceptor;
 import de.uniluebeck.itm.wsn.drivers.isense.iSenseResetOperation;
 import de.uniluebeck.itm.wsn.drivers.isense.iSenseSerialPortConnection;
 
@@ -41,7 +42,7 @@ public class PacemateModule extends AbstractModule {
 
 		SerialPortConnection connection = new iSenseSerialPortConnection();
 		PacemateProgrammingModeInterceptor interceptor = new PacemateProgrammingModeInterceptor();
-		requestInjection(interceptor);
+		bind(SerialPortProgrammingModeInterceptor.class).toInstance(interceptor);
 		bindInterceptor(Matchers.any(), Matchers.annotatedWith(SerialPortProgrammingMode.class), interceptor);
 
 		bind(Device.class).to(SerialPortDevice.class);
@@ -4,9 +4,11 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import de.uniluebeck.itm.wsn.drivers.core.exception.InvalidChecksumException;
+import de.uniluebeck.itm.wsn.drivers.core.exception.TimeoutException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.AbstractProgramOperation;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFactory;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.RetryPolicy;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
 import de.uniluebeck.itm.wsn.drivers.core.util.BinaryImageBlock;
 import org.slf4j.Logger;
@@ -69,56 +71,20 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 				throw e;
 			}
 
+			// each block is sent in parts of 20 lines a 45 bytes, only a part with a wrong checksum is sent again
 			int counter = 0;
-			int lineCounter = 0;
-
-			byte[] line;
-
-			// each block is sent in parts of 20 lines a 45 bytes
 			while (counter < data.length) {
-				int offset = 0;
-				int bytesNotYetApproved = 0;
-				if (counter + 45 < data.length) {
-					line = new byte[PacemateBinaryImage.LINESIZE]; // a line with 45
-					// bytes
-					System.arraycopy(data, counter, line, 0, PacemateBinaryImage.LINESIZE);
-					counter = counter + PacemateBinaryImage.LINESIZE;
-					bytesNotYetApproved = bytesNotYetApproved + PacemateBinaryImage.LINESIZE;
-				} else {
-					if (((data.length - counter) % 3) == 1) {
-						offset = 2;
-					} else if (((data.length - counter) % 3) == 2) {
-						offset = 1;
-					}
-					line = new byte[data.length - counter + offset];
-					line[line.length - 1] = 0;
-					line[line.length - 2] = 0;
-					System.arraycopy(data, counter, line, 0, data.length - counter);
-					counter = counter + (data.length - counter);
-					bytesNotYetApproved = bytesNotYetApproved + (data.length - counter);
-				}
-
-				try {
-					helper.sendDataMessage(binaryImage.encode(line, line.length - offset));
-				} catch (Exception e) {
-					log.error("Error while writing flash! OperationRunnable will be cancelled!", e);
-					throw e;
-				}
-
-				lineCounter++;
-				if ((lineCounter == 20) || (counter >= data.length)) {
+				final RetryPolicy.Retry retry = helper.startRetry("Sending data lines");
+				while (true) {
 					try {
-						helper.sendChecksum(binaryImage.crc);
+						counter = sendLines(binaryImage, data, counter);
+						break;
 					} catch (InvalidChecksumException e) {
 						log.debug("Invalid Checksum - resend last part");
-						// so resending the last 20 lines
-						counter = counter - bytesNotYetApproved;
-					} catch (Exception e) {
-						log.debug("Error while writing flash! OperationRunnable will be cancelled!", e);
-						throw e;
+						retry.onFailure(e);
+					} catch (TimeoutException e) {
+						retry.onFailure(e);
 					}
-					lineCounter = 0;
-					binaryImage.crc = 0;
 				}
 			}
 
@@ -181,6 +147,54 @@ public class PacemateProgramOperation extends AbstractProgramOperation {
 		progress(0.125f + PROGRESS_FRACTION_PROGRAM * 1.0f);
 	}
 
+	/**
+	 * Sends up to 20 lines of a block followed by their checksum.
+	 *
+	 * @return The offset in <code>data</code> after the last line that was sent.
+	 */
+	private int sendLines(final PacemateBinaryImage binaryImage, final byte[] data, final int start) throws Exception {
+
+		binaryImage.crc = 0;
+
+		int counter = start;
+		int lineCounter = 0;
+
+		while (counter < data.length && lineCounter < 20) {
+			int offset = 0;
+			final byte[] line;
+			if (counter + 45 < data.length) {
+				line = new byte[PacemateBinaryImage.LINESIZE]; // a line with 45 bytes
+				System.arraycopy(data, counter, line, 0, PacemateBinaryImage.LINESIZE);
+				counter = counter + PacemateBinaryImage.LINESIZE;
+			} else {
+				if (((data.length - counter) % 3) == 1) {
+					offset = 2;
+				} else if (((data.length - counter) % 3) == 2) {
+					offset = 1;
+				}
+				line = new byte[data.length - counter + offset];
+				line[line.length - 1] = 0;
+				line[line.length - 2] = 0;
+				System.arraycopy(data, counter, line, 0, data.length - counter);
+				counter = data.length;
+			}
+
+			try {
+				helper.sendDataMessage(binaryImage.encode(line, line.length - offset));
+			} catch (Exception e) {
+				log.error("Error while writing flash! OperationRunnable will be cancelled!", e);
+				throw e;
+			}
+
+			lineCounter++;
+		}
+
+		helper.sendChecksum(binaryImage.crc);
+		binaryImage.crc = 0;
+
+		return counter;
+	}
+
 	@Override
 	@SerialPortProgrammingMode
 	protected Void callInternal() throws Exception {
@@ -2,9 +2,15 @@ package de.uniluebeck.itm.wsn.drivers.telosb;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import de.uniluebeck.itm.util.StringUtils;
-import de.uniluebeck.itm.util.TimeDiff;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvent;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEventType;
+import de.uniluebeck.itm.wsn.drivers.core.event.DriverEvents;
 import de.uniluebeck.itm.wsn.drivers.core.exception.*;
+import de.uniluebeck.itm.wsn.drivers.core.io.FrameDecoder;
+import de.uniluebeck.itm.wsn.drivers.core.metrics.DeviceMetrics;
+import de.uniluebeck.itm.wsn.drivers.core.operation.RetryPolicy;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
 import gnu.io.SerialPort;
 import gnu.io.UnsupportedCommOperationException;
@@ -125,6 +131,18 @@ public class BSLTelosb {
 	/* time out for waiting for a message reply of the connected device */
 	private static final int DEFAULT_REPLY_TIMEOUT_MILLIS = 2000;
 
+	/**
+	 * Retries a data block that was NACKed, or whose reply was lost or corrupted, instead of aborting the image.
+	 */
+	public static final RetryPolicy DEFAULT_RETRY_POLICY = new RetryPolicy.Builder()
+			.maxAttempts(5)
+			.backoff(20, 2, 500)
+			.retryOn(FlashProgramFailedException.class, 3)
+			.retryOn(TimeoutException.class)
+			.retryOn(InvalidChecksumException.class)
+			.retryOn(ReceivedIncorrectDataException.class)
+			.build();
+
 	/* set to true if the patch required by the bsl was loaded into device memory
 	 * and is ready to be executed when needed */
 	private boolean bslPatchLoaded = false;
@@ -140,11 +158,60 @@ public class BSLTelosb {
 
 	private final SerialPortConnection connection;
 
+	@Nullable
+	private DeviceMetrics metrics;
+
+	private RetryPolicy retryPolicy = DEFAULT_RETRY_POLICY;
+
+	/**
+	 * Round trip begun by the last command, committed when its reply was read.
+	 */
+	@Nullable
+	private DriverEvent roundTrip;
+
+	private int roundTripCommand;
+
+	private int roundTripCommandBytes;
+
+	/**
+	 * Splits the received bytes into replies: a single ACK or NACK byte or a data frame
+	 * <code>HDR 0x00 L L data[L] CKL CKH</code>. A frame with a corrupt header ends after the header.
+	 */
+	private final FrameDecoder replyDecoder = new FrameDecoder() {
+		@Override
+		public int frameLength(final byte[] buffer, final int offset, final int length, final boolean idle) {
+			if ((0xFF & buffer[offset]) != BSL_HDR) {
+				return 1;
+			}
+			if (length < 4) {
+				return INCOMPLETE;
+			}
+			if (buffer[offset + 1] != 0x00 || buffer[offset + 2] != buffer[offset + 3]) {
+				return 4;
+			}
+			return 4 + (0xFF & buffer[offset + 2]) + 2;
+		}
+	};
+
 	@Inject
 	public BSLTelosb(SerialPortConnection connection) {
 		this.connection = connection;
 	}
 
+	@Inject(optional = true)
+	public void setMetrics(final DeviceMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Inject(optional = true)
+	public void setRetryPolicy(@Named("telosb.retryPolicy") final RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
 	/**
 	 * Initializes bsl communication by resetting the device.
 	 *
@@ -290,6 +357,10 @@ public class BSLTelosb {
 			throw new UnexpectedResponseException("BSL sync failed while sending bsl command.", DATA_ACK, DATA_NACK);
 		}
 
+		roundTrip = DriverEvents.begin(DriverEventType.BOOTLOADER_ROUND_TRIP);
+		roundTripCommand = cmd;
+		roundTripCommandBytes = frameLength;
+
 		// send frame
 		OutputStream outputStream = connection.getOutputStream();
 		outputStream.write(frame);
@@ -318,149 +389,86 @@ public class BSLTelosb {
 	public byte[] receiveBSLReply()
 			throws IOException, TimeoutException, InvalidChecksumException, ReceivedIncorrectDataException,
 			UnexpectedResponseException {
-		byte[] dataNoHeader;
-		int reply;
-		byte[] tempData;
-		byte[] result;
-		int receivedChecksumL;
-		int receivedChecksumH;
-		int lengthFrameData;
-		int numBytesRead;
-		int numTries;
-		int checksum;
-		byte[] dataFrame;
-		String frameString;
 
-		InputStream inputStream = connection.getInputStream();
-		waitDataAvailable(inputStream, DEFAULT_REPLY_TIMEOUT_MILLIS);
-		reply = inputStream.read();
+		final DriverEvent event = roundTrip;
+		roundTrip = null;
+
+		if (event == null) {
+			return readBSLReply();
+		}
+
+		byte[] reply = null;
+		try {
+			reply = readBSLReply();
+			return reply;
+		} finally {
+			event.commit("telosb",
+					DriverEvents.uriOf(connection),
+					String.format("0x%02x", roundTripCommand),
+					describeReply(reply),
+					roundTripCommandBytes,
+					reply != null ? reply.length : 0,
+					reply != null
+			);
+		}
+	}
+
+	@Nullable
+	private static String describeReply(@Nullable final byte[] reply) {
+		if (reply == null) {
+			return null;
+		} else if (reply.length == 1 && (0xFF & reply[0]) == DATA_ACK) {
+			return "ACK";
+		} else if (reply.length == 1 && (0xFF & reply[0]) == DATA_NACK) {
+			return "NACK";
+		}
+		return "DATA";
+	}
+
+	private byte[] readBSLReply()
+			throws IOException, TimeoutException, InvalidChecksumException, ReceivedIncorrectDataException,
+			UnexpectedResponseException {
+
+		final byte[] frame = connection.readFrame(replyDecoder, DEFAULT_REPLY_TIMEOUT_MILLIS);
+		final int reply = 0xFF & frame[0];
 
 		if (reply == DATA_ACK) {
-			// acknowledge received
-//			if (log.isDebugEnabled()) {
-//				log.debug("Received bsl ACK");
-//			}
-			result = (new byte[]{(byte) reply});
+			return frame;
 		} else if (reply == DATA_NACK) {
 			// no acknowledge received
 			if (log.isWarnEnabled()) {
 				log.warn("Received BSL NACK");
 			}
-			result = (new byte[]{(byte) reply});
-		} else if (reply == BSL_HDR) {
-			// receiving a data frame
-			dataFrame = new byte[4];
-			dataFrame[0] = (byte) reply;
-
-			// read header
-			numBytesRead = 0;
-			numTries = 0;
-			while (true) {
-				waitDataAvailable(inputStream, DEFAULT_REPLY_TIMEOUT_MILLIS);
-				numBytesRead += inputStream.read(dataFrame, 1 + numBytesRead, 3 - numBytesRead);
-				if (numBytesRead != 3) {
-					if (numTries < 3) {
-//						if (log.isDebugEnabled()) {
-//							log.debug("Time out receiving bsl reply, retrying...");
-//						}
-					} else {
-						frameString = "";
-						for (int i = 0; i < numBytesRead; i++) {
-							frameString += String.format(" 0x%02x ", dataFrame[i]);
-						}
-						throw new TimeoutException(
-								"Time out receiving BSL reply data.\nData received so far: " + frameString
-						);
-					}
-				} else {
-					break;
-				}
-				numTries++;
-			}
-
-			// check if frame header is correct
-			if ((dataFrame[1] != 0x00) || (dataFrame[2] != dataFrame[3])) {
-				if (log.isDebugEnabled()) {
-					log.debug("Header of received bsl reply is corrupt");
-				}
-				throw new ReceivedIncorrectDataException("Header of received BSL reply is corrupt.");
-			}
-
-			// extend array length for received data
-			tempData = new byte[dataFrame.length];
-			System.arraycopy(dataFrame, 0, tempData, 0, dataFrame.length);
-			lengthFrameData = (0xFF & dataFrame[2]);
-			dataFrame = new byte[4 + lengthFrameData];
-			System.arraycopy(tempData, 0, dataFrame, 0, tempData.length);
-
-			// read frame data excluding the checksum
-			numBytesRead = 0;
-			numTries = 0;
-			while (true) {
-				waitDataAvailable(inputStream, DEFAULT_REPLY_TIMEOUT_MILLIS);
-				numBytesRead += inputStream.read(dataFrame, 4 + numBytesRead, lengthFrameData - numBytesRead);
-				if (numBytesRead != lengthFrameData) {
-					if (numTries < 5) {
-//						if (log.isDebugEnabled()) {
-//							log.debug("Time out receiving bsl reply. Retrying to receive data...");
-//						}
-					} else {
-						frameString = "";
-						for (int i = 0; i < numBytesRead + 4; i++) {
-							frameString += String.format(" 0x%02x ", dataFrame[i]);
-						}
-						throw new TimeoutException("Time out receiving BSL reply data (was expecting "
-								+ lengthFrameData + "bytes but received " + numBytesRead + " instead. "
-								+ "\nData Received so far: " + frameString
-						);
-					}
-				} else {
-					break;
-				}
-				numTries++;
-			}
+			return frame;
+		} else if (reply != BSL_HDR) {
+			throw new UnexpectedResponseException("Received unknown BSL reply.", DATA_ACK, reply);
+		}
 
-			// read and validate checksum
-			waitDataAvailable(inputStream, DEFAULT_REPLY_TIMEOUT_MILLIS);
-			receivedChecksumL = inputStream.read();
-			receivedChecksumH = inputStream.read();
-			if (receivedChecksumH == -1 || receivedChecksumL == -1) {
-				frameString = "";
-				for (final byte aDataFrame : dataFrame) {
-					frameString += String.format(" 0x%02x ", aDataFrame);
-				}
-				throw new TimeoutException("Time out receiving BSL reply: missing checksum in data frame. " +
-						"\nData received so far: " + frameString
-				);
-			}
-//			if (log.isDebugEnabled()) {
-//				frameString = "";
-//				for (int i=0; i<dataFrame.length; i++) {
-//					frameString += String.format(" 0x%02x ", dataFrame[i]);
-//				}
-//				log.debug("Received bsl reply:"+frameString);
-//			}
-			checksum = calcChecksum(dataFrame, dataFrame.length);
-
-			if ((receivedChecksumL != (checksum & 0xFF)) ||
-					(receivedChecksumH != ((checksum >> 8) & 0xFF))) {
-				throw new InvalidChecksumException(String.format("Wrong checksum receiving BSL reply: " +
-								"was: 0x%02x 0x%02x but should be: 0x%02x 0x%02x", receivedChecksumL, receivedChecksumH,
-						checksum & 0xFF, (checksum >> 8) & 0xFF
-				)
-				);
+		// check if frame header is correct
+		if (frame.length < 4 + 2 || (frame[1] != 0x00) || (frame[2] != frame[3])) {
+			if (log.isDebugEnabled()) {
+				log.debug("Header of received bsl reply is corrupt");
 			}
+			throw new ReceivedIncorrectDataException("Header of received BSL reply is corrupt.");
+		}
 
-			// complete frame received correctly, return data without header
-			dataNoHeader = new byte[dataFrame.length - 4];
-			System.arraycopy(dataFrame, 4, dataNoHeader, 0, dataNoHeader.length);
-			result = dataNoHeader;
-
-		} else {
-			throw new UnexpectedResponseException("Received unknown BSL reply.", DATA_ACK, (0xFF & reply));
+		// validate checksum
+		final int checksum = calcChecksum(frame, frame.length - 2);
+		final int receivedChecksumL = 0xFF & frame[frame.length - 2];
+		final int receivedChecksumH = 0xFF & frame[frame.length - 1];
+		if ((receivedChecksumL != (checksum & 0xFF)) ||
+				(receivedChecksumH != ((checksum >> 8) & 0xFF))) {
+			throw new InvalidChecksumException(String.format("Wrong checksum receiving BSL reply: " +
+							"was: 0x%02x 0x%02x but should be: 0x%02x 0x%02x", receivedChecksumL, receivedChecksumH,
+					checksum & 0xFF, (checksum >> 8) & 0xFF
+			)
+			);
 		}
 
-		return result;
+		// complete frame received correctly, return data without header and checksum
+		final byte[] dataNoHeader = new byte[frame.length - 4 - 2];
+		System.arraycopy(frame, 4, dataNoHeader, 0, dataNoHeader.length);
+		return dataNoHeader;
 	}
 
 	/**
@@ -833,32 +841,6 @@ public class BSLTelosb {
 		return 0xFFFF & (checksum ^ 0xFFFF);
 	}
 
-	/*
-		 * Wait for data being available from serial port. Throw TimeoutException after
-		 * specified time out.
-		 */
-	private int waitDataAvailable(InputStream inputStream, int timeoutMillis) throws TimeoutException, IOException {
-		TimeDiff timeDiff = new TimeDiff();
-		int avail = 0;
-
-		while (inputStream != null && (avail = inputStream.available()) == 0) {
-			if (timeoutMillis > 0 && timeDiff.ms() >= timeoutMillis) {
-				throw new TimeoutException(
-						"Timeout waiting for data (waited: " + timeDiff.ms() + ", timeoutMs:" + timeoutMillis + ")"
-				);
-			}
-
-			synchronized (dataAvailableMonitor) {
-				try {
-					dataAvailableMonitor.wait(50);
-				} catch (InterruptedException e) {
-					log.error("Error " + e);
-				}
-			}
-		}
-		return avail;
-	}
-
 	/*
 		 * Flush the input buffer.
 		 */
@@ -938,6 +920,28 @@ public class BSLTelosb {
 	public void writeFlash(int address, byte[] bytes, int len)
 			throws IOException, FlashProgramFailedException, TimeoutException, InvalidChecksumException,
 			ReceivedIncorrectDataException, UnexpectedResponseException {
+		final RetryPolicy.Retry retry = retryPolicy.start("BSL data block", metrics);
+		while (true) {
+			try {
+				writeFlashBlock(address, bytes, len);
+				return;
+			} catch (FlashProgramFailedException e) {
+				retry.onFailure(e);
+			} catch (TimeoutException e) {
+				retry.onFailure(e);
+			} catch (InvalidChecksumException e) {
+				retry.onFailure(e);
+			} catch (ReceivedIncorrectDataException e) {
+				retry.onFailure(e);
+			}
+			// drop what is left of the failed reply, the next command synchronizes with the BSL again
+			flushInputStream();
+		}
+	}
+
+	private void writeFlashBlock(int address, byte[] bytes, int len)
+			throws IOException, FlashProgramFailedException, TimeoutException, InvalidChecksumException,
+			ReceivedIncorrectDataException, UnexpectedResponseException {
 
 		sendBSLCommand(BSLTelosb.CMD_TXDATABLOCK, address, len, bytes, false);
 
@@ -12,6 +12,7 @@ import de.uniluebeck.itm.wsn.drivers.core.SerialPortDevice;
 import de.uniluebeck.itm.wsn.drivers.core.operation.*;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortConnection;
 import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingMode;
+import de.uniluebeck.itm.wsn.drivers.core.serialport.SerialPortProgrammingModeInterceptor;
 
 import javax.annotation.Nullable;
 import java.util.Map;
@@ -40,7 +41,7 @@ public class TelosbModule extends AbstractModule {
 
 		SerialPortConnection connection = new TelosbSerialPortConnection();
 		TelosbProgrammingModeInterceptor interceptor = new TelosbProgrammingModeInterceptor();
-		requestInjection(interceptor);
+		bind(SerialPortProgrammingModeInterceptor.class).toInstance(interceptor);
 		bindInterceptor(Matchers.any(), Matchers.annotatedWith(SerialPortProgrammingMode.class), interceptor);
 
 		bind(Device.class).to(SerialPortDevice.class);
@@ -37,7 +37,7 @@ public class TriSOSModule extends AbstractModule {
 		TriSOSSerialPortConnection connection = new TriSOSSerialPortConnection(configuration);
 
 		final SerialPortProgrammingModeInterceptor interceptor = new SerialPortProgrammingModeInterceptor();
-		requestInjection(interceptor);
+		bind(SerialPortProgrammingModeInterceptor.class).toInstance(interceptor);
 		bindInterceptor(Matchers.any(), Matchers.annotatedWith(SerialPortProgrammingMode.class), interceptor);
 
 		bind(Device.class).to(SerialPortDevice.class);